@@ -1,12 +1,22 @@
 package org.codeforamerica.open311.facade;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import org.codeforamerica.open311.facade.data.Attribute;
 import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
@@ -23,10 +33,25 @@ import org.codeforamerica.open311.facade.exceptions.DataParsingException;
 import org.codeforamerica.open311.facade.exceptions.GeoReportV2Error;
 import org.codeforamerica.open311.facade.exceptions.InvalidValueError;
 import org.codeforamerica.open311.internals.caching.Cache;
+import org.codeforamerica.open311.internals.caching.Cache.CacheableOperation;
+import org.codeforamerica.open311.internals.caching.CacheKeys;
+import org.codeforamerica.open311.internals.caching.RevalidatingCache;
+import org.codeforamerica.open311.internals.caching.StaleValueCache;
 import org.codeforamerica.open311.internals.logging.LogManager;
+import org.codeforamerica.open311.internals.metrics.Instrumentation;
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics;
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics.Operation;
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics.Phase;
+import org.codeforamerica.open311.internals.network.CancellationToken;
+import org.codeforamerica.open311.internals.network.ConditionalNetworkManager;
+import org.codeforamerica.open311.internals.network.ConditionalResponse;
 import org.codeforamerica.open311.internals.network.NetworkManager;
+import org.codeforamerica.open311.internals.network.ResponseInputStream;
+import org.codeforamerica.open311.internals.network.StreamingNetworkManager;
 import org.codeforamerica.open311.internals.network.URLBuilder;
+import org.codeforamerica.open311.internals.network.Validators;
 import org.codeforamerica.open311.internals.parsing.DataParser;
+import org.codeforamerica.open311.internals.platform.PlatformManager;
 
 /**
  * Base class of the API. This is the entry point to the system. You can build
@@ -45,10 +70,46 @@ public class APIWrapper {
 	private NetworkManager networkManager;
 	private URLBuilder urlBuilder;
 	private Cache cache;
+	/**
+	 * Operations whose expired data is returned while it is refreshed in
+	 * background.
+	 */
+	private final Map<CacheableOperation, Long> staleWhileRevalidate = Collections
+			.synchronizedMap(new EnumMap<CacheableOperation, Long>(
+					CacheableOperation.class));
+	/**
+	 * Operations whose expired data is revalidated with a conditional request,
+	 * and the time it is kept to do it.
+	 */
+	private final Map<CacheableOperation, Long> revalidation = Collections
+			.synchronizedMap(new EnumMap<CacheableOperation, Long>(
+					CacheableOperation.class));
+	/**
+	 * Keys of the background refreshes in progress (only one at a time for
+	 * each response).
+	 */
+	private final ConcurrentHashMap<String, Boolean> refreshing = new ConcurrentHashMap<String, Boolean>();
+	private volatile Executor refreshExecutor = PlatformManager.getInstance()
+			.getDefaultExecutor();
+	/**
+	 * Shares a single network request between identical concurrent GET
+	 * operations.
+	 */
+	private final RequestCoalescer coalescer = new RequestCoalescer();
+	/**
+	 * Latencies and counters of the operations.
+	 */
+	private final WrapperMetrics metrics;
 	/**
 	 * Useful to log events.
 	 */
 	private LogManager logManager = LogManager.getInstance();
+	/**
+	 * Maximum size (bytes) of a response which can still be checked as a
+	 * GeoReport error after failing to be parsed as the expected one. Errors
+	 * are small documents, so bigger responses don't need to be buffered.
+	 */
+	private static final int ERROR_RESPONSE_MAX_SIZE = 64 * 1024;
 
 	/**
 	 * Builds an API wrapper from its components. Note that this constructor
@@ -77,6 +138,7 @@ public class APIWrapper {
 		this.apiKey = apiKey;
 		this.urlBuilder = new URLBuilder(endpointUrl, this.jurisdictionId,
 				format.toString());
+		this.metrics = new WrapperMetrics(endpointUrl);
 	}
 
 	public String getEndpointUrl() {
@@ -101,6 +163,289 @@ public class APIWrapper {
 		return cache;
 	}
 
+	/**
+	 * Activates the stale-while-revalidate policy for an operation: when its
+	 * cached data has expired (but not for longer than the given maximum
+	 * staleness) it is returned immediately, and refreshed in background. It
+	 * requires a cache which implements {@link StaleValueCache}, it is ignored
+	 * otherwise. Available for {@link CacheableOperation#GET_SERVICE_LIST},
+	 * {@link CacheableOperation#GET_SERVICE_DEFINITION},
+	 * {@link CacheableOperation#GET_SERVICE_REQUEST_LIST} and
+	 * {@link CacheableOperation#GET_SINGLE_SERVICE_REQUEST}.
+	 * 
+	 * @param operation
+	 *            Operation of interest.
+	 * @param maximumStaleness
+	 *            Time the expired data can be used (<code>0</code> deactivates
+	 *            the policy).
+	 * @param unit
+	 *            Unit of the given time.
+	 */
+	public void setStaleWhileRevalidate(CacheableOperation operation,
+			long maximumStaleness, TimeUnit unit) {
+		if (operation == null || unit == null || maximumStaleness < 0) {
+			return;
+		}
+		if (!(cache instanceof StaleValueCache)) {
+			logManager.logError(this,
+					"The cache can't keep expired data, stale-while-revalidate ignored.");
+			return;
+		}
+		if (maximumStaleness > 0) {
+			staleWhileRevalidate.put(operation, unit.toMillis(maximumStaleness));
+		} else {
+			staleWhileRevalidate.remove(operation);
+		}
+		updateMaximumStaleness(operation);
+	}
+
+	/**
+	 * Activates the conditional revalidation of an operation: its expired
+	 * cached data is kept for the given time along with its validators (
+	 * <code>ETag</code> and <code>Last-Modified</code> headers), and it is
+	 * asked for again with a conditional request. If the server answers
+	 * <code>304 Not Modified</code>, the cached data is used again (and its
+	 * time to live renewed) without downloading nor parsing it. It requires a
+	 * cache which implements {@link RevalidatingCache} and a network manager
+	 * which implements {@link ConditionalNetworkManager}, it is ignored
+	 * otherwise. Available for the same operations as
+	 * {@link #setStaleWhileRevalidate(CacheableOperation, long, TimeUnit)}.
+	 * 
+	 * @param operation
+	 *            Operation of interest.
+	 * @param window
+	 *            Time the expired data can be revalidated (<code>0</code>
+	 *            deactivates it).
+	 * @param unit
+	 *            Unit of the given time.
+	 */
+	public void setConditionalRevalidation(CacheableOperation operation,
+			long window, TimeUnit unit) {
+		if (operation == null || unit == null || window < 0) {
+			return;
+		}
+		if (!(cache instanceof RevalidatingCache)
+				|| !(networkManager instanceof ConditionalNetworkManager)) {
+			logManager
+					.logError(this,
+							"The cache or the network manager can't revalidate responses, conditional revalidation ignored.");
+			return;
+		}
+		if (window > 0) {
+			revalidation.put(operation, unit.toMillis(window));
+		} else {
+			revalidation.remove(operation);
+		}
+		updateMaximumStaleness(operation);
+	}
+
+	/**
+	 * Keeps the expired data of an operation as long as any policy needs it.
+	 */
+	private void updateMaximumStaleness(CacheableOperation operation) {
+		Long staleness = staleWhileRevalidate.get(operation);
+		Long window = revalidation.get(operation);
+		((StaleValueCache) cache).setMaximumStaleness(operation, Math.max(
+				staleness != null ? staleness : 0, window != null ? window : 0),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets the executor of the background refreshes.
+	 * 
+	 * @param executor
+	 *            An executor.
+	 */
+	/* package */void setRefreshExecutor(Executor executor) {
+		if (executor != null) {
+			this.refreshExecutor = executor;
+		}
+	}
+
+	/**
+	 * Checks if the expired data of an operation can be used.
+	 */
+	private boolean usesStaleData(CacheableOperation operation) {
+		return staleWhileRevalidate.containsKey(operation)
+				&& cache instanceof StaleValueCache;
+	}
+
+	/**
+	 * Checks if the expired data of an operation is revalidated.
+	 */
+	private boolean revalidates(CacheableOperation operation) {
+		return revalidation.containsKey(operation)
+				&& cache instanceof RevalidatingCache
+				&& networkManager instanceof ConditionalNetworkManager;
+	}
+
+	/**
+	 * Runs a refresh in background unless the same one is already running.
+	 * 
+	 * @param refresh
+	 *            The refresh.
+	 */
+	private void refreshInBackground(Refresh refresh) {
+		if (refreshing.putIfAbsent(refresh.key, Boolean.TRUE) == null) {
+			try {
+				refreshExecutor.execute(refresh);
+			} catch (RuntimeException e) {
+				refreshing.remove(refresh.key);
+				logManager.logError(this, "Couldn't start a refresh: {}",
+						e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Asks the endpoint for the newest version of some cached data and saves
+	 * it.
+	 */
+	private abstract class Refresh implements Runnable {
+		private final String key;
+
+		Refresh(CacheableOperation operation, String key) {
+			this.key = operation + key;
+		}
+
+		@Override
+		public void run() {
+			try {
+				refresh();
+			} catch (APIWrapperException e) {
+				logManager.logError(APIWrapper.this, "Refresh failed: {}",
+						e.getMessage());
+			} catch (RuntimeException e) {
+				logManager.logError(APIWrapper.this, "Refresh failed: {}",
+						e.getMessage());
+			} finally {
+				refreshing.remove(key);
+			}
+		}
+
+		protected abstract void refresh() throws APIWrapperException;
+	}
+
+	/**
+	 * Asks the endpoint for a cacheable response, parses it and caches it.
+	 * If the operation is revalidated and its expired data is still cached,
+	 * the request is conditional and the cached data is reused when it hasn't
+	 * been modified.
+	 * 
+	 * @param <T>
+	 *            Type of the parsed response.
+	 */
+	private abstract class Fetch<T> implements RequestCoalescer.Operation<T> {
+		private final CacheableOperation operation;
+		private final Operation metricsOperation;
+		private final URL url;
+
+		Fetch(CacheableOperation operation, URL url) {
+			this.operation = operation;
+			this.metricsOperation = metricsOperationOf(operation);
+			this.url = url;
+		}
+
+		@Override
+		public T run() throws APIWrapperException {
+			if (!revalidates(operation)) {
+				return parseAndSave(openResponse(metricsOperation, url), null);
+			}
+			RevalidatingCache revalidatingCache = (RevalidatingCache) cache;
+			T stale = retrieveStale();
+			Validators validators = stale != null ? revalidatingCache
+					.retrieveValidators(operation, url.toString()) : null;
+			long start = System.nanoTime();
+			ConditionalResponse response = networkConditionalGet(url,
+					validators);
+			metrics.record(metricsOperation, Phase.NETWORK, start);
+			if (response.isNotModified() && stale != null) {
+				logManager.logInfo(APIWrapper.this,
+						"{} has not been modified, renewing the cached data.",
+						url);
+				save(stale);
+				revalidatingCache.saveValidators(operation, url.toString(),
+						response.getValidators().updating(validators));
+				return stale;
+			}
+			InputStream body = response.getBody() != null ? response
+					.getBody() : new ByteArrayInputStream(new byte[0]);
+			return parseAndSave(new ResponseInputStream(body,
+					ERROR_RESPONSE_MAX_SIZE), response.getValidators());
+		}
+
+		private T parseAndSave(ResponseInputStream response,
+				Validators validators) throws APIWrapperException {
+			long start = System.nanoTime();
+			try {
+				T result = parse(response);
+				metrics.record(metricsOperation, Phase.PARSING, start);
+				reportParsing(metricsOperation, start, result,
+						response.getBytesRead());
+				save(result);
+				if (result != null && validators != null) {
+					((RevalidatingCache) cache).saveValidators(operation,
+							url.toString(), validators);
+				}
+				return result;
+			} catch (DataParsingException e) {
+				reportParsing(metricsOperation, start, null,
+						response.getBytesRead());
+				start = System.nanoTime();
+				try {
+					tryToParseError(response, e);
+				} finally {
+					metrics.record(metricsOperation, Phase.ERROR_PARSING,
+							start);
+				}
+				return null;
+			} finally {
+				release(response);
+			}
+		}
+
+		/**
+		 * Looks for the expired cached data.
+		 */
+		protected abstract T retrieveStale();
+
+		protected abstract T parse(ResponseInputStream response)
+				throws DataParsingException;
+
+		protected abstract void save(T result);
+	}
+
+	/**
+	 * Returns the latencies (cache lookup, URL building, network, parsing) and
+	 * counters of the operations of this wrapper. Use
+	 * {@link WrapperMetrics#snapshot()} to read them or
+	 * {@link WrapperMetrics#registerMBean()} to publish them through JMX.
+	 * 
+	 * @return The metrics of the wrapper.
+	 */
+	public WrapperMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Operation of the metrics which corresponds to a cacheable one.
+	 */
+	private static Operation metricsOperationOf(CacheableOperation operation) {
+		switch (operation) {
+		case GET_SERVICE_LIST:
+			return Operation.GET_SERVICE_LIST;
+		case GET_SERVICE_DEFINITION:
+			return Operation.GET_SERVICE_DEFINITION;
+		case GET_SERVICE_REQUEST_LIST:
+			return Operation.GET_SERVICE_REQUESTS;
+		case GET_SINGLE_SERVICE_REQUEST:
+			return Operation.GET_SERVICE_REQUEST;
+		default:
+			throw new IllegalArgumentException("Not a wrapper operation: "
+					+ operation);
+		}
+	}
+
 	/**
 	 * Updates the format of the wrapper. A new {@link URLBuilder} will be
 	 * instantiated.
@@ -109,8 +454,7 @@ public class APIWrapper {
 	 *            New format.
 	 */
 	public void setFormat(Format format) {
-		logManager.logInfo(this,
-				"Changing wrapper format to " + format.toString());
+		logManager.logInfo(this, "Changing wrapper format to {}", format);
 		urlBuilder = new URLBuilder(endpointUrl, jurisdictionId,
 				format.toString());
 	}
@@ -126,11 +470,27 @@ public class APIWrapper {
 	 */
 	public List<Service> getServiceList() throws APIWrapperException {
 		logManager.logInfo(this, "GET Service List");
+		long start = System.nanoTime();
 		List<Service> result = cache
 				.retrieveCachedServiceList(this.endpointUrl);
+		metrics.recordCacheLookup(Operation.GET_SERVICE_LIST, start,
+				result != null);
+		if (result == null
+				&& usesStaleData(CacheableOperation.GET_SERVICE_LIST)) {
+			result = ((StaleValueCache) cache)
+					.retrieveStaleServiceList(endpointUrl);
+			if (result != null) {
+				refreshInBackground(new Refresh(
+						CacheableOperation.GET_SERVICE_LIST, "") {
+					@Override
+					protected void refresh() throws APIWrapperException {
+						askEndpointForTheServiceList();
+					}
+				});
+			}
+		}
 		if (result == null) {
 			result = askEndpointForTheServiceList();
-			cache.saveListOfServices(endpointUrl, result);
 		}
 		if (result != null) {
 			RelationshipManager.getInstance().addServiceWrapperRelationship(
@@ -140,7 +500,8 @@ public class APIWrapper {
 	}
 
 	/**
-	 * Makes a network operation to ask the endpoint for the service list.
+	 * Makes a network operation to ask the endpoint for the service list and
+	 * caches it. Identical concurrent requests are coalesced in a single one.
 	 * 
 	 * @return The list of services of the endpoint.
 	 * @throws APIWrapperException
@@ -150,18 +511,56 @@ public class APIWrapper {
 			throws APIWrapperException {
 		logManager.logInfo(this,
 				"GET Service List is not cached, asking endpoint.");
-		String rawServiceListData = "";
+		final URL serviceListUrl;
+		long start = System.nanoTime();
 		try {
-			URL serviceListUrl = urlBuilder.buildGetServiceListUrl();
-			rawServiceListData = networkGet(serviceListUrl);
-			return dataParser.parseServiceList(rawServiceListData);
-		} catch (DataParsingException e) {
-			tryToParseError(rawServiceListData);
-			return null;
+			serviceListUrl = urlBuilder.buildGetServiceListUrl();
+			metrics.record(Operation.GET_SERVICE_LIST, Phase.URL_BUILDING,
+					start);
 		} catch (MalformedURLException e) {
 			throw new APIWrapperException(e.getMessage(), Error.URL_BUILDER,
 					null);
 		}
+		return coalescer.execute(serviceListUrl.toString(),
+				new Fetch<List<Service>>(CacheableOperation.GET_SERVICE_LIST,
+						serviceListUrl) {
+					@Override
+					protected List<Service> retrieveStale() {
+						return ((StaleValueCache) cache)
+								.retrieveStaleServiceList(endpointUrl);
+					}
+
+					@Override
+					protected List<Service> parse(ResponseInputStream response)
+							throws DataParsingException {
+						return dataParser.parseServiceList(response);
+					}
+
+					@Override
+					protected void save(List<Service> result) {
+						cache.saveListOfServices(endpointUrl, result);
+					}
+				});
+	}
+
+	/**
+	 * Same as {@link #getServiceList()}, but cancellable.
+	 * 
+	 * @param token
+	 *            Cancels the operation (it aborts the network request) or
+	 *            limits its duration.
+	 * @return List of fetched services.
+	 * @throws APIWrapperException
+	 *             If there was any problem or the token was cancelled.
+	 */
+	public List<Service> getServiceList(CancellationToken token)
+			throws APIWrapperException {
+		CancellationToken previous = token.attach();
+		try {
+			return getServiceList();
+		} finally {
+			CancellationToken.detach(previous);
+		}
 	}
 
 	/**
@@ -175,21 +574,61 @@ public class APIWrapper {
 	 * @throws APIWrapperException
 	 *             If there was any problem (data parsing, I/O...).
 	 */
-	public ServiceDefinition getServiceDefinition(String serviceCode)
+	public ServiceDefinition getServiceDefinition(final String serviceCode)
 			throws APIWrapperException {
-		logManager.logInfo(this, "GET Service Definition (service_code: "
-				+ serviceCode + ")");
+		logManager.logInfo(this, "GET Service Definition (service_code: {})",
+				serviceCode);
+		long start = System.nanoTime();
 		ServiceDefinition result = cache.retrieveCachedServiceDefinition(
 				endpointUrl, serviceCode);
+		metrics.recordCacheLookup(Operation.GET_SERVICE_DEFINITION, start,
+				result != null);
+		if (result == null
+				&& usesStaleData(CacheableOperation.GET_SERVICE_DEFINITION)) {
+			result = ((StaleValueCache) cache).retrieveStaleServiceDefinition(
+					endpointUrl, serviceCode);
+			if (result != null) {
+				refreshInBackground(new Refresh(
+						CacheableOperation.GET_SERVICE_DEFINITION, serviceCode) {
+					@Override
+					protected void refresh() throws APIWrapperException {
+						askEndpointForAServiceDefinition(serviceCode);
+					}
+				});
+			}
+		}
 		if (result == null) {
 			result = askEndpointForAServiceDefinition(serviceCode);
-			cache.saveServiceDefinition(endpointUrl, serviceCode, result);
 		}
 		return result;
 	}
 
 	/**
-	 * Makes a network operation to ask the endpoint for the service definition.
+	 * Same as {@link #getServiceDefinition(String)}, but cancellable.
+	 * 
+	 * @param serviceCode
+	 *            Code of the service of interest.
+	 * @param token
+	 *            Cancels the operation (it aborts the network request) or
+	 *            limits its duration.
+	 * @return All the information related to the given code.
+	 * @throws APIWrapperException
+	 *             If there was any problem or the token was cancelled.
+	 */
+	public ServiceDefinition getServiceDefinition(String serviceCode,
+			CancellationToken token) throws APIWrapperException {
+		CancellationToken previous = token.attach();
+		try {
+			return getServiceDefinition(serviceCode);
+		} finally {
+			CancellationToken.detach(previous);
+		}
+	}
+
+	/**
+	 * Makes a network operation to ask the endpoint for the service definition
+	 * and caches it. Identical concurrent requests are coalesced in a single
+	 * one.
 	 * 
 	 * @param serviceCode
 	 *            Code of the service of interest.
@@ -197,22 +636,44 @@ public class APIWrapper {
 	 * @throws APIWrapperException
 	 */
 	private ServiceDefinition askEndpointForAServiceDefinition(
-			String serviceCode) throws APIWrapperException {
-		logManager.logInfo(this, "GET Service Definition (service_code: "
-				+ serviceCode + ") is not cached, asking endpoint.");
-		String rawServiceDefinitionData = "";
+			final String serviceCode) throws APIWrapperException {
+		logManager.logInfo(this, "GET Service Definition (service_code: {})"
+				+ " is not cached, asking endpoint.", serviceCode);
+		final URL serviceDefinitionUrl;
+		long start = System.nanoTime();
 		try {
-			URL serviceDefinitionUrl = urlBuilder
+			serviceDefinitionUrl = urlBuilder
 					.buildGetServiceDefinitionUrl(serviceCode);
-			rawServiceDefinitionData = networkGet(serviceDefinitionUrl);
-			return dataParser.parseServiceDefinition(rawServiceDefinitionData);
-		} catch (DataParsingException e) {
-			tryToParseError(rawServiceDefinitionData);
-			return null;
+			metrics.record(Operation.GET_SERVICE_DEFINITION,
+					Phase.URL_BUILDING, start);
 		} catch (MalformedURLException e) {
 			throw new APIWrapperException(e.getMessage(), Error.URL_BUILDER,
 					null);
 		}
+		return coalescer.execute(serviceDefinitionUrl.toString(),
+				new Fetch<ServiceDefinition>(
+						CacheableOperation.GET_SERVICE_DEFINITION,
+						serviceDefinitionUrl) {
+					@Override
+					protected ServiceDefinition retrieveStale() {
+						return ((StaleValueCache) cache)
+								.retrieveStaleServiceDefinition(endpointUrl,
+										serviceCode);
+					}
+
+					@Override
+					protected ServiceDefinition parse(
+							ResponseInputStream response)
+							throws DataParsingException {
+						return dataParser.parseServiceDefinition(response);
+					}
+
+					@Override
+					protected void save(ServiceDefinition result) {
+						cache.saveServiceDefinition(endpointUrl, serviceCode,
+								result);
+					}
+				});
 	}
 
 	/**
@@ -226,21 +687,42 @@ public class APIWrapper {
 	 */
 	public ServiceRequestIdResponse getServiceRequestIdFromToken(String token)
 			throws APIWrapperException {
-		logManager.logInfo(this, "GET Service Request Id from token (token: "
-				+ token + "), asking endpoint.");
-		String rawServiceRequestId = "";
+		logManager.logInfo(this, "GET Service Request Id from token (token: {})"
+				+ ", asking endpoint.", token);
+		ResponseInputStream rawServiceRequestId = null;
+		long start = System.nanoTime();
 		try {
 			URL serviceDefinitionUrl = urlBuilder
 					.buildGetServiceRequestIdFromATokenUrl(token);
-			rawServiceRequestId = networkGet(serviceDefinitionUrl);
-			return dataParser
+			metrics.record(Operation.GET_SERVICE_REQUEST_ID_FROM_TOKEN,
+					Phase.URL_BUILDING, start);
+			rawServiceRequestId = openResponse(
+					Operation.GET_SERVICE_REQUEST_ID_FROM_TOKEN,
+					serviceDefinitionUrl);
+			start = System.nanoTime();
+			ServiceRequestIdResponse result = dataParser
 					.parseServiceRequestIdFromAToken(rawServiceRequestId);
+			metrics.record(Operation.GET_SERVICE_REQUEST_ID_FROM_TOKEN,
+					Phase.PARSING, start);
+			reportParsing(Operation.GET_SERVICE_REQUEST_ID_FROM_TOKEN, start,
+					result, rawServiceRequestId.getBytesRead());
+			return result;
 		} catch (DataParsingException e) {
-			tryToParseError(rawServiceRequestId);
+			reportParsing(Operation.GET_SERVICE_REQUEST_ID_FROM_TOKEN, start,
+					null, rawServiceRequestId.getBytesRead());
+			start = System.nanoTime();
+			try {
+				tryToParseError(rawServiceRequestId, e);
+			} finally {
+				metrics.record(Operation.GET_SERVICE_REQUEST_ID_FROM_TOKEN,
+						Phase.ERROR_PARSING, start);
+			}
 			return null;
 		} catch (MalformedURLException e) {
 			throw new APIWrapperException(e.getMessage(), Error.URL_BUILDER,
 					null);
+		} finally {
+			release(rawServiceRequestId);
 		}
 	}
 
@@ -259,44 +741,197 @@ public class APIWrapper {
 		logManager.logInfo(this, "GET Service Requests");
 		operationData = operationData == null ? new GETServiceRequestsFilter()
 				: operationData;
+		long start = System.nanoTime();
 		List<ServiceRequest> result = cache.retrieveCachedServiceRequests(
 				endpointUrl, operationData);
+		metrics.recordCacheLookup(Operation.GET_SERVICE_REQUESTS, start,
+				result != null);
+		if (result == null
+				&& usesStaleData(CacheableOperation.GET_SERVICE_REQUEST_LIST)) {
+			result = ((StaleValueCache) cache).retrieveStaleServiceRequests(
+					endpointUrl, operationData);
+			if (result != null) {
+				final GETServiceRequestsFilter filter = operationData;
+				refreshInBackground(new Refresh(
+						CacheableOperation.GET_SERVICE_REQUEST_LIST,
+						CacheKeys.filterKey(filter)) {
+					@Override
+					protected void refresh() throws APIWrapperException {
+						askEndpointForServiceRequests(filter);
+					}
+				});
+			}
+		}
 		if (result == null) {
 			result = askEndpointForServiceRequests(operationData);
-			cache.saveServiceRequestList(endpointUrl, operationData, result);
 		}
 		return result;
 	}
 
 	/**
-	 * Makes a network operation to ask the endpoint for service requests.
+	 * Same as {@link #getServiceRequests(GETServiceRequestsFilter)}, but
+	 * cancellable.
 	 * 
 	 * @param operationData
+	 *            An object with all the desired optional filtering parameters
+	 *            to send.
+	 * @param token
+	 *            Cancels the operation (it aborts the network request) or
+	 *            limits its duration.
+	 * @return A list of service requests.
+	 * @throws APIWrapperException
+	 *             If there was any problem or the token was cancelled.
+	 */
+	public List<ServiceRequest> getServiceRequests(
+			GETServiceRequestsFilter operationData, CancellationToken token)
+			throws APIWrapperException {
+		CancellationToken previous = token.attach();
+		try {
+			return getServiceRequests(operationData);
+		} finally {
+			CancellationToken.detach(previous);
+		}
+	}
+
+	/**
+	 * Retrieves all the service requests of a date range of any length,
+	 * splitting it in windows which the server doesn't truncate. Check
+	 * {@link ServiceRequestRangeFetcher} to change its default values.
+	 *
+	 * @param operationData
+	 *            Other filtering parameters (its dates are replaced), it can
+	 *            be <code>null</code>.
+	 * @param startDate
+	 *            Start of the range.
+	 * @param endDate
+	 *            End of the range.
+	 * @return A list of service requests without duplicates.
+	 * @throws APIWrapperException
+	 *             If there was any problem.
+	 */
+	public List<ServiceRequest> getServiceRequests(
+			GETServiceRequestsFilter operationData, Date startDate,
+			Date endDate) throws APIWrapperException {
+		logManager.logInfo(this, "GET Service Requests from {} to {}",
+				startDate, endDate);
+		return new ServiceRequestRangeFetcher(this).fetch(operationData,
+				startDate, endDate);
+	}
+
+	/**
+	 * Retrieves all the service requests which accord to the given data,
+	 * handing each of them to the given handler as soon as it is parsed. The
+	 * response is never held as a list, so this is the way to go through big
+	 * result sets. The cache is neither checked nor filled.
+	 *
+	 * @param operationData
+	 *            An object with all the desired optional filtering parameters
+	 *            to send.
+	 * @param handler
+	 *            Receives the service requests, in the order of the response.
+	 *            The runtime exceptions it throws stop the operation and are
+	 *            propagated untouched.
+	 * @throws APIWrapperException
+	 *             If there was any problem. Some requests could have been
+	 *             handled before it was found.
+	 */
+	public void getServiceRequests(GETServiceRequestsFilter operationData,
+			ServiceRequestHandler handler) throws APIWrapperException {
+		logManager.logInfo(this, "GET Service Requests (streamed)");
+		operationData = operationData == null ? new GETServiceRequestsFilter()
+				: operationData;
+		ResponseInputStream rawServiceRequests = null;
+		long start = System.nanoTime();
+		try {
+			URL serviceRequestsUrl = urlBuilder
+					.buildGetServiceRequests(operationData
+							.getOptionalParametersMap());
+			metrics.record(Operation.GET_SERVICE_REQUESTS, Phase.URL_BUILDING,
+					start);
+			rawServiceRequests = openResponse(Operation.GET_SERVICE_REQUESTS,
+					serviceRequestsUrl);
+			start = System.nanoTime();
+			CountingHandler counted = Instrumentation.isEnabled() ? new CountingHandler(
+					handler) : null;
+			dataParser.parseServiceRequests(rawServiceRequests,
+					counted != null ? counted : handler);
+			metrics.record(Operation.GET_SERVICE_REQUESTS, Phase.PARSING, start);
+			if (counted != null) {
+				reportParsing(Operation.GET_SERVICE_REQUESTS, start,
+						counted.count, rawServiceRequests.getBytesRead(), true);
+			}
+		} catch (DataParsingException e) {
+			reportParsing(Operation.GET_SERVICE_REQUESTS, start, 0,
+					rawServiceRequests.getBytesRead(), false);
+			start = System.nanoTime();
+			try {
+				tryToParseError(rawServiceRequests, e);
+			} finally {
+				metrics.record(Operation.GET_SERVICE_REQUESTS,
+						Phase.ERROR_PARSING, start);
+			}
+		} catch (MalformedURLException e) {
+			throw new APIWrapperException(e.getMessage(), Error.URL_BUILDER,
+					null);
+		} finally {
+			release(rawServiceRequests);
+		}
+	}
+
+	/**
+	 * Makes a network operation to ask the endpoint for service requests and
+	 * caches them. Identical concurrent requests are coalesced in a single
+	 * one.
+	 *
+	 * @param operationData
 	 *            Filter to apply to the search in the endpoint.
 	 * @return A list of service requests.
 	 * @throws APIWrapperException
 	 *             If there was any problem.
 	 */
 	private List<ServiceRequest> askEndpointForServiceRequests(
-			GETServiceRequestsFilter operationData) throws APIWrapperException {
+			final GETServiceRequestsFilter operationData)
+			throws APIWrapperException {
 		logManager
 				.logInfo(this,
 						"GET Service Requests with the given filter is not cached, asking endpoint.");
-		String rawServiceRequests = "";
+		final URL serviceRequestsUrl;
+		long start = System.nanoTime();
 		try {
-			URL serviceRequestsUrl = operationData != null ? urlBuilder
+			serviceRequestsUrl = operationData != null ? urlBuilder
 					.buildGetServiceRequests(operationData
 							.getOptionalParametersMap()) : urlBuilder
 					.buildGetServiceRequests(null);
-			rawServiceRequests = networkGet(serviceRequestsUrl);
-			return dataParser.parseServiceRequests(rawServiceRequests);
-		} catch (DataParsingException e) {
-			tryToParseError(rawServiceRequests);
-			return null;
+			metrics.record(Operation.GET_SERVICE_REQUESTS, Phase.URL_BUILDING,
+					start);
 		} catch (MalformedURLException e) {
 			throw new APIWrapperException(e.getMessage(), Error.URL_BUILDER,
 					null);
 		}
+		return coalescer.execute(serviceRequestsUrl.toString(),
+				new Fetch<List<ServiceRequest>>(
+						CacheableOperation.GET_SERVICE_REQUEST_LIST,
+						serviceRequestsUrl) {
+					@Override
+					protected List<ServiceRequest> retrieveStale() {
+						return ((StaleValueCache) cache)
+								.retrieveStaleServiceRequests(endpointUrl,
+										operationData);
+					}
+
+					@Override
+					protected List<ServiceRequest> parse(
+							ResponseInputStream response)
+							throws DataParsingException {
+						return dataParser.parseServiceRequests(response);
+					}
+
+					@Override
+					protected void save(List<ServiceRequest> result) {
+						cache.saveServiceRequestList(endpointUrl,
+								operationData, result);
+					}
+				});
 	}
 
 	/**
@@ -308,22 +943,61 @@ public class APIWrapper {
 	 * @throws APIWrapperException
 	 *             If there was any problem.
 	 */
-	public ServiceRequest getServiceRequest(String serviceRequestId)
+	public ServiceRequest getServiceRequest(final String serviceRequestId)
 			throws APIWrapperException {
-		logManager.logInfo(this, "GET Service Request (service_request_id: "
-				+ serviceRequestId + ")");
+		logManager.logInfo(this, "GET Service Request (service_request_id: {})",
+				serviceRequestId);
+		long start = System.nanoTime();
 		ServiceRequest result = cache.retrieveCachedServiceRequest(endpointUrl,
 				serviceRequestId);
+		metrics.recordCacheLookup(Operation.GET_SERVICE_REQUEST, start,
+				result != null);
+		if (result == null
+				&& usesStaleData(CacheableOperation.GET_SINGLE_SERVICE_REQUEST)) {
+			result = ((StaleValueCache) cache).retrieveStaleServiceRequest(
+					endpointUrl, serviceRequestId);
+			if (result != null) {
+				refreshInBackground(new Refresh(
+						CacheableOperation.GET_SINGLE_SERVICE_REQUEST,
+						serviceRequestId) {
+					@Override
+					protected void refresh() throws APIWrapperException {
+						askEndpointForAServiceRequest(serviceRequestId);
+					}
+				});
+			}
+		}
 		if (result == null) {
 			result = askEndpointForAServiceRequest(serviceRequestId);
-			cache.saveSingleServiceRequest(endpointUrl, serviceRequestId,
-					result);
 		}
 		return result;
 	}
 
 	/**
-	 * Makes a network operation to ask the endpoint for a service request.
+	 * Same as {@link #getServiceRequest(String)}, but cancellable.
+	 * 
+	 * @param serviceRequestId
+	 *            ID of the request to be fetched.
+	 * @param token
+	 *            Cancels the operation (it aborts the network request) or
+	 *            limits its duration.
+	 * @return The info related to the given ID.
+	 * @throws APIWrapperException
+	 *             If there was any problem or the token was cancelled.
+	 */
+	public ServiceRequest getServiceRequest(String serviceRequestId,
+			CancellationToken token) throws APIWrapperException {
+		CancellationToken previous = token.attach();
+		try {
+			return getServiceRequest(serviceRequestId);
+		} finally {
+			CancellationToken.detach(previous);
+		}
+	}
+
+	/**
+	 * Makes a network operation to ask the endpoint for a service request and
+	 * caches it. Identical concurrent requests are coalesced in a single one.
 	 * 
 	 * @param serviceRequestId
 	 *            Id of the request.
@@ -331,26 +1005,47 @@ public class APIWrapper {
 	 * @throws APIWrapperException
 	 *             If there was any problem.
 	 */
-	private ServiceRequest askEndpointForAServiceRequest(String serviceRequestId)
-			throws APIWrapperException {
-		logManager.logInfo(this, "GET Service Request (service_request_id: "
-				+ serviceRequestId + ") is not cached, asking endpoint.");
-		String rawServiceRequests = "";
+	private ServiceRequest askEndpointForAServiceRequest(
+			final String serviceRequestId) throws APIWrapperException {
+		logManager.logInfo(this, "GET Service Request (service_request_id: {})"
+				+ " is not cached, asking endpoint.", serviceRequestId);
+		final URL serviceRequestUrl;
+		long start = System.nanoTime();
 		try {
-			URL serviceRequestsUrl = urlBuilder
+			serviceRequestUrl = urlBuilder
 					.buildGetServiceRequest(serviceRequestId);
-			rawServiceRequests = networkGet(serviceRequestsUrl);
-			List<ServiceRequest> parsedServiceRequests = dataParser
-					.parseServiceRequests(rawServiceRequests);
-			return parsedServiceRequests.size() > 0 ? parsedServiceRequests
-					.get(0) : null;
-		} catch (DataParsingException e) {
-			tryToParseError(rawServiceRequests);
-			return null;
+			metrics.record(Operation.GET_SERVICE_REQUEST, Phase.URL_BUILDING,
+					start);
 		} catch (MalformedURLException e) {
 			throw new APIWrapperException(e.getMessage(), Error.URL_BUILDER,
 					null);
 		}
+		return coalescer.execute(serviceRequestUrl.toString(),
+				new Fetch<ServiceRequest>(
+						CacheableOperation.GET_SINGLE_SERVICE_REQUEST,
+						serviceRequestUrl) {
+					@Override
+					protected ServiceRequest retrieveStale() {
+						return ((StaleValueCache) cache)
+								.retrieveStaleServiceRequest(endpointUrl,
+										serviceRequestId);
+					}
+
+					@Override
+					protected ServiceRequest parse(ResponseInputStream response)
+							throws DataParsingException {
+						List<ServiceRequest> parsedServiceRequests = dataParser
+								.parseServiceRequests(response);
+						return parsedServiceRequests.size() > 0 ? parsedServiceRequests
+								.get(0) : null;
+					}
+
+					@Override
+					protected void save(ServiceRequest result) {
+						cache.saveSingleServiceRequest(endpointUrl,
+								serviceRequestId, result);
+					}
+				});
 	}
 
 	/**
@@ -375,7 +1070,10 @@ public class APIWrapper {
 		List<Attribute> attributes = operationData.getAttributes() != null ? operationData
 				.getAttributes() : new LinkedList<Attribute>();
 		try {
+			long start = System.nanoTime();
 			URL url = urlBuilder.buildPostServiceRequestUrl();
+			metrics.record(Operation.POST_SERVICE_REQUEST, Phase.URL_BUILDING,
+					start);
 			return postServiceRequestInternal(url, optionalArguments,
 					attributes);
 		} catch (MalformedURLException e) {
@@ -384,6 +1082,32 @@ public class APIWrapper {
 		}
 	}
 
+	/**
+	 * Same as {@link #postServiceRequest(POSTServiceRequestData)}, but
+	 * cancellable. A cancelled POST could have been processed by the server
+	 * anyway.
+	 * 
+	 * @param operationData
+	 *            An object with all the desired parameters and attributes to be
+	 *            sent.
+	 * @param token
+	 *            Cancels the operation (it aborts the network request) or
+	 *            limits its duration.
+	 * @return The server's response.
+	 * @throws APIWrapperException
+	 *             If there was any problem or the token was cancelled.
+	 */
+	public POSTServiceRequestResponse postServiceRequest(
+			POSTServiceRequestData operationData, CancellationToken token)
+			throws APIWrapperException {
+		CancellationToken previous = token.attach();
+		try {
+			return postServiceRequest(operationData);
+		} finally {
+			CancellationToken.detach(previous);
+		}
+	}
+
 	/**
 	 * Performs the POST service request with already built URL and body.
 	 * 
@@ -408,14 +1132,32 @@ public class APIWrapper {
 		if (jurisdictionId.length() > 0) {
 			arguments.put("jurisdiction_id", jurisdictionId);
 		}
+		long start = System.nanoTime();
 		Map<String, String> postArguments = urlBuilder
 				.buildPostServiceRequestBody(arguments, attributes);
+		metrics.record(Operation.POST_SERVICE_REQUEST, Phase.URL_BUILDING,
+				start);
+		start = System.nanoTime();
 		String rawPostServiceRequestResponse = networkPost(url, postArguments);
+		metrics.record(Operation.POST_SERVICE_REQUEST, Phase.NETWORK, start);
+		start = System.nanoTime();
 		try {
-			return dataParser
+			POSTServiceRequestResponse result = dataParser
 					.parsePostServiceRequestResponse(rawPostServiceRequestResponse);
+			metrics.record(Operation.POST_SERVICE_REQUEST, Phase.PARSING, start);
+			reportParsing(Operation.POST_SERVICE_REQUEST, start, result,
+					rawPostServiceRequestResponse.length());
+			return result;
 		} catch (DataParsingException e) {
-			tryToParseError(rawPostServiceRequestResponse);
+			reportParsing(Operation.POST_SERVICE_REQUEST, start, null,
+					rawPostServiceRequestResponse.length());
+			start = System.nanoTime();
+			try {
+				tryToParseError(rawPostServiceRequestResponse);
+			} finally {
+				metrics.record(Operation.POST_SERVICE_REQUEST,
+						Phase.ERROR_PARSING, start);
+			}
 			return null;
 		}
 	}
@@ -446,6 +1188,195 @@ public class APIWrapper {
 		}
 	}
 
+	/**
+	 * Same as {@link #tryToParseError(String)}, but with a response which was
+	 * partially read by a previous parsing attempt.
+	 * 
+	 * @param rawData
+	 *            Obtained data.
+	 * @param cause
+	 *            Why the response couldn't be parsed as the expected one.
+	 * @throws APIWrapperException
+	 *             Always throws it, it depends on the content of the given
+	 *             <code>rawData</code> the exact {@link Error}.
+	 */
+	private void tryToParseError(ResponseInputStream rawData,
+			DataParsingException cause) throws APIWrapperException {
+		if (!rawData.rewind()) {
+			logManager.logError(this,
+					"There was an error, the response is too big to be an API error");
+			throw new APIWrapperException(cause.getMessage(),
+					Error.DATA_PARSING, null);
+		}
+		logManager.logError(this,
+				"There was an error, trying checking if it was an API error");
+		try {
+			GeoReportV2Error error = dataParser.parseGeoReportV2Errors(rawData);
+			throw new APIWrapperException("GeoReport_v2 error",
+					Error.GEO_REPORT_V2, error);
+		} catch (DataParsingException ex) {
+			logManager.logError(this,
+					"The error couldn't be parsed (it is not an API error).");
+			throw new APIWrapperException(ex.getMessage(), Error.DATA_PARSING,
+					null);
+		}
+	}
+
+	/**
+	 * Performs an HTTP GET operation and returns its response, ready to be
+	 * parsed while it is received and to be parsed again (as an error) if it
+	 * isn't the expected one.
+	 * 
+	 * @param operation
+	 *            Operation which sends the request (to record its network
+	 *            time).
+	 * @param url
+	 *            Target.
+	 * @return Server response, which has to be released with
+	 *         {@link #release(ResponseInputStream)}.
+	 * @throws APIWrapperException
+	 *             If there was any problem with the request.
+	 */
+	private ResponseInputStream openResponse(Operation operation, URL url)
+			throws APIWrapperException {
+		long start = System.nanoTime();
+		InputStream response = networkGetStream(url);
+		metrics.record(operation, Phase.NETWORK, start);
+		return new ResponseInputStream(response, ERROR_RESPONSE_MAX_SIZE);
+	}
+
+	/**
+	 * Closes a response, which releases its connection.
+	 * 
+	 * @param response
+	 *            Response to close (it can be <code>null</code>).
+	 */
+	private void release(ResponseInputStream response) {
+		if (response != null) {
+			try {
+				response.release();
+			} catch (IOException e) {
+				logManager.logError(this, "The response couldn't be closed: {}",
+						e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Sends the {@link Instrumentation} event of a parsed response.
+	 * 
+	 * @param operation
+	 *            Operation.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} before the parsing.
+	 * @param result
+	 *            Parsed object (<code>null</code> if it wasn't the expected
+	 *            response).
+	 * @param bytes
+	 *            Parsed bytes.
+	 */
+	private static void reportParsing(Operation operation, long startNanos,
+			Object result, long bytes) {
+		if (Instrumentation.isEnabled()) {
+			int records = result instanceof Collection ? ((Collection<?>) result)
+					.size() : result != null ? 1 : 0;
+			reportParsing(operation, startNanos, records, bytes,
+					result != null);
+		}
+	}
+
+	private static void reportParsing(Operation operation, long startNanos,
+			int records, long bytes, boolean succeeded) {
+		if (Instrumentation.isEnabled()) {
+			Instrumentation.parsed(operation.toString(), records, bytes,
+					System.nanoTime() - startNanos, succeeded);
+		}
+	}
+
+	/**
+	 * Counts the streamed service requests for their
+	 * {@link Instrumentation} event.
+	 */
+	private static class CountingHandler implements ServiceRequestHandler {
+		private final ServiceRequestHandler handler;
+		private int count;
+
+		CountingHandler(ServiceRequestHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public void handle(ServiceRequest serviceRequest) {
+			count++;
+			handler.handle(serviceRequest);
+		}
+	}
+
+	/**
+	 * Tries to perform an HTTP GET operation and returns the body of the
+	 * response as a stream, without reading it. If the {@link NetworkManager}
+	 * isn't a {@link StreamingNetworkManager}, the whole response is read
+	 * through {@link #networkGet(URL)}.
+	 * 
+	 * @param url
+	 *            Target.
+	 * @return Server response (it has to be closed).
+	 * @throws APIWrapperException
+	 *             If there was any problem with the request.
+	 */
+	protected InputStream networkGetStream(URL url) throws APIWrapperException {
+		if (!(networkManager instanceof StreamingNetworkManager)) {
+			try {
+				return new ByteArrayInputStream(networkGet(url).getBytes(
+						NetworkManager.CHARSET));
+			} catch (UnsupportedEncodingException e) {
+				throw new APIWrapperException(e.getMessage(),
+						Error.NETWORK_MANAGER, null);
+			}
+		}
+		logManager.logInfo(this, "HTTP GET (streamed) {}", url);
+		try {
+			return metrics.countReceived(((StreamingNetworkManager) networkManager)
+					.doGetStream(url));
+		} catch (IOException e) {
+			logManager.logError(this, "HTTP GET error: {}", e.getMessage());
+			throw new APIWrapperException(e.getMessage(),
+					Error.NETWORK_MANAGER, null);
+		}
+	}
+
+	/**
+	 * Tries to perform a conditional HTTP GET operation, which needs a
+	 * {@link ConditionalNetworkManager}. The body of the response isn't read.
+	 * 
+	 * @param url
+	 *            Target.
+	 * @param validators
+	 *            Validators of the cached version (it can be
+	 *            <code>null</code>).
+	 * @return Server response (its body has to be closed).
+	 * @throws APIWrapperException
+	 *             If there was any problem with the request.
+	 */
+	protected ConditionalResponse networkConditionalGet(URL url,
+			Validators validators) throws APIWrapperException {
+		logManager.logInfo(this, "HTTP GET (conditional) {}", url);
+		try {
+			ConditionalResponse response = ((ConditionalNetworkManager) networkManager)
+					.doConditionalGet(url, validators);
+			if (response.getBody() == null) {
+				return response;
+			}
+			return new ConditionalResponse(response.isNotModified(),
+					metrics.countReceived(response.getBody()),
+					response.getValidators());
+		} catch (IOException e) {
+			logManager.logError(this, "HTTP GET error: {}", e.getMessage());
+			throw new APIWrapperException(e.getMessage(),
+					Error.NETWORK_MANAGER, null);
+		}
+	}
+
 	/**
 	 * Tries to perform an HTTP GET operation and returns the result.
 	 * 
@@ -456,17 +1387,18 @@ public class APIWrapper {
 	 *             If there was any problem with the request.
 	 */
 	protected String networkGet(URL url) throws APIWrapperException {
-		logManager.logInfo(this, "HTTP GET " + url.toString());
+		logManager.logInfo(this, "HTTP GET {}", url);
 		try {
 			String response = networkManager.doGet(url);
-			String cutResponse = response.length() > 50 ? response.substring(0,
-					50) + "..." : response;
-			logManager.logInfo(this,
-					"HTTP GET response (50 or less first characters)"
-							+ cutResponse);
+			metrics.recordReceived(response.length());
+			if (logManager.isEnabled(this)) {
+				logManager.logInfo(this,
+						"HTTP GET response (50 or less first characters){}",
+						cut(response));
+			}
 			return response;
 		} catch (IOException e) {
-			logManager.logError(this, "HTTP GET error: " + e.getMessage());
+			logManager.logError(this, "HTTP GET error: {}", e.getMessage());
 			throw new APIWrapperException(e.getMessage(),
 					Error.NETWORK_MANAGER, null);
 		}
@@ -485,22 +1417,31 @@ public class APIWrapper {
 	 */
 	protected String networkPost(URL url, Map<String, String> parameters)
 			throws APIWrapperException {
-		logManager.logInfo(this, "HTTP POST " + url.toString());
+		logManager.logInfo(this, "HTTP POST {}", url);
 		try {
 			String response = networkManager.doPost(url, parameters);
-			String cutResponse = response.length() > 50 ? response.substring(0,
-					50) + "..." : response;
-			logManager.logInfo(this,
-					"HTTP POST response (50 or less first characters)"
-							+ cutResponse);
+			metrics.recordReceived(response.length());
+			if (logManager.isEnabled(this)) {
+				logManager.logInfo(this,
+						"HTTP POST response (50 or less first characters){}",
+						cut(response));
+			}
 			return response;
 		} catch (IOException e) {
-			logManager.logError(this, "HTTP POST error: " + e.getMessage());
+			logManager.logError(this, "HTTP POST error: {}", e.getMessage());
 			throw new APIWrapperException(e.getMessage(),
 					Error.NETWORK_MANAGER, null);
 		}
 	}
 
+	/**
+	 * Shortens a response to be logged.
+	 */
+	private static String cut(String response) {
+		return response.length() > 50 ? response.substring(0, 50) + "..."
+				: response;
+	}
+
 	public String toString() {
 		return this.getWrapperInfo();
 	}
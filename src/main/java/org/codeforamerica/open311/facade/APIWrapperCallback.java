@@ -0,0 +1,30 @@
+package org.codeforamerica.open311.facade;
+
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+
+/**
+ * Receives the outcome of an operation performed through an
+ * {@link AsyncAPIWrapper}. Methods are invoked from the thread which executed
+ * the operation, so implementations shouldn't block.
+ *
+ * @param <T>
+ *            Type of the result of the operation.
+ */
+public interface APIWrapperCallback<T> {
+
+	/**
+	 * Called when the operation finishes successfully.
+	 *
+	 * @param result
+	 *            Result of the operation (can be <code>null</code>).
+	 */
+	public void onSuccess(T result);
+
+	/**
+	 * Called when the operation fails.
+	 *
+	 * @param exception
+	 *            The problem which made the operation fail.
+	 */
+	public void onFailure(APIWrapperException exception);
+}
@@ -3,6 +3,11 @@ package org.codeforamerica.open311.facade;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.codeforamerica.open311.facade.data.Endpoint;
 import org.codeforamerica.open311.facade.data.ServiceDiscoveryInfo;
@@ -10,9 +15,12 @@ import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
 import org.codeforamerica.open311.facade.exceptions.APIWrapperException.Error;
 import org.codeforamerica.open311.facade.exceptions.DataParsingException;
 import org.codeforamerica.open311.internals.caching.Cache;
+import org.codeforamerica.open311.internals.caching.Cache.CacheableOperation;
 import org.codeforamerica.open311.internals.logging.LogManager;
 import org.codeforamerica.open311.internals.network.HTTPNetworkManager;
 import org.codeforamerica.open311.internals.network.NetworkManager;
+import org.codeforamerica.open311.internals.network.RateLimiters;
+import org.codeforamerica.open311.internals.network.URLConnectionNetworkManager;
 import org.codeforamerica.open311.internals.parsing.DataParser;
 import org.codeforamerica.open311.internals.parsing.DataParserFactory;
 import org.codeforamerica.open311.internals.platform.PlatformManager;
@@ -61,6 +69,30 @@ public class APIWrapperFactory {
 	 * Suitable cache (depends on the execution environment).
 	 */
 	private Cache cache = PlatformManager.getInstance().buildCache();
+	/**
+	 * Executor which runs the operations of the {@link AsyncAPIWrapper}
+	 * instances.
+	 */
+	private ExecutorService executor = PlatformManager.getInstance()
+			.getDefaultExecutor();
+	/**
+	 * Maximum staleness (milliseconds) of the operations with the
+	 * stale-while-revalidate policy.
+	 */
+	private Map<CacheableOperation, Long> staleWhileRevalidate = new EnumMap<CacheableOperation, Long>(
+			CacheableOperation.class);
+	/**
+	 * Operations (and their windows in milliseconds) with conditional
+	 * revalidation.
+	 */
+	private Map<CacheableOperation, Long> conditionalRevalidation = new EnumMap<CacheableOperation, Long>(
+			CacheableOperation.class);
+	/**
+	 * Maximum requests per second to the endpoint (<code>0</code> if it isn't
+	 * limited) and maximum burst.
+	 */
+	private double rateLimit;
+	private int rateLimitBurst;
 	/**
 	 * <code>true</code> if the built instance should be logged.
 	 */
@@ -182,7 +214,9 @@ public class APIWrapperFactory {
 	/**
 	 * Sets a custom {@link NetworkManager}, useful if you need to use mocks or
 	 * a platform-dependent network client which you can build implementing the
-	 * {@link NetworkManager} interface.
+	 * {@link NetworkManager} interface. The library also provides a
+	 * {@link URLConnectionNetworkManager}, based on the HTTP client of the Java
+	 * platform.
 	 * 
 	 * @param networkManager
 	 *            A implementation of the {@link NetworkManager} interface.
@@ -208,6 +242,89 @@ public class APIWrapperFactory {
 		return this;
 	}
 
+	/**
+	 * Sets the executor which will run the operations of the
+	 * {@link AsyncAPIWrapper} instances built by {@link #buildAsync()}. By
+	 * default, a bounded pool shared by the whole library is used (check
+	 * {@link PlatformManager#getDefaultExecutor()}). Every operation in
+	 * progress blocks one of its threads. The background refreshes use it too,
+	 * and they are skipped while it is saturated.
+	 * 
+	 * @param executor
+	 *            Desired executor.
+	 * @return The same instance with the new specified executor.
+	 */
+	public APIWrapperFactory setExecutor(ExecutorService executor) {
+		if (executor != null) {
+			this.executor = executor;
+		}
+		return this;
+	}
+
+	/**
+	 * The expired cached data of the given operation will be returned while it
+	 * is refreshed in background (check
+	 * {@link APIWrapper#setStaleWhileRevalidate(CacheableOperation, long, TimeUnit)}
+	 * ). The refreshes are run by the executor of this factory.
+	 * 
+	 * @param operation
+	 *            Operation of interest.
+	 * @param maximumStaleness
+	 *            Time the expired data can be used.
+	 * @param unit
+	 *            Unit of the given time.
+	 * @return The same instance.
+	 */
+	public APIWrapperFactory setStaleWhileRevalidate(
+			CacheableOperation operation, long maximumStaleness, TimeUnit unit) {
+		if (operation != null && maximumStaleness >= 0 && unit != null) {
+			staleWhileRevalidate.put(operation,
+					unit.toMillis(maximumStaleness));
+		}
+		return this;
+	}
+
+	/**
+	 * The expired cached data of the given operation will be revalidated with
+	 * conditional requests (check
+	 * {@link APIWrapper#setConditionalRevalidation(CacheableOperation, long, TimeUnit)}
+	 * ).
+	 * 
+	 * @param operation
+	 *            Operation of interest.
+	 * @param window
+	 *            Time the expired data can be revalidated.
+	 * @param unit
+	 *            Unit of the given time.
+	 * @return The same instance.
+	 */
+	public APIWrapperFactory setConditionalRevalidation(
+			CacheableOperation operation, long window, TimeUnit unit) {
+		if (operation != null && window >= 0 && unit != null) {
+			conditionalRevalidation.put(operation, unit.toMillis(window));
+		}
+		return this;
+	}
+
+	/**
+	 * Limits the rate of the requests to the host of the endpoint. The limit
+	 * is shared by every wrapper (and network manager) which sends requests to
+	 * that host (check {@link RateLimiters}).
+	 * 
+	 * @param permitsPerSecond
+	 *            Sustained rate.
+	 * @param burst
+	 *            Maximum number of requests which can be sent at once.
+	 * @return The same instance.
+	 */
+	public APIWrapperFactory setRateLimit(double permitsPerSecond, int burst) {
+		if (permitsPerSecond > 0 && burst >= 1) {
+			this.rateLimit = permitsPerSecond;
+			this.rateLimitBurst = burst;
+		}
+		return this;
+	}
+
 	/**
 	 * The built instance will be logged.
 	 * 
@@ -228,15 +345,47 @@ public class APIWrapperFactory {
 	 *             If there was any problem.
 	 */
 	public APIWrapper build() throws APIWrapperException {
+		APIWrapper wrapper = null;
 		if (city != null) {
-			return buildWrapperFromCity(city, endpointType, apiKey,
+			wrapper = buildWrapperFromCity(city, endpointType, apiKey,
 					networkManager);
-		}
-		if (endpointUrl != null) {
-			return buildWrapperFromEndpointUrl(endpointUrl, jurisdictionId,
+		} else if (endpointUrl != null) {
+			wrapper = buildWrapperFromEndpointUrl(endpointUrl, jurisdictionId,
 					format);
 		}
-		return null;
+		if (wrapper != null) {
+			if (rateLimit > 0) {
+				RateLimiters.setRate(wrapper.getEndpointUrl(), rateLimit,
+						rateLimitBurst);
+			}
+			wrapper.setRefreshExecutor(executor);
+			for (Entry<CacheableOperation, Long> policy : staleWhileRevalidate
+					.entrySet()) {
+				wrapper.setStaleWhileRevalidate(policy.getKey(),
+						policy.getValue(), TimeUnit.MILLISECONDS);
+			}
+			for (Entry<CacheableOperation, Long> policy : conditionalRevalidation
+					.entrySet()) {
+				wrapper.setConditionalRevalidation(policy.getKey(),
+						policy.getValue(), TimeUnit.MILLISECONDS);
+			}
+		}
+		return wrapper;
+	}
+
+	/**
+	 * Builds an {@link AsyncAPIWrapper}, which performs its operations using
+	 * the given executor (check {@link #setExecutor(ExecutorService)}).
+	 * <b>WARNING</b>: This operation could require some time to be done (it
+	 * could involve network operations).
+	 * 
+	 * @return An instance built from the given parameters to this object.
+	 * @throws APIWrapperException
+	 *             If there was any problem.
+	 */
+	public AsyncAPIWrapper buildAsync() throws APIWrapperException {
+		APIWrapper wrapper = build();
+		return wrapper != null ? new AsyncAPIWrapper(wrapper, executor) : null;
 	}
 
 	/**
@@ -254,10 +403,12 @@ public class APIWrapperFactory {
 	 */
 	private APIWrapper buildWrapperFromEndpointUrl(String endpointUrl,
 			String jurisdictionId, Format format) {
-		logManager.logInfo(this,
-				"Building a wrapper from the given endpoint url: "
-						+ endpointUrl + ", jurisdiction_id: \""
-						+ jurisdictionId + "\", format: " + format);
+		if (logManager.isEnabled(this)) {
+			logManager.logInfo(this,
+					"Building a wrapper from the given endpoint url: "
+							+ endpointUrl + ", jurisdiction_id: \""
+							+ jurisdictionId + "\", format: " + format);
+		}
 		return activateLoginIfRequested(createMostSuitableWrapper(endpointUrl,
 				format, EndpointType.UNKNOWN, DataParserFactory.getInstance()
 						.buildDataParser(format), networkManager, cache,
@@ -315,12 +466,9 @@ public class APIWrapperFactory {
 			logManager.logInfo(this, "Selected the most suitable endpoint.");
 			Format format = selectFormat(this.format, endpoint);
 			if (format != Format.XML) {
-				logManager
-						.logInfo(
-								this,
-								"The selected endpoint allows to use the "
-										+ format
-										+ " format which is a best option, selecting it.");
+				logManager.logInfo(this, "The selected endpoint allows to use the"
+						+ " {} format which is a best option, selecting it.",
+						format);
 				networkManager.setFormat(format);
 				dataParser = DataParserFactory.getInstance().buildDataParser(
 						format);
@@ -334,13 +482,13 @@ public class APIWrapperFactory {
 			throw new APIWrapperException(e.getMessage(), Error.URL_BUILDER,
 					null);
 		} catch (DataParsingException e) {
-			logManager.logError(this,
-					"Problem parsing reveived data: " + e.getMessage());
+			logManager.logError(this, "Problem parsing reveived data: {}",
+					e.getMessage());
 			throw new APIWrapperException(e.getMessage(), Error.DATA_PARSING,
 					null);
 		} catch (IOException e) {
-			logManager.logError(this,
-					"Problem with the network request: " + e.getMessage());
+			logManager.logError(this, "Problem with the network request: {}",
+					e.getMessage());
 			throw new APIWrapperException(e.getMessage(),
 					Error.NETWORK_MANAGER, null);
 		}
@@ -0,0 +1,326 @@
+package org.codeforamerica.open311.facade;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.ServiceRequestIdResponse;
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+import org.codeforamerica.open311.facade.data.operations.POSTServiceRequestData;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException.Error;
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+
+/**
+ * Non-blocking version of the {@link APIWrapper}. Every operation is submitted
+ * to an {@link ExecutorService} and returns a {@link Future} immediately, so a
+ * single thread can drive many concurrent requests. The operations share the
+ * cache, parser and network manager of the wrapped {@link APIWrapper}.
+ *
+ * The network I/O is still blocking: this class only moves the blocking from
+ * the calling thread to a thread of the executor, and every operation in
+ * progress holds one of them. The default executor is bounded (check
+ * {@link PlatformManager#getDefaultExecutor()}): when it is saturated, the
+ * new operations fail immediately (their callback is notified) instead of
+ * running in the calling thread. Size your own executor for the number of
+ * concurrent operations you need.
+ *
+ * If the operation fails, {@link Future#get()} throws an
+ * {@link ExecutionException} whose cause is the {@link APIWrapperException}.
+ * Optionally, an {@link APIWrapperCallback} can be given to be notified when
+ * the operation finishes.
+ *
+ * You can build objects of this class using the
+ * {@link APIWrapperFactory#buildAsync()} method.
+ */
+public class AsyncAPIWrapper {
+
+	private APIWrapper wrapper;
+	private ExecutorService executor;
+
+	/**
+	 * Builds an asynchronous wrapper. If you are a user of the library please
+	 * check the {@link APIWrapperFactory} class.
+	 *
+	 * @param wrapper
+	 *            Wrapper which will perform the operations.
+	 * @param executor
+	 *            Executor which will run the operations.
+	 */
+	/* package */AsyncAPIWrapper(APIWrapper wrapper, ExecutorService executor) {
+		this.wrapper = wrapper;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the underlying (blocking) wrapper.
+	 *
+	 * @return The wrapper which performs the operations.
+	 */
+	public APIWrapper getWrapper() {
+		return wrapper;
+	}
+
+	/**
+	 * Asynchronous version of {@link APIWrapper#getServiceList()}.
+	 *
+	 * @return The pending list of services.
+	 */
+	public Future<List<Service>> getServiceList() {
+		return getServiceList(null);
+	}
+
+	/**
+	 * Asynchronous version of {@link APIWrapper#getServiceList()}.
+	 *
+	 * @param callback
+	 *            Notified when the operation finishes (can be
+	 *            <code>null</code>).
+	 * @return The pending list of services.
+	 */
+	public Future<List<Service>> getServiceList(
+			APIWrapperCallback<List<Service>> callback) {
+		return submit(new Operation<List<Service>>() {
+			public List<Service> perform() throws APIWrapperException {
+				return wrapper.getServiceList();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Asynchronous version of {@link APIWrapper#getServiceDefinition(String)}.
+	 *
+	 * @param serviceCode
+	 *            Code of the service of interest.
+	 * @return The pending service definition.
+	 */
+	public Future<ServiceDefinition> getServiceDefinition(String serviceCode) {
+		return getServiceDefinition(serviceCode, null);
+	}
+
+	/**
+	 * Asynchronous version of {@link APIWrapper#getServiceDefinition(String)}.
+	 *
+	 * @param serviceCode
+	 *            Code of the service of interest.
+	 * @param callback
+	 *            Notified when the operation finishes (can be
+	 *            <code>null</code>).
+	 * @return The pending service definition.
+	 */
+	public Future<ServiceDefinition> getServiceDefinition(
+			final String serviceCode,
+			APIWrapperCallback<ServiceDefinition> callback) {
+		return submit(new Operation<ServiceDefinition>() {
+			public ServiceDefinition perform() throws APIWrapperException {
+				return wrapper.getServiceDefinition(serviceCode);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link APIWrapper#getServiceRequestIdFromToken(String)}.
+	 *
+	 * @param token
+	 *            Given token.
+	 * @return The pending service request id.
+	 */
+	public Future<ServiceRequestIdResponse> getServiceRequestIdFromToken(
+			String token) {
+		return getServiceRequestIdFromToken(token, null);
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link APIWrapper#getServiceRequestIdFromToken(String)}.
+	 *
+	 * @param token
+	 *            Given token.
+	 * @param callback
+	 *            Notified when the operation finishes (can be
+	 *            <code>null</code>).
+	 * @return The pending service request id.
+	 */
+	public Future<ServiceRequestIdResponse> getServiceRequestIdFromToken(
+			final String token,
+			APIWrapperCallback<ServiceRequestIdResponse> callback) {
+		return submit(new Operation<ServiceRequestIdResponse>() {
+			public ServiceRequestIdResponse perform()
+					throws APIWrapperException {
+				return wrapper.getServiceRequestIdFromToken(token);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link APIWrapper#getServiceRequests(GETServiceRequestsFilter)}.
+	 *
+	 * @param operationData
+	 *            An object with all the desired optional filtering parameters
+	 *            to send.
+	 * @return The pending list of service requests.
+	 */
+	public Future<List<ServiceRequest>> getServiceRequests(
+			GETServiceRequestsFilter operationData) {
+		return getServiceRequests(operationData, null);
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link APIWrapper#getServiceRequests(GETServiceRequestsFilter)}.
+	 *
+	 * @param operationData
+	 *            An object with all the desired optional filtering parameters
+	 *            to send.
+	 * @param callback
+	 *            Notified when the operation finishes (can be
+	 *            <code>null</code>).
+	 * @return The pending list of service requests.
+	 */
+	public Future<List<ServiceRequest>> getServiceRequests(
+			final GETServiceRequestsFilter operationData,
+			APIWrapperCallback<List<ServiceRequest>> callback) {
+		return submit(new Operation<List<ServiceRequest>>() {
+			public List<ServiceRequest> perform() throws APIWrapperException {
+				return wrapper.getServiceRequests(operationData);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Asynchronous version of {@link APIWrapper#getServiceRequest(String)}.
+	 *
+	 * @param serviceRequestId
+	 *            ID of the request to be fetched.
+	 * @return The pending service request.
+	 */
+	public Future<ServiceRequest> getServiceRequest(String serviceRequestId) {
+		return getServiceRequest(serviceRequestId, null);
+	}
+
+	/**
+	 * Asynchronous version of {@link APIWrapper#getServiceRequest(String)}.
+	 *
+	 * @param serviceRequestId
+	 *            ID of the request to be fetched.
+	 * @param callback
+	 *            Notified when the operation finishes (can be
+	 *            <code>null</code>).
+	 * @return The pending service request.
+	 */
+	public Future<ServiceRequest> getServiceRequest(
+			final String serviceRequestId,
+			APIWrapperCallback<ServiceRequest> callback) {
+		return submit(new Operation<ServiceRequest>() {
+			public ServiceRequest perform() throws APIWrapperException {
+				return wrapper.getServiceRequest(serviceRequestId);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link APIWrapper#postServiceRequest(POSTServiceRequestData)}.
+	 *
+	 * @param operationData
+	 *            An object with all the desired parameters and attributes to be
+	 *            sent.
+	 * @return The pending server's response.
+	 */
+	public Future<POSTServiceRequestResponse> postServiceRequest(
+			POSTServiceRequestData operationData) {
+		return postServiceRequest(operationData, null);
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link APIWrapper#postServiceRequest(POSTServiceRequestData)}.
+	 *
+	 * @param operationData
+	 *            An object with all the desired parameters and attributes to be
+	 *            sent.
+	 * @param callback
+	 *            Notified when the operation finishes (can be
+	 *            <code>null</code>).
+	 * @return The pending server's response.
+	 */
+	public Future<POSTServiceRequestResponse> postServiceRequest(
+			final POSTServiceRequestData operationData,
+			APIWrapperCallback<POSTServiceRequestResponse> callback) {
+		return submit(new Operation<POSTServiceRequestResponse>() {
+			public POSTServiceRequestResponse perform()
+					throws APIWrapperException {
+				return wrapper.postServiceRequest(operationData);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Submits an operation to the executor, notifying the callback (if any)
+	 * when it finishes. If the executor rejects it (it is saturated), the
+	 * operation fails immediately instead of blocking the calling thread.
+	 *
+	 * @param operation
+	 *            Operation to perform.
+	 * @param callback
+	 *            Callback to notify (can be <code>null</code>).
+	 * @return The pending result of the operation.
+	 */
+	private <T> Future<T> submit(final Operation<T> operation,
+			final APIWrapperCallback<T> callback) {
+		try {
+			return executor.submit(new Callable<T>() {
+				public T call() throws APIWrapperException {
+					T result;
+					try {
+						result = operation.perform();
+					} catch (APIWrapperException e) {
+						if (callback != null) {
+							callback.onFailure(e);
+						}
+						throw e;
+					}
+					if (callback != null) {
+						callback.onSuccess(result);
+					}
+					return result;
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			final APIWrapperException rejected = new APIWrapperException(
+					"The executor rejected the operation: " + e.getMessage(),
+					Error.NETWORK_MANAGER, null);
+			if (callback != null) {
+				callback.onFailure(rejected);
+			}
+			FutureTask<T> failed = new FutureTask<T>(new Callable<T>() {
+				public T call() throws APIWrapperException {
+					throw rejected;
+				}
+			});
+			failed.run();
+			return failed;
+		}
+	}
+
+	public String toString() {
+		return "Async " + wrapper.toString();
+	}
+
+	/**
+	 * A blocking operation of the {@link APIWrapper}.
+	 */
+	private static interface Operation<T> {
+		public T perform() throws APIWrapperException;
+	}
+}
@@ -1,11 +1,16 @@
 package org.codeforamerica.open311.facade;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Map;
 
 import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
 import org.codeforamerica.open311.internals.caching.Cache;
+import org.codeforamerica.open311.internals.network.ConditionalResponse;
 import org.codeforamerica.open311.internals.network.NetworkManager;
+import org.codeforamerica.open311.internals.network.Validators;
 import org.codeforamerica.open311.internals.parsing.DataParser;
 
 /**
@@ -33,6 +38,32 @@ public class InvalidXMLWrapper extends APIWrapper {
 		return sanitizeOutput(super.networkGet(url));
 	}
 
+	/**
+	 * Streamed GET operation. Skips the invalid characters while the response
+	 * is being read.
+	 */
+	@Override
+	protected InputStream networkGetStream(URL url) throws APIWrapperException {
+		return new SanitizingInputStream(super.networkGetStream(url));
+	}
+
+	/**
+	 * Conditional GET operation. Skips the invalid characters while the body
+	 * of the response is being read.
+	 */
+	@Override
+	protected ConditionalResponse networkConditionalGet(URL url,
+			Validators validators) throws APIWrapperException {
+		ConditionalResponse response = super.networkConditionalGet(url,
+				validators);
+		if (response.getBody() == null) {
+			return response;
+		}
+		return new ConditionalResponse(response.isNotModified(),
+				new SanitizingInputStream(response.getBody()),
+				response.getValidators());
+	}
+
 	/**
 	 * POST operation. Calls {@link #sanitizeOutput(String)} right after
 	 * receiving the response.
@@ -54,4 +85,65 @@ public class InvalidXMLWrapper extends APIWrapper {
 		return response.replace("\u0010", "");
 	}
 
+	/**
+	 * Skips the invalid characters of a stream. The invalid character is
+	 * encoded as a single byte in UTF-8, which can't be part of any multibyte
+	 * character, so it can be removed byte by byte.
+	 */
+	private static class SanitizingInputStream extends FilterInputStream {
+		private static final int INVALID_BYTE = 0x10;
+
+		public SanitizingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read;
+			do {
+				read = super.read();
+			} while (read == INVALID_BYTE);
+			return read;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read;
+			do {
+				read = super.read(b, off, len);
+				read = read > 0 ? skipInvalidBytes(b, off, read) : read;
+			} while (read == 0 && len > 0);
+			return read;
+		}
+
+		/**
+		 * Removes the invalid bytes of a chunk of the buffer.
+		 * 
+		 * @return Length of the chunk after removing them.
+		 */
+		private int skipInvalidBytes(byte[] b, int off, int len) {
+			int length = 0;
+			for (int i = off; i < off + len; i++) {
+				if (b[i] != INVALID_BYTE) {
+					b[off + length++] = b[i];
+				}
+			}
+			return length;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (n <= 0) {
+				return 0;
+			}
+			byte[] buffer = new byte[(int) Math.min(n, 8192)];
+			int read = read(buffer, 0, buffer.length);
+			return read > 0 ? read : 0;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
 }
@@ -0,0 +1,176 @@
+package org.codeforamerica.open311.facade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException.Error;
+import org.codeforamerica.open311.internals.network.CancellationToken;
+
+/**
+ * Runs only one of the identical operations requested at the same time: the
+ * first caller runs it and the rest wait for its result (or its exception).
+ * Once it finishes, the next call with the same key runs it again. A waiting
+ * caller stops waiting if its {@link CancellationToken} is cancelled. If the
+ * operation fails because the token of the caller which runs it was
+ * cancelled, the waiting callers run it again instead of failing. A list
+ * result is copied for every caller, so each one can modify its own.
+ */
+class RequestCoalescer {
+
+	/**
+	 * Maximum time (milliseconds) before a waiting caller checks its
+	 * cancellation token.
+	 */
+	private static final long POLL_INTERVAL = 100;
+	private final ConcurrentHashMap<String, FutureTask<Object>> flights = new ConcurrentHashMap<String, FutureTask<Object>>();
+
+	/**
+	 * An operation which can be coalesced.
+	 *
+	 * @param <T>
+	 *            Type of its result.
+	 */
+	interface Operation<T> {
+		T run() throws APIWrapperException;
+	}
+
+	/**
+	 * Runs an operation, or waits for the running one with the same key.
+	 *
+	 * @param key
+	 *            Identifies the operation (the url of the request).
+	 * @param operation
+	 *            Operation to run.
+	 * @return Its result, a copy for every caller if it is a {@link List}
+	 *         (the original stays untouched while the rest of the callers copy
+	 *         it) and the same instance otherwise.
+	 * @throws APIWrapperException
+	 *             If the operation failed or the thread was interrupted while
+	 *             waiting.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T execute(String key, final Operation<T> operation)
+			throws APIWrapperException {
+		while (true) {
+			FutureTask<Object> flight = new FutureTask<Object>(
+					new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							try {
+								return operation.run();
+							} catch (APIWrapperException e) {
+								CancellationToken token = CancellationToken
+										.current();
+								if (token != null && token.isCancelled()) {
+									throw new CancelledFlightException(e);
+								}
+								throw e;
+							}
+						}
+					});
+			FutureTask<Object> running = flights.putIfAbsent(key, flight);
+			boolean leader = running == null;
+			if (leader) {
+				try {
+					flight.run();
+				} finally {
+					flights.remove(key, flight);
+				}
+				running = flight;
+			}
+			try {
+				Object result = await(running);
+				if (result instanceof List) {
+					return (T) new ArrayList<Object>((List<Object>) result);
+				}
+				return (T) result;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new APIWrapperException("Interrupted while waiting for "
+						+ key, Error.NETWORK_MANAGER, null);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof CancelledFlightException) {
+					if (!leader) {
+						// Cancelled by the caller which ran it, not by this one.
+						continue;
+					}
+					cause = cause.getCause();
+				}
+				throw unwrap(cause);
+			}
+		}
+	}
+
+	/**
+	 * Converts the failure of an operation into the exception thrown to its
+	 * callers.
+	 */
+	private static APIWrapperException unwrap(Throwable cause) {
+		if (cause instanceof APIWrapperException) {
+			return (APIWrapperException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof java.lang.Error) {
+			throw (java.lang.Error) cause;
+		}
+		return new APIWrapperException(cause.getMessage(),
+				Error.NETWORK_MANAGER, null);
+	}
+
+	/**
+	 * Waits for the result of an operation while the {@link CancellationToken}
+	 * of the current thread (if any) isn't cancelled. The operation goes on
+	 * for the rest of the callers.
+	 */
+	private Object await(FutureTask<Object> flight) throws InterruptedException,
+			ExecutionException, APIWrapperException {
+		CancellationToken token = CancellationToken.current();
+		if (token == null) {
+			return flight.get();
+		}
+		while (true) {
+			long remaining = token.getRemaining(TimeUnit.MILLISECONDS);
+			if (remaining <= 0) {
+				throw new APIWrapperException(
+						token.isDeadlineExceeded() ? "Deadline exceeded"
+								: "Request cancelled", Error.NETWORK_MANAGER,
+						null);
+			}
+			try {
+				return flight.get(Math.min(remaining, POLL_INTERVAL),
+						TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// Checks the token again.
+			}
+		}
+	}
+
+	/**
+	 * Number of operations running.
+	 */
+	int size() {
+		return flights.size();
+	}
+
+	/**
+	 * Failure of an operation whose caller cancelled it, which the rest of
+	 * the callers don't share.
+	 */
+	private static class CancelledFlightException extends Exception {
+		private static final long serialVersionUID = -6702185417823398754L;
+
+		CancelledFlightException(APIWrapperException cause) {
+			super(cause);
+		}
+	}
+}
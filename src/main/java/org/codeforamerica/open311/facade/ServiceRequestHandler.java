@@ -0,0 +1,24 @@
+package org.codeforamerica.open311.facade;
+
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+
+/**
+ * Receives the service requests of a response one by one, as soon as each of
+ * them is parsed (check
+ * {@link APIWrapper#getServiceRequests(GETServiceRequestsFilter, ServiceRequestHandler)}
+ * ). The received requests are not kept anywhere else, so the memory needed to
+ * process a response doesn't depend on its size.
+ */
+public interface ServiceRequestHandler {
+
+	/**
+	 * Called with each parsed service request, in the order of the response.
+	 * If it throws an exception, the parsing stops and the exception is
+	 * propagated to the caller.
+	 *
+	 * @param serviceRequest
+	 *            A service request.
+	 */
+	public void handle(ServiceRequest serviceRequest);
+}
@@ -0,0 +1,296 @@
+package org.codeforamerica.open311.facade;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException.Error;
+import org.codeforamerica.open311.internals.logging.LogManager;
+import org.codeforamerica.open311.internals.network.CancellationToken;
+
+/**
+ * Retrieves the service requests of a date range of any length. The servers
+ * usually limit the range of a GET Service Requests operation (90 days by
+ * default) and its number of results (1000), silently truncating the
+ * response, so the range is split in windows which are asked for in parallel.
+ * A window which returns the result limit is split in halves, until it returns
+ * less. The results are merged in date order without duplicates (by
+ * <code>service_request_id</code>).
+ *
+ * The calling thread waits for the windows, so by default every fetch runs
+ * them in its own threads (as many as the parallelism), which are released
+ * when it finishes. It can be called from any thread, including the ones of
+ * the shared executors of the library.
+ *
+ * Use the method chaining to change the default values:
+ *
+ * <pre>
+ * List&lt;ServiceRequest&gt; year = new ServiceRequestRangeFetcher(wrapper)
+ * 		.setParallelism(2).fetch(filter, startDate, endDate);
+ * </pre>
+ */
+public class ServiceRequestRangeFetcher {
+	/**
+	 * Default length of the windows (90 days).
+	 */
+	public static final long DEFAULT_WINDOW = TimeUnit.DAYS.toMillis(90);
+	public static final int DEFAULT_RESULT_LIMIT = 1000;
+	public static final int DEFAULT_PARALLELISM = 4;
+	/**
+	 * The dates are sent with a precision of seconds, so shorter windows
+	 * can't be split.
+	 */
+	private static final long MINIMUM_WINDOW = 1000;
+
+	private final APIWrapper wrapper;
+	private long window = DEFAULT_WINDOW;
+	private int resultLimit = DEFAULT_RESULT_LIMIT;
+	private int parallelism = DEFAULT_PARALLELISM;
+	/**
+	 * Executor given by the user, <code>null</code> to use a private one per
+	 * fetch.
+	 */
+	private Executor executor;
+
+	/**
+	 * Builds a fetcher with the default values.
+	 *
+	 * @param wrapper
+	 *            Wrapper which asks for the windows (and caches them).
+	 */
+	public ServiceRequestRangeFetcher(APIWrapper wrapper) {
+		if (wrapper == null) {
+			throw new NullPointerException();
+		}
+		this.wrapper = wrapper;
+	}
+
+	/**
+	 * Sets the length of the initial windows.
+	 *
+	 * @param window
+	 *            Maximum range of a request allowed by the server.
+	 * @param unit
+	 *            Unit of the window.
+	 * @return The same object.
+	 */
+	public ServiceRequestRangeFetcher setWindow(long window, TimeUnit unit) {
+		if (window > 0 && unit != null) {
+			this.window = Math.max(MINIMUM_WINDOW, unit.toMillis(window));
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of results which the server returns. A window
+	 * with this number of results is split.
+	 *
+	 * @param resultLimit
+	 *            Maximum results of a request.
+	 * @return The same object.
+	 */
+	public ServiceRequestRangeFetcher setResultLimit(int resultLimit) {
+		if (resultLimit > 0) {
+			this.resultLimit = resultLimit;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of windows which are asked for at the same time.
+	 *
+	 * @param parallelism
+	 *            Maximum concurrent requests.
+	 * @return The same object.
+	 */
+	public ServiceRequestRangeFetcher setParallelism(int parallelism) {
+		if (parallelism > 0) {
+			this.parallelism = parallelism;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the executor which asks for the windows. The calling thread of
+	 * {@link #fetch(GETServiceRequestsFilter, Date, Date)} waits for them, so
+	 * it must not be one of the threads of this executor, and the executor
+	 * must not be shared with other blocking work which could use all its
+	 * threads (such as the default executor of the platform): otherwise the
+	 * windows could wait forever.
+	 *
+	 * @param executor
+	 *            An executor with at least as many threads as the
+	 *            parallelism, by default every fetch uses private threads.
+	 * @return The same object.
+	 */
+	public ServiceRequestRangeFetcher setExecutor(Executor executor) {
+		if (executor != null) {
+			this.executor = executor;
+		}
+		return this;
+	}
+
+	/**
+	 * Retrieves all the service requests of a date range. The
+	 * {@link CancellationToken} of the calling thread, if any, applies to all
+	 * the requests.
+	 *
+	 * @param filter
+	 *            Other filtering parameters (its dates are replaced), it can
+	 *            be <code>null</code>.
+	 * @param startDate
+	 *            Start of the range.
+	 * @param endDate
+	 *            End of the range.
+	 * @return The service requests of every window, without duplicates.
+	 * @throws APIWrapperException
+	 *             If any window couldn't be retrieved, in which case the
+	 *             pending ones are cancelled.
+	 */
+	public List<ServiceRequest> fetch(GETServiceRequestsFilter filter,
+			Date startDate, Date endDate) throws APIWrapperException {
+		if (startDate == null || endDate == null || startDate.after(endDate)) {
+			throw new IllegalArgumentException("Invalid date range");
+		}
+		filter = filter == null ? new GETServiceRequestsFilter() : filter;
+		CancellationToken token = CancellationToken.current();
+		LinkedList<Window> pending = new LinkedList<Window>();
+		long end = endDate.getTime();
+		for (long from = startDate.getTime(); from < end; from += window) {
+			pending.add(new Window(filter, from, Math.min(from + window, end),
+					token));
+		}
+		if (pending.isEmpty()) {
+			pending.add(new Window(filter, end, end, token));
+		}
+		ExecutorService privateExecutor = executor == null ? Executors
+				.newFixedThreadPool(parallelism) : null;
+		CompletionService<Window> completion = new ExecutorCompletionService<Window>(
+				executor != null ? executor : privateExecutor);
+		List<Future<Window>> submitted = new ArrayList<Future<Window>>();
+		Map<Long, List<ServiceRequest>> fetched = new TreeMap<Long, List<ServiceRequest>>();
+		int running = 0;
+		try {
+			while (running > 0 || !pending.isEmpty()) {
+				while (running < parallelism && !pending.isEmpty()) {
+					submitted.add(completion.submit(pending.poll()));
+					running++;
+				}
+				Window done = take(completion);
+				running--;
+				if (done.result.size() < resultLimit) {
+					fetched.put(done.from, done.result);
+				} else if (done.to - done.from < 2 * MINIMUM_WINDOW) {
+					LogManager.getInstance().logError(wrapper,
+							"{} results from {}, the response could be truncated",
+							done.result.size(), new Date(done.from));
+					fetched.put(done.from, done.result);
+				} else {
+					long middle = done.from + (done.to - done.from) / 2;
+					pending.addFirst(new Window(filter, middle, done.to, token));
+					pending.addFirst(new Window(filter, done.from, middle,
+							token));
+				}
+			}
+		} finally {
+			for (Future<Window> future : submitted) {
+				future.cancel(true);
+			}
+			if (privateExecutor != null) {
+				privateExecutor.shutdownNow();
+			}
+		}
+		return merge(fetched.values());
+	}
+
+	/**
+	 * Waits for the next window.
+	 */
+	private Window take(CompletionService<Window> completion)
+			throws APIWrapperException {
+		try {
+			return completion.take().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIWrapperException("Interrupted",
+					Error.NETWORK_MANAGER, null);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof APIWrapperException) {
+				throw (APIWrapperException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new APIWrapperException(e.getMessage(),
+					Error.NETWORK_MANAGER, null);
+		}
+	}
+
+	/**
+	 * Joins the results of the windows, skipping the service requests which
+	 * were already found (the windows share their limits).
+	 */
+	private static List<ServiceRequest> merge(
+			Iterable<List<ServiceRequest>> windows) {
+		List<ServiceRequest> result = new ArrayList<ServiceRequest>();
+		Set<String> ids = new HashSet<String>();
+		for (List<ServiceRequest> requests : windows) {
+			for (ServiceRequest request : requests) {
+				String id = request.getServiceRequestId();
+				if (id == null || ids.add(id)) {
+					result.add(request);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Range of dates asked for in a single request.
+	 */
+	private class Window implements Callable<Window> {
+		private final GETServiceRequestsFilter filter;
+		private final long from;
+		private final long to;
+		private final CancellationToken token;
+		private List<ServiceRequest> result;
+
+		Window(GETServiceRequestsFilter filter, long from, long to,
+				CancellationToken token) {
+			this.filter = filter;
+			this.from = from;
+			this.to = to;
+			this.token = token;
+		}
+
+		@Override
+		public Window call() throws APIWrapperException {
+			GETServiceRequestsFilter windowFilter = filter.copy()
+					.setStartDate(new Date(from)).setEndDate(new Date(to));
+			List<ServiceRequest> requests = token != null ? wrapper
+					.getServiceRequests(windowFilter, token) : wrapper
+					.getServiceRequests(windowFilter);
+			result = requests != null ? requests : Collections
+					.<ServiceRequest> emptyList();
+			return this;
+		}
+	}
+}
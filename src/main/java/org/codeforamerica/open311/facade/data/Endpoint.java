@@ -46,6 +46,10 @@ public class Endpoint implements Serializable {
 		return type;
 	}
 
+	public List<Format> getFormats() {
+		return formats;
+	}
+
 	/**
 	 * Returns the more suitable format. Tries JSON before XML.
 	 * 
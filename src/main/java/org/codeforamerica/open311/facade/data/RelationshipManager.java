@@ -1,9 +1,10 @@
 package org.codeforamerica.open311.facade.data;
 
-import java.util.HashMap;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.codeforamerica.open311.facade.APIWrapper;
 import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
@@ -15,6 +16,10 @@ import org.codeforamerica.open311.facade.exceptions.APIWrapperException.Error;
  * definition without knowing the {@link APIWrapper} which created it in
  * advance.
  * 
+ * Every service is mapped by identity and weakly referenced, so a lookup
+ * doesn't depend on the size of the lists and the relationships disappear
+ * with their services.
+ * 
  * This class is only called by instances of classes from its package.
  * 
  * Singleton class.
@@ -28,10 +33,13 @@ public class RelationshipManager {
 	 */
 	private static RelationshipManager instance = new RelationshipManager();
 	/**
-	 * Maintain a list of pairs (List<{@link Service}>, {@link APIWrapper})
-	 * instances.
+	 * {@link APIWrapper} which created each {@link Service}.
+	 */
+	private final ConcurrentHashMap<ServiceKey, APIWrapper> serviceWrapperRelationships = new ConcurrentHashMap<ServiceKey, APIWrapper>();
+	/**
+	 * Keys of the collected services.
 	 */
-	private Map<List<Service>, APIWrapper> serviceWrapperRelationships = new HashMap<List<Service>, APIWrapper>();
+	private final ReferenceQueue<Service> collectedServices = new ReferenceQueue<Service>();
 
 	private RelationshipManager() {
 
@@ -56,8 +64,14 @@ public class RelationshipManager {
 	 */
 	public void addServiceWrapperRelationship(List<Service> services,
 			APIWrapper originator) {
+		expungeCollectedServices();
 		if (services != null && originator != null) {
-			serviceWrapperRelationships.put(services, originator);
+			for (Service service : services) {
+				if (service != null) {
+					serviceWrapperRelationships.put(new ServiceKey(service,
+							collectedServices), originator);
+				}
+			}
 		}
 	}
 
@@ -77,18 +91,62 @@ public class RelationshipManager {
 		if (service == null) {
 			throw new NullPointerException();
 		}
-		APIWrapper wrapper = null;
-		for (Entry<List<Service>, APIWrapper> entry : serviceWrapperRelationships
-				.entrySet()) {
-			if (entry.getKey().contains(service)) {
-				wrapper = entry.getValue();
-				break;
-			}
-		}
+		APIWrapper wrapper = serviceWrapperRelationships.get(new ServiceKey(
+				service, null));
 		if (wrapper == null) {
 			throw new APIWrapperException("Couldn't obtain a related wrapper",
 					Error.NOT_CREATED_BY_A_WRAPPER, null);
 		}
 		return wrapper.getServiceDefinition(service.getServiceCode());
 	}
+
+	/**
+	 * Returns the number of services which still have a relationship.
+	 * 
+	 * @return Number of services.
+	 */
+	/* package */int size() {
+		expungeCollectedServices();
+		return serviceWrapperRelationships.size();
+	}
+
+	/**
+	 * Removes the relationships of the services which have been collected.
+	 */
+	private void expungeCollectedServices() {
+		Reference<? extends Service> collected;
+		while ((collected = collectedServices.poll()) != null) {
+			serviceWrapperRelationships.remove(collected);
+		}
+	}
+
+	/**
+	 * Weak reference to a service which is compared by identity, even after
+	 * the service has been collected.
+	 */
+	private static class ServiceKey extends WeakReference<Service> {
+		private final int hashCode;
+
+		ServiceKey(Service service, ReferenceQueue<Service> queue) {
+			super(service, queue);
+			this.hashCode = System.identityHashCode(service);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ServiceKey)) {
+				return false;
+			}
+			Service service = get();
+			return service != null && service == ((ServiceKey) obj).get();
+		}
+	}
 }
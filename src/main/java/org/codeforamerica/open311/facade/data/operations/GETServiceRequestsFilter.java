@@ -69,6 +69,18 @@ public class GETServiceRequestsFilter implements Serializable {
 		return this;
 	}
 
+	/**
+	 * Builds a copy of the filter, which can be changed without changing this
+	 * one.
+	 * 
+	 * @return A filter with the same parameters.
+	 */
+	public GETServiceRequestsFilter copy() {
+		GETServiceRequestsFilter copy = new GETServiceRequestsFilter();
+		copy.parameters.putAll(parameters);
+		return copy;
+	}
+
 	/**
 	 * Builds a map containing all the set arguments.
 	 * 
@@ -1,9 +1,21 @@
 package org.codeforamerica.open311.internals.caching;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.iharder.Base64;
 
 import org.codeforamerica.open311.facade.City;
 import org.codeforamerica.open311.facade.data.Service;
@@ -11,69 +23,102 @@ import org.codeforamerica.open311.facade.data.ServiceDefinition;
 import org.codeforamerica.open311.facade.data.ServiceDiscoveryInfo;
 import org.codeforamerica.open311.facade.data.ServiceRequest;
 import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+import org.codeforamerica.open311.internals.metrics.Instrumentation;
+import org.codeforamerica.open311.internals.network.Validators;
+import org.codeforamerica.open311.internals.platform.PlatformManager;
 
 /**
  * Implements all the operations of the {@link Cache} interface. Classes which
  * extend this will have to implement the abstract methods.
  * 
+ * The saved keys are indexed by expiration time, and the expired ones are
+ * removed periodically in background (if the implementation is able to remove
+ * and list its properties). The total size of the saved entries can be limited
+ * too: the entries which expire before are removed first. The entries of the
+ * operations with a maximum staleness are kept until it is exceeded.
+ * 
  * @author Santiago Munín <santimunin@gmail.com>
  * 
  */
-public abstract class AbstractCache implements Cache {
+public abstract class AbstractCache implements RevalidatingCache {
 	protected final static String FILE = "cache.prop";
+	/**
+	 * Separates the operation and the url in the keys of the validators.
+	 */
+	private static final String VALIDATORS_SEPARATOR = "#validators#";
+	/**
+	 * Default time between two removals of the expired entries.
+	 */
+	public static final long DEFAULT_SWEEP_INTERVAL = 10 * 60 * 1000L;
 	/**
 	 * Relationship between operations and time to live of the obtained data.
 	 */
 	private final Map<CacheableOperation, Integer> timeToLive;
+	/**
+	 * Time (milliseconds) the data of each operation is kept after expiring.
+	 */
+	private final Map<CacheableOperation, Long> maximumStaleness = Collections
+			.synchronizedMap(new EnumMap<CacheableOperation, Long>(
+					CacheableOperation.class));
+	/**
+	 * Converts the cached objects to bytes and back.
+	 */
+	private volatile CacheCodec codec = new BinaryCodec();
+	/**
+	 * Expiration time and size of every saved entry.
+	 */
+	private final ExpiryIndex expiryIndex = new ExpiryIndex();
+	private volatile long maximumSize = Long.MAX_VALUE;
+	private volatile long sweepInterval = DEFAULT_SWEEP_INTERVAL;
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+	/**
+	 * <code>true</code> when the entries saved before this instance was built
+	 * have been added to the index.
+	 */
+	private boolean indexLoaded;
+	/**
+	 * Makes the write of an entry and its indexing atomic with respect to the
+	 * removals, which would otherwise delete a value saved after they polled
+	 * its key.
+	 */
+	private final Object sweepLock = new Object();
 
 	public AbstractCache() {
 		timeToLive = new HashMap<CacheableOperation, Integer>();
-		timeToLive.put(CacheableOperation.GET_SERVICE_DISCOVERY, 720);
-		timeToLive.put(CacheableOperation.GET_SERVICE_LIST, 24);
-		timeToLive.put(CacheableOperation.GET_SERVICE_DEFINITION, 24);
-		timeToLive.put(CacheableOperation.GET_SERVICE_REQUEST_LIST, 24);
-		timeToLive.put(CacheableOperation.GET_SINGLE_SERVICE_REQUEST, 24);
-		timeToLive.put(CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS,
-				1440);
+		for (CacheableOperation operation : CacheableOperation.values()) {
+			timeToLive.put(operation, operation.getDefaultTimeToLive());
+			maximumStaleness.put(operation, 0L);
+		}
 	}
 
 	@Override
 	public void saveCitiesInfo(String data) {
-		CacheableObject cacheableObject = new CacheableObject(
-				data,
-				timeToLive
-						.get(CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS));
-		saveProperty(
-				CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS.toString(),
-				cacheableObject.serialize());
+		save(CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS.toString(),
+				data, CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS);
 	}
 
 	@Override
 	public String retrieveCitiesInfo() {
-		return (String) new CacheableObject(
-				getProperty(CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS
-						.toString())).getObject();
+		return (String) retrieve(CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS
+				.toString(),
+				CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS);
 	}
 
 	@Override
 	public void saveServiceDiscovery(City city,
 			ServiceDiscoveryInfo serviceDiscovery) {
 		if (city != null && serviceDiscovery != null) {
-			CacheableObject cacheableObject = new CacheableObject(
-					serviceDiscovery,
-					timeToLive.get(CacheableOperation.GET_SERVICE_DISCOVERY));
-			saveProperty(CacheableOperation.GET_SERVICE_DISCOVERY.toString()
-					+ city.toString(), cacheableObject.serialize());
+			save(CacheableOperation.GET_SERVICE_DISCOVERY.toString()
+					+ city.toString(), serviceDiscovery,
+					CacheableOperation.GET_SERVICE_DISCOVERY);
 		}
 	}
 
 	@Override
 	public ServiceDiscoveryInfo retrieveCachedServiceDiscoveryInfo(City city) {
 		if (city != null) {
-			String rawData = getProperty(CacheableOperation.GET_SERVICE_DISCOVERY
-					+ city.toString());
-			CacheableObject deserializedObject = new CacheableObject(rawData);
-			return (ServiceDiscoveryInfo) deserializedObject.getObject();
+			return (ServiceDiscoveryInfo) retrieve(CacheableOperation.GET_SERVICE_DISCOVERY
+					+ city.toString(), CacheableOperation.GET_SERVICE_DISCOVERY);
 		}
 		return null;
 	}
@@ -81,21 +126,18 @@ public abstract class AbstractCache implements Cache {
 	@Override
 	public void saveListOfServices(String endpointUrl, List<Service> services) {
 		if (endpointUrl != null && endpointUrl.length() > 0 && services != null) {
-			Serializable list = (Serializable) services;
-			CacheableObject cacheableObject = new CacheableObject(list,
-					timeToLive.get(CacheableOperation.GET_SERVICE_LIST));
-			saveProperty(CacheableOperation.GET_SERVICE_LIST.toString()
-					+ endpointUrl, cacheableObject.serialize());
+			save(CacheableOperation.GET_SERVICE_LIST.toString() + endpointUrl,
+					(Serializable) services,
+					CacheableOperation.GET_SERVICE_LIST);
 		}
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public List<Service> retrieveCachedServiceList(String endpointUrl) {
-		String rawData = getProperty(CacheableOperation.GET_SERVICE_LIST
-				+ endpointUrl);
-		CacheableObject deserializedObject = new CacheableObject(rawData);
-		return (List<Service>) deserializedObject.getObject();
+		return (List<Service>) retrieve(CacheableOperation.GET_SERVICE_LIST
+				+ endpointUrl,
+				CacheableOperation.GET_SERVICE_LIST);
 	}
 
 	@Override
@@ -104,21 +146,18 @@ public abstract class AbstractCache implements Cache {
 		if (endpointUrl != null && endpointUrl.length() > 0
 				&& serviceCode != null && serviceCode.length() > 0
 				&& serviceDefinition != null) {
-			Serializable definition = (Serializable) serviceDefinition;
-			CacheableObject cacheableObject = new CacheableObject(definition,
-					timeToLive.get(CacheableOperation.GET_SERVICE_DEFINITION));
-			saveProperty(CacheableOperation.GET_SERVICE_DEFINITION.toString()
-					+ endpointUrl + serviceCode, cacheableObject.serialize());
+			save(CacheableOperation.GET_SERVICE_DEFINITION.toString()
+					+ endpointUrl + serviceCode, serviceDefinition,
+					CacheableOperation.GET_SERVICE_DEFINITION);
 		}
 	}
 
 	@Override
 	public ServiceDefinition retrieveCachedServiceDefinition(
 			String endpointUrl, String serviceCode) {
-		String rawData = getProperty(CacheableOperation.GET_SERVICE_DEFINITION
-				+ endpointUrl + serviceCode);
-		CacheableObject deserializedObject = new CacheableObject(rawData);
-		return (ServiceDefinition) deserializedObject.getObject();
+		return (ServiceDefinition) retrieve(CacheableOperation.GET_SERVICE_DEFINITION
+				+ endpointUrl + serviceCode,
+				CacheableOperation.GET_SERVICE_DEFINITION);
 	}
 
 	@Override
@@ -126,12 +165,10 @@ public abstract class AbstractCache implements Cache {
 			GETServiceRequestsFilter filter, List<ServiceRequest> requests) {
 		if (endpointUrl != null && endpointUrl.length() > 0 && filter != null
 				&& requests != null) {
-			Serializable list = (Serializable) requests;
-			CacheableObject cacheableObject = new CacheableObject(list,
-					timeToLive.get(CacheableOperation.GET_SERVICE_REQUEST_LIST));
-			saveProperty(CacheableOperation.GET_SERVICE_REQUEST_LIST
-					+ endpointUrl + CacheableObject.serialize(filter),
-					cacheableObject.serialize());
+			save(CacheableOperation.GET_SERVICE_REQUEST_LIST + endpointUrl
+					+ CacheKeys.filterKey(filter),
+					(Serializable) requests,
+					CacheableOperation.GET_SERVICE_REQUEST_LIST);
 		}
 	}
 
@@ -139,10 +176,9 @@ public abstract class AbstractCache implements Cache {
 	@Override
 	public List<ServiceRequest> retrieveCachedServiceRequests(
 			String endpointUrl, GETServiceRequestsFilter filter) {
-		String rawData = getProperty(CacheableOperation.GET_SERVICE_REQUEST_LIST
-				+ endpointUrl + CacheableObject.serialize(filter));
-		CacheableObject deserializedObject = new CacheableObject(rawData);
-		return (List<ServiceRequest>) deserializedObject.getObject();
+		return (List<ServiceRequest>) retrieve(CacheableOperation.GET_SERVICE_REQUEST_LIST
+				+ endpointUrl + CacheKeys.filterKey(filter),
+				CacheableOperation.GET_SERVICE_REQUEST_LIST);
 	}
 
 	@Override
@@ -151,23 +187,356 @@ public abstract class AbstractCache implements Cache {
 		if (endpointUrl != null && endpointUrl.length() > 0
 				&& serviceRequestId != null && serviceRequestId.length() > 0
 				&& request != null) {
-			CacheableObject cacheableServiceRequest = new CacheableObject(
-					request,
-					timeToLive
-							.get(CacheableOperation.GET_SINGLE_SERVICE_REQUEST));
-			saveProperty(CacheableOperation.GET_SINGLE_SERVICE_REQUEST
-					+ endpointUrl + serviceRequestId,
-					cacheableServiceRequest.serialize());
+			save(CacheableOperation.GET_SINGLE_SERVICE_REQUEST + endpointUrl
+					+ serviceRequestId, request,
+					CacheableOperation.GET_SINGLE_SERVICE_REQUEST);
 		}
 	}
 
 	@Override
 	public ServiceRequest retrieveCachedServiceRequest(String endpointUrl,
 			String serviceRequestId) {
-		String rawData = getProperty(CacheableOperation.GET_SINGLE_SERVICE_REQUEST
-				+ endpointUrl + serviceRequestId);
-		CacheableObject deserializedObject = new CacheableObject(rawData);
-		return (ServiceRequest) deserializedObject.getObject();
+		return (ServiceRequest) retrieve(CacheableOperation.GET_SINGLE_SERVICE_REQUEST
+				+ endpointUrl + serviceRequestId,
+				CacheableOperation.GET_SINGLE_SERVICE_REQUEST);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Service> retrieveStaleServiceList(String endpointUrl) {
+		return (List<Service>) retrieveStale(
+				CacheableOperation.GET_SERVICE_LIST + endpointUrl,
+				CacheableOperation.GET_SERVICE_LIST);
+	}
+
+	@Override
+	public ServiceDefinition retrieveStaleServiceDefinition(
+			String endpointUrl, String serviceCode) {
+		return (ServiceDefinition) retrieveStale(
+				CacheableOperation.GET_SERVICE_DEFINITION + endpointUrl
+						+ serviceCode,
+				CacheableOperation.GET_SERVICE_DEFINITION);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<ServiceRequest> retrieveStaleServiceRequests(
+			String endpointUrl, GETServiceRequestsFilter filter) {
+		return (List<ServiceRequest>) retrieveStale(
+				CacheableOperation.GET_SERVICE_REQUEST_LIST + endpointUrl
+						+ CacheKeys.filterKey(filter),
+				CacheableOperation.GET_SERVICE_REQUEST_LIST);
+	}
+
+	@Override
+	public ServiceRequest retrieveStaleServiceRequest(String endpointUrl,
+			String serviceRequestId) {
+		return (ServiceRequest) retrieveStale(
+				CacheableOperation.GET_SINGLE_SERVICE_REQUEST + endpointUrl
+						+ serviceRequestId,
+				CacheableOperation.GET_SINGLE_SERVICE_REQUEST);
+	}
+
+	@Override
+	public void saveValidators(CacheableOperation operation, String url,
+			Validators validators) {
+		if (operation != null && url != null && url.length() > 0
+				&& validators != null && !validators.isEmpty()) {
+			save(operation + VALIDATORS_SEPARATOR + url, validators,
+					operation);
+		}
+	}
+
+	@Override
+	public Validators retrieveValidators(CacheableOperation operation,
+			String url) {
+		if (operation == null) {
+			return null;
+		}
+		return (Validators) retrieveStale(operation + VALIDATORS_SEPARATOR
+				+ url, operation);
+	}
+
+	@Override
+	public void setMaximumStaleness(CacheableOperation operation,
+			long maximumStaleness, TimeUnit unit) {
+		if (operation != null && maximumStaleness >= 0 && unit != null) {
+			this.maximumStaleness.put(operation,
+					unit.toMillis(maximumStaleness));
+		}
+	}
+
+	/**
+	 * Sets the format of the cached objects. Objects saved with other codec
+	 * won't be found (unless the codec is able to decode them).
+	 * 
+	 * @param codec
+	 *            A codec, a {@link BinaryCodec} is used by default.
+	 */
+	public void setCodec(CacheCodec codec) {
+		if (codec != null) {
+			this.codec = codec;
+		}
+	}
+
+	/**
+	 * Encodes an object and saves it with the time to live of its operation.
+	 */
+	private void save(String key, Serializable object,
+			CacheableOperation operation) {
+		startSweeping();
+		try {
+			CacheableObject cacheableObject = new CacheableObject(object,
+					timeToLive.get(operation));
+			byte[] data = codec.encode(cacheableObject);
+			synchronized (sweepLock) {
+				saveEncoded(key, data);
+				expiryIndex.put(key, cacheableObject.getExpirationTime()
+						.getTime() + maximumStaleness.get(operation),
+						key.length() + data.length);
+				List<String> evicted = expiryIndex
+						.pollOverBudget(maximumSize);
+				if (!evicted.isEmpty()) {
+					removeProperties(evicted);
+				}
+			}
+			reportAccess(operation, true, false, data);
+		} catch (IOException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error encoding a cached object: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Retrieves an object if it hasn't expired.
+	 * 
+	 * @return The object or <code>null</code> if it doesn't exist, it has
+	 *         expired or it couldn't be decoded.
+	 */
+	private Object retrieve(String key, CacheableOperation operation) {
+		startSweeping();
+		try {
+			byte[] data = getEncoded(key);
+			Object object = data != null ? codec.decode(data).getObject()
+					: null;
+			reportAccess(operation, false, object != null, data);
+			return object;
+		} catch (IOException e) {
+			reportAccess(operation, false, false, null);
+			return null;
+		}
+	}
+
+	/**
+	 * Retrieves an object if it expired less than the maximum staleness of its
+	 * operation ago.
+	 * 
+	 * @return The object or <code>null</code> if it doesn't exist, it is too
+	 *         old or it couldn't be decoded.
+	 */
+	private Object retrieveStale(String key, CacheableOperation operation) {
+		startSweeping();
+		try {
+			byte[] data = getEncoded(key);
+			if (data == null) {
+				reportAccess(operation, false, false, null);
+				return null;
+			}
+			CacheableObject cacheableObject = codec.decode(data);
+			Date expirationTime = cacheableObject.getExpirationTime();
+			Object object = expirationTime != null
+					&& expirationTime.getTime()
+							+ maximumStaleness.get(operation) > System
+							.currentTimeMillis() ? cacheableObject
+					.getRawObject() : null;
+			reportAccess(operation, false, object != null, data);
+			return object;
+		} catch (IOException e) {
+			reportAccess(operation, false, false, null);
+			return null;
+		}
+	}
+
+	/**
+	 * Sends the {@link Instrumentation} event of an access.
+	 * 
+	 * @param data
+	 *            Encoded entry (<code>null</code> if it wasn't found).
+	 */
+	private static void reportAccess(CacheableOperation operation,
+			boolean put, boolean hit, byte[] data) {
+		if (Instrumentation.isEnabled()) {
+			Instrumentation.cacheAccessed(operation.toString(), put, hit,
+					hit || put ? data.length : 0);
+		}
+	}
+
+	/**
+	 * Limits the total size of the cached entries. When it is exceeded, the
+	 * entries which expire before are removed.
+	 * 
+	 * @param maximumSize
+	 *            Maximum bytes (the encoded size of the entries, plus their
+	 *            keys).
+	 */
+	public void setMaximumSize(long maximumSize) {
+		if (maximumSize > 0) {
+			this.maximumSize = maximumSize;
+			synchronized (sweepLock) {
+				List<String> evicted = expiryIndex.pollOverBudget(maximumSize);
+				if (!evicted.isEmpty()) {
+					removeProperties(evicted);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the time between two removals of the expired entries.
+	 * 
+	 * @param interval
+	 *            Time between removals.
+	 * @param unit
+	 *            Unit of the interval.
+	 */
+	public void setSweepInterval(long interval, TimeUnit unit) {
+		if (interval > 0 && unit != null) {
+			sweepInterval = unit.toMillis(interval);
+		}
+	}
+
+	/**
+	 * Size of the cached entries known by this instance.
+	 * 
+	 * @return Bytes (the encoded size of the entries, plus their keys).
+	 */
+	public long getSize() {
+		return expiryIndex.getTotalSize();
+	}
+
+	/**
+	 * Removes the expired entries (and the oldest ones if the maximum size is
+	 * exceeded). It is done periodically in background, there is no need to
+	 * call it.
+	 */
+	public void evictExpired() {
+		synchronized (sweepLock) {
+			if (!indexLoaded) {
+				loadIndex();
+			}
+			List<String> evicted = new LinkedList<String>();
+			evicted.addAll(expiryIndex.pollExpired(System.currentTimeMillis()));
+			evicted.addAll(expiryIndex.pollOverBudget(maximumSize));
+			if (!evicted.isEmpty()) {
+				removeProperties(evicted);
+			}
+		}
+	}
+
+	/**
+	 * Adds the entries saved by previous executions to the index.
+	 */
+	private void loadIndex() {
+		List<String> invalid = new LinkedList<String>();
+		for (String key : getPropertyKeys()) {
+			if (expiryIndex.contains(key)) {
+				continue;
+			}
+			try {
+				byte[] data = getEncoded(key);
+				if (data != null) {
+					Date expirationTime = codec.decode(data)
+							.getExpirationTime();
+					long removalTime = expirationTime != null ? expirationTime
+							.getTime() + maximumStalenessOf(key) : 0;
+					expiryIndex.put(key, removalTime, key.length()
+							+ data.length);
+				}
+			} catch (IOException e) {
+				invalid.add(key);
+			}
+		}
+		if (!invalid.isEmpty()) {
+			removeProperties(invalid);
+		}
+		indexLoaded = true;
+	}
+
+	/**
+	 * Maximum staleness of the operation which saved a key (all the keys
+	 * start with the name of their operation).
+	 */
+	private long maximumStalenessOf(String key) {
+		for (CacheableOperation operation : CacheableOperation.values()) {
+			if (key.startsWith(operation.toString())) {
+				return maximumStaleness.get(operation);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Starts the periodic removal of the expired entries, if it hasn't been
+	 * started yet. It isn't done by the constructor because the
+	 * implementations have to be completely built.
+	 */
+	private void startSweeping() {
+		if (!sweeping.get() && sweeping.compareAndSet(false, true)) {
+			scheduleSweep(this, 0);
+		}
+	}
+
+	private static void scheduleSweep(AbstractCache cache, long delay) {
+		PlatformManager.getInstance().getScheduler()
+				.schedule(new SweepTask(cache), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Removes the expired entries of a cache in the internal executor and
+	 * schedules the next removal. It doesn't keep the cache alive.
+	 */
+	private static class SweepTask implements Runnable {
+		private final WeakReference<AbstractCache> reference;
+
+		SweepTask(AbstractCache cache) {
+			reference = new WeakReference<AbstractCache>(cache);
+		}
+
+		@Override
+		public void run() {
+			if (reference.get() == null) {
+				return;
+			}
+			PlatformManager.getInstance().getInternalExecutor()
+					.execute(new Runnable() {
+						@Override
+						public void run() {
+							AbstractCache cache = reference.get();
+							if (cache == null) {
+								return;
+							}
+							try {
+								cache.evictExpired();
+							} catch (RuntimeException e) {
+								PlatformManager
+										.getInstance()
+										.buildLogger()
+										.logError(
+												"Error removing expired entries: "
+														+ e.getMessage());
+							}
+							scheduleSweep(cache, cache.sweepInterval);
+						}
+					});
+		}
+	}
+
+	/**
+	 * Forgets every indexed entry. Implementations must call it when they
+	 * delete all their properties.
+	 */
+	protected void clearExpiryIndex() {
+		expiryIndex.clear();
 	}
 
 	public void setCustomTimeToLive(CacheableOperation operation,
@@ -197,4 +566,63 @@ public abstract class AbstractCache implements Cache {
 	 * @return The property value of <code>null</code> if the key doesn't exist.
 	 */
 	protected abstract String getProperty(String key);
+
+	/**
+	 * Saves an encoded object. By default, it is saved as a Base64 property.
+	 * 
+	 * @param key
+	 *            Key of the property.
+	 * @param value
+	 *            Encoded object.
+	 */
+	protected void saveEncoded(String key, byte[] value) {
+		saveProperty(key, Base64.encodeBytes(value));
+	}
+
+	/**
+	 * Retrieves an encoded object.
+	 * 
+	 * @param key
+	 *            Key of the property.
+	 * @return The encoded object or <code>null</code> if the key doesn't exist.
+	 * @throws IOException
+	 *             If the property is not valid.
+	 */
+	protected byte[] getEncoded(String key) throws IOException {
+		String value = getProperty(key);
+		return value != null ? Base64.decode(value) : null;
+	}
+
+	/**
+	 * Removes a property. Implementations which can't do it keep the expired
+	 * entries until the cache is deleted.
+	 * 
+	 * @param key
+	 *            Key of the property.
+	 */
+	protected void removeProperty(String key) {
+	}
+
+	/**
+	 * Removes some properties. By default, it calls
+	 * {@link #removeProperty(String)} for every one of them.
+	 * 
+	 * @param keys
+	 *            Keys of the properties.
+	 */
+	protected void removeProperties(Collection<String> keys) {
+		for (String key : keys) {
+			removeProperty(key);
+		}
+	}
+
+	/**
+	 * Lists the saved properties, needed to remove the expired entries saved
+	 * by previous executions.
+	 * 
+	 * @return The keys of the properties. None by default.
+	 */
+	protected Set<String> getPropertyKeys() {
+		return Collections.emptySet();
+	}
 }
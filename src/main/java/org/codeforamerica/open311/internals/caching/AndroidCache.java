@@ -1,5 +1,9 @@
 package org.codeforamerica.open311.internals.caching;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
@@ -50,6 +54,7 @@ public class AndroidCache extends AbstractCache {
 		Editor editor = preferences.edit();
 		editor.clear();
 		editor.commit();
+		clearExpiryIndex();
 	}
 
 	@Override
@@ -63,4 +68,25 @@ public class AndroidCache extends AbstractCache {
 	protected String getProperty(String key) {
 		return preferences.getString(key, "");
 	}
+
+	@Override
+	protected void removeProperty(String key) {
+		Editor editor = preferences.edit();
+		editor.remove(key);
+		editor.commit();
+	}
+
+	@Override
+	protected void removeProperties(Collection<String> keys) {
+		Editor editor = preferences.edit();
+		for (String key : keys) {
+			editor.remove(key);
+		}
+		editor.commit();
+	}
+
+	@Override
+	protected Set<String> getPropertyKeys() {
+		return new HashSet<String>(preferences.getAll().keySet());
+	}
 }
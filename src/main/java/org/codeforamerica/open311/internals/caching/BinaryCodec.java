@@ -0,0 +1,607 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.codeforamerica.open311.facade.EndpointType;
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.facade.data.AttributeInfo;
+import org.codeforamerica.open311.facade.data.AttributeInfo.Datatype;
+import org.codeforamerica.open311.facade.data.Endpoint;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceDiscoveryInfo;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.ServiceRequest.Status;
+
+/**
+ * Encodes the cached objects in a compact binary format, written field by
+ * field. Objects of other classes are encoded with the Java serialization, and
+ * data written by the {@link SerializationCodec} can still be decoded.
+ * 
+ * Format (version 1): a magic byte, the version byte, the expiration time and
+ * the tagged value. Lengths and numbers are variable length integers, strings
+ * are UTF-8 and enums are written as their ordinal (so adding or moving
+ * constants requires a new version).
+ */
+public class BinaryCodec implements CacheCodec {
+
+	static final int MAGIC = 0x4F;
+	static final int VERSION = 1;
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int LIST = 2;
+	private static final int SERVICE = 3;
+	private static final int SERVICE_DEFINITION = 4;
+	private static final int ATTRIBUTE_INFO = 5;
+	private static final int SERVICE_REQUEST = 6;
+	private static final int SERVICE_DISCOVERY_INFO = 7;
+	private static final int ENDPOINT = 8;
+	private static final int SERIALIZED = 9;
+
+	private static final String CHARSET = "UTF-8";
+	private static final Service.Type[] SERVICE_TYPES = Service.Type.values();
+	private static final Datatype[] DATATYPES = Datatype.values();
+	private static final Status[] STATUSES = Status.values();
+	private static final EndpointType[] ENDPOINT_TYPES = EndpointType
+			.values();
+	private static final Format[] FORMATS = Format.values();
+
+	private final SerializationCodec serializationCodec = new SerializationCodec();
+
+	@Override
+	public byte[] encode(CacheableObject object) throws IOException {
+		Output output = new Output();
+		output.write(MAGIC);
+		output.write(VERSION);
+		output.writeDate(object.getExpirationTime());
+		writeValue(output, object.getRawObject());
+		return output.toByteArray();
+	}
+
+	@Override
+	public CacheableObject decode(byte[] data) throws IOException {
+		if (SerializationCodec.isSerialized(data)) {
+			return serializationCodec.decode(data);
+		}
+		Input input = new Input(data);
+		if (input.readByte() != MAGIC) {
+			throw new IOException("Unknown cache format");
+		}
+		int version = input.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported cache format version: "
+					+ version);
+		}
+		Date expirationTime = input.readDate();
+		Object value = readValue(input);
+		if (!input.isFinished()) {
+			throw new IOException("Unexpected data after the cached object");
+		}
+		return new CacheableObject((Serializable) value, expirationTime);
+	}
+
+	private void writeValue(Output output, Object value) throws IOException {
+		if (value == null) {
+			output.write(NULL);
+		} else if (value instanceof String) {
+			output.write(STRING);
+			output.writeString((String) value);
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			output.write(LIST);
+			output.writeLength(list.size());
+			for (Object element : list) {
+				writeValue(output, element);
+			}
+		} else if (value.getClass() == Service.class) {
+			output.write(SERVICE);
+			writeService(output, (Service) value);
+		} else if (value.getClass() == ServiceDefinition.class) {
+			ServiceDefinition definition = (ServiceDefinition) value;
+			output.write(SERVICE_DEFINITION);
+			output.writeString(definition.getServiceCode());
+			List<AttributeInfo> attributes = definition.getAttributes();
+			output.writeLength(attributes == null ? -1 : attributes.size());
+			if (attributes != null) {
+				for (AttributeInfo attribute : attributes) {
+					writeAttributeInfo(output, attribute);
+				}
+			}
+		} else if (value.getClass() == AttributeInfo.class) {
+			output.write(ATTRIBUTE_INFO);
+			writeAttributeInfo(output, (AttributeInfo) value);
+		} else if (value.getClass() == ServiceRequest.class) {
+			output.write(SERVICE_REQUEST);
+			writeServiceRequest(output, (ServiceRequest) value);
+		} else if (value.getClass() == ServiceDiscoveryInfo.class) {
+			ServiceDiscoveryInfo info = (ServiceDiscoveryInfo) value;
+			output.write(SERVICE_DISCOVERY_INFO);
+			output.writeDate(info.getChangeset());
+			output.writeString(info.getContact());
+			output.writeString(info.getKeyService());
+			List<Endpoint> endpoints = info.getEndpoints();
+			output.writeLength(endpoints == null ? -1 : endpoints.size());
+			if (endpoints != null) {
+				for (Endpoint endpoint : endpoints) {
+					writeEndpoint(output, endpoint);
+				}
+			}
+		} else if (value.getClass() == Endpoint.class) {
+			output.write(ENDPOINT);
+			writeEndpoint(output, (Endpoint) value);
+		} else if (value instanceof Serializable) {
+			byte[] serialized = serializationCodec.encode(new CacheableObject(
+					(Serializable) value, (Date) null));
+			output.write(SERIALIZED);
+			output.writeLength(serialized.length);
+			output.write(serialized);
+		} else {
+			throw new IOException("Not serializable: " + value.getClass());
+		}
+	}
+
+	private Object readValue(Input input) throws IOException {
+		int tag = input.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return input.readString();
+		case LIST:
+			int size = input.readLength();
+			if (size < 0) {
+				throw new IOException("Invalid list size");
+			}
+			List<Object> list = new ArrayList<Object>(Math.min(size, 1024));
+			for (int i = 0; i < size; i++) {
+				list.add(readValue(input));
+			}
+			return list;
+		case SERVICE:
+			return readService(input);
+		case SERVICE_DEFINITION:
+			String serviceCode = input.readString();
+			int attributesCount = input.readLength();
+			List<AttributeInfo> attributes = null;
+			if (attributesCount >= 0) {
+				attributes = new ArrayList<AttributeInfo>(Math.min(
+						attributesCount, 1024));
+				for (int i = 0; i < attributesCount; i++) {
+					attributes.add(readAttributeInfo(input));
+				}
+			}
+			return new ServiceDefinition(serviceCode, attributes);
+		case ATTRIBUTE_INFO:
+			return readAttributeInfo(input);
+		case SERVICE_REQUEST:
+			return readServiceRequest(input);
+		case SERVICE_DISCOVERY_INFO:
+			Date changeset = input.readDate();
+			String contact = input.readString();
+			String keyService = input.readString();
+			int endpointsCount = input.readLength();
+			List<Endpoint> endpoints = null;
+			if (endpointsCount >= 0) {
+				endpoints = new ArrayList<Endpoint>(Math.min(endpointsCount,
+						1024));
+				for (int i = 0; i < endpointsCount; i++) {
+					endpoints.add(readEndpoint(input));
+				}
+			}
+			return new ServiceDiscoveryInfo(changeset, contact, keyService,
+					endpoints);
+		case ENDPOINT:
+			return readEndpoint(input);
+		case SERIALIZED:
+			int length = input.readLength();
+			return serializationCodec.decode(input.readBytes(length))
+					.getRawObject();
+		default:
+			throw new IOException("Unknown type tag: " + tag);
+		}
+	}
+
+	private void writeService(Output output, Service service)
+			throws IOException {
+		output.writeString(service.getServiceCode());
+		output.writeString(service.getServiceName());
+		output.writeString(service.getDescription());
+		output.writeBoolean(service.hasMetadata());
+		output.writeEnum(service.getType());
+		String[] keywords = service.getKeywords();
+		output.writeLength(keywords == null ? -1 : keywords.length);
+		if (keywords != null) {
+			for (String keyword : keywords) {
+				output.writeString(keyword);
+			}
+		}
+		output.writeString(service.getGroup());
+	}
+
+	private Service readService(Input input) throws IOException {
+		String serviceCode = input.readString();
+		String serviceName = input.readString();
+		String description = input.readString();
+		Boolean metadata = input.readBoolean();
+		Service.Type type = input.readEnum(SERVICE_TYPES);
+		int keywordsCount = input.readLength();
+		String[] keywords = null;
+		if (keywordsCount >= 0) {
+			keywords = new String[keywordsCount];
+			for (int i = 0; i < keywordsCount; i++) {
+				keywords[i] = input.readString();
+			}
+		}
+		String group = input.readString();
+		return new Service(serviceCode, serviceName, description, metadata,
+				type, keywords, group);
+	}
+
+	private void writeAttributeInfo(Output output, AttributeInfo attribute)
+			throws IOException {
+		output.writeBoolean(attribute.isVariable());
+		output.writeString(attribute.getCode());
+		output.writeEnum(attribute.getDatatype());
+		output.writeBoolean(attribute.isRequired());
+		output.writeString(attribute.getDatatypeDescription());
+		Integer order = attribute.getOrder();
+		output.writeNullableLong(order == null ? null : Long.valueOf(order));
+		output.writeString(attribute.getDescription());
+		Map<String, String> values = attribute.getValues();
+		output.writeLength(values == null ? -1 : values.size());
+		if (values != null) {
+			for (Entry<String, String> entry : values.entrySet()) {
+				output.writeString(entry.getKey());
+				output.writeString(entry.getValue());
+			}
+		}
+	}
+
+	private AttributeInfo readAttributeInfo(Input input) throws IOException {
+		Boolean variable = input.readBoolean();
+		String code = input.readString();
+		Datatype datatype = input.readEnum(DATATYPES);
+		Boolean required = input.readBoolean();
+		String datatypeDescription = input.readString();
+		Long order = input.readNullableLong();
+		String description = input.readString();
+		int valuesCount = input.readLength();
+		Map<String, String> values = null;
+		if (valuesCount >= 0) {
+			values = new HashMap<String, String>();
+			for (int i = 0; i < valuesCount; i++) {
+				values.put(input.readString(), input.readString());
+			}
+		}
+		return new AttributeInfo(variable, code, datatype, required,
+				datatypeDescription, order == null ? null : order.intValue(),
+				description, values);
+	}
+
+	private void writeServiceRequest(Output output, ServiceRequest request)
+			throws IOException {
+		output.writeString(request.getServiceRequestId());
+		output.writeEnum(request.getStatus());
+		output.writeString(request.getStatusNotes());
+		output.writeString(request.getServiceName());
+		output.writeString(request.getServiceCode());
+		output.writeString(request.getDescription());
+		output.writeString(request.getAgencyResponsible());
+		output.writeString(request.getServiceNotice());
+		output.writeDate(request.getRequestedDatetime());
+		output.writeDate(request.getUpdatedDatetime());
+		output.writeDate(request.getExpectedDatetime());
+		output.writeString(request.getAddress());
+		output.writeNullableLong(request.getAddressId());
+		Integer zipCode = request.getZipCode();
+		output.writeNullableLong(zipCode == null ? null : Long
+				.valueOf(zipCode));
+		output.writeFloat(request.getLatitude());
+		output.writeFloat(request.getLongitude());
+		URL mediaUrl = request.getMediaUrl();
+		output.writeString(mediaUrl == null ? null : mediaUrl.toString());
+	}
+
+	private ServiceRequest readServiceRequest(Input input) throws IOException {
+		String serviceRequestId = input.readString();
+		Status status = input.readEnum(STATUSES);
+		String statusNotes = input.readString();
+		String serviceName = input.readString();
+		String serviceCode = input.readString();
+		String description = input.readString();
+		String agencyResponsible = input.readString();
+		String serviceNotice = input.readString();
+		Date requestedDatetime = input.readDate();
+		Date updatedDatetime = input.readDate();
+		Date expectedDatetime = input.readDate();
+		String address = input.readString();
+		Long addressId = input.readNullableLong();
+		Long zipCode = input.readNullableLong();
+		Float latitude = input.readFloat();
+		Float longitude = input.readFloat();
+		String mediaUrl = input.readString();
+		return new ServiceRequest(serviceRequestId, status, statusNotes,
+				serviceName, serviceCode, description, agencyResponsible,
+				serviceNotice, requestedDatetime, updatedDatetime,
+				expectedDatetime, address, addressId,
+				zipCode == null ? null : zipCode.intValue(), latitude,
+				longitude, mediaUrl == null ? null : new URL(mediaUrl));
+	}
+
+	private void writeEndpoint(Output output, Endpoint endpoint)
+			throws IOException {
+		output.writeString(endpoint.getSpecificationUrl());
+		output.writeString(endpoint.getUrl());
+		output.writeDate(endpoint.getChangeset());
+		output.writeEnum(endpoint.getType());
+		List<Format> formats = endpoint.getFormats();
+		output.writeLength(formats == null ? -1 : formats.size());
+		if (formats != null) {
+			for (Format format : formats) {
+				output.writeEnum(format);
+			}
+		}
+	}
+
+	private Endpoint readEndpoint(Input input) throws IOException {
+		String specificationUrl = input.readString();
+		String url = input.readString();
+		Date changeset = input.readDate();
+		EndpointType type = input.readEnum(ENDPOINT_TYPES);
+		int formatsCount = input.readLength();
+		List<Format> formats = null;
+		if (formatsCount >= 0) {
+			formats = new ArrayList<Format>(Math.min(formatsCount, 1024));
+			for (int i = 0; i < formatsCount; i++) {
+				formats.add(input.readEnum(FORMATS));
+			}
+		}
+		return new Endpoint(specificationUrl, url, changeset, type, formats);
+	}
+
+	/**
+	 * Buffer with the primitive writing operations of the format (unlike a
+	 * <code>ByteArrayOutputStream</code>, it doesn't synchronize every write).
+	 */
+	private static class Output {
+		private byte[] buffer = new byte[256];
+		private int count;
+
+		private void ensureCapacity(int extra) {
+			if (count + extra > buffer.length) {
+				byte[] newBuffer = new byte[Math.max(buffer.length << 1, count
+						+ extra)];
+				System.arraycopy(buffer, 0, newBuffer, 0, count);
+				buffer = newBuffer;
+			}
+		}
+
+		void write(int b) {
+			ensureCapacity(1);
+			buffer[count++] = (byte) b;
+		}
+
+		void write(byte[] bytes) {
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, count, bytes.length);
+			count += bytes.length;
+		}
+
+		byte[] toByteArray() {
+			byte[] result = new byte[count];
+			System.arraycopy(buffer, 0, result, 0, count);
+			return result;
+		}
+
+		void writeVarLong(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		/**
+		 * Writes a length, a negative one means <code>null</code>.
+		 */
+		void writeLength(int length) {
+			writeVarLong(length < 0 ? 0 : length + 1L);
+		}
+
+		void writeString(String value) {
+			if (value == null) {
+				writeLength(-1);
+				return;
+			}
+			int length = value.length();
+			int utf8Length = length;
+			for (int i = 0; i < length; i++) {
+				char c = value.charAt(i);
+				if (c >= 0x80) {
+					if (c < 0x800) {
+						utf8Length++;
+					} else if (isSurrogatePair(value, i)) {
+						// Two chars, four bytes.
+						utf8Length += 2;
+						i++;
+					} else {
+						utf8Length += 2;
+					}
+				}
+			}
+			writeLength(utf8Length);
+			ensureCapacity(utf8Length);
+			for (int i = 0; i < length; i++) {
+				char c = value.charAt(i);
+				if (c < 0x80) {
+					buffer[count++] = (byte) c;
+				} else if (c < 0x800) {
+					buffer[count++] = (byte) (0xC0 | c >> 6);
+					buffer[count++] = (byte) (0x80 | c & 0x3F);
+				} else if (isSurrogatePair(value, i)) {
+					int codePoint = Character.toCodePoint(c,
+							value.charAt(++i));
+					buffer[count++] = (byte) (0xF0 | codePoint >> 18);
+					buffer[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+					buffer[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+					buffer[count++] = (byte) (0x80 | codePoint & 0x3F);
+				} else {
+					buffer[count++] = (byte) (0xE0 | c >> 12);
+					buffer[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+					buffer[count++] = (byte) (0x80 | c & 0x3F);
+				}
+			}
+		}
+
+		private static boolean isSurrogatePair(String value, int index) {
+			return Character.isHighSurrogate(value.charAt(index))
+					&& index + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(index + 1));
+		}
+
+		void writeBoolean(Boolean value) {
+			write(value == null ? 0 : value ? 2 : 1);
+		}
+
+		void writeEnum(Enum<?> value) {
+			writeVarLong(value == null ? 0 : value.ordinal() + 1);
+		}
+
+		void writeNullableLong(Long value) {
+			if (value == null) {
+				write(0);
+			} else {
+				write(1);
+				long n = value;
+				writeVarLong((n << 1) ^ (n >> 63));
+			}
+		}
+
+		void writeDate(Date value) {
+			writeNullableLong(value == null ? null : value.getTime());
+		}
+
+		void writeFloat(Float value) {
+			if (value == null) {
+				write(0);
+			} else {
+				write(1);
+				int bits = Float.floatToIntBits(value);
+				write(bits >>> 24);
+				write(bits >>> 16);
+				write(bits >>> 8);
+				write(bits);
+			}
+		}
+	}
+
+	/**
+	 * Reads the primitives written by {@link Output}.
+	 */
+	private static class Input {
+		private final byte[] data;
+		private int position;
+
+		Input(byte[] data) {
+			this.data = data;
+		}
+
+		boolean isFinished() {
+			return position == data.length;
+		}
+
+		int readByte() throws IOException {
+			if (position >= data.length) {
+				throw new IOException("Unexpected end of the cached object");
+			}
+			return data[position++] & 0xFF;
+		}
+
+		byte[] readBytes(int length) throws IOException {
+			if (length < 0 || length > data.length - position) {
+				throw new IOException("Unexpected end of the cached object");
+			}
+			byte[] bytes = new byte[length];
+			System.arraycopy(data, position, bytes, 0, length);
+			position += length;
+			return bytes;
+		}
+
+		long readVarLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed number");
+		}
+
+		int readLength() throws IOException {
+			long length = readVarLong() - 1;
+			if (length > data.length - position) {
+				throw new IOException("Invalid length: " + length);
+			}
+			return (int) length;
+		}
+
+		String readString() throws IOException {
+			int length = readLength();
+			if (length < 0) {
+				return null;
+			}
+			String value = new String(data, position, length, CHARSET);
+			position += length;
+			return value;
+		}
+
+		Boolean readBoolean() throws IOException {
+			int value = readByte();
+			return value == 0 ? null : value == 2;
+		}
+
+		<T extends Enum<T>> T readEnum(T[] constants) throws IOException {
+			long ordinal = readVarLong();
+			if (ordinal == 0) {
+				return null;
+			}
+			if (ordinal > constants.length) {
+				throw new IOException("Unknown constant: " + ordinal);
+			}
+			return constants[(int) ordinal - 1];
+		}
+
+		Long readNullableLong() throws IOException {
+			if (readByte() == 0) {
+				return null;
+			}
+			long n = readVarLong();
+			return (n >>> 1) ^ -(n & 1);
+		}
+
+		Date readDate() throws IOException {
+			Long time = readNullableLong();
+			return time == null ? null : new Date(time);
+		}
+
+		Float readFloat() throws IOException {
+			if (readByte() == 0) {
+				return null;
+			}
+			int bits = readByte() << 24 | readByte() << 16 | readByte() << 8
+					| readByte();
+			return Float.intBitsToFloat(bits);
+		}
+	}
+}
@@ -171,6 +171,23 @@ public interface Cache {
 	 * 
 	 */
 	public static enum CacheableOperation {
-		GET_SERVICE_DISCOVERY, GET_SERVICE_LIST, GET_SERVICE_DEFINITION, GET_SERVICE_REQUEST_LIST, GET_SINGLE_SERVICE_REQUEST, GET_CITIES_SERVICE_DISCOVERY_URLS;
+		GET_SERVICE_DISCOVERY(720), GET_SERVICE_LIST(24),
+		GET_SERVICE_DEFINITION(24), GET_SERVICE_REQUEST_LIST(24),
+		GET_SINGLE_SERVICE_REQUEST(24), GET_CITIES_SERVICE_DISCOVERY_URLS(1440);
+
+		private final int defaultTimeToLive;
+
+		private CacheableOperation(int defaultTimeToLive) {
+			this.defaultTimeToLive = defaultTimeToLive;
+		}
+
+		/**
+		 * Time to live of the cached data if a custom one isn't set.
+		 * 
+		 * @return Time to live (in hours).
+		 */
+		public int getDefaultTimeToLive() {
+			return defaultTimeToLive;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.io.IOException;
+
+/**
+ * Converts the cached objects (and their expiration time) to bytes and back.
+ */
+public interface CacheCodec {
+
+	/**
+	 * Encodes a cached object.
+	 * 
+	 * @param object
+	 *            Object to encode.
+	 * @return Its bytes.
+	 * @throws IOException
+	 *             If the object can't be encoded.
+	 */
+	public byte[] encode(CacheableObject object) throws IOException;
+
+	/**
+	 * Decodes an object encoded by this codec.
+	 * 
+	 * @param data
+	 *            Encoded object.
+	 * @return The decoded object.
+	 * @throws IOException
+	 *             If the data is not valid.
+	 */
+	public CacheableObject decode(byte[] data) throws IOException;
+}
@@ -0,0 +1,91 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+import org.codeforamerica.open311.internals.parsing.DataParser;
+import org.codeforamerica.open311.internals.parsing.DateParser;
+
+/**
+ * Builds the keys of the cached responses. The key of a
+ * {@link GETServiceRequestsFilter} only depends on its arguments: they are
+ * sorted, the dates are converted to UTC and the result is hashed, so equal
+ * filters always share the same short key.
+ */
+public final class CacheKeys {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final DateParser DATE_PARSER = new DateParser();
+
+	private CacheKeys() {
+	}
+
+	/**
+	 * Builds the key of a filter.
+	 * 
+	 * @param filter
+	 *            A filter, <code>null</code> is the same as a filter without
+	 *            arguments.
+	 * @return A 40 characters hexadecimal string (SHA-1 of the canonical form
+	 *         of the filter).
+	 */
+	public static String filterKey(GETServiceRequestsFilter filter) {
+		return sha1(canonicalForm(filter));
+	}
+
+	/**
+	 * Builds a text which represents the arguments of a filter: pairs
+	 * <code>length:key=length:value;</code> sorted by key, where the dates are
+	 * milliseconds since the epoch.
+	 * 
+	 * @param filter
+	 *            A filter or <code>null</code>.
+	 * @return The same text for every filter with the same arguments.
+	 */
+	static String canonicalForm(GETServiceRequestsFilter filter) {
+		if (filter == null) {
+			return "";
+		}
+		Map<String, String> parameters = new TreeMap<String, String>(
+				filter.getOptionalParametersMap());
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+			String key = parameter.getKey();
+			String value = parameter.getValue();
+			if (key.equals(DataParser.START_DATE_TAG)
+					|| key.equals(DataParser.END_DATE_TAG)) {
+				Date date = DATE_PARSER.parseDate(value);
+				if (date != null) {
+					value = String.valueOf(date.getTime());
+				}
+			}
+			builder.append(key.length()).append(':').append(key).append('=');
+			builder.append(value.length()).append(':').append(value)
+					.append(';');
+		}
+		return builder.toString();
+	}
+
+	private static String sha1(String text) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					text.getBytes("UTF-8"));
+			char[] hex = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				hex[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+				hex[2 * i + 1] = HEX[digest[i] & 0xF];
+			}
+			return new String(hex);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform supports SHA-1.
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
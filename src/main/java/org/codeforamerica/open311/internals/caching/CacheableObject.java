@@ -26,6 +26,12 @@ public class CacheableObject implements Serializable {
 		this.expirationTime = new DateTime().plusHours(hoursToLive).toDate();
 	}
 
+	public CacheableObject(Serializable object, Date expirationTime) {
+		super();
+		this.object = object;
+		this.expirationTime = expirationTime;
+	}
+
 	public CacheableObject(String base64object) {
 		try {
 			CacheableObject thisObject = (CacheableObject) Base64
@@ -43,6 +49,19 @@ public class CacheableObject implements Serializable {
 		return null;
 	}
 
+	/**
+	 * Returns the object even if it has expired.
+	 * 
+	 * @return The saved object.
+	 */
+	public Serializable getRawObject() {
+		return object;
+	}
+
+	public Date getExpirationTime() {
+		return expirationTime;
+	}
+
 	/**
 	 * Return a serialized version of the object.
 	 * 
@@ -0,0 +1,123 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Keeps the keys of a cache sorted by expiration time, along with the size of
+ * their values. Thread-safe.
+ */
+class ExpiryIndex {
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	/**
+	 * The same entries, the first one expires before.
+	 */
+	private final TreeSet<Entry> queue = new TreeSet<Entry>();
+	private long totalSize;
+
+	/**
+	 * Adds or replaces a key.
+	 * 
+	 * @param key
+	 *            Key of the entry.
+	 * @param expirationTime
+	 *            Milliseconds since the epoch.
+	 * @param size
+	 *            Bytes used by the entry.
+	 */
+	synchronized void put(String key, long expirationTime, long size) {
+		remove(key);
+		Entry entry = new Entry(key, expirationTime, size);
+		entries.put(key, entry);
+		queue.add(entry);
+		totalSize += size;
+	}
+
+	synchronized void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			queue.remove(entry);
+			totalSize -= entry.size;
+		}
+	}
+
+	/**
+	 * Removes the entries which have expired.
+	 * 
+	 * @param now
+	 *            Current time (milliseconds since the epoch).
+	 * @return Their keys.
+	 */
+	synchronized List<String> pollExpired(long now) {
+		List<String> result = new LinkedList<String>();
+		while (!queue.isEmpty() && queue.first().expirationTime <= now) {
+			result.add(poll());
+		}
+		return result;
+	}
+
+	/**
+	 * Removes the entries which expire before until the total size fits in the
+	 * given budget.
+	 * 
+	 * @param maximumSize
+	 *            Maximum bytes.
+	 * @return Keys of the removed entries.
+	 */
+	synchronized List<String> pollOverBudget(long maximumSize) {
+		List<String> result = new LinkedList<String>();
+		while (totalSize > maximumSize && !queue.isEmpty()) {
+			result.add(poll());
+		}
+		return result;
+	}
+
+	private String poll() {
+		Entry entry = queue.pollFirst();
+		entries.remove(entry.key);
+		totalSize -= entry.size;
+		return entry.key;
+	}
+
+	synchronized boolean contains(String key) {
+		return entries.containsKey(key);
+	}
+
+	synchronized long getTotalSize() {
+		return totalSize;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		queue.clear();
+		totalSize = 0;
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		private final String key;
+		private final long expirationTime;
+		private final long size;
+
+		Entry(String key, long expirationTime, long size) {
+			this.key = key;
+			this.expirationTime = expirationTime;
+			this.size = size;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (expirationTime != other.expirationTime) {
+				return expirationTime < other.expirationTime ? -1 : 1;
+			}
+			return key.compareTo(other.key);
+		}
+	}
+}
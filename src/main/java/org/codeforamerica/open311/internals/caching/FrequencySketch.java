@@ -0,0 +1,131 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estimates how often every key has been used lately (a count-min sketch of 4
+ * bits counters). The counters are halved periodically, so old popularity
+ * fades away. Its operations don't block, and the estimation is only
+ * approximate under contention.
+ */
+class FrequencySketch {
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int MAX_COUNT = 15;
+	private static final int[] SEEDS = { 0x97cb3127, 0xc2b2ae35, 0x85ebca6b,
+			0x27d4eb2f };
+	/**
+	 * Each long holds 16 counters.
+	 */
+	private final AtomicLongArray table;
+	private final int tableMask;
+	private final int sampleSize;
+	private final AtomicInteger additions = new AtomicInteger();
+
+	/**
+	 * Builds a sketch for the given number of keys.
+	 * 
+	 * @param maximumSize
+	 *            Number of keys whose frequency is relevant (the size of the
+	 *            cache).
+	 */
+	FrequencySketch(int maximumSize) {
+		int length = 1;
+		while (length < maximumSize && length < (1 << 24)) {
+			length <<= 1;
+		}
+		table = new AtomicLongArray(length);
+		tableMask = length - 1;
+		sampleSize = maximumSize > Integer.MAX_VALUE / 10 ? Integer.MAX_VALUE
+				: Math.max(10 * maximumSize, 10);
+	}
+
+	/**
+	 * Estimates the frequency of a key.
+	 * 
+	 * @param key
+	 *            A key.
+	 * @return Number of uses (up to 15).
+	 */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int index = indexOf(hash, i);
+			int offset = offsetOf(hash, i);
+			int count = (int) ((table.get(index) >>> offset) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Records a use of the key.
+	 * 
+	 * @param key
+	 *            A key.
+	 */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+		}
+		if (added && additions.incrementAndGet() >= sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int offset) {
+		long mask = 0xfL << offset;
+		while (true) {
+			long current = table.get(index);
+			if ((current & mask) == mask) {
+				return false;
+			}
+			if (table.compareAndSet(index, current, current + (1L << offset))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Halves every counter.
+	 */
+	private void reset() {
+		synchronized (additions) {
+			if (additions.get() < sampleSize) {
+				return;
+			}
+			for (int i = 0; i < table.length(); i++) {
+				while (true) {
+					long current = table.get(i);
+					if (table.compareAndSet(i, current,
+							(current >>> 1) & RESET_MASK)) {
+						break;
+					}
+				}
+			}
+			additions.set(additions.get() / 2);
+		}
+	}
+
+	private int indexOf(int hash, int i) {
+		int h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 16;
+		return h & tableMask;
+	}
+
+	/**
+	 * Every hash function uses a different group of 4 counters of the long.
+	 */
+	private int offsetOf(int hash, int i) {
+		return (((hash >>> (i << 3)) & 3) + (i << 2)) << 2;
+	}
+
+	private static int spread(int hash) {
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		return (hash >>> 16) ^ hash;
+	}
+}
@@ -0,0 +1,741 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+
+/**
+ * Persistent implementation of the {@link Cache} interface which appends every
+ * saved property to a log of segment files, so a write costs the size of the
+ * entry (not the size of the whole cache). The position of the last value of
+ * each key is kept in memory.
+ * 
+ * Each record is checksummed. When the cache is opened, the segments are read
+ * in order to rebuild the index, and an incomplete or corrupt record at the
+ * end of the log (an interrupted write) is discarded.
+ * 
+ * The replaced values are garbage. When there is more garbage than live data,
+ * the segments are compacted in background: the live records are copied to a
+ * new segment and the old ones are deleted.
+ * 
+ * Only an instance can use a directory at the same time.
+ */
+public class LogStructuredCache extends AbstractCache implements Closeable {
+
+	public static final String DEFAULT_DIRECTORY = "cache-log";
+	/**
+	 * A new segment is started when the current one reaches this size.
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	/**
+	 * Garbage which is tolerated without compacting, whatever the live data
+	 * is.
+	 */
+	private static final long MINIMUM_GARBAGE_TO_COMPACT = 1024 * 1024;
+	private static final String ENCODING = "UTF-8";
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String COMPACTING_SUFFIX = ".compacting";
+	private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+	private static final String LOCK_FILE = "cache.lock";
+	/**
+	 * CRC, key length and value length.
+	 */
+	private static final int HEADER_SIZE = 12;
+	private static final int MAX_KEY_SIZE = 64 * 1024;
+	private static final int MAX_VALUE_SIZE = 256 * 1024 * 1024;
+	/**
+	 * Value length of the records which delete a key.
+	 */
+	private static final int TOMBSTONE = -1;
+
+	private final File directory;
+	private final long segmentSize;
+	private final Executor compactionExecutor;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * Position of the last value of each key.
+	 */
+	private final Map<String, Location> index = new HashMap<String, Location>();
+	/**
+	 * Segments sorted by id, the last one is the active segment.
+	 */
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private final AtomicBoolean compacting = new AtomicBoolean();
+	private final RandomAccessFile lockFile;
+	private final FileLock directoryLock;
+	private long nextSegmentId = 1;
+	private long totalBytes;
+	private long liveBytes;
+	/**
+	 * Incremented when the whole cache is deleted, so a compaction which was
+	 * running at that moment is discarded.
+	 */
+	private long epoch;
+	private boolean closed;
+
+	/**
+	 * Opens (or creates) the cache in the {@link #DEFAULT_DIRECTORY}.
+	 */
+	public LogStructuredCache() {
+		this(new File(DEFAULT_DIRECTORY));
+	}
+
+	/**
+	 * Opens (or creates) the cache in the given directory.
+	 * 
+	 * @param directory
+	 *            Directory of the segments.
+	 */
+	public LogStructuredCache(File directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE, PlatformManager.getInstance()
+				.getInternalExecutor());
+	}
+
+	/**
+	 * Opens (or creates) the cache in the given directory.
+	 * 
+	 * @param directory
+	 *            Directory of the segments.
+	 * @param segmentSize
+	 *            Size (in bytes) from which a new segment is started.
+	 * @param compactionExecutor
+	 *            Runs the compactions.
+	 */
+	public LogStructuredCache(File directory, long segmentSize,
+			Executor compactionExecutor) {
+		super();
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.compactionExecutor = compactionExecutor;
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Couldn't create " + directory);
+			}
+			lockFile = new RandomAccessFile(new File(directory, LOCK_FILE),
+					"rw");
+			directoryLock = tryLock(lockFile);
+			if (directoryLock == null) {
+				lockFile.close();
+				throw new IOException(directory + " is used by another cache.");
+			}
+			recover();
+		} catch (IOException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error loading the cache: " + e.getMessage());
+			throw new Error("Couldn't create/load the cache directory.");
+		}
+	}
+
+	private static FileLock tryLock(RandomAccessFile file) throws IOException {
+		try {
+			return file.getChannel().tryLock();
+		} catch (OverlappingFileLockException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected void saveProperty(String key, String value) {
+		if (key != null && key.length() > 0 && value != null
+				&& value.length() > 0) {
+			try {
+				append(key, value.getBytes(ENCODING));
+			} catch (IOException e) {
+				PlatformManager.getInstance().buildLogger()
+						.logError("Error saving a property: " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	protected String getProperty(String key) {
+		byte[] value = getEncoded(key);
+		try {
+			return value != null ? new String(value, ENCODING) : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the encoded objects as they are, without converting them to text.
+	 */
+	@Override
+	protected void saveEncoded(String key, byte[] value) {
+		if (key != null && key.length() > 0 && value != null
+				&& value.length > 0) {
+			append(key, value);
+		}
+	}
+
+	@Override
+	protected byte[] getEncoded(String key) {
+		lock.readLock().lock();
+		try {
+			Location location = key != null && !closed ? index.get(key) : null;
+			if (location == null) {
+				return null;
+			}
+			byte[] value = new byte[location.valueLength];
+			readFully(location.segment.channel, ByteBuffer.wrap(value),
+					location.valueOffset());
+			return value;
+		} catch (IOException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error reading a property: " + e.getMessage());
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected void removeProperty(String key) {
+		if (key != null && key.length() > 0) {
+			append(key, null);
+		}
+	}
+
+	@Override
+	protected Set<String> getPropertyKeys() {
+		lock.readLock().lock();
+		try {
+			return new HashSet<String>(index.keySet());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void deleteCache() {
+		lock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			epoch++;
+			for (Segment segment : segments) {
+				segment.delete();
+			}
+			segments.clear();
+			index.clear();
+			clearExpiryIndex();
+			totalBytes = 0;
+			liveBytes = 0;
+			segments.add(openSegment(nextSegmentId++));
+		} catch (IOException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error deleting the cache: " + e.getMessage());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Closes the segments and releases the directory. The cache can't be used
+	 * afterwards.
+	 */
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			epoch++;
+			for (Segment segment : segments) {
+				segment.close();
+			}
+			directoryLock.release();
+			lockFile.close();
+		} catch (IOException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error closing the cache: " + e.getMessage());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Size of the segments.
+	 * 
+	 * @return Total bytes of the log.
+	 */
+	public long getLogSize() {
+		lock.readLock().lock();
+		try {
+			return totalBytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends a record and points the index to it.
+	 * 
+	 * @param key
+	 *            Key of the property.
+	 * @param valueBytes
+	 *            Value of the property, <code>null</code> to remove it.
+	 */
+	private void append(String key, byte[] valueBytes) {
+		boolean compact;
+		lock.writeLock().lock();
+		try {
+			if (closed || (valueBytes == null && !index.containsKey(key))) {
+				return;
+			}
+			byte[] keyBytes = key.getBytes(ENCODING);
+			ByteBuffer record = encode(keyBytes, valueBytes);
+			Segment active = segments.get(segments.size() - 1);
+			if (active.size > 0 && active.size + record.remaining() > segmentSize) {
+				active = roll();
+			}
+			long offset = active.size;
+			try {
+				writeFully(active.channel, record, offset);
+			} catch (IOException e) {
+				// Leaves the log as it was before the write.
+				active.channel.truncate(offset);
+				throw e;
+			}
+			int recordLength = record.capacity();
+			active.size += recordLength;
+			totalBytes += recordLength;
+			Location previous;
+			if (valueBytes != null) {
+				Location location = new Location(active, offset,
+						keyBytes.length, valueBytes.length);
+				previous = index.put(key, location);
+				liveBytes += recordLength;
+			} else {
+				previous = index.remove(key);
+			}
+			if (previous != null) {
+				liveBytes -= previous.length();
+			}
+			compact = needsCompaction();
+		} catch (IOException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error saving a property: " + e.getMessage());
+			return;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (compact && compacting.compareAndSet(false, true)) {
+			compactionExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						doCompact();
+					} finally {
+						compacting.set(false);
+					}
+				}
+			});
+		}
+	}
+
+	private boolean needsCompaction() {
+		long garbage = totalBytes - liveBytes;
+		return garbage > MINIMUM_GARBAGE_TO_COMPACT && garbage > liveBytes;
+	}
+
+	/**
+	 * Compacts the log now (it is usually done in background when needed):
+	 * the live records of every segment are copied to a new one and the old
+	 * segments are deleted.
+	 */
+	public void compact() {
+		while (!compacting.compareAndSet(false, true)) {
+			Thread.yield();
+		}
+		try {
+			doCompact();
+		} finally {
+			compacting.set(false);
+		}
+	}
+
+	private void doCompact() {
+		List<Segment> sealed;
+		long targetId;
+		long compactionEpoch;
+		lock.writeLock().lock();
+		try {
+			if (closed || totalBytes == liveBytes) {
+				return;
+			}
+			// The compacted segment goes after the old ones and before the
+			// new active segment, so the log keeps the order of the writes.
+			sealed = new ArrayList<Segment>(segments);
+			targetId = nextSegmentId++;
+			roll();
+			compactionEpoch = epoch;
+		} catch (IOException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error compacting the cache: " + e.getMessage());
+			return;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		File temporary = new File(directory, segmentName(targetId)
+				+ COMPACTING_SUFFIX);
+		try {
+			List<MovedRecord> moved = copyLiveRecords(sealed, temporary,
+					compactionEpoch);
+			if (moved == null) {
+				temporary.delete();
+				return;
+			}
+			File target = new File(directory, segmentName(targetId));
+			if (!temporary.renameTo(target)) {
+				throw new IOException("Couldn't rename " + temporary);
+			}
+			lock.writeLock().lock();
+			try {
+				if (epoch != compactionEpoch) {
+					target.delete();
+					return;
+				}
+				Segment compacted = openSegment(targetId);
+				compacted.size = compacted.channel.size();
+				for (MovedRecord record : moved) {
+					if (index.get(record.key) == record.from) {
+						index.put(record.key, new Location(compacted,
+								record.offset, record.from.keyLength,
+								record.from.valueLength));
+					}
+				}
+				segments.removeAll(sealed);
+				segments.add(0, compacted);
+				for (Segment segment : sealed) {
+					segment.delete();
+					totalBytes -= segment.size;
+				}
+				totalBytes += compacted.size;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} catch (IOException e) {
+			temporary.delete();
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error compacting the cache: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Copies the records of the given segments which are still pointed by the
+	 * index to a new file.
+	 * 
+	 * @return The copied records or <code>null</code> if the cache was
+	 *         deleted or closed meanwhile.
+	 */
+	private List<MovedRecord> copyLiveRecords(List<Segment> sealed,
+			File temporary, long compactionEpoch) throws IOException {
+		List<MovedRecord> moved = new LinkedList<MovedRecord>();
+		RandomAccessFile output = new RandomAccessFile(temporary, "rw");
+		try {
+			FileChannel outputChannel = output.getChannel();
+			outputChannel.truncate(0);
+			long outputSize = 0;
+			for (Segment segment : sealed) {
+				long offset = 0;
+				while (true) {
+					lock.readLock().lock();
+					try {
+						if (epoch != compactionEpoch) {
+							return null;
+						}
+						if (offset >= segment.size) {
+							break;
+						}
+						Record record = readRecord(segment.channel, offset,
+								segment.size);
+						if (record == null) {
+							break;
+						}
+						Location location = index.get(record.key);
+						if (location != null && location.segment == segment
+								&& location.offset == offset) {
+							record.buffer.rewind();
+							writeFully(outputChannel, record.buffer, outputSize);
+							moved.add(new MovedRecord(record.key, location,
+									outputSize));
+							outputSize += record.length;
+						}
+						offset += record.length;
+					} finally {
+						lock.readLock().unlock();
+					}
+				}
+			}
+			outputChannel.force(true);
+		} finally {
+			output.close();
+		}
+		return moved;
+	}
+
+	/**
+	 * Reads every segment of the directory in order and rebuilds the index.
+	 */
+	private void recover() throws IOException {
+		List<Long> ids = new ArrayList<Long>();
+		File[] files = directory.listFiles();
+		for (File file : files != null ? files : new File[0]) {
+			if (file.getName().endsWith(COMPACTING_SUFFIX)) {
+				// An interrupted compaction, the old segments are still there.
+				file.delete();
+				continue;
+			}
+			Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+			if (matcher.matches()) {
+				ids.add(Long.valueOf(matcher.group(1)));
+			}
+		}
+		Collections.sort(ids);
+		for (int i = 0; i < ids.size(); i++) {
+			Segment segment = openSegment(ids.get(i));
+			segment.size = segment.channel.size();
+			segments.add(segment);
+			totalBytes += segment.size;
+			long offset = 0;
+			Record record;
+			while (offset < segment.size
+					&& (record = readRecord(segment.channel, offset,
+							segment.size)) != null) {
+				Location previous;
+				if (record.valueLength != TOMBSTONE) {
+					previous = index.put(record.key, new Location(segment,
+							offset, record.keyLength, record.valueLength));
+					liveBytes += record.length;
+				} else {
+					previous = index.remove(record.key);
+				}
+				if (previous != null) {
+					liveBytes -= previous.length();
+				}
+				offset += record.length;
+			}
+			if (offset < segment.size) {
+				PlatformManager.getInstance().buildLogger()
+						.logError("Discarding a damaged record in " + segment.file);
+				if (i == ids.size() - 1) {
+					// Interrupted write, the segment will be written again.
+					segment.channel.truncate(offset);
+					totalBytes -= segment.size - offset;
+					segment.size = offset;
+				}
+			}
+			nextSegmentId = segment.id + 1;
+		}
+		if (segments.isEmpty()) {
+			segments.add(openSegment(nextSegmentId++));
+		}
+	}
+
+	/**
+	 * Starts a new active segment.
+	 * 
+	 * @return The new active segment.
+	 */
+	private Segment roll() throws IOException {
+		Segment segment = openSegment(nextSegmentId++);
+		segments.add(segment);
+		return segment;
+	}
+
+	private Segment openSegment(long id) throws IOException {
+		return new Segment(id, new File(directory, segmentName(id)));
+	}
+
+	private static String segmentName(long id) {
+		return SEGMENT_PREFIX + String.format("%016d", id) + SEGMENT_SUFFIX;
+	}
+
+	/**
+	 * Builds a record: CRC, key length, value length (<code>-1</code> if it
+	 * is a tombstone), key and value.
+	 */
+	private static ByteBuffer encode(byte[] key, byte[] value) {
+		int valueLength = value != null ? value.length : TOMBSTONE;
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + key.length
+				+ Math.max(valueLength, 0));
+		record.position(4);
+		record.putInt(key.length);
+		record.putInt(valueLength);
+		record.put(key);
+		if (value != null) {
+			record.put(value);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 4, record.capacity() - 4);
+		record.putInt(0, (int) crc.getValue());
+		record.rewind();
+		return record;
+	}
+
+	/**
+	 * Reads and checks a record.
+	 * 
+	 * @return The record or <code>null</code> if it is incomplete or
+	 *         damaged.
+	 */
+	private static Record readRecord(FileChannel channel, long offset,
+			long limit) throws IOException {
+		if (limit - offset < HEADER_SIZE) {
+			return null;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, offset);
+		int crc = header.getInt(0);
+		int keyLength = header.getInt(4);
+		int valueLength = header.getInt(8);
+		if (keyLength <= 0 || keyLength > MAX_KEY_SIZE
+				|| valueLength < TOMBSTONE || valueLength > MAX_VALUE_SIZE) {
+			return null;
+		}
+		int length = HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+		if (limit - offset < length) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		readFully(channel, buffer, offset);
+		CRC32 computed = new CRC32();
+		computed.update(buffer.array(), 4, length - 4);
+		if ((int) computed.getValue() != crc) {
+			return null;
+		}
+		return new Record(new String(buffer.array(), HEADER_SIZE, keyLength,
+				ENCODING), keyLength, valueLength, buffer);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of the cache log.");
+			}
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	/**
+	 * A file of the log.
+	 */
+	private static class Segment {
+		private final long id;
+		private final File file;
+		private final RandomAccessFile randomAccessFile;
+		private final FileChannel channel;
+		private long size;
+
+		Segment(long id, File file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.randomAccessFile = new RandomAccessFile(file, "rw");
+			this.channel = randomAccessFile.getChannel();
+		}
+
+		void close() throws IOException {
+			randomAccessFile.close();
+		}
+
+		void delete() throws IOException {
+			close();
+			if (!file.delete()) {
+				throw new IOException("Couldn't delete " + file);
+			}
+		}
+	}
+
+	/**
+	 * Position of a record.
+	 */
+	private static class Location {
+		private final Segment segment;
+		private final long offset;
+		private final int keyLength;
+		private final int valueLength;
+
+		Location(Segment segment, long offset, int keyLength, int valueLength) {
+			this.segment = segment;
+			this.offset = offset;
+			this.keyLength = keyLength;
+			this.valueLength = valueLength;
+		}
+
+		long valueOffset() {
+			return offset + HEADER_SIZE + keyLength;
+		}
+
+		int length() {
+			return HEADER_SIZE + keyLength + valueLength;
+		}
+	}
+
+	/**
+	 * A record read from a segment.
+	 */
+	private static class Record {
+		private final String key;
+		private final int keyLength;
+		private final int valueLength;
+		private final int length;
+		private final ByteBuffer buffer;
+
+		Record(String key, int keyLength, int valueLength, ByteBuffer buffer) {
+			this.key = key;
+			this.keyLength = keyLength;
+			this.valueLength = valueLength;
+			this.length = buffer.capacity();
+			this.buffer = buffer;
+		}
+	}
+
+	/**
+	 * A live record copied by a compaction.
+	 */
+	private static class MovedRecord {
+		private final String key;
+		private final Location from;
+		private final long offset;
+
+		MovedRecord(String key, Location from, long offset) {
+			this.key = key;
+			this.from = from;
+			this.offset = offset;
+		}
+	}
+}
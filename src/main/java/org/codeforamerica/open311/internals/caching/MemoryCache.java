@@ -0,0 +1,505 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codeforamerica.open311.facade.City;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceDiscoveryInfo;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+import org.codeforamerica.open311.internals.network.Validators;
+
+/**
+ * Implementation of the {@link Cache} interface which keeps the objects in
+ * memory, as they are (nothing is serialized), so a hit costs a hash lookup.
+ * Nothing is persisted.
+ * 
+ * It is bounded by a number of entries and by a weight (the number of elements
+ * of the saved lists, a single object weighs 1). When it is full, the least
+ * recently used of a sample of entries is proposed as victim, and the new
+ * entry is only admitted if it has been asked for more often than the victim
+ * lately (TinyLFU), so a burst of one-off queries doesn't flush the useful
+ * entries.
+ * 
+ * The expired entries of the operations with a maximum staleness are kept
+ * until it is exceeded (if they aren't evicted before).
+ * 
+ * Reads don't block. The lists are saved as read-only copies, so the cached
+ * lists can't be modified.
+ */
+public class MemoryCache implements RevalidatingCache {
+
+	public static final int DEFAULT_MAXIMUM_ENTRIES = 1000;
+	public static final long DEFAULT_MAXIMUM_WEIGHT = 100000;
+	/**
+	 * Number of entries considered each time a victim has to be chosen.
+	 */
+	private static final int EVICTION_SAMPLE_SIZE = 8;
+	/**
+	 * Separates the operation and the url in the keys of the validators.
+	 */
+	private static final String VALIDATORS_SEPARATOR = "#validators#";
+
+	private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<String, CacheEntry>();
+	private final FrequencySketch sketch;
+	private final int maximumEntries;
+	private final long maximumWeight;
+	private final AtomicLong weight = new AtomicLong();
+	/**
+	 * Time to live (milliseconds) of each operation.
+	 */
+	private final Map<CacheableOperation, Long> timeToLive = Collections
+			.synchronizedMap(new EnumMap<CacheableOperation, Long>(
+					CacheableOperation.class));
+	/**
+	 * Time (milliseconds) the data of each operation is kept after expiring.
+	 */
+	private final Map<CacheableOperation, Long> maximumStaleness = Collections
+			.synchronizedMap(new EnumMap<CacheableOperation, Long>(
+					CacheableOperation.class));
+	/**
+	 * Walks the entries looking for victims. Only used while holding the
+	 * lock of the writes.
+	 */
+	private Iterator<CacheEntry> evictionCursor;
+	private final Object writeLock = new Object();
+
+	/**
+	 * Builds a cache with the default bounds.
+	 */
+	public MemoryCache() {
+		this(DEFAULT_MAXIMUM_ENTRIES, DEFAULT_MAXIMUM_WEIGHT);
+	}
+
+	/**
+	 * Builds a cache with the given bounds.
+	 * 
+	 * @param maximumEntries
+	 *            Maximum number of saved responses.
+	 * @param maximumWeight
+	 *            Maximum number of saved objects (the elements of a list
+	 *            count one by one).
+	 */
+	public MemoryCache(int maximumEntries, long maximumWeight) {
+		if (maximumEntries < 1 || maximumWeight < 1) {
+			throw new IllegalArgumentException(
+					"The bounds of the cache must be positive.");
+		}
+		this.maximumEntries = maximumEntries;
+		this.maximumWeight = maximumWeight;
+		this.sketch = new FrequencySketch(maximumEntries);
+		for (CacheableOperation operation : CacheableOperation.values()) {
+			timeToLive.put(operation, TimeUnit.HOURS.toMillis(operation
+					.getDefaultTimeToLive()));
+			maximumStaleness.put(operation, 0L);
+		}
+	}
+
+	@Override
+	public void saveCitiesInfo(String data) {
+		if (data != null) {
+			put(CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS.toString(),
+					CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS, data,
+					1);
+		}
+	}
+
+	@Override
+	public String retrieveCitiesInfo() {
+		return (String) get(CacheableOperation.GET_CITIES_SERVICE_DISCOVERY_URLS
+				.toString());
+	}
+
+	@Override
+	public void saveServiceDiscovery(City city,
+			ServiceDiscoveryInfo serviceDiscovery) {
+		if (city != null && serviceDiscovery != null) {
+			put(CacheableOperation.GET_SERVICE_DISCOVERY.toString()
+					+ city.toString(), CacheableOperation.GET_SERVICE_DISCOVERY,
+					serviceDiscovery, 1);
+		}
+	}
+
+	@Override
+	public ServiceDiscoveryInfo retrieveCachedServiceDiscoveryInfo(City city) {
+		if (city != null) {
+			return (ServiceDiscoveryInfo) get(CacheableOperation.GET_SERVICE_DISCOVERY
+					+ city.toString());
+		}
+		return null;
+	}
+
+	@Override
+	public void saveListOfServices(String endpointUrl, List<Service> services) {
+		if (endpointUrl != null && endpointUrl.length() > 0 && services != null) {
+			putList(CacheableOperation.GET_SERVICE_LIST.toString()
+					+ endpointUrl, CacheableOperation.GET_SERVICE_LIST,
+					services);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Service> retrieveCachedServiceList(String endpointUrl) {
+		return (List<Service>) get(CacheableOperation.GET_SERVICE_LIST
+				+ endpointUrl);
+	}
+
+	@Override
+	public void saveServiceDefinition(String endpointUrl, String serviceCode,
+			ServiceDefinition serviceDefinition) {
+		if (endpointUrl != null && endpointUrl.length() > 0
+				&& serviceCode != null && serviceCode.length() > 0
+				&& serviceDefinition != null) {
+			put(CacheableOperation.GET_SERVICE_DEFINITION.toString()
+					+ endpointUrl + serviceCode,
+					CacheableOperation.GET_SERVICE_DEFINITION,
+					serviceDefinition, 1);
+		}
+	}
+
+	@Override
+	public ServiceDefinition retrieveCachedServiceDefinition(
+			String endpointUrl, String serviceCode) {
+		return (ServiceDefinition) get(CacheableOperation.GET_SERVICE_DEFINITION
+				+ endpointUrl + serviceCode);
+	}
+
+	@Override
+	public void saveServiceRequestList(String endpointUrl,
+			GETServiceRequestsFilter filter, List<ServiceRequest> requests) {
+		if (endpointUrl != null && endpointUrl.length() > 0 && filter != null
+				&& requests != null) {
+			putList(CacheableOperation.GET_SERVICE_REQUEST_LIST + endpointUrl
+					+ CacheKeys.filterKey(filter),
+					CacheableOperation.GET_SERVICE_REQUEST_LIST, requests);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<ServiceRequest> retrieveCachedServiceRequests(
+			String endpointUrl, GETServiceRequestsFilter filter) {
+		return (List<ServiceRequest>) get(CacheableOperation.GET_SERVICE_REQUEST_LIST
+				+ endpointUrl + CacheKeys.filterKey(filter));
+	}
+
+	@Override
+	public void saveSingleServiceRequest(String endpointUrl,
+			String serviceRequestId, ServiceRequest request) {
+		if (endpointUrl != null && endpointUrl.length() > 0
+				&& serviceRequestId != null && serviceRequestId.length() > 0
+				&& request != null) {
+			put(CacheableOperation.GET_SINGLE_SERVICE_REQUEST + endpointUrl
+					+ serviceRequestId,
+					CacheableOperation.GET_SINGLE_SERVICE_REQUEST, request, 1);
+		}
+	}
+
+	@Override
+	public ServiceRequest retrieveCachedServiceRequest(String endpointUrl,
+			String serviceRequestId) {
+		return (ServiceRequest) get(CacheableOperation.GET_SINGLE_SERVICE_REQUEST
+				+ endpointUrl + serviceRequestId);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Service> retrieveStaleServiceList(String endpointUrl) {
+		return (List<Service>) getStale(CacheableOperation.GET_SERVICE_LIST
+				+ endpointUrl);
+	}
+
+	@Override
+	public ServiceDefinition retrieveStaleServiceDefinition(
+			String endpointUrl, String serviceCode) {
+		return (ServiceDefinition) getStale(CacheableOperation.GET_SERVICE_DEFINITION
+				+ endpointUrl + serviceCode);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<ServiceRequest> retrieveStaleServiceRequests(
+			String endpointUrl, GETServiceRequestsFilter filter) {
+		return (List<ServiceRequest>) getStale(CacheableOperation.GET_SERVICE_REQUEST_LIST
+				+ endpointUrl + CacheKeys.filterKey(filter));
+	}
+
+	@Override
+	public ServiceRequest retrieveStaleServiceRequest(String endpointUrl,
+			String serviceRequestId) {
+		return (ServiceRequest) getStale(CacheableOperation.GET_SINGLE_SERVICE_REQUEST
+				+ endpointUrl + serviceRequestId);
+	}
+
+	@Override
+	public void saveValidators(CacheableOperation operation, String url,
+			Validators validators) {
+		if (operation != null && url != null && url.length() > 0
+				&& validators != null && !validators.isEmpty()) {
+			put(operation + VALIDATORS_SEPARATOR + url, operation, validators,
+					1);
+		}
+	}
+
+	@Override
+	public Validators retrieveValidators(CacheableOperation operation,
+			String url) {
+		if (operation == null) {
+			return null;
+		}
+		return (Validators) getStale(operation + VALIDATORS_SEPARATOR + url);
+	}
+
+	@Override
+	public void setMaximumStaleness(CacheableOperation operation,
+			long maximumStaleness, TimeUnit unit) {
+		if (operation != null && maximumStaleness >= 0 && unit != null) {
+			this.maximumStaleness.put(operation,
+					unit.toMillis(maximumStaleness));
+		}
+	}
+
+	@Override
+	public void deleteCache() {
+		synchronized (writeLock) {
+			for (CacheEntry entry : entries.values()) {
+				remove(entry);
+			}
+			evictionCursor = null;
+		}
+	}
+
+	@Override
+	public void setCustomTimeToLive(CacheableOperation operation,
+			int timeToLiveInHours) {
+		if (timeToLiveInHours >= 1) {
+			setTimeToLive(operation, timeToLiveInHours, TimeUnit.HOURS);
+		}
+	}
+
+	/**
+	 * Sets the time to live of the data of an operation with any precision.
+	 * It only affects to the data saved from now on.
+	 * 
+	 * @param operation
+	 *            Operation which time to live will be changed.
+	 * @param timeToLive
+	 *            New time to live (positive).
+	 * @param unit
+	 *            Unit of the given time.
+	 */
+	public void setTimeToLive(CacheableOperation operation, long timeToLive,
+			TimeUnit unit) {
+		if (operation != null && timeToLive > 0 && unit != null) {
+			this.timeToLive.put(operation, unit.toMillis(timeToLive));
+		}
+	}
+
+	/**
+	 * Number of saved responses (the expired ones which haven't been found
+	 * yet included).
+	 * 
+	 * @return Number of entries.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Total weight of the saved responses.
+	 * 
+	 * @return Number of saved objects.
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	/**
+	 * Saves a read-only copy of a list.
+	 */
+	private void putList(String key, CacheableOperation operation,
+			List<?> list) {
+		put(key, operation,
+				Collections.unmodifiableList(new ArrayList<Object>(list)),
+				Math.max(1, list.size()));
+	}
+
+	/**
+	 * Saves an object if it fits and it is admitted. The object which
+	 * replaces a saved one of the same key is always admitted.
+	 * 
+	 * @param key
+	 *            Key of the entry.
+	 * @param operation
+	 *            Operation which obtained the object.
+	 * @param value
+	 *            Object to save.
+	 * @param entryWeight
+	 *            Weight of the object.
+	 */
+	private void put(String key, CacheableOperation operation, Object value,
+			int entryWeight) {
+		if (entryWeight > maximumWeight) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long expirationTime = now + timeToLive.get(operation);
+		CacheEntry entry = new CacheEntry(key, value, entryWeight,
+				expirationTime, expirationTime + maximumStaleness.get(operation),
+				System.nanoTime());
+		synchronized (writeLock) {
+			CacheEntry previous = entries.get(key);
+			if (previous != null) {
+				remove(previous);
+			}
+			while (entries.size() >= maximumEntries
+					|| weight.get() + entryWeight > maximumWeight) {
+				CacheEntry victim = chooseVictim(now);
+				if (victim == null) {
+					if (previous != null
+							&& entries.putIfAbsent(key, previous) == null) {
+						weight.addAndGet(previous.weight);
+					}
+					return;
+				}
+				// An update of a saved key is always admitted, otherwise
+				// both the old and the new object would be lost.
+				if (previous == null && victim.expirationTime > now
+						&& sketch.frequency(key) <= sketch
+								.frequency(victim.key)) {
+					// Not admitted, it is less popular than what it replaces.
+					return;
+				}
+				remove(victim);
+			}
+			entries.put(key, entry);
+			weight.addAndGet(entryWeight);
+		}
+	}
+
+	/**
+	 * Looks for a saved object and records the access (a miss is recorded as
+	 * well, the object will probably be saved next).
+	 * 
+	 * @param key
+	 *            Key of the entry.
+	 * @return The object or <code>null</code> if it isn't saved or it has
+	 *         expired.
+	 */
+	private Object get(String key) {
+		sketch.increment(key);
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (entry.expirationTime <= now) {
+			if (entry.removalTime <= now) {
+				remove(entry);
+			}
+			return null;
+		}
+		entry.lastAccess = System.nanoTime();
+		return entry.value;
+	}
+
+	/**
+	 * Looks for a saved object, even if it has expired (but it hasn't
+	 * exceeded the maximum staleness).
+	 * 
+	 * @param key
+	 *            Key of the entry.
+	 * @return The object or <code>null</code> if it isn't saved or it is too
+	 *         old.
+	 */
+	private Object getStale(String key) {
+		sketch.increment(key);
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.removalTime <= System.currentTimeMillis()) {
+			remove(entry);
+			return null;
+		}
+		entry.lastAccess = System.nanoTime();
+		return entry.value;
+	}
+
+	/**
+	 * Removes an entry (if it is still saved).
+	 */
+	private void remove(CacheEntry entry) {
+		if (entries.remove(entry.key, entry)) {
+			weight.addAndGet(-entry.weight);
+		}
+	}
+
+	/**
+	 * Chooses the entry to evict among the next ones of the eviction cursor:
+	 * the first expired one or the least recently used.
+	 * 
+	 * @param now
+	 *            Current time.
+	 * @return The victim or <code>null</code> if the cache is empty.
+	 */
+	private CacheEntry chooseVictim(long now) {
+		CacheEntry victim = null;
+		boolean restarted = false;
+		for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+			if (evictionCursor == null || !evictionCursor.hasNext()) {
+				if (restarted) {
+					break;
+				}
+				evictionCursor = entries.values().iterator();
+				restarted = true;
+				if (!evictionCursor.hasNext()) {
+					break;
+				}
+			}
+			CacheEntry candidate = evictionCursor.next();
+			if (candidate.expirationTime <= now) {
+				return candidate;
+			}
+			if (victim == null || candidate.lastAccess < victim.lastAccess) {
+				victim = candidate;
+			}
+		}
+		return victim;
+	}
+
+	/**
+	 * A saved object.
+	 */
+	private static class CacheEntry {
+		private final String key;
+		private final Object value;
+		private final int weight;
+		private final long expirationTime;
+		/**
+		 * Expiration time plus the maximum staleness.
+		 */
+		private final long removalTime;
+		private volatile long lastAccess;
+
+		CacheEntry(String key, Object value, int weight, long expirationTime,
+				long removalTime, long lastAccess) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.expirationTime = expirationTime;
+			this.removalTime = removalTime;
+			this.lastAccess = lastAccess;
+		}
+	}
+}
@@ -4,7 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Properties;
+import java.util.Set;
 
 import org.codeforamerica.open311.internals.platform.PlatformManager;
 
@@ -37,7 +40,12 @@ public class RegularJavaCache extends AbstractCache {
 				cacheFile.createNewFile();
 			}
 			this.properties = new Properties();
-			this.properties.load(new FileInputStream(cacheFile));
+			FileInputStream input = new FileInputStream(cacheFile);
+			try {
+				this.properties.load(input);
+			} finally {
+				input.close();
+			}
 		} catch (IOException e) {
 			PlatformManager.getInstance().buildLogger()
 					.logError("Error loading the cache: " + e.getMessage());
@@ -51,7 +59,7 @@ public class RegularJavaCache extends AbstractCache {
 				&& value.length() > 0) {
 			try {
 				properties.setProperty(key, value);
-				properties.store(new FileOutputStream(FILE), null);
+				store();
 			} catch (IOException e) {
 				PlatformManager.getInstance().buildLogger()
 						.logError("Error saving a property: " + e.getMessage());
@@ -64,15 +72,57 @@ public class RegularJavaCache extends AbstractCache {
 		return properties.getProperty(key);
 	}
 
+	@Override
+	protected void removeProperty(String key) {
+		removeProperties(Collections.singleton(key));
+	}
+
+	/**
+	 * Removes the properties and writes the file once.
+	 */
+	@Override
+	protected void removeProperties(Collection<String> keys) {
+		try {
+			for (String key : keys) {
+				properties.remove(key);
+			}
+			store();
+		} catch (IOException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error removing a property: " + e.getMessage());
+		}
+	}
+
+	@Override
+	protected Set<String> getPropertyKeys() {
+		return properties.stringPropertyNames();
+	}
+
 	@Override
 	public void deleteCache() {
 		try {
 			properties.clear();
-			properties.store(new FileOutputStream(FILE), null);
+			clearExpiryIndex();
+			store();
 		} catch (IOException e) {
 			PlatformManager.getInstance().buildLogger()
 					.logError("Error deleting the cache: " + e.getMessage());
 		}
 	}
 
+	/**
+	 * Writes all the properties to the file (one writer at a time, the
+	 * expired entries are removed by another thread).
+	 * 
+	 * @throws IOException
+	 *             If the file couldn't be written.
+	 */
+	private synchronized void store() throws IOException {
+		FileOutputStream output = new FileOutputStream(FILE);
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+	}
 }
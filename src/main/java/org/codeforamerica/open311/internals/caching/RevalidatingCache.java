@@ -0,0 +1,39 @@
+package org.codeforamerica.open311.internals.caching;
+
+import org.codeforamerica.open311.internals.network.Validators;
+
+/**
+ * A {@link StaleValueCache} which keeps the validators of the cached
+ * responses, so they can be revalidated with a conditional request when they
+ * expire. The validators of a response expire with it (they are kept as long
+ * as the expired response, according to the maximum staleness of its
+ * operation).
+ */
+public interface RevalidatingCache extends StaleValueCache {
+
+	/**
+	 * Saves the validators of a response.
+	 * 
+	 * @param operation
+	 *            Operation which obtained the response.
+	 * @param url
+	 *            Url of the request.
+	 * @param validators
+	 *            Validators sent by the server.
+	 */
+	public void saveValidators(CacheableOperation operation, String url,
+			Validators validators);
+
+	/**
+	 * Looks for the validators of a response, even if it has expired (but
+	 * not for longer than the maximum staleness).
+	 * 
+	 * @param operation
+	 *            Operation which obtained the response.
+	 * @param url
+	 *            Url of the request.
+	 * @return The validators or <code>null</code> if they aren't cached.
+	 */
+	public Validators retrieveValidators(CacheableOperation operation,
+			String url);
+}
@@ -0,0 +1,55 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Encodes the cached objects with the standard Java serialization (the format
+ * used by the first versions of the library).
+ */
+public class SerializationCodec implements CacheCodec {
+
+	/**
+	 * First bytes of a Java serialization stream.
+	 */
+	static final int STREAM_MAGIC = 0xACED;
+
+	@Override
+	public byte[] encode(CacheableObject object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream output = new ObjectOutputStream(bytes);
+		output.writeObject(object);
+		output.close();
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public CacheableObject decode(byte[] data) throws IOException {
+		ObjectInputStream input = new ObjectInputStream(
+				new ByteArrayInputStream(data));
+		try {
+			return (CacheableObject) input.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e.getMessage());
+		} catch (ClassCastException e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Checks if some data has been encoded by this codec.
+	 * 
+	 * @param data
+	 *            Encoded object.
+	 * @return <code>true</code> if it is a Java serialization stream.
+	 */
+	static boolean isSerialized(byte[] data) {
+		return data.length >= 2
+				&& ((data[0] & 0xff) << 8 | (data[1] & 0xff)) == STREAM_MAGIC;
+	}
+}
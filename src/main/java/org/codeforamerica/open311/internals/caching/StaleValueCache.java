@@ -0,0 +1,82 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+
+/**
+ * A {@link Cache} which can keep the data of some operations for a while
+ * after it has expired, so it can be served while it is being refreshed
+ * (stale-while-revalidate).
+ */
+public interface StaleValueCache extends Cache {
+
+	/**
+	 * Sets how long the data of an operation is kept after it has expired. It
+	 * only affects to the data saved from now on.
+	 * 
+	 * @param operation
+	 *            Operation of interest.
+	 * @param maximumStaleness
+	 *            Time (<code>0</code> removes the data as soon as it expires,
+	 *            which is the default).
+	 * @param unit
+	 *            Unit of the given time.
+	 */
+	public void setMaximumStaleness(CacheableOperation operation,
+			long maximumStaleness, TimeUnit unit);
+
+	/**
+	 * Looks for a cached list of services, even if it has expired (but not
+	 * for longer than the maximum staleness).
+	 * 
+	 * @param endpointUrl
+	 *            Url of the endpoint.
+	 * @return The list of services or <code>null</code> if it isn't cached.
+	 */
+	public List<Service> retrieveStaleServiceList(String endpointUrl);
+
+	/**
+	 * Looks for a cached service definition, even if it has expired (but not
+	 * for longer than the maximum staleness).
+	 * 
+	 * @param endpointUrl
+	 *            Url of the endpoint.
+	 * @param serviceCode
+	 *            Service code of the desired service.
+	 * @return A service definition or <code>null</code> if it isn't cached.
+	 */
+	public ServiceDefinition retrieveStaleServiceDefinition(
+			String endpointUrl, String serviceCode);
+
+	/**
+	 * Looks for a cached GET service requests response, even if it has
+	 * expired (but not for longer than the maximum staleness).
+	 * 
+	 * @param endpointUrl
+	 *            Url of the endpoint.
+	 * @param filter
+	 *            The desired filter.
+	 * @return A list of ServiceRequest or <code>null</code> if they aren't
+	 *         cached.
+	 */
+	public List<ServiceRequest> retrieveStaleServiceRequests(
+			String endpointUrl, GETServiceRequestsFilter filter);
+
+	/**
+	 * Looks for a cached GET service request response, even if it has expired
+	 * (but not for longer than the maximum staleness).
+	 * 
+	 * @param endpointUrl
+	 *            Url of the endpoint.
+	 * @param serviceRequestId
+	 *            The service request's id.
+	 * @return A ServiceRequest or <code>null</code> if it isn't cached.
+	 */
+	public ServiceRequest retrieveStaleServiceRequest(String endpointUrl,
+			String serviceRequestId);
+}
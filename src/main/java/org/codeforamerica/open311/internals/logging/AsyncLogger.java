@@ -0,0 +1,119 @@
+package org.codeforamerica.open311.internals.logging;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands the messages to another {@link Logger} from a background thread, so
+ * the threads which log never wait for its I/O. The messages are kept in a
+ * bounded ring buffer: if it is full, the new messages are dropped (and
+ * counted) instead of blocking.
+ */
+public class AsyncLogger implements Logger {
+	private final Logger delegate;
+	private final Executor executor;
+	private final BlockingQueue<Entry> buffer;
+	/**
+	 * <code>true</code> while a drain task is scheduled or running.
+	 */
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			do {
+				drain();
+				draining.set(false);
+			} while (!buffer.isEmpty() && draining.compareAndSet(false, true));
+		}
+	};
+
+	/**
+	 * Builds an instance.
+	 * 
+	 * @param delegate
+	 *            Logger which writes the messages.
+	 * @param capacity
+	 *            Maximum number of pending messages.
+	 * @param executor
+	 *            Runs the writes.
+	 */
+	public AsyncLogger(Logger delegate, int capacity, Executor executor) {
+		this.delegate = delegate;
+		this.executor = executor;
+		this.buffer = new ArrayBlockingQueue<Entry>(capacity);
+	}
+
+	@Override
+	public void logInfo(String message) {
+		enqueue(new Entry(false, message));
+	}
+
+	@Override
+	public void logError(String message) {
+		enqueue(new Entry(true, message));
+	}
+
+	/**
+	 * Writes the pending messages from the calling thread.
+	 */
+	public void flush() {
+		drain();
+	}
+
+	/**
+	 * Number of messages dropped because the buffer was full.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public Logger getDelegate() {
+		return delegate;
+	}
+
+	private void enqueue(Entry entry) {
+		if (!buffer.offer(entry)) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (draining.compareAndSet(false, true)) {
+			try {
+				executor.execute(drainTask);
+			} catch (RuntimeException e) {
+				draining.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Writes the pending messages in order. Only one thread writes at a time.
+	 */
+	private synchronized void drain() {
+		Entry entry;
+		while ((entry = buffer.poll()) != null) {
+			try {
+				if (entry.error) {
+					delegate.logError(entry.message);
+				} else {
+					delegate.logInfo(entry.message);
+				}
+			} catch (RuntimeException e) {
+				// A failing logger can't stop the rest of the messages.
+			}
+		}
+	}
+
+	private static class Entry {
+		private final boolean error;
+		private final String message;
+
+		Entry(boolean error, String message) {
+			this.error = error;
+			this.message = message;
+		}
+	}
+}
@@ -1,7 +1,8 @@
 package org.codeforamerica.open311.internals.logging;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.codeforamerica.open311.internals.platform.PlatformManager;
 
@@ -10,22 +11,39 @@ import org.codeforamerica.open311.internals.platform.PlatformManager;
  * 
  * Singleton class.
  * 
+ * The messages can be parameterized (every <code>{}</code> is replaced by the
+ * next argument), so nothing is built if the origin of the message isn't
+ * logged.
+ * 
  * @author Santiago Munín <santimunin@gmail.com>
  * 
  */
 public class LogManager {
 	/**
-	 * Unique instance of the logger.
+	 * Maximum pending messages of the asynchronous logger.
+	 */
+	public static final int ASYNCHRONOUS_CAPACITY = 1024;
+	private static final String PLACEHOLDER = "{}";
+	private static final Object NO_ARGUMENT = new Object();
+	/**
+	 * Logger of the platform, which writes the messages.
+	 */
+	private final Logger platformLogger = PlatformManager.getInstance()
+			.buildLogger();
+	/**
+	 * Unique instance of the logger (the platform one or an asynchronous
+	 * wrapper of it).
 	 */
-	private Logger logger = PlatformManager.getInstance().buildLogger();
+	private volatile Logger logger = platformLogger;
 	/**
 	 * Unique instance of the class.
 	 */
 	private static LogManager instance = new LogManager();
 	/**
-	 * Contains a wrapper if it has to be logged.
+	 * Contains a wrapper if it has to be logged. Its reads don't lock.
 	 */
-	private static Set<Object> loggedObjects = new HashSet<Object>();
+	private static Set<Object> loggedObjects = Collections
+			.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
 
 	/**
 	 * Prevents other classes to instantiate this class.
@@ -62,6 +80,49 @@ public class LogManager {
 		loggedObjects.remove(loggedObject);
 	}
 
+	/**
+	 * Checks if the messages of an object are logged. Useful to avoid building
+	 * expensive messages.
+	 * 
+	 * @param messageCreator
+	 *            origin of the messages.
+	 * @return <code>true</code> if its messages are logged.
+	 */
+	public boolean isEnabled(Object messageCreator) {
+		return !loggedObjects.isEmpty()
+				&& loggedObjects.contains(messageCreator);
+	}
+
+	/**
+	 * Writes the messages from a background thread, so the logging threads
+	 * never wait for the I/O of the logger. If too many messages are pending,
+	 * the new ones are dropped.
+	 * 
+	 * @param asynchronous
+	 *            <code>true</code> to write the messages in the background,
+	 *            <code>false</code> (default) to write them immediately.
+	 */
+	public synchronized void setAsynchronous(boolean asynchronous) {
+		Logger previous = logger;
+		if (asynchronous && !(previous instanceof AsyncLogger)) {
+			logger = new AsyncLogger(platformLogger, ASYNCHRONOUS_CAPACITY,
+					PlatformManager.getInstance().getInternalExecutor());
+		} else if (!asynchronous && previous instanceof AsyncLogger) {
+			logger = platformLogger;
+			((AsyncLogger) previous).flush();
+		}
+	}
+
+	/**
+	 * Writes the pending messages, if they are written in the background.
+	 */
+	public void flush() {
+		Logger current = logger;
+		if (current instanceof AsyncLogger) {
+			((AsyncLogger) current).flush();
+		}
+	}
+
 	/**
 	 * Logs a non-critical event.
 	 * 
@@ -71,11 +132,49 @@ public class LogManager {
 	 *            Event message.
 	 */
 	public void logInfo(Object messageCreator, String message) {
-		if (loggedObjects.contains(messageCreator)) {
+		if (isEnabled(messageCreator)) {
 			logger.logInfo(buildMessage(messageCreator, message));
 		}
 	}
 
+	/**
+	 * Logs a non-critical event with a parameterized message.
+	 * 
+	 * @param messageCreator
+	 *            origin of the message.
+	 * @param pattern
+	 *            Event message, with a <code>{}</code> where the argument goes.
+	 * @param argument
+	 *            Argument of the message.
+	 */
+	public void logInfo(Object messageCreator, String pattern, Object argument) {
+		if (isEnabled(messageCreator)) {
+			logger.logInfo(buildMessage(messageCreator,
+					format(pattern, argument, NO_ARGUMENT)));
+		}
+	}
+
+	/**
+	 * Logs a non-critical event with a parameterized message.
+	 * 
+	 * @param messageCreator
+	 *            origin of the message.
+	 * @param pattern
+	 *            Event message, with a <code>{}</code> where each argument
+	 *            goes.
+	 * @param first
+	 *            First argument of the message.
+	 * @param second
+	 *            Second argument of the message.
+	 */
+	public void logInfo(Object messageCreator, String pattern, Object first,
+			Object second) {
+		if (isEnabled(messageCreator)) {
+			logger.logInfo(buildMessage(messageCreator,
+					format(pattern, first, second)));
+		}
+	}
+
 	/**
 	 * Logs any problem.
 	 * 
@@ -85,11 +184,77 @@ public class LogManager {
 	 *            Event message.
 	 */
 	public void logError(Object messageCreator, String message) {
-		if (loggedObjects.contains(messageCreator)) {
+		if (isEnabled(messageCreator)) {
 			logger.logError(buildMessage(messageCreator, message));
 		}
 	}
 
+	/**
+	 * Logs any problem with a parameterized message.
+	 * 
+	 * @param messageCreator
+	 *            origin of the message.
+	 * @param pattern
+	 *            Event message, with a <code>{}</code> where the argument goes.
+	 * @param argument
+	 *            Argument of the message.
+	 */
+	public void logError(Object messageCreator, String pattern, Object argument) {
+		if (isEnabled(messageCreator)) {
+			logger.logError(buildMessage(messageCreator,
+					format(pattern, argument, NO_ARGUMENT)));
+		}
+	}
+
+	/**
+	 * Logs any problem with a parameterized message.
+	 * 
+	 * @param messageCreator
+	 *            origin of the message.
+	 * @param pattern
+	 *            Event message, with a <code>{}</code> where each argument
+	 *            goes.
+	 * @param first
+	 *            First argument of the message.
+	 * @param second
+	 *            Second argument of the message.
+	 */
+	public void logError(Object messageCreator, String pattern, Object first,
+			Object second) {
+		if (isEnabled(messageCreator)) {
+			logger.logError(buildMessage(messageCreator,
+					format(pattern, first, second)));
+		}
+	}
+
+	/**
+	 * Replaces the placeholders of a pattern by the arguments, in order. The
+	 * placeholders without argument are left as they are.
+	 * 
+	 * @param pattern
+	 *            Message with <code>{}</code> placeholders.
+	 * @param first
+	 *            First argument.
+	 * @param second
+	 *            Second argument, or {@link #NO_ARGUMENT}.
+	 * @return The formatted message.
+	 */
+	static String format(String pattern, Object first, Object second) {
+		int firstIndex = pattern.indexOf(PLACEHOLDER);
+		if (firstIndex < 0) {
+			return pattern;
+		}
+		StringBuilder builder = new StringBuilder(pattern.length() + 32);
+		builder.append(pattern, 0, firstIndex).append(first);
+		int rest = firstIndex + PLACEHOLDER.length();
+		int secondIndex = pattern.indexOf(PLACEHOLDER, rest);
+		if (secondIndex >= 0 && second != NO_ARGUMENT) {
+			builder.append(pattern, rest, secondIndex).append(second);
+			rest = secondIndex + PLACEHOLDER.length();
+		}
+		return builder.append(pattern, rest, pattern.length()).toString();
+	}
+
 	/**
 	 * Builds a log message containing the wrapper information.
 	 * 
@@ -0,0 +1,114 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import java.util.Arrays;
+
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+
+/**
+ * Hands the events of the library to the registered
+ * {@link InstrumentationListener}s. Without listeners, the instrumented code
+ * only checks {@link #isEnabled()}, a volatile read.
+ */
+public final class Instrumentation {
+	private static volatile InstrumentationListener[] listeners = new InstrumentationListener[0];
+
+	private Instrumentation() {
+	}
+
+	/**
+	 * Starts sending the events to a listener.
+	 * 
+	 * @param listener
+	 *            Listener to add.
+	 */
+	public static synchronized void addListener(InstrumentationListener listener) {
+		if (listener != null) {
+			InstrumentationListener[] updated = Arrays.copyOf(listeners,
+					listeners.length + 1);
+			updated[listeners.length] = listener;
+			listeners = updated;
+		}
+	}
+
+	/**
+	 * Stops sending the events to a listener.
+	 * 
+	 * @param listener
+	 *            Listener to remove.
+	 */
+	public static synchronized void removeListener(
+			InstrumentationListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				InstrumentationListener[] updated = new InstrumentationListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, updated, 0, i);
+				System.arraycopy(listeners, i + 1, updated, i, updated.length
+						- i);
+				listeners = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Checks if there is any listener, so the data of an event has to be
+	 * collected.
+	 */
+	public static boolean isEnabled() {
+		return listeners.length > 0;
+	}
+
+	/**
+	 * @see InstrumentationListener#networkRequest(String, String, int, long,
+	 *      long)
+	 */
+	public static void networkRequest(String host, String method,
+			int statusCode, long bytes, long durationNanos) {
+		for (InstrumentationListener listener : listeners) {
+			try {
+				listener.networkRequest(host, method, statusCode, bytes,
+						durationNanos);
+			} catch (RuntimeException e) {
+				listenerFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * @see InstrumentationListener#parsed(String, int, long, long, boolean)
+	 */
+	public static void parsed(String operation, int records, long bytes,
+			long durationNanos, boolean succeeded) {
+		for (InstrumentationListener listener : listeners) {
+			try {
+				listener.parsed(operation, records, bytes, durationNanos,
+						succeeded);
+			} catch (RuntimeException e) {
+				listenerFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * @see InstrumentationListener#cacheAccessed(String, boolean, boolean,
+	 *      long)
+	 */
+	public static void cacheAccessed(String operation, boolean put,
+			boolean hit, long entrySize) {
+		for (InstrumentationListener listener : listeners) {
+			try {
+				listener.cacheAccessed(operation, put, hit, entrySize);
+			} catch (RuntimeException e) {
+				listenerFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * A failing listener can't break the operation which sent the event.
+	 */
+	private static void listenerFailed(RuntimeException e) {
+		PlatformManager.getInstance().buildLogger()
+				.logError("Instrumentation listener error: " + e.getMessage());
+	}
+}
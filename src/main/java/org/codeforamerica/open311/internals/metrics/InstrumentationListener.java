@@ -0,0 +1,60 @@
+package org.codeforamerica.open311.internals.metrics;
+
+/**
+ * Receives an event for every network request, parsed response and cache
+ * access of the library, to record them in a profiler (for example as JDK
+ * Flight Recorder events) or a log. The methods are called from the request
+ * threads, so they have to be quick and thread-safe.
+ */
+public interface InstrumentationListener {
+
+	/**
+	 * A response of a network request has been read.
+	 * 
+	 * @param host
+	 *            Host of the request.
+	 * @param method
+	 *            <code>GET</code> or <code>POST</code>.
+	 * @param statusCode
+	 *            Status code of the response.
+	 * @param bytes
+	 *            Size of the body (decompressed).
+	 * @param durationNanos
+	 *            Time from the request to the end of the response.
+	 */
+	public void networkRequest(String host, String method, int statusCode,
+			long bytes, long durationNanos);
+
+	/**
+	 * A response has been parsed.
+	 * 
+	 * @param operation
+	 *            Operation which asked for the response.
+	 * @param records
+	 *            Number of parsed objects (<code>0</code> if it wasn't the
+	 *            expected response).
+	 * @param bytes
+	 *            Bytes read by the parser.
+	 * @param durationNanos
+	 *            Time spent parsing (and reading a streamed response).
+	 * @param succeeded
+	 *            <code>false</code> if it wasn't the expected response.
+	 */
+	public void parsed(String operation, int records, long bytes,
+			long durationNanos, boolean succeeded);
+
+	/**
+	 * A cached response has been looked for or saved.
+	 * 
+	 * @param operation
+	 *            Cacheable operation of the response.
+	 * @param put
+	 *            <code>true</code> if it was saved.
+	 * @param hit
+	 *            <code>true</code> if it was looked for and found.
+	 * @param entrySize
+	 *            Encoded size of the entry (<code>0</code> if it wasn't found).
+	 */
+	public void cacheAccessed(String operation, boolean put, boolean hit,
+			long entrySize);
+}
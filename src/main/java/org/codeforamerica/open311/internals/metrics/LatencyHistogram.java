@@ -0,0 +1,93 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in logarithmic buckets (microseconds), each power of two
+ * split in 8 linear sub-buckets, so every value is kept with a precision of
+ * 12.5% in a fixed amount of memory. Recording doesn't lock, so it can be done
+ * from every request thread.
+ */
+public class LatencyHistogram {
+	/**
+	 * Values below it have their own bucket.
+	 */
+	private static final int LINEAR_LIMIT = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MIN_EXPONENT = 4;
+	/**
+	 * Bigger values (more than 12 days) are counted in the last bucket.
+	 */
+	private static final int MAX_EXPONENT = 40;
+	static final int BUCKETS = LINEAR_LIMIT
+			+ (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a duration.
+	 * 
+	 * @param duration
+	 *            Duration (negative values are counted as 0).
+	 * @param unit
+	 *            Its unit.
+	 */
+	public void record(long duration, TimeUnit unit) {
+		long micros = Math.max(0, unit.toMicros(duration));
+		buckets.incrementAndGet(indexOf(micros));
+		count.incrementAndGet();
+		total.addAndGet(micros);
+		long currentMax;
+		while (micros > (currentMax = max.get())
+				&& !max.compareAndSet(currentMax, micros)) {
+			// Another thread changed the maximum, try again.
+		}
+	}
+
+	/**
+	 * Copies the current values. It doesn't stop the recording, so the
+	 * counters can differ slightly from each other.
+	 * 
+	 * @return An immutable copy.
+	 */
+	public LatencySnapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = buckets.get(i);
+		}
+		return new LatencySnapshot(count.get(), total.get(), max.get(), copy);
+	}
+
+	static int indexOf(long micros) {
+		if (micros < LINEAR_LIMIT) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - MIN_EXPONENT) * SUB_BUCKETS
+				+ subBucket;
+	}
+
+	/**
+	 * Highest value (microseconds) counted in a bucket.
+	 */
+	static long highestValueOf(int index) {
+		if (index < LINEAR_LIMIT) {
+			return index;
+		}
+		int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + MIN_EXPONENT;
+		int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+}
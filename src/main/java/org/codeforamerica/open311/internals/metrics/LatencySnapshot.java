@@ -0,0 +1,100 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable copy of a {@link LatencyHistogram}.
+ */
+public class LatencySnapshot {
+	private final long count;
+	private final long totalMicros;
+	private final long maxMicros;
+	private final long[] buckets;
+
+	LatencySnapshot(long count, long totalMicros, long maxMicros,
+			long[] buckets) {
+		this.count = count;
+		this.totalMicros = totalMicros;
+		this.maxMicros = maxMicros;
+		this.buckets = buckets;
+	}
+
+	/**
+	 * Number of recorded durations.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Sum of the recorded durations.
+	 * 
+	 * @param unit
+	 *            Unit of the result.
+	 */
+	public long getTotal(TimeUnit unit) {
+		return unit.convert(totalMicros, TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Mean of the recorded durations (<code>0</code> if there isn't any).
+	 * 
+	 * @param unit
+	 *            Unit of the result.
+	 */
+	public long getMean(TimeUnit unit) {
+		return count == 0 ? 0 : unit.convert(totalMicros / count,
+				TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Longest recorded duration.
+	 * 
+	 * @param unit
+	 *            Unit of the result.
+	 */
+	public long getMax(TimeUnit unit) {
+		return unit.convert(maxMicros, TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Duration which isn't exceeded by the given percentage of the recorded
+	 * ones (precision of 12.5%).
+	 * 
+	 * @param percentile
+	 *            Between 0 and 100 (<code>99</code> is the 99th percentile).
+	 * @param unit
+	 *            Unit of the result.
+	 * @return The duration, <code>0</code> if nothing was recorded.
+	 */
+	public long getPercentile(double percentile, TimeUnit unit) {
+		long recorded = 0;
+		for (long bucket : buckets) {
+			recorded += bucket;
+		}
+		if (recorded == 0) {
+			return 0;
+		}
+		long rank = Math.max(1,
+				(long) Math.ceil(recorded * Math.min(100, percentile) / 100));
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				return unit.convert(
+						Math.min(LatencyHistogram.highestValueOf(i),
+								maxMicros), TimeUnit.MICROSECONDS);
+			}
+		}
+		return getMax(unit);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", mean="
+				+ getMean(TimeUnit.MICROSECONDS) + "us, p50="
+				+ getPercentile(50, TimeUnit.MICROSECONDS) + "us, p99="
+				+ getPercentile(99, TimeUnit.MICROSECONDS) + "us, max="
+				+ maxMicros + "us";
+	}
+}
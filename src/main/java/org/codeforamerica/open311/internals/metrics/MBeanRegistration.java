@@ -0,0 +1,59 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+
+/**
+ * Registers the MBeans of the library in the platform server. Kept apart so
+ * the JMX classes are only loaded where they exist (not under Android).
+ */
+final class MBeanRegistration {
+	static final String DOMAIN = "org.codeforamerica.open311";
+
+	private MBeanRegistration() {
+	}
+
+	/**
+	 * Registers the metrics of a wrapper.
+	 * 
+	 * @param metrics
+	 *            Metrics to register.
+	 * @param endpointUrl
+	 *            Endpoint of the wrapper.
+	 * @return Its name, or <code>null</code> if it couldn't be registered.
+	 */
+	static Object register(WrapperMetrics metrics, String endpointUrl) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			String base = DOMAIN + ":type=APIWrapper,endpoint="
+					+ ObjectName.quote(endpointUrl);
+			ObjectName name = new ObjectName(base);
+			// Several wrappers can share an endpoint.
+			for (int i = 2; server.isRegistered(name); i++) {
+				name = new ObjectName(base + ",instance=" + i);
+			}
+			server.registerMBean(metrics, name);
+			return name;
+		} catch (JMException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error registering the metrics: " + e.getMessage());
+			return null;
+		}
+	}
+
+	static void unregister(Object name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					(ObjectName) name);
+		} catch (JMException e) {
+			PlatformManager.getInstance().buildLogger()
+					.logError("Error unregistering the metrics: "
+							+ e.getMessage());
+		}
+	}
+}
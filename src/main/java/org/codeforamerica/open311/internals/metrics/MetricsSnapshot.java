@@ -0,0 +1,74 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics.Operation;
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics.Phase;
+
+/**
+ * Immutable copy of the {@link WrapperMetrics} of a wrapper.
+ */
+public class MetricsSnapshot {
+	private final String endpointUrl;
+	private final LatencySnapshot[] latencies;
+	private final long[] cacheHits;
+	private final long[] cacheMisses;
+	private final long bytesReceived;
+	private final long parsingNanos;
+
+	MetricsSnapshot(String endpointUrl, LatencySnapshot[] latencies,
+			long[] cacheHits, long[] cacheMisses, long bytesReceived,
+			long parsingNanos) {
+		this.endpointUrl = endpointUrl;
+		this.latencies = latencies;
+		this.cacheHits = cacheHits;
+		this.cacheMisses = cacheMisses;
+		this.bytesReceived = bytesReceived;
+		this.parsingNanos = parsingNanos;
+	}
+
+	public String getEndpointUrl() {
+		return endpointUrl;
+	}
+
+	/**
+	 * Latencies of a phase of an operation.
+	 */
+	public LatencySnapshot getLatency(Operation operation, Phase phase) {
+		return latencies[WrapperMetrics.indexOf(operation, phase)];
+	}
+
+	public long getCacheHits(Operation operation) {
+		return cacheHits[operation.ordinal()];
+	}
+
+	public long getCacheMisses(Operation operation) {
+		return cacheMisses[operation.ordinal()];
+	}
+
+	/**
+	 * Proportion of the cache lookups of an operation which found the
+	 * response (<code>0</code> if there wasn't any).
+	 */
+	public double getCacheHitRatio(Operation operation) {
+		long lookups = getCacheHits(operation) + getCacheMisses(operation);
+		return lookups == 0 ? 0 : (double) getCacheHits(operation) / lookups;
+	}
+
+	/**
+	 * Bytes of the received responses (characters, if the network manager
+	 * doesn't stream them).
+	 */
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Received bytes per second of parsing (<code>0</code> if nothing has been
+	 * parsed).
+	 */
+	public double getParsingThroughput() {
+		return parsingNanos == 0 ? 0 : bytesReceived
+				* (double) TimeUnit.SECONDS.toNanos(1) / parsingNanos;
+	}
+}
@@ -0,0 +1,298 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+
+/**
+ * Latencies and counters of the operations of a wrapper (so, of an endpoint).
+ * Every phase of an operation has its own {@link LatencyHistogram}. Recording
+ * doesn't lock.
+ */
+public class WrapperMetrics implements WrapperMetricsMXBean {
+
+	/**
+	 * Operations of a wrapper.
+	 */
+	public static enum Operation {
+		GET_SERVICE_LIST, GET_SERVICE_DEFINITION,
+		GET_SERVICE_REQUEST_ID_FROM_TOKEN, GET_SERVICE_REQUESTS,
+		GET_SERVICE_REQUEST, POST_SERVICE_REQUEST;
+	}
+
+	/**
+	 * Phases of an operation. When the response is parsed while it is
+	 * received, {@link #NETWORK} lasts until the response starts and the
+	 * download of its body is part of {@link #PARSING}.
+	 */
+	public static enum Phase {
+		CACHE_LOOKUP, URL_BUILDING, NETWORK, PARSING, ERROR_PARSING;
+	}
+
+	private static final Operation[] OPERATIONS = Operation.values();
+	private static final Phase[] PHASES = Phase.values();
+
+	private final String endpointUrl;
+	private final LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length
+			* PHASES.length];
+	private final AtomicLongArray cacheHits = new AtomicLongArray(
+			OPERATIONS.length);
+	private final AtomicLongArray cacheMisses = new AtomicLongArray(
+			OPERATIONS.length);
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final AtomicLong parsingNanos = new AtomicLong();
+	private volatile Object objectName;
+
+	/**
+	 * Builds an instance.
+	 * 
+	 * @param endpointUrl
+	 *            Endpoint of the wrapper.
+	 */
+	public WrapperMetrics(String endpointUrl) {
+		this.endpointUrl = endpointUrl;
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Records the duration of a phase.
+	 * 
+	 * @param operation
+	 *            Operation.
+	 * @param phase
+	 *            Phase of the operation.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} at the start of the phase.
+	 */
+	public void record(Operation operation, Phase phase, long startNanos) {
+		long elapsed = System.nanoTime() - startNanos;
+		histogram(operation, phase).record(elapsed, TimeUnit.NANOSECONDS);
+		if (phase == Phase.PARSING || phase == Phase.ERROR_PARSING) {
+			parsingNanos.addAndGet(elapsed);
+		}
+	}
+
+	/**
+	 * Records a cache lookup.
+	 * 
+	 * @param operation
+	 *            Operation.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} before the lookup.
+	 * @param hit
+	 *            <code>true</code> if the response was cached.
+	 */
+	public void recordCacheLookup(Operation operation, long startNanos,
+			boolean hit) {
+		record(operation, Phase.CACHE_LOOKUP, startNanos);
+		(hit ? cacheHits : cacheMisses).incrementAndGet(operation.ordinal());
+	}
+
+	/**
+	 * Counts received bytes.
+	 * 
+	 * @param bytes
+	 *            Size of a response (its length, if it was received as a
+	 *            string).
+	 */
+	public void recordReceived(long bytes) {
+		bytesReceived.addAndGet(bytes);
+	}
+
+	/**
+	 * Counts the bytes of a response as they are read.
+	 * 
+	 * @param response
+	 *            Body of a response.
+	 * @return The same body, counted.
+	 */
+	public InputStream countReceived(InputStream response) {
+		return new FilterInputStream(response) {
+			@Override
+			public int read() throws IOException {
+				int read = super.read();
+				if (read >= 0) {
+					bytesReceived.incrementAndGet();
+				}
+				return read;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					bytesReceived.addAndGet(read);
+				}
+				return read;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				long skipped = super.skip(n);
+				bytesReceived.addAndGet(skipped);
+				return skipped;
+			}
+		};
+	}
+
+	/**
+	 * Copies the current values.
+	 * 
+	 * @return An immutable copy.
+	 */
+	public MetricsSnapshot snapshot() {
+		LatencySnapshot[] latencies = new LatencySnapshot[histograms.length];
+		for (int i = 0; i < histograms.length; i++) {
+			latencies[i] = histograms[i].snapshot();
+		}
+		long[] hits = new long[OPERATIONS.length];
+		long[] misses = new long[OPERATIONS.length];
+		for (int i = 0; i < OPERATIONS.length; i++) {
+			hits[i] = cacheHits.get(i);
+			misses[i] = cacheMisses.get(i);
+		}
+		return new MetricsSnapshot(endpointUrl, latencies, hits, misses,
+				bytesReceived.get(), parsingNanos.get());
+	}
+
+	/**
+	 * Registers the metrics as an MBean of the platform (not available under
+	 * Android, where it does nothing).
+	 * 
+	 * @return <code>true</code> if it is registered.
+	 */
+	public synchronized boolean registerMBean() {
+		if (objectName == null && !PlatformManager.getInstance().isAndroid()) {
+			objectName = MBeanRegistration.register(this, endpointUrl);
+		}
+		return objectName != null;
+	}
+
+	/**
+	 * Unregisters the MBean, if it was registered.
+	 */
+	public synchronized void unregisterMBean() {
+		if (objectName != null) {
+			MBeanRegistration.unregister(objectName);
+			objectName = null;
+		}
+	}
+
+	static int indexOf(Operation operation, Phase phase) {
+		return operation.ordinal() * PHASES.length + phase.ordinal();
+	}
+
+	private LatencyHistogram histogram(Operation operation, Phase phase) {
+		return histograms[indexOf(operation, phase)];
+	}
+
+	@Override
+	public String getEndpointUrl() {
+		return endpointUrl;
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	@Override
+	public double getParsingThroughput() {
+		return snapshot().getParsingThroughput();
+	}
+
+	@Override
+	public Map<String, Long> getCacheHits() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Operation operation : OPERATIONS) {
+			result.put(operation.toString(),
+					cacheHits.get(operation.ordinal()));
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getCacheMisses() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Operation operation : OPERATIONS) {
+			result.put(operation.toString(),
+					cacheMisses.get(operation.ordinal()));
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getCounts() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, LatencySnapshot> entry : latencies().entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getCount());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getMeanLatencies() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, LatencySnapshot> entry : latencies().entrySet()) {
+			result.put(entry.getKey(),
+					entry.getValue().getMean(TimeUnit.MICROSECONDS));
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getMedianLatencies() {
+		return percentiles(50);
+	}
+
+	@Override
+	public Map<String, Long> get99thPercentileLatencies() {
+		return percentiles(99);
+	}
+
+	@Override
+	public Map<String, Long> getMaxLatencies() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, LatencySnapshot> entry : latencies().entrySet()) {
+			result.put(entry.getKey(),
+					entry.getValue().getMax(TimeUnit.MICROSECONDS));
+		}
+		return result;
+	}
+
+	private Map<String, Long> percentiles(double percentile) {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, LatencySnapshot> entry : latencies().entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getPercentile(
+					percentile, TimeUnit.MICROSECONDS));
+		}
+		return result;
+	}
+
+	/**
+	 * Latencies of the phases which have been recorded, by
+	 * <code>OPERATION.PHASE</code>.
+	 */
+	private Map<String, LatencySnapshot> latencies() {
+		Map<String, LatencySnapshot> result = new TreeMap<String, LatencySnapshot>();
+		for (Operation operation : OPERATIONS) {
+			for (Phase phase : PHASES) {
+				LatencySnapshot latency = histogram(operation, phase)
+						.snapshot();
+				if (latency.getCount() > 0) {
+					result.put(operation + "." + phase, latency);
+				}
+			}
+		}
+		return result;
+	}
+}
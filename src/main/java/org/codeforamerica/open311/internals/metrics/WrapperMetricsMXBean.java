@@ -0,0 +1,33 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link WrapperMetrics}. The latencies are in
+ * microseconds, by <code>OPERATION.PHASE</code>; the counters by operation.
+ */
+public interface WrapperMetricsMXBean {
+
+	public String getEndpointUrl();
+
+	public long getBytesReceived();
+
+	/**
+	 * Received bytes per second of parsing.
+	 */
+	public double getParsingThroughput();
+
+	public Map<String, Long> getCacheHits();
+
+	public Map<String, Long> getCacheMisses();
+
+	public Map<String, Long> getCounts();
+
+	public Map<String, Long> getMeanLatencies();
+
+	public Map<String, Long> getMedianLatencies();
+
+	public Map<String, Long> get99thPercentileLatencies();
+
+	public Map<String, Long> getMaxLatencies();
+}
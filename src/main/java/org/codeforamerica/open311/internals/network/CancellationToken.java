@@ -0,0 +1,231 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+
+/**
+ * Allows to cancel the network operations of a call, explicitly or when its
+ * deadline is reached. The in-flight request is aborted.
+ * 
+ * A token is attached to the thread which makes the call (the
+ * <code>APIWrapper</code> methods which accept a token do it), and the
+ * network managers check the token of the current thread.
+ */
+public final class CancellationToken {
+	private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<CancellationToken>();
+	/**
+	 * Time (nanoseconds) of the deadline, <code>Long.MAX_VALUE</code> if
+	 * there isn't any.
+	 */
+	private final long deadline;
+	private final boolean hasDeadline;
+	private final List<Runnable> listeners = new LinkedList<Runnable>();
+	private boolean cancelled;
+	private ScheduledFuture<?> deadlineTask;
+
+	/**
+	 * Builds a token without deadline, which is only cancelled by
+	 * {@link #cancel()}.
+	 */
+	public CancellationToken() {
+		this.deadline = Long.MAX_VALUE;
+		this.hasDeadline = false;
+	}
+
+	private CancellationToken(long timeoutNanos) {
+		this.deadline = System.nanoTime() + timeoutNanos;
+		this.hasDeadline = true;
+	}
+
+	/**
+	 * Builds a token which is cancelled when the given time has elapsed.
+	 * 
+	 * @param timeout
+	 *            Time from now.
+	 * @param unit
+	 *            Unit of the given time.
+	 * @return A new token.
+	 */
+	public static CancellationToken withDeadline(long timeout, TimeUnit unit) {
+		return new CancellationToken(unit.toNanos(timeout));
+	}
+
+	/**
+	 * Token attached to the current thread.
+	 * 
+	 * @return The token or <code>null</code>.
+	 */
+	public static CancellationToken current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Attaches this token to the current thread.
+	 * 
+	 * @return The token which was attached before (it can be
+	 *         <code>null</code>), to be given to {@link #detach(CancellationToken)}.
+	 */
+	public CancellationToken attach() {
+		CancellationToken previous = CURRENT.get();
+		CURRENT.set(this);
+		return previous;
+	}
+
+	/**
+	 * Restores the token which was attached to the current thread before.
+	 * 
+	 * @param previous
+	 *            Token returned by {@link #attach()}.
+	 */
+	public static void detach(CancellationToken previous) {
+		if (previous != null) {
+			CURRENT.set(previous);
+		} else {
+			CURRENT.remove();
+		}
+	}
+
+	/**
+	 * Cancels the token: its in-flight request is aborted and the next ones
+	 * aren't sent.
+	 */
+	public void cancel() {
+		List<Runnable> toNotify;
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			toNotify = new LinkedList<Runnable>(listeners);
+			listeners.clear();
+			if (deadlineTask != null) {
+				deadlineTask.cancel(false);
+			}
+		}
+		for (Runnable listener : toNotify) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Checks if the token has been cancelled or its deadline reached.
+	 */
+	public boolean isCancelled() {
+		if (hasDeadline && System.nanoTime() - deadline >= 0) {
+			return true;
+		}
+		synchronized (this) {
+			return cancelled;
+		}
+	}
+
+	/**
+	 * Checks if the deadline of the token has been reached.
+	 */
+	public boolean isDeadlineExceeded() {
+		return hasDeadline && System.nanoTime() - deadline >= 0;
+	}
+
+	/**
+	 * Time left until the deadline.
+	 * 
+	 * @param unit
+	 *            Unit of the result.
+	 * @return The remaining time (<code>0</code> if it is cancelled,
+	 *         <code>Long.MAX_VALUE</code> if there isn't a deadline).
+	 */
+	public long getRemaining(TimeUnit unit) {
+		if (isCancelled()) {
+			return 0;
+		}
+		if (!hasDeadline) {
+			return Long.MAX_VALUE;
+		}
+		return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Runs an action when the token is cancelled (immediately if it already
+	 * is).
+	 * 
+	 * @param listener
+	 *            Action to run (it has to be quick).
+	 */
+	public void addListener(Runnable listener) {
+		synchronized (this) {
+			if (!cancelled && !isDeadlineExceeded()) {
+				listeners.add(listener);
+				if (hasDeadline && deadlineTask == null) {
+					deadlineTask = PlatformManager
+							.getInstance()
+							.getScheduler()
+							.schedule(new Runnable() {
+								@Override
+								public void run() {
+									cancel();
+								}
+							}, deadline - System.nanoTime(),
+									TimeUnit.NANOSECONDS);
+				}
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	/**
+	 * Stops running an action when the token is cancelled.
+	 * 
+	 * @param listener
+	 *            Action given to {@link #addListener(Runnable)}.
+	 */
+	public synchronized void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Waits until the token is cancelled or the given time has elapsed.
+	 * 
+	 * @param timeout
+	 *            Maximum time to wait.
+	 * @param unit
+	 *            Unit of the given time.
+	 * @return <code>true</code> if the token was cancelled (or its deadline
+	 *         reached), <code>false</code> if the time elapsed before.
+	 * @throws InterruptedException
+	 *             If the thread was interrupted while waiting.
+	 */
+	public boolean await(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+		addListener(listener);
+		try {
+			return latch.await(timeout, unit);
+		} finally {
+			removeListener(listener);
+		}
+	}
+
+	/**
+	 * Throws an exception if the token has been cancelled.
+	 * 
+	 * @throws RequestCancelledException
+	 *             If it has been cancelled or its deadline has been reached.
+	 */
+	public void throwIfCancelled() throws RequestCancelledException {
+		if (isCancelled()) {
+			throw new RequestCancelledException(isDeadlineExceeded());
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.codeforamerica.open311.internals.network;
+
+/**
+ * Circuit breaker of an endpoint host. After a number of consecutive failures
+ * it opens and rejects the requests for a while, then it lets a single trial
+ * request through: if it succeeds the circuit closes again, otherwise it
+ * stays open for another while. Thread-safe.
+ */
+public class CircuitBreaker {
+
+	/**
+	 * States of a circuit.
+	 */
+	public static enum State {
+		/**
+		 * Requests are allowed.
+		 */
+		CLOSED,
+		/**
+		 * Requests are rejected.
+		 */
+		OPEN,
+		/**
+		 * A trial request is allowed.
+		 */
+		HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openTime;
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean trialInProgress;
+
+	/**
+	 * Builds a closed circuit.
+	 * 
+	 * @param failureThreshold
+	 *            Consecutive failures which open it.
+	 * @param openTime
+	 *            Milliseconds it stays open before allowing a trial request.
+	 */
+	public CircuitBreaker(int failureThreshold, long openTime) {
+		this.failureThreshold = failureThreshold;
+		this.openTime = openTime;
+	}
+
+	/**
+	 * Checks if a request can be sent. If it returns <code>true</code>, the
+	 * result of the request has to be recorded, whatever happens (otherwise a
+	 * trial request would keep the circuit open forever).
+	 * 
+	 * @return <code>false</code> if the circuit is open.
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case OPEN:
+			if (System.currentTimeMillis() - openedAt < openTime) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			trialInProgress = true;
+			return true;
+		case HALF_OPEN:
+			if (trialInProgress) {
+				return false;
+			}
+			trialInProgress = true;
+			return true;
+		default:
+			return true;
+		}
+	}
+
+	public synchronized void recordSuccess() {
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		trialInProgress = false;
+	}
+
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			trialInProgress = false;
+		}
+	}
+
+	/**
+	 * Records a request whose result says nothing about the server (it was
+	 * cancelled by the caller or it failed before reaching it). If it was the
+	 * trial request, another one is allowed.
+	 */
+	public synchronized void recordIgnored() {
+		trialInProgress = false;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CircuitBreaker [state=" + state + ", consecutiveFailures="
+				+ consecutiveFailures + "]";
+	}
+}
@@ -0,0 +1,15 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is rejected without being sent because the circuit
+ * breaker of its host is open.
+ */
+public class CircuitOpenException extends IOException {
+	private static final long serialVersionUID = 2364091522398734126L;
+
+	public CircuitOpenException(String host) {
+		super("The circuit of " + host + " is open, request rejected.");
+	}
+}
@@ -0,0 +1,34 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * A {@link StreamingNetworkManager} which is able to send conditional GET
+ * requests (<code>If-None-Match</code> and <code>If-Modified-Since</code>),
+ * so an already obtained response can be revalidated without downloading it
+ * again if it hasn't changed.
+ */
+public interface ConditionalNetworkManager extends StreamingNetworkManager {
+	public static final String ETAG_HEADER = "ETag";
+	public static final String LAST_MODIFIED_HEADER = "Last-Modified";
+	public static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+	public static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+	public static final int NOT_MODIFIED = 304;
+
+	/**
+	 * Sends a GET HTTP request, which is conditional if there are validators
+	 * of a previous response.
+	 * 
+	 * @param url
+	 *            Target.
+	 * @param validators
+	 *            Validators of the previous response (<code>null</code> or
+	 *            empty to send a regular request).
+	 * @return The response, whose body (if any) has to be closed.
+	 * @throws IOException
+	 *             If there was any problem with the connection.
+	 */
+	public ConditionalResponse doConditionalGet(URL url, Validators validators)
+			throws IOException;
+}
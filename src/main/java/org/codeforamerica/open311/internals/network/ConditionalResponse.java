@@ -0,0 +1,50 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.InputStream;
+
+/**
+ * Response of a conditional GET request: either the body of the response or
+ * the confirmation that the version of the client is still valid (
+ * <code>304 Not Modified</code>).
+ */
+public class ConditionalResponse {
+	private final boolean notModified;
+	private final InputStream body;
+	private final Validators validators;
+
+	/**
+	 * Builds an instance.
+	 * 
+	 * @param notModified
+	 *            <code>true</code> if the server answered
+	 *            <code>304 Not Modified</code>.
+	 * @param body
+	 *            Body of the response (<code>null</code> if it wasn't
+	 *            modified).
+	 * @param validators
+	 *            Validators sent by the server (never <code>null</code>).
+	 */
+	public ConditionalResponse(boolean notModified, InputStream body,
+			Validators validators) {
+		this.notModified = notModified;
+		this.body = body;
+		this.validators = validators;
+	}
+
+	public boolean isNotModified() {
+		return notModified;
+	}
+
+	/**
+	 * Body of the response, which has to be closed.
+	 * 
+	 * @return The body or <code>null</code> if it wasn't modified.
+	 */
+	public InputStream getBody() {
+		return body;
+	}
+
+	public Validators getValidators() {
+		return validators;
+	}
+}
@@ -0,0 +1,92 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Negotiation and decompression of compressed responses (gzip and deflate).
+ * The bodies are decompressed while they are read, never in memory.
+ */
+final class ContentEncoding {
+	static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+	static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+	/**
+	 * Value of the <code>Accept-Encoding</code> header of the requests.
+	 */
+	static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+	private static final int BUFFER_SIZE = 8192;
+
+	private ContentEncoding() {
+	}
+
+	/**
+	 * Decompresses a body while it is read.
+	 * 
+	 * @param body
+	 *            Body as it was received.
+	 * @param contentEncoding
+	 *            Value of the <code>Content-Encoding</code> header (it can be
+	 *            <code>null</code>).
+	 * @return The decompressed body, or the same stream if it isn't
+	 *         compressed (or the encoding isn't supported).
+	 * @throws IOException
+	 *             If the compressed body is not valid.
+	 */
+	static InputStream decode(InputStream body, String contentEncoding)
+			throws IOException {
+		if (contentEncoding == null) {
+			return body;
+		}
+		String encoding = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+		boolean gzip = encoding.equals("gzip") || encoding.equals("x-gzip");
+		if (!gzip && !encoding.equals("deflate")) {
+			return body;
+		}
+		BufferedInputStream buffered = new BufferedInputStream(body,
+				BUFFER_SIZE);
+		buffered.mark(2);
+		int first = buffered.read();
+		int second = buffered.read();
+		buffered.reset();
+		if (first == -1) {
+			// Empty body (a HEAD request, a 304 response...).
+			return buffered;
+		}
+		if (gzip) {
+			return new GZIPInputStream(buffered, BUFFER_SIZE);
+		}
+		// Most servers send zlib streams, but some send raw deflate data.
+		boolean zlib = second != -1 && (first & 0x0F) == 8
+				&& ((first << 8) | second) % 31 == 0;
+		return new InflaterStream(buffered, new Inflater(!zlib));
+	}
+
+	/**
+	 * Releases the native resources of its {@link Inflater} when it is
+	 * closed (the JDK only does it for the inflaters it creates).
+	 */
+	private static class InflaterStream extends InflaterInputStream {
+		private boolean closed;
+
+		InflaterStream(InputStream in, Inflater inflater) {
+			super(in, inflater, BUFFER_SIZE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				try {
+					super.close();
+				} finally {
+					inf.end();
+				}
+			}
+		}
+	}
+}
@@ -1,8 +1,13 @@
 package org.codeforamerica.open311.internals.network;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.Socket;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
@@ -16,11 +21,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
@@ -29,11 +37,15 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
@@ -43,20 +55,42 @@ import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.util.EntityUtils;
 import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.internals.metrics.Instrumentation;
 
 /**
  * Implementation using the <a href="http://hc.apache.org/">Apache
- * HttpComponents</> library.
+ * HttpComponents</> library. It asks for compressed responses (gzip or
+ * deflate), which are decompressed while they are read.
+ * 
+ * The requests have connect and read timeouts, and optionally a total
+ * timeout. They are aborted if the {@link CancellationToken} of the calling
+ * thread is cancelled.
  * 
  * @author Santiago Munín <santimunin@gmail.com>
  * 
  */
-public class HTTPNetworkManager implements NetworkManager {
+public class HTTPNetworkManager implements ConditionalNetworkManager {
 	private HttpClient httpClient;
 	private Format format;
-	private static final int TIMEOUT = 5000;
+	public static final long DEFAULT_CONNECT_TIMEOUT = 5000;
+	public static final long DEFAULT_READ_TIMEOUT = 30000;
+	private volatile long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private volatile long readTimeout = DEFAULT_READ_TIMEOUT;
+	/**
+	 * Maximum time (milliseconds) of a whole request, <code>0</code> if it
+	 * isn't limited.
+	 */
+	private volatile long requestTimeout;
+	/**
+	 * Maximum number of pooled connections per endpoint (the default of the
+	 * library is 2, which serializes concurrent requests).
+	 */
+	private static final int MAX_CONNECTIONS_PER_ROUTE = 20;
+	private static final int MAX_TOTAL_CONNECTIONS = 100;
 	private static final String ACCEPT_HEADER = "Accept";
 	private static final String CONTENT_TYPE_HEADER = "Content-Type";
+	private static final int BUFFER_SIZE = 8192;
+	private final TransferStatistics statistics = new TransferStatistics();
 
 	public HTTPNetworkManager(Format format) {
 		this.format = format;
@@ -66,14 +100,335 @@ public class HTTPNetworkManager implements NetworkManager {
 	@Override
 	public String doGet(URL url) throws IOException {
 		try {
-			HttpGet httpGet = new HttpGet(url.toURI());
-			httpGet.setHeader(ACCEPT_HEADER, format.getHTTPContentType());
-			httpGet.setHeader(CONTENT_TYPE_HEADER, format.getHTTPContentType());
-			HttpResponse response = httpClient.execute(httpGet);
-			return EntityUtils.toString(response.getEntity(), CHARSET);
+			long start = System.nanoTime();
+			return readAndReport("GET", url, execute(buildGet(url), url),
+					start);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * GET operation which doesn't read the body of the response (it is
+	 * decompressed while it is read). The connection goes back to the pool
+	 * when the returned stream is closed.
+	 */
+	@Override
+	public InputStream doGetStream(URL url) throws IOException {
+		try {
+			long start = System.nanoTime();
+			return openReportedBody(url, execute(buildGet(url), url), start);
+		} catch (IOException e) {
+			throw e;
 		} catch (Exception e) {
-			throw new IOException(e.getMessage());
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * GET operation which sends the given validators. The body of a
+	 * <code>304 Not Modified</code> response (if any) is discarded, so the
+	 * connection goes back to the pool.
+	 */
+	@Override
+	public ConditionalResponse doConditionalGet(URL url, Validators validators)
+			throws IOException {
+		try {
+			long start = System.nanoTime();
+			HttpGet httpGet = buildGet(url);
+			if (validators != null && validators.getEntityTag() != null) {
+				httpGet.setHeader(IF_NONE_MATCH_HEADER,
+						validators.getEntityTag());
+			}
+			if (validators != null && validators.getLastModified() != null) {
+				httpGet.setHeader(IF_MODIFIED_SINCE_HEADER,
+						validators.getLastModified());
+			}
+			HttpResponse response = execute(httpGet, url);
+			Validators responseValidators = new Validators(headerValue(
+					response, ETAG_HEADER), headerValue(response,
+					LAST_MODIFIED_HEADER));
+			HttpEntity entity = response.getEntity();
+			if (response.getStatusLine().getStatusCode() == NOT_MODIFIED) {
+				if (entity != null) {
+					entity.consumeContent();
+				}
+				if (Instrumentation.isEnabled()) {
+					Instrumentation.networkRequest(url.getHost(), "GET",
+							NOT_MODIFIED, 0, System.nanoTime() - start);
+				}
+				return new ConditionalResponse(true, null, responseValidators);
+			}
+			return new ConditionalResponse(false, openReportedBody(url,
+					response, start), responseValidators);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private static String headerValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header != null ? header.getValue() : null;
+	}
+
+	/**
+	 * Sends a request, once its host's rate limiter (if any) allows it. The
+	 * request is aborted if the total timeout expires or the
+	 * {@link CancellationToken} of the current thread is cancelled before its
+	 * response has been read.
+	 * 
+	 * @param request
+	 *            Request to send.
+	 * @param url
+	 *            Its target.
+	 * @return The response.
+	 * @throws IOException
+	 *             If there was any problem with the connection, a
+	 *             {@link ThrottledException} if the server is throttling the
+	 *             requests (its <code>Retry-After</code> header delays the next
+	 *             ones), a {@link ServerErrorException} if a GET request
+	 *             failed in the server, a {@link RequestTimeoutException} if
+	 *             the total
+	 *             timeout expired or a {@link RequestCancelledException} if it
+	 *             was cancelled.
+	 */
+	private HttpResponse execute(final HttpUriRequest request, URL url)
+			throws IOException {
+		RateLimiters.acquire(url, requestTimeout);
+		HttpParams params = request.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, (int) connectTimeout);
+		HttpConnectionParams.setSoTimeout(params, (int) readTimeout);
+		RequestWatchdog watchdog = RequestWatchdog.start(requestTimeout,
+				new Runnable() {
+					@Override
+					public void run() {
+						request.abort();
+					}
+				});
+		HttpResponse response;
+		try {
+			response = httpClient.execute(request);
+		} catch (IOException e) {
+			watchdog.stop();
+			throw watchdog.translate(e);
+		} catch (RuntimeException e) {
+			watchdog.stop();
+			throw e;
+		}
+		HttpEntity entity = response.getEntity();
+		int statusCode = response.getStatusLine().getStatusCode();
+		boolean throttled = RateLimiters.isThrottled(statusCode);
+		if (throttled
+				|| ServerErrorException.isServerError(request.getMethod(),
+						statusCode)) {
+			try {
+				if (entity != null) {
+					entity.consumeContent();
+				}
+			} finally {
+				watchdog.stop();
+			}
+			if (!throttled) {
+				throw new ServerErrorException(statusCode);
+			}
+			throw RateLimiters.throttled(url, statusCode,
+					headerValue(response, RateLimiters.RETRY_AFTER_HEADER));
+		}
+		if (entity != null) {
+			response.setEntity(new WatchedEntity(entity, watchdog));
+		} else {
+			watchdog.stop();
+		}
+		return response;
+	}
+
+	/**
+	 * Body of a response which is watched until it is read or discarded.
+	 */
+	private static class WatchedEntity extends HttpEntityWrapper {
+		private final RequestWatchdog watchdog;
+
+		WatchedEntity(HttpEntity entity, RequestWatchdog watchdog) {
+			super(entity);
+			this.watchdog = watchdog;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			return watchdog.watch(super.getContent());
 		}
+
+		@Override
+		public void consumeContent() throws IOException {
+			try {
+				super.consumeContent();
+			} finally {
+				watchdog.stop();
+			}
+		}
+	}
+
+	/**
+	 * Sets the timeouts of the requests.
+	 * 
+	 * @param connectTimeout
+	 *            Maximum time to establish a connection.
+	 * @param readTimeout
+	 *            Maximum time without receiving data.
+	 * @param requestTimeout
+	 *            Maximum time of a whole request, including the reading of
+	 *            its response (<code>0</code> if it isn't limited, which is
+	 *            the default).
+	 * @param unit
+	 *            Unit of the given times.
+	 */
+	public void setTimeouts(long connectTimeout, long readTimeout,
+			long requestTimeout, TimeUnit unit) {
+		if (connectTimeout > 0 && readTimeout > 0 && requestTimeout >= 0
+				&& unit != null) {
+			this.connectTimeout = Math.min(Integer.MAX_VALUE,
+					unit.toMillis(connectTimeout));
+			this.readTimeout = Math.min(Integer.MAX_VALUE,
+					unit.toMillis(readTimeout));
+			this.requestTimeout = unit.toMillis(requestTimeout);
+		}
+	}
+
+	/**
+	 * Counters of the received bytes, compressed and decompressed.
+	 * 
+	 * @return The statistics of this instance.
+	 */
+	public TransferStatistics getTransferStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Opens the body of a response, which is decompressed while it is read.
+	 * 
+	 * @param response
+	 *            A response.
+	 * @return Its body (empty if there isn't any).
+	 * @throws IOException
+	 *             If there was any problem with the connection.
+	 */
+	private InputStream openBody(HttpResponse response) throws IOException {
+		HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		Header encoding = entity.getContentEncoding();
+		return statistics.track(entity.getContent(),
+				encoding != null ? encoding.getValue() : null);
+	}
+
+	/**
+	 * Opens the body of a GET response, which sends its
+	 * {@link Instrumentation} event once it has been read or closed.
+	 * 
+	 * @param url
+	 *            Target of the request.
+	 * @param response
+	 *            Its response.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} before the request.
+	 * @return Its body (empty if there isn't any).
+	 * @throws IOException
+	 *             If there was any problem with the connection.
+	 */
+	private InputStream openReportedBody(URL url, HttpResponse response,
+			long startNanos) throws IOException {
+		return InstrumentedInputStream.instrument(openBody(response),
+				url.getHost(), "GET", response.getStatusLine()
+						.getStatusCode(), startNanos);
+	}
+
+	/**
+	 * Reads the whole body of a response and sends its
+	 * {@link Instrumentation} event.
+	 * 
+	 * @param method
+	 *            Method of the request.
+	 * @param url
+	 *            Target of the request.
+	 * @param response
+	 *            Its response.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} before the request.
+	 * @return The body of the response.
+	 * @throws IOException
+	 *             If there was any problem with the connection.
+	 */
+	private String readAndReport(String method, URL url,
+			HttpResponse response, long startNanos) throws IOException {
+		if (!Instrumentation.isEnabled()) {
+			return readResponse(response, null);
+		}
+		AtomicLong bytes = new AtomicLong();
+		String body = readResponse(response, bytes);
+		Instrumentation.networkRequest(url.getHost(), method, response
+				.getStatusLine().getStatusCode(), bytes.get(), System
+				.nanoTime() - startNanos);
+		return body;
+	}
+
+	/**
+	 * Reads the whole body of a response.
+	 * 
+	 * @param response
+	 *            A response.
+	 * @param counter
+	 *            Counter of the read (decompressed) bytes, it can be
+	 *            <code>null</code>.
+	 * @return Its body, decoded with its charset (UTF-8 if it isn't
+	 *         specified).
+	 * @throws IOException
+	 *             If there was any problem with the connection.
+	 */
+	private String readResponse(HttpResponse response, AtomicLong counter)
+			throws IOException {
+		HttpEntity entity = response.getEntity();
+		String charset = entity != null ? EntityUtils
+				.getContentCharSet(entity) : null;
+		InputStream body = openBody(response);
+		if (counter != null) {
+			body = new TransferStatistics.CountingInputStream(body, counter);
+		}
+		Reader reader = new InputStreamReader(body,
+				charset != null ? charset : CHARSET);
+		try {
+			StringBuilder builder = new StringBuilder();
+			char[] buffer = new char[BUFFER_SIZE];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				builder.append(buffer, 0, read);
+			}
+			return builder.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Builds a GET request with the headers of the current format.
+	 * 
+	 * @param url
+	 *            Target.
+	 * @return A request ready to be executed.
+	 * @throws URISyntaxException
+	 *             If the url is not valid.
+	 */
+	private HttpGet buildGet(URL url) throws URISyntaxException {
+		HttpGet httpGet = new HttpGet(url.toURI());
+		httpGet.setHeader(ACCEPT_HEADER, format.getHTTPContentType());
+		httpGet.setHeader(CONTENT_TYPE_HEADER, format.getHTTPContentType());
+		httpGet.setHeader(ContentEncoding.ACCEPT_ENCODING_HEADER,
+				ContentEncoding.SUPPORTED_ENCODINGS);
+		return httpGet;
 	}
 
 	@Override
@@ -83,11 +438,15 @@ public class HTTPNetworkManager implements NetworkManager {
 			HttpPost httpPost = new HttpPost(url.toURI());
 			httpPost.setHeader(ACCEPT_HEADER, format.getHTTPContentType());
 			httpPost.setHeader("Content-Type", POST_CONTENT_TYPE);
+			httpPost.setHeader(ContentEncoding.ACCEPT_ENCODING_HEADER,
+					ContentEncoding.SUPPORTED_ENCODINGS);
 			httpPost.setEntity(generateHttpEntityFromParameters(parameters));
-			HttpResponse response = httpClient.execute(httpPost);
-			return EntityUtils.toString(response.getEntity(), CHARSET);
+			long start = System.nanoTime();
+			return readAndReport("POST", url, execute(httpPost, url), start);
+		} catch (IOException e) {
+			throw e;
 		} catch (Exception e) {
-			throw new IOException(e);
+			throw new IOException(e.getMessage(), e);
 		}
 	}
 
@@ -134,7 +493,14 @@ public class HTTPNetworkManager implements NetworkManager {
 			HttpParams params = new BasicHttpParams();
 			HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
 			HttpProtocolParams.setContentCharset(params, CHARSET);
-			HttpConnectionParams.setConnectionTimeout(params, TIMEOUT);
+			HttpConnectionParams.setConnectionTimeout(params,
+					(int) DEFAULT_CONNECT_TIMEOUT);
+			HttpConnectionParams.setSoTimeout(params,
+					(int) DEFAULT_READ_TIMEOUT);
+			ConnManagerParams.setMaxConnectionsPerRoute(params,
+					new ConnPerRouteBean(MAX_CONNECTIONS_PER_ROUTE));
+			ConnManagerParams.setMaxTotalConnections(params,
+					MAX_TOTAL_CONNECTIONS);
 
 			SchemeRegistry registry = new SchemeRegistry();
 			registry.register(new Scheme("http", PlainSocketFactory
@@ -0,0 +1,110 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codeforamerica.open311.internals.metrics.Instrumentation;
+
+/**
+ * Body of a streamed response which sends its {@link Instrumentation} event
+ * once it has been read until the end or closed, with the (decompressed)
+ * bytes read so far.
+ */
+final class InstrumentedInputStream extends FilterInputStream {
+	private final String host;
+	private final String method;
+	private final int statusCode;
+	private final long startNanos;
+	private long bytes;
+	private boolean reported;
+
+	private InstrumentedInputStream(InputStream in, String host,
+			String method, int statusCode, long startNanos) {
+		super(in);
+		this.host = host;
+		this.method = method;
+		this.statusCode = statusCode;
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * Watches the body of a response, if there is any listener.
+	 * 
+	 * @param body
+	 *            Body of the response.
+	 * @param host
+	 *            Host of the request.
+	 * @param method
+	 *            Method of the request.
+	 * @param statusCode
+	 *            Status code of the response.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} before the request.
+	 * @return The instrumented body, or the same one without listeners.
+	 */
+	static InputStream instrument(InputStream body, String host,
+			String method, int statusCode, long startNanos) {
+		if (!Instrumentation.isEnabled()) {
+			return body;
+		}
+		return new InstrumentedInputStream(body, host, method, statusCode,
+				startNanos);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int result = super.read();
+		if (result != -1) {
+			bytes++;
+		} else {
+			report();
+		}
+		return result;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int result = super.read(b, off, len);
+		if (result > 0) {
+			bytes += result;
+		} else if (result == -1) {
+			report();
+		}
+		return result;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long result = super.skip(n);
+		if (result > 0) {
+			bytes += result;
+		}
+		return result;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			report();
+		}
+	}
+
+	/**
+	 * Sends the event, only once.
+	 */
+	private void report() {
+		if (!reported) {
+			reported = true;
+			Instrumentation.networkRequest(host, method, statusCode, bytes,
+					System.nanoTime() - startNanos);
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package org.codeforamerica.open311.internals.network;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Map;
 
@@ -11,7 +13,7 @@ import org.codeforamerica.open311.facade.Format;
  * 
  * @author Santiago Munín <santimunin@gmail.com>
  */
-public class MockNetworkManager implements NetworkManager {
+public class MockNetworkManager implements StreamingNetworkManager {
 	private Format format = Format.XML;
 
 	@Override
@@ -28,6 +30,11 @@ public class MockNetworkManager implements NetworkManager {
 		return "";
 	}
 
+	@Override
+	public InputStream doGetStream(URL url) throws IOException {
+		return new ByteArrayInputStream(doGet(url).getBytes(CHARSET));
+	}
+
 	@Override
 	public String doPost(URL url, Map<String, String> parameters)
 			throws IOException {
@@ -0,0 +1,249 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+
+/**
+ * Token bucket: permits are added at a constant rate up to a maximum (the
+ * burst), and every request takes one. When the bucket is empty, the
+ * requests wait (in order) for their permit. Thread-safe.
+ * 
+ * The bucket can be paused until a given time, to honor the
+ * <code>Retry-After</code> header of a throttling server.
+ */
+public class RateLimiter {
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	private double permitsPerSecond;
+	private double maximumPermits;
+	private double storedPermits;
+	/**
+	 * Time (nanoseconds) when the next permit is available.
+	 */
+	private long nextFreeTime = System.nanoTime();
+
+	/**
+	 * Builds a full bucket.
+	 * 
+	 * @param permitsPerSecond
+	 *            Sustained rate (<code>Double.POSITIVE_INFINITY</code> for an
+	 *            unlimited rate which can still be paused).
+	 * @param burst
+	 *            Maximum number of requests which can be sent at once.
+	 */
+	public RateLimiter(double permitsPerSecond, int burst) {
+		setRate(permitsPerSecond, burst);
+		storedPermits = maximumPermits;
+	}
+
+	/**
+	 * Changes the rate and the burst. The stored permits are kept (up to the
+	 * new burst).
+	 * 
+	 * @param permitsPerSecond
+	 *            Sustained rate (positive).
+	 * @param burst
+	 *            Maximum number of requests which can be sent at once
+	 *            (positive).
+	 */
+	public synchronized void setRate(double permitsPerSecond, int burst) {
+		if (!(permitsPerSecond > 0) || burst < 1) {
+			throw new IllegalArgumentException(
+					"The rate and the burst must be positive.");
+		}
+		refill(System.nanoTime());
+		this.permitsPerSecond = permitsPerSecond;
+		this.maximumPermits = burst;
+		storedPermits = Math.min(storedPermits, maximumPermits);
+	}
+
+	public synchronized double getRate() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * Takes a permit, waiting for it if needed.
+	 * 
+	 * @throws InterruptedException
+	 *             If the thread is interrupted while waiting (the permit is
+	 *             lost).
+	 */
+	public void acquire() throws InterruptedException {
+		long wait = reserve();
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * Takes a permit if it is available within the given time, waiting for
+	 * it.
+	 * 
+	 * @param timeout
+	 *            Maximum wait.
+	 * @param unit
+	 *            Unit of the given time.
+	 * @return <code>true</code> if it has been taken, <code>false</code> if
+	 *         it wouldn't be available in time (it isn't reserved then).
+	 * @throws InterruptedException
+	 *             If the thread is interrupted while waiting (the permit is
+	 *             lost).
+	 */
+	public boolean tryAcquire(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long wait = reserve(unit.toNanos(timeout));
+		if (wait < 0) {
+			return false;
+		}
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+		return true;
+	}
+
+	/**
+	 * Time until the next permit is available.
+	 * 
+	 * @param unit
+	 *            Unit of the result.
+	 * @return The wait (<code>0</code> if a permit is available now).
+	 */
+	public synchronized long getWaitTime(TimeUnit unit) {
+		long now = System.nanoTime();
+		refill(now);
+		return unit.convert(Math.max(0, nextPermitTime() - now),
+				TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Takes a permit only if it is available now.
+	 * 
+	 * @return <code>true</code> if it has been taken.
+	 */
+	public synchronized boolean tryAcquire() {
+		long now = System.nanoTime();
+		refill(now);
+		if (nextFreeTime > now || storedPermits < 1) {
+			return false;
+		}
+		storedPermits -= 1;
+		return true;
+	}
+
+	/**
+	 * Takes a permit without blocking: the given task is run by the given
+	 * executor once the permit is available.
+	 * 
+	 * @param task
+	 *            Task which needs the permit.
+	 * @param executor
+	 *            Executor of the task.
+	 * @return The future result of the task (cancelling it before it has
+	 *         started prevents it from running, the permit is lost).
+	 */
+	public Future<?> acquireAsync(Runnable task, final Executor executor) {
+		final FutureTask<Object> future = new FutureTask<Object>(task, null);
+		Runnable submission = new Runnable() {
+			@Override
+			public void run() {
+				if (!future.isCancelled()) {
+					executor.execute(future);
+				}
+			}
+		};
+		long wait = reserve();
+		if (wait > 0) {
+			PlatformManager.getInstance().getScheduler()
+					.schedule(submission, wait, TimeUnit.NANOSECONDS);
+		} else {
+			submission.run();
+		}
+		return future;
+	}
+
+	/**
+	 * Stops giving permits until the given time (it doesn't shorten a
+	 * previous pause).
+	 * 
+	 * @param time
+	 *            Milliseconds since the epoch.
+	 */
+	public synchronized void pauseUntil(long time) {
+		long now = System.nanoTime();
+		long pause = TimeUnit.MILLISECONDS.toNanos(time
+				- System.currentTimeMillis());
+		if (pause > 0) {
+			refill(now);
+			nextFreeTime = Math.max(nextFreeTime, now + pause);
+			storedPermits = 0;
+		}
+	}
+
+	/**
+	 * Reserves the next permit.
+	 * 
+	 * @return Nanoseconds to wait until it can be used.
+	 */
+	private long reserve() {
+		return reserve(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reserves the next permit if it can be used within the given time.
+	 * 
+	 * @param maximumWait
+	 *            Nanoseconds the caller can wait.
+	 * @return Nanoseconds to wait until it can be used, <code>-1</code> if it
+	 *         hasn't been reserved.
+	 */
+	private synchronized long reserve(long maximumWait) {
+		long now = System.nanoTime();
+		refill(now);
+		long permitTime = nextPermitTime();
+		long wait = Math.max(0, permitTime - now);
+		if (wait > maximumWait) {
+			return -1;
+		}
+		storedPermits -= Math.min(1, storedPermits);
+		nextFreeTime = permitTime;
+		return wait;
+	}
+
+	/**
+	 * Time (nanoseconds) when the next permit can be used: the missing
+	 * fraction of the permit is generated before using it.
+	 */
+	private long nextPermitTime() {
+		if (Double.isInfinite(permitsPerSecond)) {
+			return nextFreeTime;
+		}
+		double fromStored = Math.min(1, storedPermits);
+		return nextFreeTime
+				+ (long) ((1 - fromStored) * NANOS_PER_SECOND / permitsPerSecond);
+	}
+
+	/**
+	 * Adds the permits generated since the last time the bucket was used.
+	 */
+	private void refill(long now) {
+		if (now > nextFreeTime) {
+			if (Double.isInfinite(permitsPerSecond)) {
+				storedPermits = maximumPermits;
+			} else {
+				storedPermits = Math.min(maximumPermits, storedPermits
+						+ (now - nextFreeTime) * permitsPerSecond
+						/ NANOS_PER_SECOND);
+			}
+			nextFreeTime = now;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RateLimiter [permitsPerSecond=" + permitsPerSecond
+				+ ", burst=" + maximumPermits + "]";
+	}
+}
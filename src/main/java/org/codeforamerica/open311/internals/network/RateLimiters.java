@@ -0,0 +1,201 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiters of the endpoint hosts, shared by every network manager (and
+ * so by every wrapper) of the application. The requests to a host without a
+ * rate limiter are never delayed, unless it has asked to wait with a
+ * <code>Retry-After</code> header.
+ */
+public final class RateLimiters {
+	public static final int TOO_MANY_REQUESTS = 429;
+	public static final int SERVICE_UNAVAILABLE = 503;
+	public static final String RETRY_AFTER_HEADER = "Retry-After";
+	/**
+	 * Longest pause (milliseconds) a <code>Retry-After</code> header can ask
+	 * for, longer ones are shortened.
+	 */
+	public static final long MAX_RETRY_AFTER = TimeUnit.MINUTES.toMillis(10);
+	private static final ConcurrentHashMap<String, RateLimiter> RATE_LIMITERS = new ConcurrentHashMap<String, RateLimiter>();
+
+	private RateLimiters() {
+	}
+
+	/**
+	 * Limits the rate of the requests to a host.
+	 * 
+	 * @param endpoint
+	 *            Url of the endpoint or its host.
+	 * @param permitsPerSecond
+	 *            Sustained rate.
+	 * @param burst
+	 *            Maximum number of requests which can be sent at once.
+	 * @return The rate limiter of the host.
+	 */
+	public static RateLimiter setRate(String endpoint, double permitsPerSecond,
+			int burst) {
+		String host = hostOf(endpoint);
+		RateLimiter rateLimiter = RATE_LIMITERS.get(host);
+		if (rateLimiter == null) {
+			RateLimiter created = new RateLimiter(permitsPerSecond, burst);
+			rateLimiter = RATE_LIMITERS.putIfAbsent(host, created);
+			if (rateLimiter == null) {
+				return created;
+			}
+		}
+		rateLimiter.setRate(permitsPerSecond, burst);
+		return rateLimiter;
+	}
+
+	/**
+	 * Looks for the rate limiter of a host.
+	 * 
+	 * @param endpoint
+	 *            Url of the endpoint or its host.
+	 * @return The rate limiter or <code>null</code> if it hasn't got one.
+	 */
+	public static RateLimiter get(String endpoint) {
+		return RATE_LIMITERS.get(hostOf(endpoint));
+	}
+
+	/**
+	 * Removes the rate limiter of a host.
+	 * 
+	 * @param endpoint
+	 *            Url of the endpoint or its host.
+	 */
+	public static void remove(String endpoint) {
+		RATE_LIMITERS.remove(hostOf(endpoint));
+	}
+
+	/**
+	 * Waits for a permit to send a request, if its host has a rate limiter.
+	 * The wait is bounded by the total timeout of the request and the
+	 * deadline of the {@link CancellationToken} of the current thread: if the
+	 * permit wouldn't arrive in time, the request fails right away.
+	 * 
+	 * @param url
+	 *            Target of the request.
+	 * @param requestTimeout
+	 *            Total timeout (milliseconds) of the request, <code>0</code>
+	 *            if it isn't limited.
+	 * @throws ThrottledException
+	 *             If the permit wouldn't arrive in time.
+	 * @throws InterruptedIOException
+	 *             If the thread is interrupted while waiting.
+	 */
+	static void acquire(URL url, long requestTimeout)
+			throws ThrottledException, InterruptedIOException {
+		RateLimiter rateLimiter = RATE_LIMITERS.get(url.getHost());
+		if (rateLimiter != null) {
+			long maximumWait = requestTimeout > 0 ? requestTimeout
+					: Long.MAX_VALUE;
+			CancellationToken token = CancellationToken.current();
+			if (token != null) {
+				maximumWait = Math.min(maximumWait,
+						token.getRemaining(TimeUnit.MILLISECONDS));
+			}
+			try {
+				if (!rateLimiter.tryAcquire(maximumWait, TimeUnit.MILLISECONDS)) {
+					throw new ThrottledException("The requests to "
+							+ url.getHost() + " are limited",
+							TOO_MANY_REQUESTS,
+							rateLimiter.getWaitTime(TimeUnit.MILLISECONDS));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting to send a request to "
+								+ url.getHost());
+			}
+		}
+	}
+
+	/**
+	 * Checks if a status code means the server is throttling the requests.
+	 */
+	static boolean isThrottled(int statusCode) {
+		return statusCode == TOO_MANY_REQUESTS
+				|| statusCode == SERVICE_UNAVAILABLE;
+	}
+
+	/**
+	 * Records a throttling response: the following requests to its host wait
+	 * for the time asked by the server (at most {@link #MAX_RETRY_AFTER}).
+	 * 
+	 * @param url
+	 *            Target of the request.
+	 * @param statusCode
+	 *            Status code of the response.
+	 * @param retryAfter
+	 *            Value of the <code>Retry-After</code> header (it can be
+	 *            <code>null</code>).
+	 * @return The exception to throw.
+	 */
+	static ThrottledException throttled(URL url, int statusCode,
+			String retryAfter) {
+		long wait = Math.min(parseRetryAfter(retryAfter), MAX_RETRY_AFTER);
+		if (wait > 0) {
+			String host = url.getHost();
+			RateLimiter rateLimiter = RATE_LIMITERS.get(host);
+			if (rateLimiter == null) {
+				RateLimiter created = new RateLimiter(
+						Double.POSITIVE_INFINITY, 1);
+				rateLimiter = RATE_LIMITERS.putIfAbsent(host, created);
+				if (rateLimiter == null) {
+					rateLimiter = created;
+				}
+			}
+			rateLimiter.pauseUntil(System.currentTimeMillis() + wait);
+		}
+		return new ThrottledException(statusCode, wait);
+	}
+
+	/**
+	 * Parses a <code>Retry-After</code> header, which is a number of seconds
+	 * or an HTTP date.
+	 * 
+	 * @param value
+	 *            Value of the header.
+	 * @return Milliseconds to wait (<code>-1</code> if it is not valid).
+	 */
+	static long parseRetryAfter(String value) {
+		if (value == null || value.trim().length() == 0) {
+			return -1;
+		}
+		String trimmed = value.trim();
+		try {
+			return Math.max(0, Long.parseLong(trimmed) * 1000);
+		} catch (NumberFormatException e) {
+			SimpleDateFormat httpDate = new SimpleDateFormat(
+					"EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+			httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+			try {
+				return Math.max(0, httpDate.parse(trimmed).getTime()
+						- System.currentTimeMillis());
+			} catch (ParseException ex) {
+				return -1;
+			}
+		}
+	}
+
+	private static String hostOf(String endpoint) {
+		if (endpoint == null) {
+			throw new IllegalArgumentException("An endpoint is required.");
+		}
+		try {
+			return new URL(endpoint).getHost();
+		} catch (MalformedURLException e) {
+			return endpoint;
+		}
+	}
+}
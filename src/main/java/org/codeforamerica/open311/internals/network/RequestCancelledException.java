@@ -0,0 +1,32 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a request is aborted (or not sent) because its
+ * {@link CancellationToken} has been cancelled or its deadline has been
+ * reached. It is never retried, and it isn't a failure of the server (the
+ * total timeout of a network manager throws a
+ * {@link RequestTimeoutException} instead).
+ */
+public class RequestCancelledException extends InterruptedIOException {
+	private static final long serialVersionUID = 6243316790612962712L;
+	private final boolean deadlineExceeded;
+
+	/**
+	 * Builds an instance.
+	 * 
+	 * @param deadlineExceeded
+	 *            <code>true</code> if a deadline was reached,
+	 *            <code>false</code> if it was explicitly cancelled.
+	 */
+	public RequestCancelledException(boolean deadlineExceeded) {
+		super(deadlineExceeded ? "Deadline exceeded, request aborted."
+				: "Request cancelled.");
+		this.deadlineExceeded = deadlineExceeded;
+	}
+
+	public boolean isDeadlineExceeded() {
+		return deadlineExceeded;
+	}
+}
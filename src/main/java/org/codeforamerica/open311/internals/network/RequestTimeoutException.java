@@ -0,0 +1,16 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Thrown when a request is aborted because the total timeout of its network
+ * manager has expired. Unlike a {@link RequestCancelledException}, it is a
+ * failure of the server (it is too slow), so it can be retried.
+ */
+public class RequestTimeoutException extends SocketTimeoutException {
+	private static final long serialVersionUID = -3512094417702386645L;
+
+	public RequestTimeoutException() {
+		super("Total timeout expired, request aborted.");
+	}
+}
@@ -0,0 +1,161 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+
+/**
+ * Aborts a request when the total timeout of its network manager expires or
+ * the {@link CancellationToken} of the current thread is cancelled, until the
+ * response has been read (or closed).
+ */
+final class RequestWatchdog implements Runnable {
+	private final Runnable abort;
+	private final CancellationToken token;
+	private final AtomicBoolean stopped = new AtomicBoolean();
+	private volatile boolean timedOut;
+	/**
+	 * When the total timeout expires (nanoseconds), if there is one.
+	 */
+	private long deadline;
+	private ScheduledFuture<?> timer;
+
+	private RequestWatchdog(Runnable abort, CancellationToken token) {
+		this.abort = abort;
+		this.token = token;
+	}
+
+	/**
+	 * Starts watching a request.
+	 * 
+	 * @param totalTimeout
+	 *            Milliseconds the request (including the reading of its
+	 *            response) can take, <code>0</code> if there isn't a limit.
+	 * @param abort
+	 *            Aborts the request.
+	 * @return The watchdog, which has to be stopped.
+	 * @throws RequestCancelledException
+	 *             If the token of the current thread is already cancelled.
+	 */
+	static RequestWatchdog start(long totalTimeout, Runnable abort)
+			throws RequestCancelledException {
+		CancellationToken token = CancellationToken.current();
+		if (token != null) {
+			token.throwIfCancelled();
+		}
+		final RequestWatchdog watchdog = new RequestWatchdog(abort, token);
+		if (totalTimeout > 0) {
+			watchdog.deadline = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(totalTimeout);
+			watchdog.timer = PlatformManager.getInstance().getScheduler()
+					.schedule(new Runnable() {
+						@Override
+						public void run() {
+							watchdog.timedOut = true;
+							watchdog.run();
+						}
+					}, totalTimeout, TimeUnit.MILLISECONDS);
+		}
+		if (token != null) {
+			token.addListener(watchdog);
+		}
+		return watchdog;
+	}
+
+	/**
+	 * Aborts the request, unless the watchdog has been stopped. The abort runs
+	 * in another thread, as it can block until a pending read finishes.
+	 */
+	@Override
+	public void run() {
+		if (!stopped.get()) {
+			PlatformManager.getInstance().getInternalExecutor().execute(abort);
+		}
+	}
+
+	/**
+	 * Stops watching the request.
+	 */
+	void stop() {
+		if (stopped.compareAndSet(false, true)) {
+			if (timer != null) {
+				timer.cancel(false);
+			}
+			if (token != null) {
+				token.removeListener(this);
+			}
+		}
+	}
+
+	/**
+	 * Explains the failure of an aborted request.
+	 * 
+	 * @param e
+	 *            Failure of the request.
+	 * @return A {@link RequestTimeoutException} if the total timeout aborted
+	 *         it, a {@link RequestCancelledException} if the token did, the
+	 *         same exception otherwise.
+	 */
+	IOException translate(IOException e) {
+		if (e instanceof RequestCancelledException
+				|| e instanceof RequestTimeoutException) {
+			return e;
+		}
+		if (timer != null && System.nanoTime() - deadline >= 0) {
+			timedOut = true;
+		}
+		if (timedOut) {
+			RequestTimeoutException timeout = new RequestTimeoutException();
+			timeout.initCause(e);
+			return timeout;
+		}
+		if (token != null && token.isCancelled()) {
+			RequestCancelledException cancelled = new RequestCancelledException(
+					token.isDeadlineExceeded());
+			cancelled.initCause(e);
+			return cancelled;
+		}
+		return e;
+	}
+
+	/**
+	 * Keeps watching the request while its response is read. The watchdog is
+	 * stopped when the stream is closed.
+	 * 
+	 * @param body
+	 *            Body of the response.
+	 * @return The watched body.
+	 */
+	InputStream watch(InputStream body) {
+		return new FilterInputStream(body) {
+			@Override
+			public int read() throws IOException {
+				try {
+					return super.read();
+				} catch (IOException e) {
+					throw translate(e);
+				}
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				try {
+					return super.read(b, off, len);
+				} catch (IOException e) {
+					throw translate(e);
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				stop();
+				super.close();
+			}
+		};
+	}
+}
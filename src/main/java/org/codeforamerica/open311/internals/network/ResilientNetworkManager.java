@@ -0,0 +1,431 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.internals.network.CircuitBreaker.State;
+
+/**
+ * Decorates a {@link NetworkManager} to make it resilient to flapping
+ * endpoints:
+ * <ul>
+ * <li>Failed GET requests (including the ones answered with a
+ * <code>5xx</code> status code) are retried, waiting a random time which
+ * grows exponentially between attempts (decorrelated jitter), as long as the
+ * retry budget of the call (maximum attempts and time) isn't exhausted. POST
+ * requests aren't retried, as they aren't idempotent.</li>
+ * <li>If the server is throttling the requests, the retry waits at least the
+ * time asked by its <code>Retry-After</code> header.</li>
+ * <li>A request isn't retried if the {@link CancellationToken} of the calling
+ * thread has been cancelled or would expire while waiting. Cancelling it
+ * during the wait stops it immediately with a
+ * {@link RequestCancelledException}.</li>
+ * <li>Every host has a circuit breaker: after some consecutive failures, the
+ * requests to the host fail fast (with a {@link CircuitOpenException}) for a
+ * while, instead of waiting for the endpoint.</li>
+ * </ul>
+ * 
+ * <pre>
+ * new APIWrapperFactory(City.SAN_FRANCISCO).setNetworkManager(
+ * 		new ResilientNetworkManager(new HTTPNetworkManager(Format.XML)));
+ * </pre>
+ */
+public class ResilientNetworkManager implements ConditionalNetworkManager {
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_BASE_DELAY = 100;
+	public static final long DEFAULT_MAX_DELAY = 5000;
+	public static final long DEFAULT_RETRY_BUDGET = 15000;
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final long DEFAULT_OPEN_TIME = 30000;
+
+	private final NetworkManager networkManager;
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private volatile long baseDelay = DEFAULT_BASE_DELAY;
+	private volatile long maxDelay = DEFAULT_MAX_DELAY;
+	private volatile long retryBudget = DEFAULT_RETRY_BUDGET;
+	private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+	private volatile long openTime = DEFAULT_OPEN_TIME;
+	private final ConcurrentHashMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private final Random random = new Random();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+
+	/**
+	 * Builds an instance with the default policies.
+	 * 
+	 * @param networkManager
+	 *            The manager which sends the requests.
+	 */
+	public ResilientNetworkManager(NetworkManager networkManager) {
+		this.networkManager = networkManager;
+	}
+
+	/**
+	 * Sets the retry budget of a GET call.
+	 * 
+	 * @param maxAttempts
+	 *            Maximum attempts (<code>1</code> disables the retries).
+	 * @param maxTime
+	 *            Maximum time spent waiting between attempts.
+	 * @param unit
+	 *            Unit of the given time.
+	 * @return The same instance.
+	 */
+	public ResilientNetworkManager setRetryBudget(int maxAttempts,
+			long maxTime, TimeUnit unit) {
+		if (maxAttempts >= 1 && maxTime >= 0 && unit != null) {
+			this.maxAttempts = maxAttempts;
+			this.retryBudget = unit.toMillis(maxTime);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the bounds of the time waited between attempts. Each wait is
+	 * random, between the base delay and three times the previous one (but
+	 * never longer than the maximum delay).
+	 * 
+	 * @param baseDelay
+	 *            Minimum wait.
+	 * @param maxDelay
+	 *            Maximum wait.
+	 * @param unit
+	 *            Unit of the given times.
+	 * @return The same instance.
+	 */
+	public ResilientNetworkManager setBackoff(long baseDelay, long maxDelay,
+			TimeUnit unit) {
+		if (baseDelay > 0 && maxDelay >= baseDelay && unit != null) {
+			this.baseDelay = unit.toMillis(baseDelay);
+			this.maxDelay = unit.toMillis(maxDelay);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the policy of the circuit breakers. It only affects to the hosts
+	 * which haven't been contacted yet.
+	 * 
+	 * @param failureThreshold
+	 *            Consecutive failures which open a circuit.
+	 * @param openTime
+	 *            Time a circuit stays open before allowing a trial request.
+	 * @param unit
+	 *            Unit of the given time.
+	 * @return The same instance.
+	 */
+	public ResilientNetworkManager setCircuitBreaker(int failureThreshold,
+			long openTime, TimeUnit unit) {
+		if (failureThreshold >= 1 && openTime > 0 && unit != null) {
+			this.failureThreshold = failureThreshold;
+			this.openTime = unit.toMillis(openTime);
+		}
+		return this;
+	}
+
+	@Override
+	public String doGet(final URL url) throws IOException {
+		return execute(url, true, new Call<String>() {
+			@Override
+			public String execute() throws IOException {
+				return networkManager.doGet(url);
+			}
+		});
+	}
+
+	@Override
+	public InputStream doGetStream(final URL url) throws IOException {
+		return watch(url, execute(url, true, new Call<InputStream>() {
+			@Override
+			public InputStream execute() throws IOException {
+				if (networkManager instanceof StreamingNetworkManager) {
+					return ((StreamingNetworkManager) networkManager)
+							.doGetStream(url);
+				}
+				return new ByteArrayInputStream(networkManager.doGet(url)
+						.getBytes(CHARSET));
+			}
+		}));
+	}
+
+	/**
+	 * Conditional GET operation. If the decorated manager doesn't support it,
+	 * a regular request is sent.
+	 */
+	@Override
+	public ConditionalResponse doConditionalGet(final URL url,
+			final Validators validators) throws IOException {
+		if (!(networkManager instanceof ConditionalNetworkManager)) {
+			return new ConditionalResponse(false, doGetStream(url),
+					new Validators(null, null));
+		}
+		ConditionalResponse response = execute(url, true,
+				new Call<ConditionalResponse>() {
+					@Override
+					public ConditionalResponse execute() throws IOException {
+						return ((ConditionalNetworkManager) networkManager)
+								.doConditionalGet(url, validators);
+					}
+				});
+		if (response.getBody() == null) {
+			return response;
+		}
+		return new ConditionalResponse(response.isNotModified(), watch(url,
+				response.getBody()), response.getValidators());
+	}
+
+	/**
+	 * The request of a streamed response is recorded as a success as soon as
+	 * the response arrives, so the failures while its body is read are
+	 * recorded as well.
+	 * 
+	 * @param url
+	 *            Target of the request.
+	 * @param body
+	 *            Body of its response.
+	 * @return The watched body.
+	 */
+	private InputStream watch(URL url, InputStream body) {
+		final CircuitBreaker circuitBreaker = circuitBreakerOf(url.getHost());
+		return new FilterInputStream(body) {
+			private boolean failed;
+
+			@Override
+			public int read() throws IOException {
+				try {
+					return super.read();
+				} catch (IOException e) {
+					throw failed(e);
+				}
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				try {
+					return super.read(b, off, len);
+				} catch (IOException e) {
+					throw failed(e);
+				}
+			}
+
+			private IOException failed(IOException e) {
+				if (!failed && !(e instanceof RequestCancelledException)) {
+					failed = true;
+					circuitBreaker.recordFailure();
+					failures.incrementAndGet();
+				}
+				return e;
+			}
+		};
+	}
+
+	@Override
+	public String doPost(final URL url, final Map<String, String> parameters)
+			throws IOException {
+		return execute(url, false, new Call<String>() {
+			@Override
+			public String execute() throws IOException {
+				return networkManager.doPost(url, parameters);
+			}
+		});
+	}
+
+	@Override
+	public void setFormat(Format format) {
+		networkManager.setFormat(format);
+	}
+
+	/**
+	 * State of the circuit of a host.
+	 * 
+	 * @param host
+	 *            Host of interest.
+	 * @return Its state ({@link State#CLOSED} if it hasn't been contacted).
+	 */
+	public State getCircuitState(String host) {
+		CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+		return circuitBreaker != null ? circuitBreaker.getState()
+				: State.CLOSED;
+	}
+
+	/**
+	 * Circuit breakers of the contacted hosts.
+	 * 
+	 * @return A read-only snapshot (host -> circuit breaker).
+	 */
+	public Map<String, CircuitBreaker> getCircuitBreakers() {
+		return Collections
+				.unmodifiableMap(new HashMap<String, CircuitBreaker>(
+						circuitBreakers));
+	}
+
+	/**
+	 * Number of requests sent (every attempt counts).
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * Number of failed requests.
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Number of retried requests.
+	 */
+	public long getRetryCount() {
+		return retries.get();
+	}
+
+	/**
+	 * Number of requests rejected by an open circuit.
+	 */
+	public long getRejectionCount() {
+		return rejections.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ResilientNetworkManager [requests=" + requests + ", failures="
+				+ failures + ", retries=" + retries + ", rejections="
+				+ rejections + ", circuits=" + circuitBreakers + "]";
+	}
+
+	/**
+	 * A request which can be retried.
+	 */
+	private interface Call<T> {
+		T execute() throws IOException;
+	}
+
+	/**
+	 * Sends a request through the circuit breaker of its host, retrying it if
+	 * it fails and it is idempotent.
+	 * 
+	 * @param url
+	 *            Target.
+	 * @param idempotent
+	 *            <code>true</code> if the request can be retried.
+	 * @param call
+	 *            Sends the request.
+	 * @return The response.
+	 * @throws IOException
+	 *             The exception of the last attempt, or a
+	 *             {@link CircuitOpenException} if no attempt was allowed.
+	 */
+	private <T> T execute(URL url, boolean idempotent, Call<T> call)
+			throws IOException {
+		String host = url.getHost();
+		CircuitBreaker circuitBreaker = circuitBreakerOf(host);
+		long deadline = System.currentTimeMillis() + retryBudget;
+		long delay = baseDelay;
+		IOException lastFailure = null;
+		for (int attempt = 1;; attempt++) {
+			if (!circuitBreaker.allowRequest()) {
+				rejections.incrementAndGet();
+				throw lastFailure != null ? lastFailure
+						: new CircuitOpenException(host);
+			}
+			requests.incrementAndGet();
+			boolean recorded = false;
+			try {
+				T result = call.execute();
+				circuitBreaker.recordSuccess();
+				recorded = true;
+				return result;
+			} catch (RequestCancelledException e) {
+				// The caller gave up, it says nothing about the server (unlike
+				// a RequestTimeoutException, which is a failure).
+				throw e;
+			} catch (IOException e) {
+				circuitBreaker.recordFailure();
+				recorded = true;
+				failures.incrementAndGet();
+				lastFailure = e;
+			} finally {
+				if (!recorded) {
+					circuitBreaker.recordIgnored();
+				}
+			}
+			CancellationToken token = CancellationToken.current();
+			if (!idempotent || attempt >= maxAttempts
+					|| (token != null && token.isCancelled())) {
+				throw lastFailure;
+			}
+			delay = nextDelay(delay);
+			if (lastFailure instanceof ThrottledException) {
+				delay = Math.max(delay,
+						((ThrottledException) lastFailure).getRetryAfter());
+			}
+			if (System.currentTimeMillis() + delay > deadline
+					|| (token != null && delay >= token
+							.getRemaining(TimeUnit.MILLISECONDS))) {
+				throw lastFailure;
+			}
+			retries.incrementAndGet();
+			try {
+				if (token == null) {
+					Thread.sleep(delay);
+				} else if (token.await(delay, TimeUnit.MILLISECONDS)) {
+					// Cancelled while waiting to retry.
+					RequestCancelledException cancelled = new RequestCancelledException(
+							token.isDeadlineExceeded());
+					cancelled.initCause(lastFailure);
+					throw cancelled;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				InterruptedIOException interrupted = new InterruptedIOException(
+						"Interrupted while waiting to retry " + url);
+				interrupted.initCause(lastFailure);
+				throw interrupted;
+			}
+		}
+	}
+
+	/**
+	 * Decorrelated jitter: a random time between the base delay and three
+	 * times the previous one, capped.
+	 */
+	private long nextDelay(long previousDelay) {
+		long upperBound = Math.min(maxDelay, previousDelay * 3);
+		if (upperBound <= baseDelay) {
+			return baseDelay;
+		}
+		double jitter;
+		synchronized (random) {
+			jitter = random.nextDouble();
+		}
+		return baseDelay + (long) (jitter * (upperBound - baseDelay));
+	}
+
+	private CircuitBreaker circuitBreakerOf(String host) {
+		CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+		if (circuitBreaker == null) {
+			CircuitBreaker created = new CircuitBreaker(failureThreshold,
+					openTime);
+			circuitBreaker = circuitBreakers.putIfAbsent(host, created);
+			if (circuitBreaker == null) {
+				circuitBreaker = created;
+			}
+		}
+		return circuitBreaker;
+	}
+}
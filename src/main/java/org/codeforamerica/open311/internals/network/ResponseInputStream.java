@@ -0,0 +1,101 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Body of a network response which can be rewound to its beginning as long as
+ * no more than a limited number of bytes have been read. This allows to parse
+ * the body again (for example, as a GeoReport error) when it turns out not to
+ * be the expected response, which is always a small document, without keeping
+ * the whole body of big responses in memory.
+ *
+ * The parsers close the streams they consume, so {@link #close()} does
+ * nothing; the owner of the stream has to call {@link #release()}.
+ */
+public class ResponseInputStream extends BufferedInputStream {
+	private long bytesRead;
+
+	/**
+	 * Builds an instance.
+	 *
+	 * @param in
+	 *            Body of the response.
+	 * @param rewindLimit
+	 *            Maximum number of read bytes which still allows to rewind the
+	 *            stream.
+	 */
+	public ResponseInputStream(InputStream in, int rewindLimit) {
+		super(in);
+		mark(rewindLimit);
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+		int result = super.read();
+		if (result != -1) {
+			bytesRead++;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len)
+			throws IOException {
+		int result = super.read(b, off, len);
+		if (result > 0) {
+			bytesRead += result;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized long skip(long n) throws IOException {
+		long result = super.skip(n);
+		bytesRead += result;
+		return result;
+	}
+
+	/**
+	 * Returns the number of bytes handed to the readers of the stream (the
+	 * bytes read again after a {@link #rewind()} are counted again).
+	 *
+	 * @return Read bytes.
+	 */
+	public synchronized long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Tries to go back to the beginning of the stream.
+	 *
+	 * @return <code>true</code> if it was possible, <code>false</code> if too
+	 *         many bytes were read.
+	 */
+	public synchronized boolean rewind() {
+		try {
+			reset();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Does nothing, check {@link #release()}.
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Closes the stream and the underlying response.
+	 *
+	 * @throws IOException
+	 *             If there was any problem closing it.
+	 */
+	public void release() throws IOException {
+		super.close();
+	}
+}
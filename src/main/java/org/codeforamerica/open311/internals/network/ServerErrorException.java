@@ -0,0 +1,46 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers a GET request with a <code>5xx</code> status
+ * code (other than the throttling ones, which throw a
+ * {@link ThrottledException}). It is a failure of the server, so it can be
+ * retried.
+ */
+public class ServerErrorException extends IOException {
+	private static final long serialVersionUID = 4419283762018345571L;
+	/**
+	 * Lowest status code of a server error.
+	 */
+	static final int SERVER_ERROR = 500;
+	private final int statusCode;
+
+	/**
+	 * Builds an instance.
+	 * 
+	 * @param statusCode
+	 *            Status code of the response.
+	 */
+	public ServerErrorException(int statusCode) {
+		super("The server answered " + statusCode);
+		this.statusCode = statusCode;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Checks if the response of a GET request is a server error.
+	 * 
+	 * @param method
+	 *            Method of the request.
+	 * @param statusCode
+	 *            Status code of its response.
+	 * @return <code>true</code> if it has to be thrown as a failure.
+	 */
+	static boolean isServerError(String method, int statusCode) {
+		return statusCode >= SERVER_ERROR && "GET".equals(method);
+	}
+}
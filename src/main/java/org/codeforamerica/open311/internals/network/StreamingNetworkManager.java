@@ -0,0 +1,26 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * A {@link NetworkManager} which is able to hand the body of a response over
+ * as a stream, without materializing it as a string first. Big responses can
+ * then be parsed while they are being received.
+ */
+public interface StreamingNetworkManager extends NetworkManager {
+
+	/**
+	 * Sends a GET HTTP request and returns the body of the response as a
+	 * stream. The caller <b>must</b> close it, which releases the underlying
+	 * connection.
+	 *
+	 * @param url
+	 *            Target.
+	 * @return Server response (UTF-8 encoded).
+	 * @throws IOException
+	 *             If there was any problem with the connection.
+	 */
+	public InputStream doGetStream(URL url) throws IOException;
+}
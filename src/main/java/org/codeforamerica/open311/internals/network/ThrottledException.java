@@ -0,0 +1,58 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers <code>429 Too Many Requests</code> or
+ * <code>503 Service Unavailable</code>, or when the rate limiter of its host
+ * wouldn't allow a request before its deadline.
+ */
+public class ThrottledException extends IOException {
+	private static final long serialVersionUID = -2914706153512049725L;
+	private final int statusCode;
+	private final long retryAfter;
+
+	/**
+	 * Builds an instance.
+	 * 
+	 * @param statusCode
+	 *            Status code of the response.
+	 * @param retryAfter
+	 *            Milliseconds to wait before sending another request (
+	 *            <code>-1</code> if the server didn't say it).
+	 */
+	public ThrottledException(int statusCode, long retryAfter) {
+		this("The server answered " + statusCode, statusCode, retryAfter);
+	}
+
+	/**
+	 * Builds an instance with a custom message.
+	 * 
+	 * @param message
+	 *            Description of the problem.
+	 * @param statusCode
+	 *            Status code of the response which throttled the host.
+	 * @param retryAfter
+	 *            Milliseconds to wait before sending another request (
+	 *            <code>-1</code> if it isn't known).
+	 */
+	public ThrottledException(String message, int statusCode, long retryAfter) {
+		super(message
+				+ (retryAfter >= 0 ? ", retry after " + retryAfter + " ms" : ""));
+		this.statusCode = statusCode;
+		this.retryAfter = retryAfter;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Time to wait before sending another request.
+	 * 
+	 * @return Milliseconds (<code>-1</code> if the server didn't say it).
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,132 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes of the responses received by a network manager, both as
+ * they travel (compressed) and once decompressed. Thread-safe.
+ */
+public class TransferStatistics {
+	private final AtomicLong wireBytes = new AtomicLong();
+	private final AtomicLong decodedBytes = new AtomicLong();
+
+	/**
+	 * Bytes of the bodies as they were received.
+	 * 
+	 * @return Number of bytes.
+	 */
+	public long getWireBytes() {
+		return wireBytes.get();
+	}
+
+	/**
+	 * Bytes of the bodies once decompressed.
+	 * 
+	 * @return Number of bytes.
+	 */
+	public long getDecodedBytes() {
+		return decodedBytes.get();
+	}
+
+	/**
+	 * Relationship between the decompressed and the received sizes.
+	 * 
+	 * @return Decoded bytes per received byte (<code>1</code> if nothing
+	 *         has been received).
+	 */
+	public double getCompressionRatio() {
+		long wire = wireBytes.get();
+		return wire > 0 ? (double) decodedBytes.get() / wire : 1;
+	}
+
+	public void reset() {
+		wireBytes.set(0);
+		decodedBytes.set(0);
+	}
+
+	/**
+	 * Decompresses a body (if needed) and counts its bytes while it is read.
+	 * 
+	 * @param body
+	 *            Body as it was received.
+	 * @param contentEncoding
+	 *            Value of the <code>Content-Encoding</code> header (it can be
+	 *            <code>null</code>).
+	 * @return The decompressed body.
+	 * @throws IOException
+	 *             If the compressed body is not valid (the given body is
+	 *             closed, which releases its connection).
+	 */
+	InputStream track(InputStream body, String contentEncoding)
+			throws IOException {
+		boolean decoded = false;
+		try {
+			InputStream result = new CountingInputStream(
+					ContentEncoding.decode(new CountingInputStream(body,
+							wireBytes), contentEncoding), decodedBytes);
+			decoded = true;
+			return result;
+		} finally {
+			if (!decoded) {
+				try {
+					body.close();
+				} catch (IOException e) {
+					// The failure of the decompression is thrown instead.
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "TransferStatistics [wireBytes=" + wireBytes
+				+ ", decodedBytes=" + decodedBytes + "]";
+	}
+
+	/**
+	 * Adds the read bytes to a counter.
+	 */
+	static class CountingInputStream extends FilterInputStream {
+		private final AtomicLong counter;
+
+		CountingInputStream(InputStream in, AtomicLong counter) {
+			super(in);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int result = super.read();
+			if (result != -1) {
+				counter.incrementAndGet();
+			}
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int result = super.read(b, off, len);
+			if (result > 0) {
+				counter.addAndGet(result);
+			}
+			return result;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long result = super.skip(n);
+			if (result > 0) {
+				counter.addAndGet(result);
+			}
+			return result;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.internals.metrics.Instrumentation;
+
+/**
+ * Implementation using the HTTP client of the Java platform (
+ * {@link HttpURLConnection}), which is available both in regular Java and
+ * Android.
+ *
+ * Connections are kept alive and pooled by the platform, and that pool is
+ * shared by every instance of this class. Sequential and concurrent requests
+ * to the same endpoint reuse the already opened sockets (and TLS sessions)
+ * instead of opening a new one each time.
+ *
+ * It asks for compressed responses (gzip or deflate), which are decompressed
+ * while they are read.
+ *
+ * The requests have connect and read timeouts, and optionally a total
+ * timeout. They are aborted if the {@link CancellationToken} of the calling
+ * thread is cancelled.
+ *
+ * The certificates and host names of the HTTPS endpoints are verified by the
+ * platform, unless {@link #setTrustAllCertificates(boolean)} says otherwise.
+ */
+public class URLConnectionNetworkManager implements
+		ConditionalNetworkManager {
+	private Format format;
+	public static final long DEFAULT_CONNECT_TIMEOUT = 5000;
+	public static final long DEFAULT_READ_TIMEOUT = 30000;
+	private volatile long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private volatile long readTimeout = DEFAULT_READ_TIMEOUT;
+	/**
+	 * Maximum time (milliseconds) of a whole request, <code>0</code> if it
+	 * isn't limited.
+	 */
+	private volatile long requestTimeout;
+	/**
+	 * Accepts any certificate and host name (off by default).
+	 */
+	private volatile boolean trustAllCertificates;
+	private static final int BUFFER_SIZE = 8192;
+	private static final String ACCEPT_HEADER = "Accept";
+	private static final String CONTENT_TYPE_HEADER = "Content-Type";
+	/**
+	 * Socket factory which allows non trusted SSL certificates (lazily built).
+	 */
+	private static SSLSocketFactory sslSocketFactory;
+	private final TransferStatistics statistics = new TransferStatistics();
+
+	public URLConnectionNetworkManager(Format format) {
+		this.format = format;
+	}
+
+	@Override
+	public String doGet(URL url) throws IOException {
+		long start = System.nanoTime();
+		HttpURLConnection connection = openGetConnection(url);
+		return readResponse(connection, watch(connection), start);
+	}
+
+	/**
+	 * GET operation which doesn't read the body of the response. The
+	 * connection goes back to the pool once the returned stream has been
+	 * read until the end and closed.
+	 */
+	@Override
+	public InputStream doGetStream(URL url) throws IOException {
+		long start = System.nanoTime();
+		HttpURLConnection connection = openGetConnection(url);
+		return getReportedBody(connection, watch(connection), start);
+	}
+
+	/**
+	 * GET operation which sends the given validators. The body of a
+	 * <code>304 Not Modified</code> response (if any) is read and closed, so
+	 * the connection goes back to the pool.
+	 */
+	@Override
+	public ConditionalResponse doConditionalGet(URL url, Validators validators)
+			throws IOException {
+		long start = System.nanoTime();
+		HttpURLConnection connection = openGetConnection(url);
+		if (validators != null && validators.getEntityTag() != null) {
+			connection.setRequestProperty(IF_NONE_MATCH_HEADER,
+					validators.getEntityTag());
+		}
+		if (validators != null && validators.getLastModified() != null) {
+			connection.setRequestProperty(IF_MODIFIED_SINCE_HEADER,
+					validators.getLastModified());
+		}
+		InputStream body = getReportedBody(connection, watch(connection),
+				start);
+		Validators responseValidators = new Validators(
+				connection.getHeaderField(ETAG_HEADER),
+				connection.getHeaderField(LAST_MODIFIED_HEADER));
+		if (connection.getResponseCode() == NOT_MODIFIED) {
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				while (body.read(buffer) != -1) {
+					// Discarded.
+				}
+			} finally {
+				body.close();
+			}
+			return new ConditionalResponse(true, null, responseValidators);
+		}
+		return new ConditionalResponse(false, body, responseValidators);
+	}
+
+	@Override
+	public String doPost(URL url, Map<String, String> parameters)
+			throws IOException {
+		long start = System.nanoTime();
+		byte[] body = buildPostBody(parameters).getBytes(CHARSET);
+		HttpURLConnection connection = openConnection(url);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(body.length);
+		connection.setRequestProperty(ACCEPT_HEADER,
+				format.getHTTPContentType());
+		connection.setRequestProperty(CONTENT_TYPE_HEADER, POST_CONTENT_TYPE);
+		RequestWatchdog watchdog = watch(connection);
+		try {
+			OutputStream output = connection.getOutputStream();
+			try {
+				output.write(body);
+			} finally {
+				output.close();
+			}
+		} catch (IOException e) {
+			watchdog.stop();
+			throw watchdog.translate(e);
+		}
+		return readResponse(connection, watchdog, start);
+	}
+
+	@Override
+	public void setFormat(Format format) {
+		this.format = format;
+	}
+
+	/**
+	 * Accepts any certificate and host name of the HTTPS endpoints. It makes
+	 * the connections vulnerable to man-in-the-middle attacks, so only use it
+	 * with endpoints whose CA isn't recognized by the platform and which you
+	 * can't reach otherwise.
+	 *
+	 * @param trustAllCertificates
+	 *            <code>true</code> to skip the verification,
+	 *            <code>false</code> (default) to verify the certificates and
+	 *            host names.
+	 */
+	public void setTrustAllCertificates(boolean trustAllCertificates) {
+		this.trustAllCertificates = trustAllCertificates;
+	}
+
+	/**
+	 * Sets the timeouts of the requests.
+	 *
+	 * @param connectTimeout
+	 *            Maximum time to establish a connection.
+	 * @param readTimeout
+	 *            Maximum time without receiving data.
+	 * @param requestTimeout
+	 *            Maximum time of a whole request, including the reading of
+	 *            its response (<code>0</code> if it isn't limited, which is
+	 *            the default).
+	 * @param unit
+	 *            Unit of the given times.
+	 */
+	public void setTimeouts(long connectTimeout, long readTimeout,
+			long requestTimeout, TimeUnit unit) {
+		if (connectTimeout > 0 && readTimeout > 0 && requestTimeout >= 0
+				&& unit != null) {
+			this.connectTimeout = Math.min(Integer.MAX_VALUE,
+					unit.toMillis(connectTimeout));
+			this.readTimeout = Math.min(Integer.MAX_VALUE,
+					unit.toMillis(readTimeout));
+			this.requestTimeout = unit.toMillis(requestTimeout);
+		}
+	}
+
+	/**
+	 * Counters of the received bytes, compressed and decompressed.
+	 *
+	 * @return The statistics of this instance.
+	 */
+	public TransferStatistics getTransferStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Opens a connection to the given url, once its host's rate limiter (if
+	 * any) allows it.
+	 *
+	 * @param url
+	 *            Target.
+	 * @return A connection ready to be configured.
+	 * @throws IOException
+	 *             If the url is not an HTTP one.
+	 */
+	/* package */HttpURLConnection openConnection(URL url) throws IOException {
+		RateLimiters.acquire(url, requestTimeout);
+		URLConnection connection = url.openConnection();
+		if (!(connection instanceof HttpURLConnection)) {
+			throw new IOException("Not an HTTP url: " + url);
+		}
+		if (trustAllCertificates && connection instanceof HttpsURLConnection) {
+			allowNonTrustedCertificates((HttpsURLConnection) connection);
+		}
+		connection.setConnectTimeout((int) connectTimeout);
+		connection.setReadTimeout((int) boundedReadTimeout());
+		connection.setUseCaches(false);
+		connection.setRequestProperty(ContentEncoding.ACCEPT_ENCODING_HEADER,
+				ContentEncoding.SUPPORTED_ENCODINGS);
+		return (HttpURLConnection) connection;
+	}
+
+	/**
+	 * Opens a connection configured to send a GET request.
+	 *
+	 * @param url
+	 *            Target.
+	 * @return A connection ready to send the request.
+	 * @throws IOException
+	 *             If the url is not an HTTP one.
+	 */
+	private HttpURLConnection openGetConnection(URL url) throws IOException {
+		HttpURLConnection connection = openConnection(url);
+		connection.setRequestMethod("GET");
+		connection.setRequestProperty(ACCEPT_HEADER,
+				format.getHTTPContentType());
+		connection.setRequestProperty(CONTENT_TYPE_HEADER,
+				format.getHTTPContentType());
+		return connection;
+	}
+
+	/**
+	 * Sends the request of a connection and returns the body of its response,
+	 * which is decompressed while it is read. Error responses are returned
+	 * too, as GeoReport servers send the description of the errors in the
+	 * body, except the server errors of GET requests.
+	 *
+	 * @param connection
+	 *            Connection which request was already configured.
+	 * @param watchdog
+	 *            Watchdog of the connection.
+	 * @return Body of the response (empty if there isn't any).
+	 * @throws IOException
+	 *             If there was any problem with the connection, a
+	 *             {@link ThrottledException} if the server is throttling the
+	 *             requests or a {@link ServerErrorException} if a GET request
+	 *             failed in the server.
+	 */
+	private InputStream getResponseBody(HttpURLConnection connection,
+			RequestWatchdog watchdog) throws IOException {
+		InputStream body;
+		try {
+			int statusCode = connection.getResponseCode();
+			if (RateLimiters.isThrottled(statusCode)) {
+				InputStream errorBody = connection.getErrorStream();
+				if (errorBody != null) {
+					errorBody.close();
+				}
+				throw RateLimiters.throttled(connection.getURL(), statusCode,
+						connection
+								.getHeaderField(RateLimiters.RETRY_AFTER_HEADER));
+			}
+			if (ServerErrorException.isServerError(
+					connection.getRequestMethod(), statusCode)) {
+				InputStream errorBody = connection.getErrorStream();
+				if (errorBody != null) {
+					errorBody.close();
+				}
+				throw new ServerErrorException(statusCode);
+			}
+			body = statusCode >= HttpURLConnection.HTTP_BAD_REQUEST ? connection
+					.getErrorStream() : connection.getInputStream();
+		} catch (IOException e) {
+			watchdog.stop();
+			throw watchdog.translate(e);
+		}
+		if (body == null) {
+			watchdog.stop();
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		return statistics.track(watchdog.watch(body),
+				connection.getContentEncoding());
+	}
+
+	/**
+	 * Sends the request of a connection and returns the body of its response,
+	 * which sends its {@link Instrumentation} event once it has been read or
+	 * closed.
+	 *
+	 * @param connection
+	 *            Connection which request was already configured.
+	 * @param watchdog
+	 *            Watchdog of the connection.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} before the request.
+	 * @return Body of the response (empty if there isn't any).
+	 * @throws IOException
+	 *             If there was any problem with the connection, or a
+	 *             {@link ThrottledException} if the server is throttling the
+	 *             requests.
+	 */
+	private InputStream getReportedBody(HttpURLConnection connection,
+			RequestWatchdog watchdog, long startNanos) throws IOException {
+		InputStream body = getResponseBody(connection, watchdog);
+		return InstrumentedInputStream.instrument(body, connection.getURL()
+				.getHost(), connection.getRequestMethod(),
+				connection.getResponseCode(), startNanos);
+	}
+
+	/**
+	 * Some implementations can't close a connection while another thread is
+	 * reading it, so a read can't wait beyond the total timeout or the deadline
+	 * of the current {@link CancellationToken}.
+	 * 
+	 * @return Read timeout (milliseconds) of a new connection.
+	 */
+	private long boundedReadTimeout() {
+		long timeout = readTimeout;
+		if (requestTimeout > 0) {
+			timeout = Math.min(timeout, requestTimeout);
+		}
+		CancellationToken token = CancellationToken.current();
+		if (token != null) {
+			timeout = Math.min(timeout,
+					Math.max(1, token.getRemaining(TimeUnit.MILLISECONDS)));
+		}
+		return timeout;
+	}
+
+	/**
+	 * Starts watching a connection, which is closed if the total timeout
+	 * expires or the {@link CancellationToken} of the current thread is
+	 * cancelled.
+	 *
+	 * @param connection
+	 *            Connection which request was already configured.
+	 * @return The watchdog, stopped when the response is closed.
+	 * @throws RequestCancelledException
+	 *             If the token is already cancelled.
+	 */
+	private RequestWatchdog watch(final HttpURLConnection connection)
+			throws RequestCancelledException {
+		return RequestWatchdog.start(requestTimeout, new Runnable() {
+			@Override
+			public void run() {
+				connection.disconnect();
+			}
+		});
+	}
+
+	/**
+	 * Reads the whole response of a connection. The body is always read until
+	 * the end and closed, which is what makes the platform keep the connection
+	 * alive and reuse it.
+	 *
+	 * @param connection
+	 *            Connection which request was already configured.
+	 * @param watchdog
+	 *            Watchdog of the connection.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} before the request, for its
+	 *            {@link Instrumentation} event.
+	 * @return Server response.
+	 * @throws IOException
+	 *             If there was any problem with the connection.
+	 */
+	private String readResponse(HttpURLConnection connection,
+			RequestWatchdog watchdog, long startNanos) throws IOException {
+		InputStream body = getResponseBody(connection, watchdog);
+		AtomicLong bytes = null;
+		if (Instrumentation.isEnabled()) {
+			bytes = new AtomicLong();
+			body = new TransferStatistics.CountingInputStream(body, bytes);
+		}
+		Reader reader = new InputStreamReader(body, CHARSET);
+		String response;
+		try {
+			StringBuilder builder = new StringBuilder();
+			char[] buffer = new char[BUFFER_SIZE];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				builder.append(buffer, 0, read);
+			}
+			response = builder.toString();
+		} finally {
+			reader.close();
+		}
+		if (bytes != null) {
+			Instrumentation.networkRequest(connection.getURL().getHost(),
+					connection.getRequestMethod(),
+					connection.getResponseCode(), bytes.get(),
+					System.nanoTime() - startNanos);
+		}
+		return response;
+	}
+
+	/**
+	 * Builds an url encoded body with all the given parameters.
+	 *
+	 * @param parameters
+	 *            A list of parameters of a POST request.
+	 * @return A string of the form (key=value&key2=value2&...).
+	 * @throws IOException
+	 *             if the default encoding isn't supported.
+	 */
+	private String buildPostBody(Map<String, String> parameters)
+			throws IOException {
+		StringBuilder builder = new StringBuilder();
+		if (parameters != null) {
+			for (Entry<String, String> parameterEntry : parameters.entrySet()) {
+				if (builder.length() > 0) {
+					builder.append("&");
+				}
+				builder.append(URLEncoder.encode(parameterEntry.getKey(),
+						CHARSET));
+				builder.append("=");
+				if (parameterEntry.getValue() != null) {
+					builder.append(URLEncoder.encode(parameterEntry.getValue(),
+							CHARSET));
+				}
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Makes an HTTPS connection accept any certificate and host name (check
+	 * {@link #setTrustAllCertificates(boolean)}).
+	 *
+	 * @param connection
+	 *            HTTPS connection.
+	 * @throws IOException
+	 *             If the SSL context couldn't be built.
+	 */
+	private void allowNonTrustedCertificates(HttpsURLConnection connection)
+			throws IOException {
+		connection.setSSLSocketFactory(getSSLSocketFactory());
+		connection.setHostnameVerifier(new HostnameVerifier() {
+			public boolean verify(String hostname, SSLSession session) {
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Builds (only once) a {@link SSLSocketFactory} which allows non trusted
+	 * SSL certificates. The same factory has to be used by every connection so
+	 * the platform can reuse the pooled secure connections.
+	 *
+	 * @return A shared {@link SSLSocketFactory}.
+	 * @throws IOException
+	 *             If the SSL context couldn't be built.
+	 */
+	private static synchronized SSLSocketFactory getSSLSocketFactory()
+			throws IOException {
+		if (sslSocketFactory == null) {
+			try {
+				TrustManager tm = new X509TrustManager() {
+					public void checkClientTrusted(X509Certificate[] chain,
+							String authType) {
+					}
+
+					public void checkServerTrusted(X509Certificate[] chain,
+							String authType) {
+					}
+
+					public X509Certificate[] getAcceptedIssuers() {
+						return new X509Certificate[0];
+					}
+				};
+				SSLContext sslContext = SSLContext.getInstance("TLS");
+				sslContext.init(null, new TrustManager[] { tm }, null);
+				sslSocketFactory = sslContext.getSocketFactory();
+			} catch (GeneralSecurityException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+		return sslSocketFactory;
+	}
+}
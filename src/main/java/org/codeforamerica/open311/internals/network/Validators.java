@@ -0,0 +1,72 @@
+package org.codeforamerica.open311.internals.network;
+
+import java.io.Serializable;
+
+/**
+ * Validators of a response (its <code>ETag</code> and
+ * <code>Last-Modified</code> headers), which allow to ask the server if it has
+ * changed without downloading it again.
+ */
+public final class Validators implements Serializable {
+	private static final long serialVersionUID = -4519093174802624416L;
+	private final String entityTag;
+	private final String lastModified;
+
+	/**
+	 * Builds an instance.
+	 * 
+	 * @param entityTag
+	 *            Value of the <code>ETag</code> header (<code>null</code> if
+	 *            it wasn't sent).
+	 * @param lastModified
+	 *            Value of the <code>Last-Modified</code> header (
+	 *            <code>null</code> if it wasn't sent).
+	 */
+	public Validators(String entityTag, String lastModified) {
+		this.entityTag = entityTag;
+		this.lastModified = lastModified;
+	}
+
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Checks if there is any validator.
+	 * 
+	 * @return <code>true</code> if the response can't be revalidated.
+	 */
+	public boolean isEmpty() {
+		return entityTag == null && lastModified == null;
+	}
+
+	/**
+	 * Builds the validators of a response which replaces another one: a
+	 * <code>304 Not Modified</code> response may only include the validators
+	 * which have changed.
+	 * 
+	 * @param previous
+	 *            Validators of the previous response (it can be
+	 *            <code>null</code>).
+	 * @return The validators of this instance, and those of the previous
+	 *         response for the missing ones.
+	 */
+	public Validators updating(Validators previous) {
+		if (previous == null) {
+			return this;
+		}
+		return new Validators(entityTag != null ? entityTag
+				: previous.entityTag, lastModified != null ? lastModified
+				: previous.lastModified);
+	}
+
+	@Override
+	public String toString() {
+		return "Validators [entityTag=" + entityTag + ", lastModified="
+				+ lastModified + "]";
+	}
+}
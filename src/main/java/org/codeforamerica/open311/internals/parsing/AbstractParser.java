@@ -1,8 +1,21 @@
 package org.codeforamerica.open311.internals.parsing;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.util.LinkedList;
+import java.util.List;
 
+import org.codeforamerica.open311.facade.ServiceRequestHandler;
+import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceDiscoveryInfo;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.ServiceRequestIdResponse;
 import org.codeforamerica.open311.facade.exceptions.DataParsingException;
+import org.codeforamerica.open311.facade.exceptions.GeoReportV2Error;
 
 /**
  * Contains common methods of the different {@link DataParser} implementations.
@@ -12,6 +25,101 @@ import org.codeforamerica.open311.facade.exceptions.DataParsingException;
  */
 public abstract class AbstractParser implements DataParser {
 
+	@Override
+	public List<Service> parseServiceList(String rawData)
+			throws DataParsingException {
+		return parseServiceList(toStream(rawData));
+	}
+
+	@Override
+	public ServiceDefinition parseServiceDefinition(String rawData)
+			throws DataParsingException {
+		return parseServiceDefinition(toStream(rawData));
+	}
+
+	@Override
+	public ServiceRequestIdResponse parseServiceRequestIdFromAToken(
+			String rawData) throws DataParsingException {
+		return parseServiceRequestIdFromAToken(toStream(rawData));
+	}
+
+	@Override
+	public List<ServiceRequest> parseServiceRequests(String rawData)
+			throws DataParsingException {
+		return parseServiceRequests(toStream(rawData));
+	}
+
+	@Override
+	public List<ServiceRequest> parseServiceRequests(InputStream rawData)
+			throws DataParsingException {
+		final List<ServiceRequest> result = new LinkedList<ServiceRequest>();
+		parseServiceRequests(rawData, new ServiceRequestHandler() {
+			@Override
+			public void handle(ServiceRequest serviceRequest) {
+				result.add(serviceRequest);
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public POSTServiceRequestResponse parsePostServiceRequestResponse(
+			String rawData) throws DataParsingException {
+		return parsePostServiceRequestResponse(toStream(rawData));
+	}
+
+	@Override
+	public GeoReportV2Error parseGeoReportV2Errors(String rawData)
+			throws DataParsingException {
+		return parseGeoReportV2Errors(toStream(rawData));
+	}
+
+	@Override
+	public ServiceDiscoveryInfo parseServiceDiscovery(String rawData)
+			throws DataParsingException {
+		return parseServiceDiscovery(toStream(rawData));
+	}
+
+	/**
+	 * Wraps a string in a stream, so the text data can be parsed as a
+	 * response received from the network.
+	 * 
+	 * @param rawData
+	 *            Text data.
+	 * @return A stream of its UTF-8 encoded bytes.
+	 * @throws DataParsingException
+	 *             If there is no data.
+	 */
+	protected InputStream toStream(String rawData) throws DataParsingException {
+		if (rawData == null) {
+			throw new DataParsingException("No data was received.");
+		}
+		try {
+			return new ByteArrayInputStream(rawData.getBytes(TEXT_FORMAT));
+		} catch (UnsupportedEncodingException e) {
+			throw new DataParsingException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Hands a parsed service request to a handler. The exceptions thrown by
+	 * the handler are wrapped in a {@link HandlerException}, so the parsers
+	 * can tell them apart from their own and rethrow them untouched.
+	 * 
+	 * @param handler
+	 *            Handler which receives the request.
+	 * @param serviceRequest
+	 *            A parsed service request.
+	 */
+	protected void deliver(ServiceRequestHandler handler,
+			ServiceRequest serviceRequest) {
+		try {
+			handler.handle(serviceRequest);
+		} catch (RuntimeException e) {
+			throw new HandlerException(e);
+		}
+	}
+
 	/**
 	 * Parses a comma separated list of keywords.
 	 * 
@@ -73,4 +181,90 @@ public abstract class AbstractParser implements DataParser {
 					"Invalid data, required fields wasn't received.");
 		}
 	}
+
+	/**
+	 * Parses a string and returns an integer. <b>NOTE<b>: Be careful and notice
+	 * that this function will return a <code>null</code> if the given string is
+	 * not valid. This approach works well here, but not generally.
+	 * 
+	 * @param rawInt
+	 *            A string which represents an integer number.
+	 * @return The integer value (or <code>null</code> if the rawInt is empty or
+	 *         <code>null</code>).
+	 */
+	protected int parseInt(String rawInt) {
+		try {
+			return (rawInt != null && rawInt.length() > 0) ? Integer
+					.parseInt(rawInt) : 0;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Parses a string and returns a long. <b>NOTE<b>: Be careful and notice
+	 * that this function will return a <code>null</code> if the given string is
+	 * not valid. This approach works well here, but not generally.
+	 * 
+	 * @param rawLong
+	 *            A string which represents a long number.
+	 * @return The long value (or <code>null</code> if the rawLong is empty or
+	 *         <code>null</code>).
+	 */
+	protected long parseLong(String rawLong) {
+		try {
+			return (rawLong != null && rawLong.length() > 0) ? Long
+					.parseLong(rawLong) : 0;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Parses a string and returns a float. <b>NOTE<b>: Be careful and notice
+	 * that this function will return a <code>null</code> if the given string is
+	 * not valid.
+	 * 
+	 * @param rawFloat
+	 *            A string which represents a float number.
+	 * @return The float value (or <code>null</code> if the rawFloat is empty or
+	 *         <code>null</code>).
+	 */
+	protected Float parseFloat(String rawFloat) {
+		return (rawFloat != null && rawFloat.length() > 0) ? Float
+				.valueOf(rawFloat) : null;
+	}
+
+	/**
+	 * Parses a string and returns a boolean. <b>NOTE<b>: Be careful and notice
+	 * that this function will return a <code>null</code> if the given string is
+	 * not valid.
+	 * 
+	 * @param rawBoolean
+	 *            A string which represents a boolean.
+	 * @return The float value (or <code>null</code> if the rawBoolean is empty
+	 *         or <code>null</code>).
+	 */
+	protected Boolean parseBoolean(String rawBoolean) {
+		return (rawBoolean != null && rawBoolean.length() > 0) ? Boolean
+				.valueOf(rawBoolean) : Boolean.FALSE;
+	}
+
+	/**
+	 * Carries an exception thrown by a {@link ServiceRequestHandler} through
+	 * the parsing code.
+	 */
+	protected static class HandlerException extends RuntimeException {
+
+		private static final long serialVersionUID = -4716375325012395270L;
+
+		public HandlerException(RuntimeException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized RuntimeException getCause() {
+			return (RuntimeException) super.getCause();
+		}
+	}
 }
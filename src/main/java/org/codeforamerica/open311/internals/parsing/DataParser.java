@@ -1,7 +1,9 @@
 package org.codeforamerica.open311.internals.parsing;
 
+import java.io.InputStream;
 import java.util.List;
 
+import org.codeforamerica.open311.facade.ServiceRequestHandler;
 import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
 import org.codeforamerica.open311.facade.data.Service;
 import org.codeforamerica.open311.facade.data.ServiceDefinition;
@@ -158,4 +160,112 @@ public interface DataParser {
 	 */
 	public ServiceDiscoveryInfo parseServiceDiscovery(String rawData)
 			throws DataParsingException;
+
+	/**
+	 * Parses the response to the GET service list operation.
+	 * 
+	 * @param rawData
+	 *            Data stream (UTF-8 encoded by default). It is read while
+	 *            parsing and the caller is responsible for closing it.
+	 * @return A list of {@link Service} objects.
+	 */
+	public List<Service> parseServiceList(InputStream rawData)
+			throws DataParsingException;
+
+	/**
+	 * Parses a service definition.
+	 * 
+	 * @param rawData
+	 *            Data stream (UTF-8 encoded by default). It is read while
+	 *            parsing and the caller is responsible for closing it.
+	 * @throws DataParsingException
+	 *             If there was any problem parsing the data.
+	 * 
+	 * @return A service definition object.
+	 */
+	public ServiceDefinition parseServiceDefinition(InputStream rawData)
+			throws DataParsingException;
+
+	/**
+	 * Parses the response to the GET service request id from a token.
+	 * 
+	 * @param rawData
+	 *            Data stream (UTF-8 encoded by default). It is read while
+	 *            parsing and the caller is responsible for closing it.
+	 * @return the given token and the service request id.
+	 * @throws DataParsingException
+	 *             If there was any problem parsing the data.
+	 */
+	public ServiceRequestIdResponse parseServiceRequestIdFromAToken(
+			InputStream rawData) throws DataParsingException;
+
+	/**
+	 * Parses a list of service requests.
+	 * 
+	 * @param rawData
+	 *            Data stream (UTF-8 encoded by default). It is read while
+	 *            parsing and the caller is responsible for closing it.
+	 * @return A list of ServiceRequest objects.
+	 * @throws DataParsingException
+	 *             If there was any problem parsing the data.
+	 */
+	public List<ServiceRequest> parseServiceRequests(InputStream rawData)
+			throws DataParsingException;
+
+	/**
+	 * Parses a list of service requests, handing each of them to the given
+	 * handler as soon as it has been read (the list is never built).
+	 * 
+	 * @param rawData
+	 *            Data stream (UTF-8 encoded by default). It is read while
+	 *            parsing and the caller is responsible for closing it.
+	 * @param handler
+	 *            Receives every parsed service request, in order. Any runtime
+	 *            exception thrown by it stops the parsing and is propagated
+	 *            as is.
+	 * @throws DataParsingException
+	 *             If there was any problem parsing the data. The requests
+	 *             handled before the problem was found are not taken back.
+	 */
+	public void parseServiceRequests(InputStream rawData,
+			ServiceRequestHandler handler) throws DataParsingException;
+
+	/**
+	 * Parses the response of a POST Service Request operation.
+	 * 
+	 * @param rawData
+	 *            Data stream (UTF-8 encoded by default). It is read while
+	 *            parsing and the caller is responsible for closing it.
+	 * @return an object containing the response information.
+	 * @throws DataParsingException
+	 *             If there was any problem parsing the data.
+	 */
+	public POSTServiceRequestResponse parsePostServiceRequestResponse(
+			InputStream rawData) throws DataParsingException;
+
+	/**
+	 * Parses an error and returns an object with its information.
+	 * 
+	 * @param rawData
+	 *            Data stream (UTF-8 encoded by default). It is read while
+	 *            parsing and the caller is responsible for closing it.
+	 * @return Error information.
+	 * @throws DataParsingException
+	 *             If there was any problem parsing the data.
+	 */
+	public GeoReportV2Error parseGeoReportV2Errors(InputStream rawData)
+			throws DataParsingException;
+
+	/**
+	 * Parses a service discovery and returns an object with its information.
+	 * 
+	 * @param rawData
+	 *            Data stream (UTF-8 encoded by default). It is read while
+	 *            parsing and the caller is responsible for closing it.
+	 * @return Service discovery information (endpoints and their formats).
+	 * @throws DataParsingException
+	 *             If there was any problem parsing the data.
+	 */
+	public ServiceDiscoveryInfo parseServiceDiscovery(InputStream rawData)
+			throws DataParsingException;
 }
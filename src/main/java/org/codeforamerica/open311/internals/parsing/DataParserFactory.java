@@ -1,6 +1,7 @@
 package org.codeforamerica.open311.internals.parsing;
 
 import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.internals.platform.PlatformManager;
 
 /**
  * Builds instances of {@link DataParser}.
@@ -13,6 +14,15 @@ import org.codeforamerica.open311.facade.Format;
 public class DataParserFactory {
 
 	private static DataParserFactory instance = new DataParserFactory();
+	/**
+	 * If <code>true</code>, XML is always parsed with the DOM parser.
+	 */
+	private volatile boolean domXMLParser = false;
+	/**
+	 * If <code>true</code>, JSON is parsed building an <code>org.json</code>
+	 * tree first.
+	 */
+	private volatile boolean treeJSONParser = false;
 
 	private DataParserFactory() {
 	}
@@ -31,11 +41,37 @@ public class DataParserFactory {
 	 */
 	public DataParser buildDataParser(Format format) {
 		if (format == Format.XML) {
-			return new XMLParser();
+			return domXMLParser ? new XMLParser() : PlatformManager
+					.getInstance().buildXMLParser();
 		}
 		if (format == Format.JSON) {
-			return new JSONParser();
+			return treeJSONParser ? new JSONParser()
+					: new StreamingJSONParser();
 		}
 		return null;
 	}
+
+	/**
+	 * Selects the parser of the XML data. By default, XML is parsed in a single
+	 * pass with the {@link StAXXMLParser} (except under Android, which always
+	 * uses DOM).
+	 * 
+	 * @param domXMLParser
+	 *            <code>true</code> to fall back to the DOM {@link XMLParser}.
+	 */
+	public void setDOMXMLParser(boolean domXMLParser) {
+		this.domXMLParser = domXMLParser;
+	}
+
+	/**
+	 * Selects the parser of the JSON data. By default, JSON is parsed token by
+	 * token with the {@link StreamingJSONParser}.
+	 * 
+	 * @param treeJSONParser
+	 *            <code>true</code> to fall back to the {@link JSONParser},
+	 *            which builds an <code>org.json</code> tree first.
+	 */
+	public void setTreeJSONParser(boolean treeJSONParser) {
+		this.treeJSONParser = treeJSONParser;
+	}
 }
@@ -13,29 +13,64 @@ import org.joda.time.format.ISODateTimeFormat;
  * href="http://wiki.open311.org/GeoReport_v2#Date.2Ftime_format">GeoReport
  * wiki</a> for more information.
  * 
+ * The usual shapes of the GeoReport dates (<code>yyyy-MM-ddTHH:mm:ssZ</code>,
+ * with an optional fraction of second and a <code>Z</code> or
+ * <code>&plusmn;hh:mm</code> offset, and <code>yyyy-MM-dd HH:mm</code>) are
+ * read directly from the characters of the string. Any other text is given to
+ * the Joda formatters.
+ * 
  * @author Santiago Munín <santimunin@gmail.com>
  * 
  */
 public class DateParser {
 
 	/**
-	 * List of possible formats sorted by preference.
+	 * Returned by the fast path when the text has to be parsed by Joda.
+	 */
+	private static final long NOT_PARSED = Long.MIN_VALUE;
+	private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+	private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+	/**
+	 * Days from 0000-03-01 to 1970-01-01.
+	 */
+	private static final long DAYS_0000_TO_1970 = 719468L;
+
+	/**
+	 * List of possible formats sorted by preference. It is never modified, and
+	 * the formatters are immutable, so an instance can be shared by any number
+	 * of threads.
+	 */
+	private final DateTimeFormatter[] dateFormats;
+	/**
+	 * Timezone of the dates without offset, <code>null</code> means the
+	 * default one.
 	 */
-	private DateTimeFormatter[] dateFormats = {
-			ISODateTimeFormat.dateTimeNoMillis(),
-			DateTimeFormat.forPattern("YYYY-MM-DD HH:mm") };
+	private final DateTimeZone timeZone;
+
+	public DateParser() {
+		this(new DateTimeFormatter[] { ISODateTimeFormat.dateTimeNoMillis(),
+				DateTimeFormat.forPattern("yyyy-MM-dd HH:mm") }, null);
+	}
+
+	private DateParser(DateTimeFormatter[] dateFormats, DateTimeZone timeZone) {
+		this.dateFormats = dateFormats;
+		this.timeZone = timeZone;
+	}
 
 	/**
-	 * Sets the timezone of the system.
+	 * Builds a parser which uses the given timezone. This instance is not
+	 * modified.
 	 * 
 	 * @param timeZone
 	 *            A valid timezone.
+	 * @return A new parser working with the given timezone.
 	 */
 	public DateParser withTimezone(DateTimeZone timeZone) {
+		DateTimeFormatter[] zonedFormats = new DateTimeFormatter[dateFormats.length];
 		for (int i = 0; i < dateFormats.length; i++) {
-			dateFormats[i] = dateFormats[i].withZone(timeZone);
+			zonedFormats[i] = dateFormats[i].withZone(timeZone);
 		}
-		return this;
+		return new DateParser(zonedFormats, timeZone);
 	}
 
 	/**
@@ -47,6 +82,13 @@ public class DateParser {
 	 * @return A date object.
 	 */
 	public Date parseDate(String rawDate) {
+		if (rawDate == null) {
+			return null;
+		}
+		long millis = parseCommonFormats(rawDate);
+		if (millis != NOT_PARSED) {
+			return new Date(millis);
+		}
 		for (int i = 0; i < dateFormats.length; i++) {
 			try {
 				return dateFormats[i].parseDateTime(rawDate).toDate();
@@ -56,6 +98,183 @@ public class DateParser {
 		return null;
 	}
 
+	/**
+	 * Parses the usual shapes of the GeoReport dates without building any
+	 * object.
+	 * 
+	 * @param rawDate
+	 *            Text to parse.
+	 * @return Milliseconds since the epoch or <code>NOT_PARSED</code> if the
+	 *         text doesn't have one of those shapes or its values are not
+	 *         valid (Joda will decide in that case).
+	 */
+	private long parseCommonFormats(String rawDate) {
+		int length = rawDate.length();
+		if (length < 16 || rawDate.charAt(4) != '-'
+				|| rawDate.charAt(7) != '-' || rawDate.charAt(13) != ':') {
+			return NOT_PARSED;
+		}
+		int year = digits(rawDate, 0, 4);
+		int month = digits(rawDate, 5, 2);
+		int day = digits(rawDate, 8, 2);
+		int hour = digits(rawDate, 11, 2);
+		int minute = digits(rawDate, 14, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1
+				|| day > daysInMonth(year, month) || hour < 0 || hour > 23
+				|| minute < 0 || minute > 59) {
+			return NOT_PARSED;
+		}
+		long localMillis = daysFromEpoch(year, month, day) * MILLIS_PER_DAY
+				+ (hour * 60 + minute) * MILLIS_PER_MINUTE;
+		char separator = rawDate.charAt(10);
+		if (separator == ' ') {
+			return length == 16 ? toUTC(localMillis) : NOT_PARSED;
+		}
+		if (separator != 'T' || length < 20 || rawDate.charAt(16) != ':') {
+			return NOT_PARSED;
+		}
+		int second = digits(rawDate, 17, 2);
+		if (second < 0 || second > 59) {
+			return NOT_PARSED;
+		}
+		localMillis += second * 1000L;
+		int index = 19;
+		if (rawDate.charAt(index) == '.' || rawDate.charAt(index) == ',') {
+			index++;
+			int fractionStart = index;
+			int millis = 0;
+			while (index < length && isDigit(rawDate.charAt(index))) {
+				if (index - fractionStart < 3) {
+					millis = millis * 10 + rawDate.charAt(index) - '0';
+				}
+				index++;
+			}
+			int fractionDigits = index - fractionStart;
+			if (fractionDigits == 0 || index == length) {
+				return NOT_PARSED;
+			}
+			for (int i = fractionDigits; i < 3; i++) {
+				millis *= 10;
+			}
+			localMillis += millis;
+		}
+		int offsetMinutes = offset(rawDate, index);
+		return offsetMinutes == Integer.MIN_VALUE ? NOT_PARSED : localMillis
+				- offsetMinutes * MILLIS_PER_MINUTE;
+	}
+
+	/**
+	 * Parses an offset which lasts until the end of the text: <code>Z</code>,
+	 * <code>&plusmn;hh</code>, <code>&plusmn;hh:mm</code> or
+	 * <code>&plusmn;hhmm</code>.
+	 * 
+	 * @param rawDate
+	 *            Text to parse.
+	 * @param index
+	 *            Position of the offset.
+	 * @return The offset in minutes or <code>Integer.MIN_VALUE</code> if it
+	 *         is not valid.
+	 */
+	private int offset(String rawDate, int index) {
+		int length = rawDate.length() - index;
+		char sign = rawDate.charAt(index);
+		if (sign == 'Z') {
+			return length == 1 ? 0 : Integer.MIN_VALUE;
+		}
+		if (sign != '+' && sign != '-') {
+			return Integer.MIN_VALUE;
+		}
+		int hours = length >= 3 ? digits(rawDate, index + 1, 2) : -1;
+		int minutes;
+		if (length == 3) {
+			minutes = 0;
+		} else if (length == 5) {
+			minutes = digits(rawDate, index + 3, 2);
+		} else if (length == 6 && rawDate.charAt(index + 3) == ':') {
+			minutes = digits(rawDate, index + 4, 2);
+		} else {
+			return Integer.MIN_VALUE;
+		}
+		if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+			return Integer.MIN_VALUE;
+		}
+		int offset = hours * 60 + minutes;
+		return sign == '-' ? -offset : offset;
+	}
+
+	/**
+	 * Converts a local time of the timezone of this parser to UTC, the same
+	 * way Joda does.
+	 * 
+	 * @param localMillis
+	 *            Local time.
+	 * @return Milliseconds since the epoch or <code>NOT_PARSED</code> if the
+	 *         local time doesn't exist in the timezone (daylight saving gap).
+	 */
+	private long toUTC(long localMillis) {
+		DateTimeZone zone = timeZone != null ? timeZone : DateTimeZone
+				.getDefault();
+		int offset = zone.getOffsetFromLocal(localMillis);
+		long millis = localMillis - offset;
+		return zone.getOffset(millis) == offset ? millis : NOT_PARSED;
+	}
+
+	/**
+	 * Reads a non negative number.
+	 * 
+	 * @return Its value or <code>-1</code> if there aren't enough digits.
+	 */
+	private static int digits(String text, int start, int count) {
+		if (start + count > text.length()) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			char c = text.charAt(i);
+			if (!isDigit(c)) {
+				return -1;
+			}
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static int daysInMonth(int year, int month) {
+		if (month == 2) {
+			boolean leap = year % 4 == 0
+					&& (year % 100 != 0 || year % 400 == 0);
+			return leap ? 29 : 28;
+		}
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30
+				: 31;
+	}
+
+	/**
+	 * Days from 1970-01-01 to the given date of the proleptic Gregorian
+	 * calendar.
+	 */
+	private static long daysFromEpoch(int year, int month, int day) {
+		// Years start on March, so the leap day is the last one.
+		if (month <= 2) {
+			year--;
+			month += 9;
+		} else {
+			month -= 3;
+		}
+		long dayOfYear = (153 * month + 2) / 5 + day - 1;
+		long days = 365L * year + floorDiv(year, 4) - floorDiv(year, 100)
+				+ floorDiv(year, 400);
+		return days + dayOfYear - DAYS_0000_TO_1970;
+	}
+
+	private static long floorDiv(long value, long divisor) {
+		return value >= 0 ? value / divisor : (value - divisor + 1) / divisor;
+	}
+
 	/**
 	 * Prints a date. ISO 8601 is the preferred format. Check
 	 * <code>dateFormats</code> to check all the accepted formats.
@@ -1,5 +1,8 @@
 package org.codeforamerica.open311.internals.parsing;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Date;
@@ -8,6 +11,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.codeforamerica.open311.facade.ServiceRequestHandler;
 import org.codeforamerica.open311.facade.data.AttributeInfo;
 import org.codeforamerica.open311.facade.data.AttributeInfo.Datatype;
 import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
@@ -22,6 +26,7 @@ import org.codeforamerica.open311.facade.exceptions.GeoReportV2Error;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
  * Implementation of a {@link DataParser} which takes JSON data as input.
@@ -31,14 +36,14 @@ import org.json.JSONObject;
  */
 public class JSONParser extends AbstractParser {
 	private static final String NULL_STRING_JSON = "null";
-	private DateParser dateParser = new DateParser();
+	private final DateParser dateParser = new DateParser();
 
 	@Override
-	public List<Service> parseServiceList(String rawData)
+	public List<Service> parseServiceList(InputStream rawData)
 			throws DataParsingException {
 		List<Service> result = new LinkedList<Service>();
 		try {
-			JSONArray serviceList = new JSONArray(rawData);
+			JSONArray serviceList = new JSONArray(getTokener(rawData));
 			for (int i = 0; i < serviceList.length(); i++) {
 				JSONObject service = serviceList.getJSONObject(i);
 				result.add(getService(service));
@@ -76,10 +81,11 @@ public class JSONParser extends AbstractParser {
 	}
 
 	@Override
-	public ServiceDefinition parseServiceDefinition(String rawData)
+	public ServiceDefinition parseServiceDefinition(InputStream rawData)
 			throws DataParsingException {
 		try {
-			JSONObject serviceDefinition = new JSONObject(rawData);
+			JSONObject serviceDefinition = new JSONObject(
+					getTokener(rawData));
 			if (serviceDefinition.has(SERVICE_DEFINITION_TAG)) {
 				serviceDefinition = serviceDefinition
 						.getJSONObject(SERVICE_DEFINITION_TAG);
@@ -140,9 +146,9 @@ public class JSONParser extends AbstractParser {
 
 	@Override
 	public ServiceRequestIdResponse parseServiceRequestIdFromAToken(
-			String rawData) throws DataParsingException {
+			InputStream rawData) throws DataParsingException {
 		try {
-			JSONArray responsesArray = new JSONArray(rawData);
+			JSONArray responsesArray = new JSONArray(getTokener(rawData));
 			if (responsesArray.length() == 0) {
 				return null;
 			}
@@ -158,23 +164,27 @@ public class JSONParser extends AbstractParser {
 	}
 
 	@Override
-	public List<ServiceRequest> parseServiceRequests(String rawData)
-			throws DataParsingException {
-		List<ServiceRequest> result = new LinkedList<ServiceRequest>();
+	public void parseServiceRequests(InputStream rawData,
+			ServiceRequestHandler handler) throws DataParsingException {
 		try {
 			JSONArray serviceRequestsArray;
-			if (rawData.contains("{\"service_requests\"")) {
-				serviceRequestsArray = new JSONObject(rawData)
+			Object root = getTokener(rawData).nextValue();
+			if (root instanceof JSONObject) {
+				serviceRequestsArray = ((JSONObject) root)
 						.getJSONArray(SERVICE_REQUESTS_TAG);
+			} else if (root instanceof JSONArray) {
+				serviceRequestsArray = (JSONArray) root;
 			} else {
-				serviceRequestsArray = new JSONArray(rawData);
+				throw new DataParsingException(
+						"The obtained response is not a list of service requests.");
 			}
 			for (int i = 0; i < serviceRequestsArray.length(); i++) {
 				JSONObject serviceRequest = serviceRequestsArray
 						.getJSONObject(i);
-				result.add(parseServiceRequest(serviceRequest));
+				deliver(handler, parseServiceRequest(serviceRequest));
 			}
-			return result;
+		} catch (HandlerException e) {
+			throw e.getCause();
 		} catch (Exception e) {
 			throw new DataParsingException(e.getMessage());
 		}
@@ -229,10 +239,11 @@ public class JSONParser extends AbstractParser {
 
 	@Override
 	public POSTServiceRequestResponse parsePostServiceRequestResponse(
-			String rawData) throws DataParsingException {
+			InputStream rawData) throws DataParsingException {
 		JSONArray postServiceRequestResponseArray;
 		try {
-			postServiceRequestResponseArray = new JSONArray(rawData);
+			postServiceRequestResponseArray = new JSONArray(
+					getTokener(rawData));
 			if (postServiceRequestResponseArray.length() > 0) {
 				JSONObject postServiceRequestResponse = postServiceRequestResponseArray
 						.getJSONObject(0);
@@ -255,10 +266,10 @@ public class JSONParser extends AbstractParser {
 	}
 
 	@Override
-	public GeoReportV2Error parseGeoReportV2Errors(String rawData)
+	public GeoReportV2Error parseGeoReportV2Errors(InputStream rawData)
 			throws DataParsingException {
 		try {
-			JSONArray errorsArray = new JSONArray(rawData);
+			JSONArray errorsArray = new JSONArray(getTokener(rawData));
 			if (errorsArray.length() > 0) {
 				JSONObject errorObject = errorsArray.getJSONObject(0);
 				String code = getString(errorObject, CODE_TAG);
@@ -275,12 +286,29 @@ public class JSONParser extends AbstractParser {
 	}
 
 	@Override
-	public ServiceDiscoveryInfo parseServiceDiscovery(String rawData)
+	public ServiceDiscoveryInfo parseServiceDiscovery(InputStream rawData)
 			throws DataParsingException {
 		throw new UnsupportedOperationException(
 				"This operation is expected to be done by an XML parser.");
 	}
 
+	/**
+	 * Builds a tokener which reads the given stream while it is being parsed.
+	 * 
+	 * @param rawData
+	 *            UTF-8 encoded JSON stream.
+	 * @return A tokener over the stream.
+	 * @throws JSONException
+	 *             If the encoding isn't supported.
+	 */
+	private JSONTokener getTokener(InputStream rawData) throws JSONException {
+		try {
+			return new JSONTokener(new InputStreamReader(rawData, TEXT_FORMAT));
+		} catch (UnsupportedEncodingException e) {
+			throw new JSONException(e.getMessage());
+		}
+	}
+
 	/**
 	 * Searches the value of a given tag in a {@link JSONObject}.
 	 * 
@@ -0,0 +1,634 @@
+package org.codeforamerica.open311.internals.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codeforamerica.open311.facade.exceptions.DataParsingException;
+
+/**
+ * Pull parser of UTF-8 encoded JSON. The document is read token by token
+ * straight from the bytes of the stream (no {@link java.io.Reader} and no
+ * intermediate tree), so values can be copied into the final objects while
+ * the document is being received.
+ *
+ * Its usage is similar to other pull parsers: {@link #peek()} tells which is
+ * the next token, and it is consumed with the corresponding method (
+ * {@link #beginObject()}, {@link #nextName()}, {@link #nextString()}...).
+ * Numbers are returned as they were written, they are validated when they are
+ * converted.
+ *
+ * Instances are not thread safe, each stream needs its own reader.
+ */
+class JSONPullReader {
+
+	/**
+	 * JSON tokens.
+	 */
+	enum Token {
+		BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+	private static final int BUFFER_SIZE = 8192;
+	/**
+	 * Number of different names which are reused instead of building a new
+	 * string each time they appear.
+	 */
+	private static final int NAME_CACHE_SIZE = 128;
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+	/**
+	 * Bytes consumed before the current content of the buffer.
+	 */
+	private long consumed = 0;
+	/**
+	 * Characters of the last read string, name or number.
+	 */
+	private char[] chars = new char[64];
+	private int charsLength;
+	private int[] scopes = new int[32];
+	private int scopesSize = 0;
+	private Token peeked;
+	private final String[] nameCache = new String[NAME_CACHE_SIZE];
+
+	/**
+	 * Builds a reader.
+	 *
+	 * @param in
+	 *            UTF-8 encoded stream.
+	 */
+	JSONPullReader(InputStream in) {
+		this.in = in;
+		push(EMPTY_DOCUMENT);
+	}
+
+	/**
+	 * Returns the type of the next token without consuming it.
+	 *
+	 * @return Next token.
+	 * @throws IOException
+	 *             If the stream couldn't be read.
+	 * @throws DataParsingException
+	 *             If the document isn't valid JSON.
+	 */
+	Token peek() throws IOException, DataParsingException {
+		if (peeked != null) {
+			return peeked;
+		}
+		int scope = scopes[scopesSize - 1];
+		int c;
+		switch (scope) {
+		case EMPTY_ARRAY:
+		case NONEMPTY_ARRAY:
+			c = nextNonWhitespace();
+			if (c == ']') {
+				pos++;
+				return peeked = Token.END_ARRAY;
+			}
+			if (scope == NONEMPTY_ARRAY) {
+				if (c != ',') {
+					throw syntaxError("Expected ',' or ']'");
+				}
+				pos++;
+			}
+			scopes[scopesSize - 1] = NONEMPTY_ARRAY;
+			return peeked = peekValue();
+		case EMPTY_OBJECT:
+		case NONEMPTY_OBJECT:
+			c = nextNonWhitespace();
+			if (c == '}') {
+				pos++;
+				return peeked = Token.END_OBJECT;
+			}
+			if (scope == NONEMPTY_OBJECT) {
+				if (c != ',') {
+					throw syntaxError("Expected ',' or '}'");
+				}
+				pos++;
+				c = nextNonWhitespace();
+			}
+			if (c != '"') {
+				throw syntaxError("Expected a name");
+			}
+			scopes[scopesSize - 1] = DANGLING_NAME;
+			return peeked = Token.NAME;
+		case DANGLING_NAME:
+			if (nextNonWhitespace() != ':') {
+				throw syntaxError("Expected ':'");
+			}
+			pos++;
+			scopes[scopesSize - 1] = NONEMPTY_OBJECT;
+			return peeked = peekValue();
+		case EMPTY_DOCUMENT:
+			skipByteOrderMark();
+			scopes[scopesSize - 1] = NONEMPTY_DOCUMENT;
+			return peeked = peekValue();
+		default:
+			if (skipWhitespace()) {
+				throw syntaxError("Content after the end of the document");
+			}
+			return peeked = Token.END_DOCUMENT;
+		}
+	}
+
+	/**
+	 * Checks if the current array or object has more elements.
+	 *
+	 * @return <code>true</code> if the next token is not the end of the array
+	 *         or object.
+	 * @throws IOException
+	 *             If the stream couldn't be read.
+	 * @throws DataParsingException
+	 *             If the document isn't valid JSON.
+	 */
+	boolean hasNext() throws IOException, DataParsingException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY
+				&& token != Token.END_DOCUMENT;
+	}
+
+	void beginArray() throws IOException, DataParsingException {
+		expect(Token.BEGIN_ARRAY);
+		pos++;
+		push(EMPTY_ARRAY);
+		peeked = null;
+	}
+
+	void endArray() throws IOException, DataParsingException {
+		expect(Token.END_ARRAY);
+		scopesSize--;
+		peeked = null;
+	}
+
+	void beginObject() throws IOException, DataParsingException {
+		expect(Token.BEGIN_OBJECT);
+		pos++;
+		push(EMPTY_OBJECT);
+		peeked = null;
+	}
+
+	void endObject() throws IOException, DataParsingException {
+		expect(Token.END_OBJECT);
+		scopesSize--;
+		peeked = null;
+	}
+
+	/**
+	 * Checks that the whole document was read.
+	 *
+	 * @throws IOException
+	 *             If the stream couldn't be read.
+	 * @throws DataParsingException
+	 *             If there is more content.
+	 */
+	void endDocument() throws IOException, DataParsingException {
+		expect(Token.END_DOCUMENT);
+	}
+
+	/**
+	 * Consumes a name. Names which were already found are not built again.
+	 *
+	 * @return The name.
+	 * @throws IOException
+	 *             If the stream couldn't be read.
+	 * @throws DataParsingException
+	 *             If the next token isn't a name.
+	 */
+	String nextName() throws IOException, DataParsingException {
+		expect(Token.NAME);
+		pos++;
+		readString();
+		peeked = null;
+		return cachedName();
+	}
+
+	/**
+	 * Consumes a string.
+	 *
+	 * @return The string.
+	 * @throws IOException
+	 *             If the stream couldn't be read.
+	 * @throws DataParsingException
+	 *             If the next token isn't a string.
+	 */
+	String nextString() throws IOException, DataParsingException {
+		expect(Token.STRING);
+		pos++;
+		readString();
+		peeked = null;
+		return new String(chars, 0, charsLength);
+	}
+
+	/**
+	 * Consumes a number.
+	 *
+	 * @return The number as it was written.
+	 * @throws IOException
+	 *             If the stream couldn't be read.
+	 * @throws DataParsingException
+	 *             If the next token isn't a number.
+	 */
+	String nextNumber() throws IOException, DataParsingException {
+		expect(Token.NUMBER);
+		charsLength = 0;
+		while (pos < limit || fill()) {
+			int c = buffer[pos];
+			if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.'
+					|| c == 'e' || c == 'E') {
+				append((char) c);
+				pos++;
+			} else {
+				break;
+			}
+		}
+		peeked = null;
+		return new String(chars, 0, charsLength);
+	}
+
+	boolean nextBoolean() throws IOException, DataParsingException {
+		expect(Token.BOOLEAN);
+		boolean value = buffer[pos] == 't';
+		readLiteral(value ? "true" : "false");
+		peeked = null;
+		return value;
+	}
+
+	void nextNull() throws IOException, DataParsingException {
+		expect(Token.NULL);
+		readLiteral("null");
+		peeked = null;
+	}
+
+	/**
+	 * Consumes the next value, including all the nested ones if it is an
+	 * object or an array.
+	 *
+	 * @throws IOException
+	 *             If the stream couldn't be read.
+	 * @throws DataParsingException
+	 *             If the document isn't valid JSON.
+	 */
+	void skipValue() throws IOException, DataParsingException {
+		int depth = 0;
+		do {
+			switch (peek()) {
+			case BEGIN_ARRAY:
+				beginArray();
+				depth++;
+				break;
+			case BEGIN_OBJECT:
+				beginObject();
+				depth++;
+				break;
+			case END_ARRAY:
+				endArray();
+				depth--;
+				break;
+			case END_OBJECT:
+				endObject();
+				depth--;
+				break;
+			case NAME:
+				nextName();
+				break;
+			case STRING:
+				nextString();
+				break;
+			case NUMBER:
+				nextNumber();
+				break;
+			case BOOLEAN:
+				nextBoolean();
+				break;
+			case NULL:
+				nextNull();
+				break;
+			default:
+				throw syntaxError("Expected a value");
+			}
+		} while (depth > 0);
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 *
+	 * @throws IOException
+	 *             If it couldn't be closed.
+	 */
+	void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Tells which value starts at the current position (it isn't consumed).
+	 */
+	private Token peekValue() throws IOException, DataParsingException {
+		int c = nextNonWhitespace();
+		switch (c) {
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+			return Token.BOOLEAN;
+		case 'n':
+			return Token.NULL;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				return Token.NUMBER;
+			}
+			throw syntaxError("Expected a value");
+		}
+	}
+
+	private void expect(Token token) throws IOException, DataParsingException {
+		Token next = peek();
+		if (next != token) {
+			throw syntaxError("Expected " + token + " but was " + next);
+		}
+	}
+
+	private void push(int scope) {
+		if (scopesSize == scopes.length) {
+			int[] newScopes = new int[scopesSize * 2];
+			System.arraycopy(scopes, 0, newScopes, 0, scopesSize);
+			scopes = newScopes;
+		}
+		scopes[scopesSize++] = scope;
+	}
+
+	/**
+	 * Reads the content of a string (the opening quote was already consumed)
+	 * into {@link #chars}, decoding UTF-8 and escape sequences.
+	 */
+	private void readString() throws IOException, DataParsingException {
+		charsLength = 0;
+		while (true) {
+			// Fast path: runs of ASCII characters without escapes.
+			int start = pos;
+			while (pos < limit) {
+				byte b = buffer[pos];
+				if (b < 0x20 || b == '"' || b == '\\') {
+					break;
+				}
+				pos++;
+			}
+			if (pos > start) {
+				ensureCapacity(pos - start);
+				for (int i = start; i < pos; i++) {
+					chars[charsLength++] = (char) buffer[i];
+				}
+			}
+			if (pos == limit && !fill()) {
+				throw syntaxError("Unterminated string");
+			}
+			int b = buffer[pos++] & 0xff;
+			if (b == '"') {
+				return;
+			} else if (b == '\\') {
+				readEscapeSequence();
+			} else if (b < 0x80) {
+				append((char) b);
+			} else {
+				readMultibyteCharacter(b);
+			}
+		}
+	}
+
+	private void readEscapeSequence() throws IOException, DataParsingException {
+		if (pos == limit && !fill()) {
+			throw syntaxError("Unterminated escape sequence");
+		}
+		int c = buffer[pos++];
+		switch (c) {
+		case 'b':
+			append('\b');
+			break;
+		case 'f':
+			append('\f');
+			break;
+		case 'n':
+			append('\n');
+			break;
+		case 'r':
+			append('\r');
+			break;
+		case 't':
+			append('\t');
+			break;
+		case 'u':
+			if (!require(4)) {
+				throw syntaxError("Unterminated escape sequence");
+			}
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(buffer[pos++], 16);
+				if (digit < 0) {
+					throw syntaxError("Invalid unicode escape sequence");
+				}
+				value = (value << 4) | digit;
+			}
+			append((char) value);
+			break;
+		case '"':
+		case '\\':
+		case '/':
+			append((char) c);
+			break;
+		default:
+			throw syntaxError("Invalid escape sequence");
+		}
+	}
+
+	/**
+	 * Decodes a character encoded with several bytes. Malformed sequences are
+	 * replaced by U+FFFD.
+	 *
+	 * @param first
+	 *            First byte (already consumed).
+	 */
+	private void readMultibyteCharacter(int first) throws IOException {
+		int remaining;
+		int codePoint;
+		if ((first & 0xE0) == 0xC0) {
+			remaining = 1;
+			codePoint = first & 0x1F;
+		} else if ((first & 0xF0) == 0xE0) {
+			remaining = 2;
+			codePoint = first & 0x0F;
+		} else if ((first & 0xF8) == 0xF0) {
+			remaining = 3;
+			codePoint = first & 0x07;
+		} else {
+			append('\uFFFD');
+			return;
+		}
+		for (int i = 0; i < remaining; i++) {
+			if (pos == limit && !fill()) {
+				append('\uFFFD');
+				return;
+			}
+			int b = buffer[pos] & 0xff;
+			if ((b & 0xC0) != 0x80) {
+				append('\uFFFD');
+				return;
+			}
+			codePoint = (codePoint << 6) | (b & 0x3F);
+			pos++;
+		}
+		if (codePoint >= 0x10000) {
+			codePoint -= 0x10000;
+			append((char) (0xD800 + (codePoint >> 10)));
+			append((char) (0xDC00 + (codePoint & 0x3FF)));
+		} else {
+			append((char) codePoint);
+		}
+	}
+
+	private void readLiteral(String literal) throws IOException,
+			DataParsingException {
+		int length = literal.length();
+		if (!require(length)) {
+			throw syntaxError("Expected " + literal);
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer[pos + i] != literal.charAt(i)) {
+				throw syntaxError("Expected " + literal);
+			}
+		}
+		pos += length;
+		if (pos < limit || fill()) {
+			int c = buffer[pos];
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+					|| (c >= '0' && c <= '9')) {
+				throw syntaxError("Expected " + literal);
+			}
+		}
+	}
+
+	/**
+	 * Returns the last read name, reusing the same string if it was already
+	 * found.
+	 */
+	private String cachedName() {
+		int hash = 0;
+		for (int i = 0; i < charsLength; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		int index = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+		String cached = nameCache[index];
+		if (cached != null && cached.length() == charsLength) {
+			boolean equal = true;
+			for (int i = 0; i < charsLength && equal; i++) {
+				equal = cached.charAt(i) == chars[i];
+			}
+			if (equal) {
+				return cached;
+			}
+		}
+		String name = new String(chars, 0, charsLength);
+		nameCache[index] = name;
+		return name;
+	}
+
+	private void append(char c) {
+		ensureCapacity(1);
+		chars[charsLength++] = c;
+	}
+
+	private void ensureCapacity(int extra) {
+		if (charsLength + extra > chars.length) {
+			char[] newChars = new char[Math.max(chars.length * 2, charsLength
+					+ extra)];
+			System.arraycopy(chars, 0, newChars, 0, charsLength);
+			chars = newChars;
+		}
+	}
+
+	/**
+	 * Skips the whitespace and returns the next character without consuming
+	 * it.
+	 */
+	private int nextNonWhitespace() throws IOException, DataParsingException {
+		if (!skipWhitespace()) {
+			throw syntaxError("Unexpected end of the document");
+		}
+		return buffer[pos];
+	}
+
+	/**
+	 * Skips the whitespace.
+	 *
+	 * @return <code>false</code> if the end of the stream was reached.
+	 */
+	private boolean skipWhitespace() throws IOException {
+		while (pos < limit || fill()) {
+			byte c = buffer[pos];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return true;
+			}
+			pos++;
+		}
+		return false;
+	}
+
+	private void skipByteOrderMark() throws IOException {
+		if (require(3) && buffer[pos] == (byte) 0xEF
+				&& buffer[pos + 1] == (byte) 0xBB
+				&& buffer[pos + 2] == (byte) 0xBF) {
+			pos += 3;
+		}
+	}
+
+	/**
+	 * Reads more bytes from the stream.
+	 *
+	 * @return <code>false</code> if the end of the stream was reached.
+	 */
+	private boolean fill() throws IOException {
+		return require(limit - pos + 1);
+	}
+
+	/**
+	 * Makes sure that the buffer has, at least, the given number of unread
+	 * bytes.
+	 *
+	 * @return <code>false</code> if the end of the stream was reached before.
+	 */
+	private boolean require(int count) throws IOException {
+		if (limit - pos >= count) {
+			return true;
+		}
+		if (pos > 0) {
+			consumed += pos;
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		while (limit < count) {
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read == -1) {
+				return false;
+			}
+			limit += read;
+		}
+		return true;
+	}
+
+	private DataParsingException syntaxError(String message) {
+		return new DataParsingException(message + " (byte " + (consumed + pos)
+				+ ")");
+	}
+}
@@ -0,0 +1,580 @@
+package org.codeforamerica.open311.internals.parsing;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codeforamerica.open311.facade.EndpointType;
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.facade.ServiceRequestHandler;
+import org.codeforamerica.open311.facade.data.AttributeInfo;
+import org.codeforamerica.open311.facade.data.AttributeInfo.Datatype;
+import org.codeforamerica.open311.facade.data.Endpoint;
+import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceDiscoveryInfo;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.ServiceRequest.Status;
+import org.codeforamerica.open311.facade.data.ServiceRequestIdResponse;
+import org.codeforamerica.open311.facade.exceptions.DataParsingException;
+import org.codeforamerica.open311.facade.exceptions.GeoReportV2Error;
+
+/**
+ * Parses XML files using StAX. The document is read in a single forward pass,
+ * and only the element which is being parsed (a service, a service
+ * request...) is kept in memory, so big lists of service requests are parsed
+ * without building their whole tree.
+ *
+ * It gives the same results as the {@link XMLParser} (DOM), which is still
+ * used under Android (StAX isn't available there).
+ */
+public class StAXXMLParser extends AbstractParser {
+
+	private static final Set<String> NO_NESTED_ELEMENTS = Collections
+			.emptySet();
+	private static final Set<String> SERVICE_DEFINITION_NESTED_ELEMENTS = tags(
+			ATTRIBUTE_TAG, VALUE_TAG);
+	private static final Set<String> DISCOVERY_NESTED_ELEMENTS = tags(
+			ENDPOINT_TAG, FORMAT_TAG);
+	/**
+	 * Its configuration doesn't change after being built. The readers it
+	 * builds are used by a single thread each.
+	 */
+	private final XMLInputFactory inputFactory;
+	private final DateParser dateParser = new DateParser();
+
+	/**
+	 * Creates an instance of a StAXXMLParser creating an
+	 * {@link XMLInputFactory}.
+	 */
+	public StAXXMLParser() {
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	/**
+	 * Builds a reader of the given stream. The StAX API doesn't require
+	 * factories to be thread safe, so the access to it is serialized (the
+	 * parsing, which is the expensive part, is not).
+	 * 
+	 * @param rawData
+	 *            XML stream.
+	 * @return A new reader.
+	 * @throws XMLStreamException
+	 *             If the reader couldn't be built.
+	 */
+	private XMLStreamReader createReader(InputStream rawData)
+			throws XMLStreamException {
+		synchronized (inputFactory) {
+			return inputFactory.createXMLStreamReader(rawData);
+		}
+	}
+
+	@Override
+	public List<Service> parseServiceList(InputStream rawData)
+			throws DataParsingException {
+		List<Service> result = new LinkedList<Service>();
+		try {
+			XMLStreamReader reader = createReader(rawData);
+			try {
+				while (nextElement(reader, SERVICE_TAG)) {
+					result.add(getService(readElement(reader,
+							NO_NESTED_ELEMENTS)));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+		return result;
+	}
+
+	/**
+	 * Builds a {@link Service} object from a parsed element.
+	 *
+	 * @param serviceElement
+	 *            A service element.
+	 * @return An object wrapping the information contained in the given
+	 *         element.
+	 */
+	private Service getService(ParsedElement serviceElement) {
+		String code = serviceElement.get(SERVICE_CODE_TAG);
+		String name = serviceElement.get(SERVICE_NAME_TAG);
+		String description = serviceElement.get(DESCRIPTION_TAG);
+		Boolean metadata = parseBoolean(serviceElement.get(METADATA_TAG));
+		String group = serviceElement.get(SERVICE_GROUP_TAG);
+		String[] keywords = getKeywords(serviceElement.get(KEYWORDS_TAG));
+		Service.Type type = Service.Type.getFromString(serviceElement
+				.get(TYPE_TAG));
+		return new Service(code, name, description, metadata, type, keywords,
+				group);
+	}
+
+	@Override
+	public ServiceDefinition parseServiceDefinition(InputStream rawData)
+			throws DataParsingException {
+		try {
+			XMLStreamReader reader = createReader(rawData);
+			try {
+				ServiceDefinition result = null;
+				if (nextElement(reader, SERVICE_DEFINITION_TAG)) {
+					result = getServiceDefinition(readElement(reader,
+							SERVICE_DEFINITION_NESTED_ELEMENTS));
+				}
+				finish(reader);
+				return result;
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Builds a {@link ServiceDefinition} object from a parsed element.
+	 *
+	 * @param serviceDefinitionElement
+	 *            A service definition element.
+	 * @return An object wrapping the information contained in the given
+	 *         element.
+	 */
+	private ServiceDefinition getServiceDefinition(
+			ParsedElement serviceDefinitionElement) {
+		String serviceCode = serviceDefinitionElement.get(SERVICE_CODE_TAG);
+		List<AttributeInfo> attributes = new LinkedList<AttributeInfo>();
+		for (ParsedElement attributeElement : serviceDefinitionElement
+				.getNested(ATTRIBUTE_TAG)) {
+			Boolean variable = parseBoolean(attributeElement.get(VARIABLE_TAG));
+			String code = attributeElement.get(CODE_TAG);
+			Datatype datatype = Datatype.getFromString(attributeElement
+					.get(DATATYPE_TAG));
+			Boolean required = parseBoolean(attributeElement.get(REQUIRED_TAG));
+			String datatypeDescription = attributeElement
+					.get(DATATYPE_DESCRIPTION_TAG);
+			Integer order = parseInt(attributeElement.get(ORDER_TAG));
+			String description = attributeElement.get(DESCRIPTION_TAG);
+			Map<String, String> values = new HashMap<String, String>();
+			for (ParsedElement valueElement : attributeElement
+					.getNested(VALUE_TAG)) {
+				values.put(valueElement.get(KEY_TAG),
+						valueElement.get(NAME_TAG));
+			}
+			attributes.add(new AttributeInfo(variable, code, datatype,
+					required, datatypeDescription, order, description, values));
+		}
+		return new ServiceDefinition(serviceCode, attributes);
+	}
+
+	@Override
+	public ServiceRequestIdResponse parseServiceRequestIdFromAToken(
+			InputStream rawData) throws DataParsingException {
+		try {
+			XMLStreamReader reader = createReader(rawData);
+			try {
+				ServiceRequestIdResponse result = null;
+				if (nextElement(reader, SERVICE_REQUEST_TAG)) {
+					ParsedElement element = readElement(reader,
+							NO_NESTED_ELEMENTS);
+					result = new ServiceRequestIdResponse(
+							element.get(SERVICE_REQUEST_ID_TAG),
+							element.get(TOKEN_TAG));
+				}
+				finish(reader);
+				return result;
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+	}
+
+	@Override
+	public void parseServiceRequests(InputStream rawData,
+			ServiceRequestHandler handler) throws DataParsingException {
+		try {
+			XMLStreamReader reader = createReader(rawData);
+			try {
+				while (nextElement(reader, SERVICE_REQUEST_TAG)) {
+					deliver(handler, getServiceRequest(readElement(reader,
+							NO_NESTED_ELEMENTS)));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (HandlerException e) {
+			throw e.getCause();
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Builds a {@link ServiceRequest} object from a parsed element.
+	 *
+	 * @param serviceRequestElement
+	 *            A service request element.
+	 * @return An object wrapping the information contained in the given
+	 *         element.
+	 */
+	private ServiceRequest getServiceRequest(
+			ParsedElement serviceRequestElement) {
+		String serviceRequestId = serviceRequestElement
+				.get(SERVICE_REQUEST_ID_TAG);
+		Status status = Status.getFromString(serviceRequestElement
+				.get(STATUS_TAG));
+		String statusNotes = serviceRequestElement.get(STATUS_NOTES_TAG);
+		String serviceName = serviceRequestElement.get(SERVICE_NAME_TAG);
+		String serviceCode = serviceRequestElement.get(SERVICE_CODE_TAG);
+		String description = serviceRequestElement.get(DESCRIPTION_TAG);
+		String agencyResponsible = serviceRequestElement
+				.get(AGENCY_RESPONSIBLE_TAG);
+		String serviceNotice = serviceRequestElement.get(SERVICE_NOTICE_TAG);
+		Date requestedDatetime = dateParser.parseDate(serviceRequestElement
+				.get(REQUESTED_DATETIME_TAG));
+		Date updatedDatetime = dateParser.parseDate(serviceRequestElement
+				.get(UPDATED_DATETIME_TAG));
+		Date expectedDatetime = dateParser.parseDate(serviceRequestElement
+				.get(EXPECTED_DATETIME_TAG));
+		String address = serviceRequestElement.get(ADDRESS_TAG);
+		Long addressId = parseLong(serviceRequestElement.get(ADDRESS_ID_TAG));
+		Integer zipCode = parseInt(serviceRequestElement.get(ZIPCODE_TAG));
+		Float latitude = parseFloat(serviceRequestElement.get(LATITUDE_TAG));
+		Float longitude = parseFloat(serviceRequestElement.get(LONGITUDE_TAG));
+		URL mediaUrl = buildUrl(serviceRequestElement.get(MEDIA_URL_TAG)
+				.trim());
+		return new ServiceRequest(serviceRequestId, status, statusNotes,
+				serviceName, serviceCode, description, agencyResponsible,
+				serviceNotice, requestedDatetime, updatedDatetime,
+				expectedDatetime, address, addressId, zipCode, latitude,
+				longitude, mediaUrl);
+	}
+
+	@Override
+	public POSTServiceRequestResponse parsePostServiceRequestResponse(
+			InputStream rawData) throws DataParsingException {
+		POSTServiceRequestResponse result = null;
+		try {
+			XMLStreamReader reader = createReader(rawData);
+			try {
+				if (nextElement(reader, SERVICE_REQUEST_TAG)) {
+					ParsedElement element = readElement(reader,
+							NO_NESTED_ELEMENTS);
+					result = new POSTServiceRequestResponse(
+							element.get(SERVICE_REQUEST_ID_TAG),
+							element.get(TOKEN_TAG),
+							element.get(SERVICE_NOTICE_TAG),
+							element.get(ACCOUNT_ID_TAG));
+				}
+				finish(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+		if (result == null) {
+			throw new DataParsingException(
+					"The obtained response couldn't be parsed, it may be an error.");
+		}
+		return result;
+	}
+
+	@Override
+	public GeoReportV2Error parseGeoReportV2Errors(InputStream rawData)
+			throws DataParsingException {
+		GeoReportV2Error result = null;
+		try {
+			XMLStreamReader reader = createReader(rawData);
+			try {
+				if (nextElement(reader, ERROR_TAG)) {
+					ParsedElement element = readElement(reader,
+							NO_NESTED_ELEMENTS);
+					result = new GeoReportV2Error(element.get(CODE_TAG),
+							element.get(DESCRIPTION_TAG));
+				}
+				finish(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+		if (result == null) {
+			throw new DataParsingException(
+					"The obtained response is not an error object");
+		}
+		return result;
+	}
+
+	@Override
+	public ServiceDiscoveryInfo parseServiceDiscovery(InputStream rawData)
+			throws DataParsingException {
+		try {
+			XMLStreamReader reader = createReader(rawData);
+			try {
+				ServiceDiscoveryInfo result = null;
+				if (nextElement(reader, DISCOVERY_TAG)) {
+					ParsedElement discoveryElement = readElement(reader,
+							DISCOVERY_NESTED_ELEMENTS);
+					Date changeset = dateParser.parseDate(discoveryElement
+							.get(CHANGESET_TAG));
+					result = new ServiceDiscoveryInfo(changeset,
+							discoveryElement.get(CONTACT_TAG),
+							discoveryElement.get(KEY_SERVICE_TAG),
+							parseEndpoints(discoveryElement));
+				}
+				finish(reader);
+				return result;
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Builds a list of endpoints.
+	 *
+	 * @param discoveryElement
+	 *            Service discovery element. In some service discovery files,
+	 *            the specification url is not inside the endpoint field but in
+	 *            the same level, so it is taken from here in that case.
+	 * @return List of endpoints.
+	 */
+	private List<Endpoint> parseEndpoints(ParsedElement discoveryElement) {
+		List<Endpoint> result = new LinkedList<Endpoint>();
+		for (ParsedElement endpointElement : discoveryElement
+				.getNested(ENDPOINT_TAG)) {
+			String specificationUrl = endpointElement.get(SPECIFICATION_TAG);
+			if (specificationUrl.length() == 0) {
+				specificationUrl = discoveryElement.get(SPECIFICATION_TAG);
+			}
+			String url = endpointElement.get(URL_TAG);
+			Date changeset = dateParser.parseDate(endpointElement
+					.get(CHANGESET_TAG));
+			EndpointType type = EndpointType.getFromString(endpointElement
+					.get(TYPE_TAG));
+			List<Format> formats = new LinkedList<Format>();
+			for (ParsedElement formatElement : endpointElement
+					.getNested(FORMAT_TAG)) {
+				formats.add(Format.getFromHTTPContentTypeString(formatElement
+						.getText()));
+			}
+			if (url.length() > 0) {
+				result.add(new Endpoint(specificationUrl, url, changeset, type,
+						formats));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the reader to the next element with the given tag.
+	 *
+	 * @param reader
+	 *            Reader.
+	 * @param tag
+	 *            Tag of the element.
+	 * @return <code>true</code> if the reader is at the beginning of the
+	 *         element, <code>false</code> if the document ended.
+	 * @throws XMLStreamException
+	 *             If the document isn't well formed.
+	 */
+	private boolean nextElement(XMLStreamReader reader, String tag)
+			throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT
+					&& tag.equals(reader.getLocalName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the rest of the document, which checks that it is well formed.
+	 *
+	 * @param reader
+	 *            Reader.
+	 * @throws XMLStreamException
+	 *             If the document isn't well formed.
+	 */
+	private void finish(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			reader.next();
+		}
+	}
+
+	/**
+	 * Reads the element which starts at the current position of the reader,
+	 * until its end. As {@link XMLParser} does, the value of a tag is the text
+	 * content of the first element with that tag inside the element (at any
+	 * depth).
+	 *
+	 * @param reader
+	 *            Reader, which current event is the start of the element.
+	 * @param nestedTags
+	 *            Tags of the nested elements which can appear several times
+	 *            and have to be read as separate elements (attributes of a
+	 *            service definition, endpoints of a discovery...).
+	 * @return The read element.
+	 * @throws XMLStreamException
+	 *             If the document isn't well formed.
+	 */
+	private ParsedElement readElement(XMLStreamReader reader,
+			Set<String> nestedTags) throws XMLStreamException {
+		ParsedElement element = new ParsedElement();
+		// Text content of each open element (the first one is the element).
+		List<StringBuilder> texts = new ArrayList<StringBuilder>();
+		List<String> tags = new ArrayList<String>();
+		texts.add(new StringBuilder());
+		tags.add(null);
+		int depth = 0;
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				String tag = reader.getLocalName();
+				if (nestedTags.contains(tag)) {
+					ParsedElement nested = readElement(reader, nestedTags);
+					element.addNested(tag, nested);
+					for (int i = 0; i <= depth; i++) {
+						texts.get(i).append(nested.getText());
+					}
+				} else {
+					depth++;
+					if (texts.size() == depth) {
+						texts.add(new StringBuilder());
+						tags.add(tag);
+					} else {
+						texts.get(depth).setLength(0);
+						tags.set(depth, tag);
+					}
+				}
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				for (int i = 0; i <= depth; i++) {
+					texts.get(i).append(reader.getTextCharacters(),
+							reader.getTextStart(), reader.getTextLength());
+				}
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (depth == 0) {
+					element.setText(texts.get(0).toString());
+					return element;
+				}
+				element.addField(tags.get(depth), texts.get(depth).toString());
+				depth--;
+				break;
+			default:
+				break;
+			}
+		}
+		throw new XMLStreamException("Unexpected end of the document.");
+	}
+
+	/**
+	 * Builds a set of tags.
+	 *
+	 * @param tags
+	 *            Tags.
+	 * @return An unmodifiable set which contains them.
+	 */
+	private static Set<String> tags(String... tags) {
+		Set<String> result = new HashSet<String>();
+		Collections.addAll(result, tags);
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Information of an element read by
+	 * {@link StAXXMLParser#readElement(XMLStreamReader, Set)}.
+	 */
+	private static class ParsedElement {
+		private Map<String, String> fields = new HashMap<String, String>();
+		private Map<String, List<ParsedElement>> nestedElements;
+		private String text = "";
+
+		/**
+		 * Returns the text content of the first inner element with the given
+		 * tag.
+		 *
+		 * @param tag
+		 *            Tag.
+		 * @return <code>""</code> if there isn't any.
+		 */
+		public String get(String tag) {
+			String value = fields.get(tag);
+			return value != null ? value : "";
+		}
+
+		/**
+		 * Returns the nested elements with the given tag, in order.
+		 *
+		 * @param tag
+		 *            Tag (one of the nested tags given when it was read).
+		 * @return A list, empty if there isn't any.
+		 */
+		public List<ParsedElement> getNested(String tag) {
+			List<ParsedElement> result = nestedElements != null ? nestedElements
+					.get(tag) : null;
+			return result != null ? result : Collections
+					.<ParsedElement> emptyList();
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		private void setText(String text) {
+			this.text = text;
+		}
+
+		private void addField(String tag, String value) {
+			if (!fields.containsKey(tag)) {
+				fields.put(tag, value);
+			}
+		}
+
+		/**
+		 * Adds a nested element. Its fields are fields of this element too
+		 * (unless they were already found).
+		 */
+		private void addNested(String tag, ParsedElement nested) {
+			if (nestedElements == null) {
+				nestedElements = new HashMap<String, List<ParsedElement>>();
+			}
+			List<ParsedElement> elements = nestedElements.get(tag);
+			if (elements == null) {
+				elements = new LinkedList<ParsedElement>();
+				nestedElements.put(tag, elements);
+			}
+			elements.add(nested);
+			addField(tag, nested.getText());
+			for (Entry<String, String> field : nested.fields.entrySet()) {
+				addField(field.getKey(), field.getValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,629 @@
+package org.codeforamerica.open311.internals.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.codeforamerica.open311.facade.ServiceRequestHandler;
+import org.codeforamerica.open311.facade.data.AttributeInfo;
+import org.codeforamerica.open311.facade.data.AttributeInfo.Datatype;
+import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceDiscoveryInfo;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.ServiceRequest.Status;
+import org.codeforamerica.open311.facade.data.ServiceRequestIdResponse;
+import org.codeforamerica.open311.facade.exceptions.DataParsingException;
+import org.codeforamerica.open311.facade.exceptions.GeoReportV2Error;
+import org.codeforamerica.open311.internals.parsing.JSONPullReader.Token;
+
+/**
+ * Implementation of a {@link DataParser} which takes JSON data as input and
+ * builds the objects straight from the tokens of the document (check
+ * {@link JSONPullReader}), without building a tree of the whole response
+ * first.
+ *
+ * Values are interpreted as the {@link JSONParser} does (a <code>null</code>
+ * string is empty, numbers can be given as strings...), so both parsers give
+ * the same results.
+ */
+public class StreamingJSONParser extends AbstractParser {
+	private static final String NULL_STRING_JSON = "null";
+	private final DateParser dateParser = new DateParser();
+
+	@Override
+	public List<Service> parseServiceList(InputStream rawData)
+			throws DataParsingException {
+		List<Service> result = new LinkedList<Service>();
+		try {
+			JSONPullReader reader = new JSONPullReader(rawData);
+			reader.beginArray();
+			while (reader.hasNext()) {
+				result.add(readService(reader));
+			}
+			reader.endArray();
+			reader.endDocument();
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a {@link Service} object.
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the object.
+	 * @return An object with the values of the JSON object.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private Service readService(JSONPullReader reader) throws IOException,
+			DataParsingException {
+		String code = "", name = "", description = "";
+		String group = "", keywords = "", type = "";
+		Boolean metadata = Boolean.FALSE;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String tag = reader.nextName();
+			if (tag.equals(SERVICE_CODE_TAG)) {
+				code = readString(reader);
+			} else if (tag.equals(SERVICE_NAME_TAG)) {
+				name = readString(reader);
+			} else if (tag.equals(DESCRIPTION_TAG)) {
+				description = readString(reader);
+			} else if (tag.equals(METADATA_TAG)) {
+				metadata = readBoolean(reader);
+			} else if (tag.equals(SERVICE_GROUP_TAG)) {
+				group = readString(reader);
+			} else if (tag.equals(KEYWORDS_TAG)) {
+				keywords = readString(reader);
+			} else if (tag.equals(TYPE_TAG)) {
+				type = readString(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		checkParameters(code);
+		return new Service(code, name, description, metadata,
+				Service.Type.getFromString(type), getKeywords(keywords), group);
+	}
+
+	@Override
+	public ServiceDefinition parseServiceDefinition(InputStream rawData)
+			throws DataParsingException {
+		try {
+			JSONPullReader reader = new JSONPullReader(rawData);
+			ServiceDefinition result = readServiceDefinition(reader);
+			reader.endDocument();
+			return result;
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads a {@link ServiceDefinition} object. It can be wrapped in another
+	 * object (<code>{"service_definition": {...}}</code>).
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the object.
+	 * @return An object with the values of the JSON object.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private ServiceDefinition readServiceDefinition(JSONPullReader reader)
+			throws IOException, DataParsingException {
+		String serviceCode = "";
+		List<AttributeInfo> attributes = null;
+		ServiceDefinition wrapped = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String tag = reader.nextName();
+			if (tag.equals(SERVICE_DEFINITION_TAG)) {
+				wrapped = readServiceDefinition(reader);
+			} else if (tag.equals(SERVICE_CODE_TAG)) {
+				serviceCode = readString(reader);
+			} else if (tag.equals(ATTRIBUTES_TAG)) {
+				attributes = readAttributeList(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (wrapped != null) {
+			return wrapped;
+		}
+		if (attributes == null) {
+			throw new DataParsingException("JSONObject[\"" + ATTRIBUTES_TAG
+					+ "\"] not found.");
+		}
+		checkParameters(serviceCode);
+		return new ServiceDefinition(serviceCode, attributes);
+	}
+
+	/**
+	 * Reads the list of attributes attached to a service definition.
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the array.
+	 * @return List of attributes.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid or the code of an attribute is
+	 *             missing.
+	 */
+	private List<AttributeInfo> readAttributeList(JSONPullReader reader)
+			throws IOException, DataParsingException {
+		List<AttributeInfo> attributes = new LinkedList<AttributeInfo>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			Boolean variable = Boolean.FALSE, required = Boolean.FALSE;
+			String code = "", datatype = "", description = "";
+			String datatypeDescription = "";
+			Integer order = null;
+			Map<String, String> values = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String tag = reader.nextName();
+				if (tag.equals(VARIABLE_TAG)) {
+					variable = readBoolean(reader);
+				} else if (tag.equals(CODE_TAG)) {
+					code = readString(reader);
+				} else if (tag.equals(DATATYPE_TAG)) {
+					datatype = readString(reader);
+				} else if (tag.equals(REQUIRED_TAG)) {
+					required = readBoolean(reader);
+				} else if (tag.equals(DATATYPE_DESCRIPTION_TAG)) {
+					datatypeDescription = readString(reader);
+				} else if (tag.equals(ORDER_TAG)) {
+					order = readInteger(reader);
+				} else if (tag.equals(DESCRIPTION_TAG)) {
+					description = readString(reader);
+				} else if (tag.equals(VALUES_TAG)) {
+					values = readValues(reader);
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			checkParameters(code);
+			attributes.add(new AttributeInfo(variable, code, Datatype
+					.getFromString(datatype), required, datatypeDescription,
+					order, description, values));
+		}
+		reader.endArray();
+		return attributes;
+	}
+
+	/**
+	 * Reads the possible values of an attribute (<code>[{"key": ...,
+	 * "name": ...}, ...]</code>).
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the array.
+	 * @return Pairs (key, name).
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private Map<String, String> readValues(JSONPullReader reader)
+			throws IOException, DataParsingException {
+		Map<String, String> values = new HashMap<String, String>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			String key = "", name = "";
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String tag = reader.nextName();
+				if (tag.equals(KEY_TAG)) {
+					key = readString(reader);
+				} else if (tag.equals(NAME_TAG)) {
+					name = readString(reader);
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			values.put(key, name);
+		}
+		reader.endArray();
+		return values;
+	}
+
+	@Override
+	public ServiceRequestIdResponse parseServiceRequestIdFromAToken(
+			InputStream rawData) throws DataParsingException {
+		try {
+			JSONPullReader reader = new JSONPullReader(rawData);
+			ServiceRequestIdResponse result = null;
+			reader.beginArray();
+			if (reader.hasNext()) {
+				String token = "", serviceRequestId = "";
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String tag = reader.nextName();
+					if (tag.equals(TOKEN_TAG)) {
+						token = readString(reader);
+					} else if (tag.equals(SERVICE_REQUEST_ID_TAG)) {
+						serviceRequestId = readString(reader);
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+				checkParameters(token, serviceRequestId);
+				result = new ServiceRequestIdResponse(serviceRequestId, token);
+			}
+			skipRemainingValues(reader);
+			reader.endArray();
+			reader.endDocument();
+			return result;
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+	}
+
+	@Override
+	public void parseServiceRequests(InputStream rawData,
+			ServiceRequestHandler handler) throws DataParsingException {
+		try {
+			JSONPullReader reader = new JSONPullReader(rawData);
+			boolean wrapped = reader.peek() == Token.BEGIN_OBJECT;
+			if (wrapped) {
+				// {"service_requests": [...]}
+				reader.beginObject();
+				while (reader.hasNext()
+						&& !reader.nextName().equals(SERVICE_REQUESTS_TAG)) {
+					reader.skipValue();
+				}
+				if (reader.peek() == Token.END_OBJECT) {
+					throw new DataParsingException("JSONObject[\""
+							+ SERVICE_REQUESTS_TAG + "\"] not found.");
+				}
+			}
+			reader.beginArray();
+			while (reader.hasNext()) {
+				deliver(handler, readServiceRequest(reader));
+			}
+			reader.endArray();
+			if (wrapped) {
+				skipRemainingValues(reader);
+				reader.endObject();
+			}
+			reader.endDocument();
+		} catch (HandlerException e) {
+			throw e.getCause();
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads a {@link ServiceRequest} object.
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the object.
+	 * @return A service request object.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private ServiceRequest readServiceRequest(JSONPullReader reader)
+			throws IOException, DataParsingException {
+		String serviceRequestId = "", status = "", statusNotes = "";
+		String serviceName = "", serviceCode = "", description = "";
+		String agencyResponsible = "", serviceNotice = "", address = "";
+		String requestedDatetime = "", updatedDatetime = "";
+		String expectedDatetime = "", mediaUrl = "";
+		Long addressId = null;
+		Integer zipCode = null;
+		Float latitude = null, longitude = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String tag = reader.nextName();
+			if (tag.equals(SERVICE_REQUEST_ID_TAG)) {
+				serviceRequestId = readString(reader);
+			} else if (tag.equals(STATUS_TAG)) {
+				status = readString(reader);
+			} else if (tag.equals(STATUS_NOTES_TAG)) {
+				statusNotes = readString(reader);
+			} else if (tag.equals(SERVICE_NAME_TAG)) {
+				serviceName = readString(reader);
+			} else if (tag.equals(SERVICE_CODE_TAG)) {
+				serviceCode = readString(reader);
+			} else if (tag.equals(DESCRIPTION_TAG)) {
+				description = readString(reader);
+			} else if (tag.equals(AGENCY_RESPONSIBLE_TAG)) {
+				agencyResponsible = readString(reader);
+			} else if (tag.equals(SERVICE_NOTICE_TAG)) {
+				serviceNotice = readString(reader);
+			} else if (tag.equals(REQUESTED_DATETIME_TAG)) {
+				requestedDatetime = readString(reader);
+			} else if (tag.equals(UPDATED_DATETIME_TAG)) {
+				updatedDatetime = readString(reader);
+			} else if (tag.equals(EXPECTED_DATETIME_TAG)) {
+				expectedDatetime = readString(reader);
+			} else if (tag.equals(ADDRESS_TAG)) {
+				address = readString(reader);
+			} else if (tag.equals(ADDRESS_ID_TAG)) {
+				addressId = readLong(reader);
+			} else if (tag.equals(ZIPCODE_TAG)) {
+				zipCode = readInteger(reader);
+			} else if (tag.equals(LATITUDE_TAG)) {
+				latitude = readFloat(reader);
+			} else if (tag.equals(LONGITUDE_TAG)) {
+				longitude = readFloat(reader);
+			} else if (tag.equals(MEDIA_URL_TAG)) {
+				mediaUrl = readString(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		checkParameters(serviceCode);
+		return new ServiceRequest(serviceRequestId,
+				Status.getFromString(status), statusNotes, serviceName,
+				serviceCode, description, agencyResponsible, serviceNotice,
+				dateParser.parseDate(requestedDatetime),
+				dateParser.parseDate(updatedDatetime),
+				dateParser.parseDate(expectedDatetime), address, addressId, zipCode,
+				latitude, longitude, buildUrl(mediaUrl.trim()));
+	}
+
+	@Override
+	public POSTServiceRequestResponse parsePostServiceRequestResponse(
+			InputStream rawData) throws DataParsingException {
+		POSTServiceRequestResponse result = null;
+		try {
+			JSONPullReader reader = new JSONPullReader(rawData);
+			reader.beginArray();
+			if (reader.hasNext()) {
+				String token = "", serviceRequestId = "";
+				String serviceNotice = "", accountId = "";
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String tag = reader.nextName();
+					if (tag.equals(TOKEN_TAG)) {
+						token = readString(reader);
+					} else if (tag.equals(SERVICE_REQUEST_ID_TAG)) {
+						serviceRequestId = readString(reader);
+					} else if (tag.equals(SERVICE_NOTICE_TAG)) {
+						serviceNotice = readString(reader);
+					} else if (tag.equals(ACCOUNT_ID_TAG)) {
+						accountId = readString(reader);
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+				checkParameters(serviceRequestId, token);
+				result = new POSTServiceRequestResponse(serviceRequestId,
+						token, serviceNotice, accountId);
+			}
+			skipRemainingValues(reader);
+			reader.endArray();
+			reader.endDocument();
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+		if (result == null) {
+			throw new DataParsingException(
+					"The obtained response couldn't be parsed, it may be an error.");
+		}
+		return result;
+	}
+
+	@Override
+	public GeoReportV2Error parseGeoReportV2Errors(InputStream rawData)
+			throws DataParsingException {
+		GeoReportV2Error result = null;
+		try {
+			JSONPullReader reader = new JSONPullReader(rawData);
+			reader.beginArray();
+			if (reader.hasNext()) {
+				String code = "", description = "";
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String tag = reader.nextName();
+					if (tag.equals(CODE_TAG)) {
+						code = readString(reader);
+					} else if (tag.equals(DESCRIPTION_TAG)) {
+						description = readString(reader);
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+				checkParameters(code, description);
+				result = new GeoReportV2Error(code, description);
+			}
+			skipRemainingValues(reader);
+			reader.endArray();
+			reader.endDocument();
+		} catch (Exception e) {
+			throw new DataParsingException(e.getMessage());
+		}
+		if (result == null) {
+			throw new DataParsingException(
+					"The obtained response is not an error object");
+		}
+		return result;
+	}
+
+	@Override
+	public ServiceDiscoveryInfo parseServiceDiscovery(InputStream rawData)
+			throws DataParsingException {
+		throw new UnsupportedOperationException(
+				"This operation is expected to be done by an XML parser.");
+	}
+
+	/**
+	 * Skips the values left in the current array or object.
+	 *
+	 * @param reader
+	 *            Reader.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private void skipRemainingValues(JSONPullReader reader)
+			throws IOException, DataParsingException {
+		while (reader.hasNext()) {
+			reader.skipValue();
+		}
+	}
+
+	/**
+	 * Reads a value as a string. Numbers and booleans are converted to their
+	 * string representation, <code>null</code>, objects and arrays are empty.
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the value.
+	 * @return The string value.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private String readString(JSONPullReader reader) throws IOException,
+			DataParsingException {
+		switch (reader.peek()) {
+		case STRING:
+			String result = reader.nextString();
+			return result.equals(NULL_STRING_JSON) ? "" : result;
+		case NUMBER:
+			return normalizeNumber(reader.nextNumber());
+		case BOOLEAN:
+			return String.valueOf(reader.nextBoolean());
+		default:
+			reader.skipValue();
+			return "";
+		}
+	}
+
+	/**
+	 * Reads a value as a number. Strings are parsed.
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the value.
+	 * @return The double value, <code>null</code> if it isn't a number.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private Double readDouble(JSONPullReader reader) throws IOException,
+			DataParsingException {
+		Token token = reader.peek();
+		if (token != Token.NUMBER && token != Token.STRING) {
+			reader.skipValue();
+			return null;
+		}
+		String number = token == Token.NUMBER ? reader.nextNumber() : reader
+				.nextString();
+		try {
+			return Double.valueOf(number);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a value as a long number. Strings are parsed.
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the value.
+	 * @return The long value, <code>null</code> if it isn't a number.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private Long readLong(JSONPullReader reader) throws IOException,
+			DataParsingException {
+		if (reader.peek() == Token.NUMBER) {
+			String number = reader.nextNumber();
+			try {
+				return Long.valueOf(number);
+			} catch (NumberFormatException e) {
+				try {
+					return Double.valueOf(number).longValue();
+				} catch (NumberFormatException ex) {
+					return null;
+				}
+			}
+		}
+		Double result = readDouble(reader);
+		return result != null ? result.longValue() : null;
+	}
+
+	private Integer readInteger(JSONPullReader reader) throws IOException,
+			DataParsingException {
+		Long result = readLong(reader);
+		return result != null ? result.intValue() : null;
+	}
+
+	private Float readFloat(JSONPullReader reader) throws IOException,
+			DataParsingException {
+		Double result = readDouble(reader);
+		return result != null ? result.floatValue() : null;
+	}
+
+	/**
+	 * Reads a value as a boolean (<code>true</code> or <code>"true"</code>).
+	 *
+	 * @param reader
+	 *            Reader, at the beginning of the value.
+	 * @return {@link Boolean#FALSE} if it isn't a boolean.
+	 * @throws IOException
+	 *             If the data couldn't be read.
+	 * @throws DataParsingException
+	 *             If the data is not valid.
+	 */
+	private Boolean readBoolean(JSONPullReader reader) throws IOException,
+			DataParsingException {
+		switch (reader.peek()) {
+		case BOOLEAN:
+			return Boolean.valueOf(reader.nextBoolean());
+		case STRING:
+			return Boolean.valueOf(reader.nextString().equalsIgnoreCase("true"));
+		default:
+			reader.skipValue();
+			return Boolean.FALSE;
+		}
+	}
+
+	/**
+	 * Writes a number as {@link JSONParser} does (decimal numbers are
+	 * doubles).
+	 *
+	 * @param number
+	 *            Number as it was written in the document.
+	 * @return Its string representation.
+	 */
+	private String normalizeNumber(String number) {
+		try {
+			if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0
+					|| number.indexOf('E') >= 0) {
+				return Double.valueOf(number).toString();
+			}
+			return Long.valueOf(number).toString();
+		} catch (NumberFormatException e) {
+			return number;
+		}
+	}
+}
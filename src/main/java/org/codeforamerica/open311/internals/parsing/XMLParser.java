@@ -1,8 +1,7 @@
 package org.codeforamerica.open311.internals.parsing;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Date;
@@ -17,6 +16,7 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.codeforamerica.open311.facade.EndpointType;
 import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.facade.ServiceRequestHandler;
 import org.codeforamerica.open311.facade.data.AttributeInfo;
 import org.codeforamerica.open311.facade.data.AttributeInfo.Datatype;
 import org.codeforamerica.open311.facade.data.Endpoint;
@@ -44,24 +44,49 @@ import org.xml.sax.SAXException;
  */
 public class XMLParser extends AbstractParser {
 
-	private DocumentBuilder dBuilder;
-	private DateParser dateParser = new DateParser();
+	/**
+	 * {@link DocumentBuilder} instances can't parse concurrently, so every
+	 * thread using this parser gets its own one (they are reused between
+	 * parsings).
+	 */
+	private final ThreadLocal<DocumentBuilder> dBuilder;
+	private final DocumentBuilderFactory dBuilderFactory;
+	private final DateParser dateParser = new DateParser();
 
 	/**
-	 * Creates an instance of an XMLParser creating a {@link DocumentBuilder}.
+	 * Creates an instance of an XMLParser checking that a
+	 * {@link DocumentBuilder} can be built.
 	 */
 	public XMLParser() {
-		try {
-			dBuilder = DocumentBuilderFactory.newInstance()
-					.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			throw new Error(
-					"Cannot create a DocumentBuilder which satisfies the configuration requested.");
+		dBuilderFactory = DocumentBuilderFactory.newInstance();
+		dBuilder = new ThreadLocal<DocumentBuilder>() {
+			@Override
+			protected DocumentBuilder initialValue() {
+				return newDocumentBuilder();
+			}
+		};
+		dBuilder.set(newDocumentBuilder());
+	}
+
+	/**
+	 * Builds a new {@link DocumentBuilder}. The factory isn't required to be
+	 * thread safe, so the access to it is serialized.
+	 * 
+	 * @return A new DocumentBuilder.
+	 */
+	private DocumentBuilder newDocumentBuilder() {
+		synchronized (dBuilderFactory) {
+			try {
+				return dBuilderFactory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				throw new Error(
+						"Cannot create a DocumentBuilder which satisfies the configuration requested.");
+			}
 		}
 	}
 
 	@Override
-	public List<Service> parseServiceList(String rawData)
+	public List<Service> parseServiceList(InputStream rawData)
 			throws DataParsingException {
 		List<Service> result = new LinkedList<Service>();
 		try {
@@ -103,7 +128,7 @@ public class XMLParser extends AbstractParser {
 	}
 
 	@Override
-	public ServiceDefinition parseServiceDefinition(String rawData)
+	public ServiceDefinition parseServiceDefinition(InputStream rawData)
 			throws DataParsingException {
 		try {
 			Document doc = getDocument(rawData);
@@ -177,7 +202,7 @@ public class XMLParser extends AbstractParser {
 
 	@Override
 	public ServiceRequestIdResponse parseServiceRequestIdFromAToken(
-			String rawData) throws DataParsingException {
+			InputStream rawData) throws DataParsingException {
 		try {
 			Document doc = getDocument(rawData);
 			NodeList serviceRequestsIdList = doc
@@ -212,9 +237,8 @@ public class XMLParser extends AbstractParser {
 	}
 
 	@Override
-	public List<ServiceRequest> parseServiceRequests(String rawData)
-			throws DataParsingException {
-		List<ServiceRequest> result = new LinkedList<ServiceRequest>();
+	public void parseServiceRequests(InputStream rawData,
+			ServiceRequestHandler handler) throws DataParsingException {
 		try {
 			Document doc = getDocument(rawData);
 			NodeList serviceRequestsIdList = doc
@@ -222,13 +246,14 @@ public class XMLParser extends AbstractParser {
 			for (int i = 0; i < serviceRequestsIdList.getLength(); i++) {
 				Node serviceRequestIdNode = serviceRequestsIdList.item(i);
 				if (serviceRequestIdNode.getNodeType() == Node.ELEMENT_NODE) {
-					result.add(getServiceRequest((Element) serviceRequestIdNode));
+					deliver(handler, getServiceRequest((Element) serviceRequestIdNode));
 				}
 			}
+		} catch (HandlerException e) {
+			throw e.getCause();
 		} catch (Exception e) {
 			throw new DataParsingException(e.getMessage());
 		}
-		return result;
 	}
 
 	/**
@@ -287,7 +312,7 @@ public class XMLParser extends AbstractParser {
 
 	@Override
 	public POSTServiceRequestResponse parsePostServiceRequestResponse(
-			String rawData) throws DataParsingException {
+			InputStream rawData) throws DataParsingException {
 		try {
 			Document doc = getDocument(rawData);
 			NodeList serviceRequestsIdList = doc
@@ -329,7 +354,7 @@ public class XMLParser extends AbstractParser {
 	}
 
 	@Override
-	public GeoReportV2Error parseGeoReportV2Errors(String rawData)
+	public GeoReportV2Error parseGeoReportV2Errors(InputStream rawData)
 			throws DataParsingException {
 		try {
 			Document doc = getDocument(rawData);
@@ -365,7 +390,7 @@ public class XMLParser extends AbstractParser {
 	}
 
 	@Override
-	public ServiceDiscoveryInfo parseServiceDiscovery(String rawData)
+	public ServiceDiscoveryInfo parseServiceDiscovery(InputStream rawData)
 			throws DataParsingException {
 		try {
 			Document doc = getDocument(rawData);
@@ -445,19 +470,17 @@ public class XMLParser extends AbstractParser {
 	}
 
 	/**
-	 * Returns a {@link Document} representing the DOM of the XML string.
+	 * Returns a {@link Document} representing the DOM of the XML stream.
 	 * 
 	 * @param rawData
-	 *            XML UTF-8 encoded string.
+	 *            XML stream.
 	 * @return A document built with the given data.
-	 * @throws UnsupportedEncodingException
 	 * @throws SAXException
 	 * @throws IOException
 	 */
-	private Document getDocument(String rawData)
-			throws UnsupportedEncodingException, SAXException, IOException {
-		Document doc = dBuilder.parse(new InputSource(new ByteArrayInputStream(
-				rawData.getBytes(DataParser.TEXT_FORMAT))));
+	private Document getDocument(InputStream rawData) throws SAXException,
+			IOException {
+		Document doc = dBuilder.get().parse(new InputSource(rawData));
 		doc.getDocumentElement().normalize();
 		return doc;
 	}
@@ -479,72 +502,4 @@ public class XMLParser extends AbstractParser {
 		}
 		return "";
 	}
-
-	/**
-	 * Parses a string and returns an integer. <b>NOTE<b>: Be careful and notice
-	 * that this function will return a <code>null</code> if the given string is
-	 * not valid. This approach works well here, but not generally.
-	 * 
-	 * @param rawInt
-	 *            A string which represents an integer number.
-	 * @return The integer value (or <code>null</code> if the rawInt is empty or
-	 *         <code>null</code>).
-	 */
-	private int parseInt(String rawInt) {
-		try {
-			return (rawInt != null && rawInt.length() > 0) ? Integer
-					.parseInt(rawInt) : 0;
-		} catch (NumberFormatException e) {
-			return -1;
-		}
-	}
-
-	/**
-	 * Parses a string and returns a long. <b>NOTE<b>: Be careful and notice
-	 * that this function will return a <code>null</code> if the given string is
-	 * not valid. This approach works well here, but not generally.
-	 * 
-	 * @param rawLong
-	 *            A string which represents a long number.
-	 * @return The long value (or <code>null</code> if the rawLong is empty or
-	 *         <code>null</code>).
-	 */
-	private long parseLong(String rawLong) {
-		try {
-			return (rawLong != null && rawLong.length() > 0) ? Long
-					.parseLong(rawLong) : 0;
-		} catch (NumberFormatException e) {
-			return -1;
-		}
-	}
-
-	/**
-	 * Parses a string and returns a float. <b>NOTE<b>: Be careful and notice
-	 * that this function will return a <code>null</code> if the given string is
-	 * not valid.
-	 * 
-	 * @param rawFloat
-	 *            A string which represents a float number.
-	 * @return The float value (or <code>null</code> if the rawFloat is empty or
-	 *         <code>null</code>).
-	 */
-	private Float parseFloat(String rawFloat) {
-		return (rawFloat != null && rawFloat.length() > 0) ? Float
-				.valueOf(rawFloat) : null;
-	}
-
-	/**
-	 * Parses a string and returns a boolean. <b>NOTE<b>: Be careful and notice
-	 * that this function will return a <code>null</code> if the given string is
-	 * not valid.
-	 * 
-	 * @param rawBoolean
-	 *            A string which represents a boolean.
-	 * @return The float value (or <code>null</code> if the rawBoolean is empty
-	 *         or <code>null</code>).
-	 */
-	private Boolean parseBoolean(String rawBoolean) {
-		return (rawBoolean != null && rawBoolean.length() > 0) ? Boolean
-				.valueOf(rawBoolean) : Boolean.FALSE;
-	}
-}
\ No newline at end of file
+}
@@ -1,5 +1,14 @@
 package org.codeforamerica.open311.internals.platform;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.codeforamerica.open311.internals.caching.AndroidCache;
 import org.codeforamerica.open311.internals.caching.Cache;
 import org.codeforamerica.open311.internals.caching.NoCache;
@@ -7,6 +16,9 @@ import org.codeforamerica.open311.internals.caching.RegularJavaCache;
 import org.codeforamerica.open311.internals.logging.AndroidLogger;
 import org.codeforamerica.open311.internals.logging.Logger;
 import org.codeforamerica.open311.internals.logging.RegularJavaLogger;
+import org.codeforamerica.open311.internals.parsing.DataParser;
+import org.codeforamerica.open311.internals.parsing.StAXXMLParser;
+import org.codeforamerica.open311.internals.parsing.XMLParser;
 
 /**
  * Builds some objects which implementation depends of the execution
@@ -20,7 +32,30 @@ public class PlatformManager {
 	 * Unique instance.
 	 */
 	private static PlatformManager instance = new PlatformManager();
+	/**
+	 * Threads of the default executor.
+	 */
+	public static final int DEFAULT_EXECUTOR_THREADS = 16;
+	/**
+	 * Tasks which can wait for a thread of the default executor, the next ones
+	 * are run by the submitting thread.
+	 */
+	public static final int DEFAULT_EXECUTOR_QUEUE = 256;
+	private static final long IDLE_THREAD_TIMEOUT = 60;
 	private boolean androidPlatform;
+	/**
+	 * Executor shared by the asynchronous operations of the library (lazily
+	 * built).
+	 */
+	private ExecutorService executor;
+	/**
+	 * Runs the short internal tasks of the library (lazily built).
+	 */
+	private ExecutorService internalExecutor;
+	/**
+	 * Runs the periodic and delayed tasks of the library (lazily built).
+	 */
+	private ScheduledExecutorService scheduler;
 
 	/**
 	 * Prevents other objects to instantiate instances of this class.
@@ -39,6 +74,15 @@ public class PlatformManager {
 		return instance;
 	}
 
+	/**
+	 * Checks if the library runs under Android.
+	 * 
+	 * @return <code>true</code> under Android.
+	 */
+	public boolean isAndroid() {
+		return androidPlatform;
+	}
+
 	/**
 	 * Builds a cache instance taking care of the execution environment.
 	 * 
@@ -59,4 +103,87 @@ public class PlatformManager {
 		return androidPlatform ? new AndroidLogger() : new RegularJavaLogger();
 	}
 
+	/**
+	 * Builds an XML parser taking care of the execution environment.
+	 * 
+	 * @return {@link XMLParser} (DOM) under Android, where StAX isn't
+	 *         available. {@link StAXXMLParser} otherwise.
+	 */
+	public DataParser buildXMLParser() {
+		return androidPlatform ? new XMLParser() : new StAXXMLParser();
+	}
+
+	/**
+	 * Returns the executor used by default to run asynchronous operations (such
+	 * as the ones of the <code>AsyncAPIWrapper</code> and the background
+	 * refreshes). Every running operation blocks one of its threads while it
+	 * waits for the network, so it is bounded: it has
+	 * {@link #DEFAULT_EXECUTOR_THREADS} threads and a queue of
+	 * {@link #DEFAULT_EXECUTOR_QUEUE} tasks, and once both are full the new
+	 * tasks are rejected (a {@link java.util.concurrent.RejectedExecutionException}
+	 * is thrown), so a submitting thread never runs a blocking operation
+	 * itself. Its threads are daemon ones, so it never prevents the
+	 * application from finishing.
+	 * 
+	 * @return A bounded thread pool of daemon threads.
+	 */
+	public synchronized ExecutorService getDefaultExecutor() {
+		if (executor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(
+					DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_THREADS,
+					IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(DEFAULT_EXECUTOR_QUEUE),
+					daemonThreadFactory("open311-worker-"),
+					new ThreadPoolExecutor.AbortPolicy());
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+
+	/**
+	 * Returns the executor of the internal tasks of the library (aborting
+	 * requests, writing logs, cache maintenance). They can't wait behind the
+	 * operations of the default executor, so it isn't bounded; its tasks never
+	 * wait for the network.
+	 * 
+	 * @return A cached thread pool of daemon threads.
+	 */
+	public synchronized ExecutorService getInternalExecutor() {
+		if (internalExecutor == null) {
+			internalExecutor = Executors
+					.newCachedThreadPool(daemonThreadFactory("open311-internal-"));
+		}
+		return internalExecutor;
+	}
+
+	/**
+	 * Returns the executor which runs the periodic and delayed tasks of the
+	 * library (such as cache maintenance). Its tasks should be short, longer
+	 * ones should be given to the default executor.
+	 * 
+	 * @return A single daemon thread scheduler.
+	 */
+	public synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors
+					.newSingleThreadScheduledExecutor(daemonThreadFactory("open311-scheduler-"));
+		}
+		return scheduler;
+	}
+
+	private static ThreadFactory daemonThreadFactory(final String namePrefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, namePrefix
+						+ threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
 }
@@ -2,7 +2,12 @@ package org.codeforamerica.open311.facade;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
@@ -16,13 +21,26 @@ import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilte
 import org.codeforamerica.open311.facade.data.operations.POSTServiceRequestData;
 import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
 import org.codeforamerica.open311.internals.caching.NoCache;
+import org.codeforamerica.open311.internals.metrics.Instrumentation;
+import org.codeforamerica.open311.internals.metrics.InstrumentationListener;
+import org.codeforamerica.open311.internals.metrics.MetricsSnapshot;
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics.Operation;
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics.Phase;
+import org.codeforamerica.open311.internals.network.HTTPNetworkManager;
 import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.network.NetworkManager;
+import org.codeforamerica.open311.internals.network.URLConnectionNetworkManager;
 import org.codeforamerica.open311.internals.parsing.DataParser;
+import org.codeforamerica.open311.internals.parsing.JSONParser;
 import org.codeforamerica.open311.internals.parsing.XMLParser;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 /**
  * Test of the APIWrapper (uses a {@link MockNetworkManager}).
  * 
@@ -96,6 +114,38 @@ public class APIWrapperTest {
 		GlobalTests.serviceRequestsTest(serviceRequests);
 	}
 
+	@Test
+	public void getServiceRequestsWithHandler() throws APIWrapperException,
+			MalformedURLException {
+		final List<ServiceRequest> serviceRequests = new LinkedList<ServiceRequest>();
+		wrapper.getServiceRequests(null, new ServiceRequestHandler() {
+			@Override
+			public void handle(ServiceRequest serviceRequest) {
+				serviceRequests.add(serviceRequest);
+			}
+		});
+		GlobalTests.serviceRequestsTest(serviceRequests);
+	}
+
+	@Test
+	public void handlerExceptionIsPropagated() throws APIWrapperException {
+		final IllegalStateException stop = new IllegalStateException("stop");
+		final List<ServiceRequest> serviceRequests = new LinkedList<ServiceRequest>();
+		try {
+			wrapper.getServiceRequests(null, new ServiceRequestHandler() {
+				@Override
+				public void handle(ServiceRequest serviceRequest) {
+					serviceRequests.add(serviceRequest);
+					throw stop;
+				}
+			});
+			fail("An exception was expected.");
+		} catch (IllegalStateException e) {
+			assertSame(stop, e);
+		}
+		assertEquals(serviceRequests.size(), 1);
+	}
+
 	@Test
 	public void getServiceRequest() throws APIWrapperException,
 			MalformedURLException {
@@ -153,6 +203,180 @@ public class APIWrapperTest {
 		}
 	}
 
+	@Test
+	public void streamedApiErrorTest() {
+		APIWrapper jsonErrorWrapper = new APIWrapper("http://www.fakeurl/",
+				Format.JSON, EndpointType.TEST, new JSONParser(),
+				new MockNetworkManager() {
+					@Override
+					public String doGet(URL url) throws IOException {
+						return errorJSON();
+					}
+				}, new NoCache(), "", "");
+		try {
+			jsonErrorWrapper.getServiceList();
+			fail("An exception was expected.");
+		} catch (APIWrapperException e) {
+			assertEquals(e.getError(), APIWrapperException.Error.GEO_REPORT_V2);
+			GlobalTests.errorTest(e.getGeoReportError());
+		}
+	}
+
+	@Test
+	public void invalidXMLStreamTest() throws APIWrapperException,
+			MalformedURLException {
+		APIWrapper invalidXMLWrapper = new InvalidXMLWrapper(
+				"http://www.fakeurl/", Format.XML, EndpointType.TEST,
+				new XMLParser(), new MockNetworkManager() {
+					@Override
+					public String doGet(URL url) throws IOException {
+						return super.doGet(url).replace(">", ">\u0010");
+					}
+				}, new NoCache(), "", "");
+		GlobalTests.serviceListTest(invalidXMLWrapper.getServiceList());
+		GlobalTests.serviceRequestsTest(invalidXMLWrapper
+				.getServiceRequests(null));
+	}
+
+	/**
+	 * Every phase of the operations is measured.
+	 */
+	@Test
+	public void metricsTest() throws APIWrapperException {
+		APIWrapper measuredWrapper = new APIWrapper("http://www.fakeurl/",
+				Format.XML, EndpointType.TEST, new XMLParser(),
+				new MockNetworkManager(), new NoCache(), "", "");
+		measuredWrapper.getServiceList();
+		measuredWrapper.getServiceRequests(null);
+		MetricsSnapshot snapshot = measuredWrapper.getMetrics().snapshot();
+		assertEquals("http://www.fakeurl/", snapshot.getEndpointUrl());
+		assertEquals(1, snapshot.getCacheMisses(Operation.GET_SERVICE_LIST));
+		assertEquals(0, snapshot.getCacheHits(Operation.GET_SERVICE_LIST));
+		for (Operation operation : new Operation[] {
+				Operation.GET_SERVICE_LIST, Operation.GET_SERVICE_REQUESTS }) {
+			for (Phase phase : new Phase[] { Phase.CACHE_LOOKUP,
+					Phase.URL_BUILDING, Phase.NETWORK, Phase.PARSING }) {
+				assertEquals(operation + "." + phase, 1, snapshot
+						.getLatency(operation, phase).getCount());
+			}
+			assertEquals(0, snapshot
+					.getLatency(operation, Phase.ERROR_PARSING).getCount());
+		}
+		assertTrue(snapshot.getBytesReceived() > 0);
+
+		APIWrapper measuredErrorWrapper = new APIWrapper(
+				"http://www.fakeurl/simulateAPIError", Format.XML,
+				EndpointType.TEST, new XMLParser(), new MockNetworkManager(),
+				new NoCache(), "", "key");
+		try {
+			measuredErrorWrapper.postServiceRequest(new POSTServiceRequestData(
+					"001", 0, null));
+		} catch (APIWrapperException e) {
+			// Expected.
+		}
+		snapshot = measuredErrorWrapper.getMetrics().snapshot();
+		assertEquals(1,
+				snapshot.getLatency(Operation.POST_SERVICE_REQUEST,
+						Phase.ERROR_PARSING).getCount());
+	}
+
+	@Test
+	public void instrumentationTest() throws APIWrapperException {
+		final List<String> events = new LinkedList<String>();
+		InstrumentationListener listener = new InstrumentationListener() {
+			@Override
+			public void networkRequest(String host, String method,
+					int statusCode, long bytes, long durationNanos) {
+			}
+
+			@Override
+			public void parsed(String operation, int records, long bytes,
+					long durationNanos, boolean succeeded) {
+				assertTrue(bytes > 0);
+				events.add(operation + " " + records + " " + succeeded);
+			}
+
+			@Override
+			public void cacheAccessed(String operation, boolean put,
+					boolean hit, long entrySize) {
+			}
+		};
+		Instrumentation.addListener(listener);
+		try {
+			wrapper.getServiceList();
+			apierrorWrapper.postServiceRequest(new POSTServiceRequestData(
+					"001", 0, null));
+		} catch (APIWrapperException e) {
+			// Expected.
+		} finally {
+			Instrumentation.removeListener(listener);
+		}
+		assertEquals(2, events.size());
+		assertEquals("GET_SERVICE_LIST " + wrapper.getServiceList().size()
+				+ " true", events.get(0));
+		assertEquals("POST_SERVICE_REQUEST 0 false", events.get(1));
+	}
+
+	/**
+	 * The streamed GET requests of both clients send their network events.
+	 */
+	@Test
+	public void networkInstrumentationTest() throws APIWrapperException,
+			IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				"127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = new MockNetworkManager()
+						.doGet(new URL("http://127.0.0.1"
+								+ exchange.getRequestURI())).getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream output = exchange.getResponseBody();
+				output.write(body);
+				output.close();
+			}
+		});
+		server.start();
+		final List<String> events = new LinkedList<String>();
+		InstrumentationListener listener = new InstrumentationListener() {
+			@Override
+			public void networkRequest(String host, String method,
+					int statusCode, long bytes, long durationNanos) {
+				assertTrue(bytes > 0);
+				events.add(host + " " + method + " " + statusCode);
+			}
+
+			@Override
+			public void parsed(String operation, int records, long bytes,
+					long durationNanos, boolean succeeded) {
+			}
+
+			@Override
+			public void cacheAccessed(String operation, boolean put,
+					boolean hit, long entrySize) {
+			}
+		};
+		Instrumentation.addListener(listener);
+		try {
+			String endpoint = "http://127.0.0.1:"
+					+ server.getAddress().getPort();
+			for (NetworkManager networkManager : new NetworkManager[] {
+					new HTTPNetworkManager(Format.XML),
+					new URLConnectionNetworkManager(Format.XML) }) {
+				GlobalTests.serviceListTest(new APIWrapper(endpoint,
+						Format.XML, EndpointType.TEST, new XMLParser(),
+						networkManager, new NoCache(), "", "")
+						.getServiceList());
+			}
+		} finally {
+			Instrumentation.removeListener(listener);
+			server.stop(0);
+		}
+		assertEquals(2, events.size());
+		assertEquals("127.0.0.1 GET 200", events.get(0));
+		assertEquals("127.0.0.1 GET 200", events.get(1));
+	}
+
 	@Test
 	public void serviceServiceDefinitionRelationship()
 			throws APIWrapperException {
@@ -0,0 +1,219 @@
+package org.codeforamerica.open311.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.operations.POSTServiceRequestData;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.internals.caching.NoCache;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.parsing.XMLParser;
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the {@link AsyncAPIWrapper} (uses a {@link MockNetworkManager}).
+ */
+public class AsyncAPIWrapperTest {
+
+	private static ExecutorService executor;
+	private static AsyncAPIWrapper wrapper, errorWrapper;
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[ASYNC API WRAPPER TEST] Starts");
+		executor = Executors.newFixedThreadPool(8);
+		wrapper = new AsyncAPIWrapper(new APIWrapper("http://www.fakeurl/",
+				Format.XML, EndpointType.TEST, new XMLParser(),
+				new MockNetworkManager(), new NoCache(), "", ""), executor);
+		errorWrapper = new AsyncAPIWrapper(new APIWrapper(
+				"http://www.fakeurl/simulateIOException", Format.XML,
+				EndpointType.TEST, new XMLParser(), new MockNetworkManager(),
+				new NoCache(), "", ""), executor);
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		executor.shutdown();
+		System.out.println("[ASYNC API WRAPPER TEST] Ends");
+	}
+
+	/**
+	 * Every operation in progress holds a thread, so the default executor
+	 * can't grow without limit.
+	 */
+	@Test
+	public void defaultExecutorTest() {
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) PlatformManager
+				.getInstance().getDefaultExecutor();
+		assertEquals(PlatformManager.DEFAULT_EXECUTOR_THREADS,
+				executor.getMaximumPoolSize());
+		assertEquals(PlatformManager.DEFAULT_EXECUTOR_QUEUE, executor
+				.getQueue().remainingCapacity() + executor.getQueue().size());
+		assertTrue(executor.getRejectedExecutionHandler()
+				instanceof ThreadPoolExecutor.AbortPolicy);
+	}
+
+	/**
+	 * A saturated executor makes the operations fail instead of running them
+	 * in the calling thread.
+	 */
+	@Test
+	public void saturatedExecutorTest() throws Exception {
+		ThreadPoolExecutor saturated = new ThreadPoolExecutor(1, 1, 0,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		final CountDownLatch blocked = new CountDownLatch(1);
+		try {
+			saturated.execute(new Runnable() {
+				public void run() {
+					try {
+						blocked.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			final AtomicReference<APIWrapperException> failure = new AtomicReference<APIWrapperException>();
+			Future<List<Service>> result = new AsyncAPIWrapper(
+					wrapper.getWrapper(), saturated)
+					.getServiceList(new APIWrapperCallback<List<Service>>() {
+						public void onSuccess(List<Service> result) {
+							fail("The operation should be rejected");
+						}
+
+						public void onFailure(APIWrapperException exception) {
+							failure.set(exception);
+						}
+					});
+			assertTrue(result.isDone());
+			assertTrue(failure.get() != null);
+			try {
+				result.get();
+				fail("The operation should be rejected");
+			} catch (ExecutionException e) {
+				assertSame(failure.get(), e.getCause());
+			}
+		} finally {
+			blocked.countDown();
+			saturated.shutdown();
+		}
+	}
+
+	@Test
+	public void getServicesTest() throws Exception {
+		GlobalTests.serviceListTest(wrapper.getServiceList().get());
+	}
+
+	@Test
+	public void getServiceDefinitionTest() throws Exception {
+		GlobalTests.serviceDefinitionTest(wrapper.getServiceDefinition("001")
+				.get());
+	}
+
+	@Test
+	public void getServiceRequestIdFromTokenTest() throws Exception {
+		GlobalTests.serviceIdFromTokenTest(wrapper
+				.getServiceRequestIdFromToken("222").get());
+	}
+
+	@Test
+	public void getServiceRequestsTest() throws Exception {
+		GlobalTests.serviceRequestsTest(wrapper.getServiceRequests(null).get());
+	}
+
+	@Test
+	public void getServiceRequestTest() throws Exception {
+		GlobalTests.serviceRequestTest(wrapper.getServiceRequest("006").get());
+	}
+
+	@Test
+	public void postServiceRequestTest() throws Exception {
+		GlobalTests.postServiceRequestsTest(wrapper.postServiceRequest(
+				new POSTServiceRequestData("001", 1, null)).get());
+	}
+
+	@Test
+	public void concurrentRequestsTest() throws Exception {
+		List<Future<List<ServiceRequest>>> futures = new LinkedList<Future<List<ServiceRequest>>>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(wrapper.getServiceRequests(null));
+		}
+		for (Future<List<ServiceRequest>> future : futures) {
+			GlobalTests.serviceRequestsTest(future.get());
+		}
+	}
+
+	@Test
+	public void errorTest() throws InterruptedException {
+		try {
+			errorWrapper.postServiceRequest(
+					new POSTServiceRequestData("001", 0, null)).get();
+			fail("An exception was expected.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof APIWrapperException);
+		}
+	}
+
+	@Test
+	public void callbackTest() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(2);
+		final AtomicReference<List<Service>> services = new AtomicReference<List<Service>>();
+		final AtomicReference<APIWrapperException> error = new AtomicReference<APIWrapperException>();
+		Future<List<Service>> future = wrapper
+				.getServiceList(new APIWrapperCallback<List<Service>>() {
+					public void onSuccess(List<Service> result) {
+						services.set(result);
+						latch.countDown();
+					}
+
+					public void onFailure(APIWrapperException exception) {
+						fail("Unexpected failure.");
+					}
+				});
+		errorWrapper.postServiceRequest(new POSTServiceRequestData("001", 0,
+				null), new APIWrapperCallback<POSTServiceRequestResponse>() {
+			public void onSuccess(POSTServiceRequestResponse result) {
+				fail("Unexpected success.");
+			}
+
+			public void onFailure(APIWrapperException exception) {
+				error.set(exception);
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertSame(future.get(), services.get());
+		assertEquals(error.get().getError(),
+				APIWrapperException.Error.NETWORK_MANAGER);
+	}
+
+	@Test
+	public void buildAsyncTest() throws APIWrapperException {
+		AsyncAPIWrapper asyncWrapper = new APIWrapperFactory(
+				"https://www.endpoint.com").setNetworkManager(
+				new MockNetworkManager()).buildAsync();
+		assertEquals(asyncWrapper.getWrapper().getWrapperInfo(),
+				"https://www.endpoint.com - UNKNOWN");
+		assertNull(new APIWrapperFactory((String) null).buildAsync());
+	}
+}
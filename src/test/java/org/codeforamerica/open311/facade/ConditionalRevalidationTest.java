@@ -0,0 +1,170 @@
+package org.codeforamerica.open311.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.internals.caching.Cache.CacheableOperation;
+import org.codeforamerica.open311.internals.caching.MemoryCache;
+import org.codeforamerica.open311.internals.network.ConditionalNetworkManager;
+import org.codeforamerica.open311.internals.network.ConditionalResponse;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.network.Validators;
+import org.codeforamerica.open311.internals.parsing.XMLParser;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ConditionalRevalidationTest {
+	private static final String URL = "http://www.fakeurl/";
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[CONDITIONAL REVALIDATION TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[CONDITIONAL REVALIDATION TEST] Ends");
+	}
+
+	/**
+	 * An expired response which hasn't been modified is reused without
+	 * downloading it again.
+	 */
+	@Test
+	public void notModifiedTest() throws APIWrapperException,
+			InterruptedException {
+		MemoryCache cache = new MemoryCache();
+		cache.setTimeToLive(CacheableOperation.GET_SERVICE_LIST, 50,
+				TimeUnit.MILLISECONDS);
+		ConditionalMockNetworkManager networkManager = new ConditionalMockNetworkManager();
+		APIWrapper wrapper = buildWrapper(networkManager, cache);
+		wrapper.setConditionalRevalidation(CacheableOperation.GET_SERVICE_LIST,
+				1, TimeUnit.HOURS);
+		List<Service> services = wrapper.getServiceList();
+		GlobalTests.serviceListTest(services);
+		assertEquals(1, networkManager.requests.get());
+		assertEquals(0, networkManager.notModified.get());
+
+		Thread.sleep(100);
+		List<Service> revalidated = wrapper.getServiceList();
+		assertEquals(services.toString(), revalidated.toString());
+		assertEquals(2, networkManager.requests.get());
+		assertEquals(1, networkManager.notModified.get());
+		assertNotNull(cache.retrieveCachedServiceList(URL));
+		assertEquals(services.toString(), wrapper.getServiceList().toString());
+		assertEquals(2, networkManager.requests.get());
+	}
+
+	/**
+	 * A modified response is downloaded and parsed again.
+	 */
+	@Test
+	public void modifiedTest() throws APIWrapperException,
+			InterruptedException {
+		MemoryCache cache = new MemoryCache();
+		cache.setTimeToLive(CacheableOperation.GET_SERVICE_DEFINITION, 50,
+				TimeUnit.MILLISECONDS);
+		ConditionalMockNetworkManager networkManager = new ConditionalMockNetworkManager();
+		APIWrapper wrapper = buildWrapper(networkManager, cache);
+		wrapper.setConditionalRevalidation(
+				CacheableOperation.GET_SERVICE_DEFINITION, 1, TimeUnit.HOURS);
+		GlobalTests.serviceDefinitionTest(wrapper.getServiceDefinition("001"));
+		networkManager.entityTag = "\"v2\"";
+		Thread.sleep(100);
+		GlobalTests.serviceDefinitionTest(wrapper.getServiceDefinition("001"));
+		assertEquals(2, networkManager.requests.get());
+		assertEquals(0, networkManager.notModified.get());
+		// The new validators have been saved.
+		Thread.sleep(100);
+		GlobalTests.serviceDefinitionTest(wrapper.getServiceDefinition("001"));
+		assertEquals(3, networkManager.requests.get());
+		assertEquals(1, networkManager.notModified.get());
+	}
+
+	/**
+	 * Operations without the policy send regular requests.
+	 */
+	@Test
+	public void deactivatedTest() throws APIWrapperException,
+			InterruptedException {
+		MemoryCache cache = new MemoryCache();
+		cache.setTimeToLive(CacheableOperation.GET_SERVICE_LIST, 50,
+				TimeUnit.MILLISECONDS);
+		ConditionalMockNetworkManager networkManager = new ConditionalMockNetworkManager();
+		APIWrapper wrapper = buildWrapper(networkManager, cache);
+		wrapper.getServiceList();
+		Thread.sleep(100);
+		wrapper.getServiceList();
+		assertEquals(0, networkManager.requests.get());
+	}
+
+	/**
+	 * The revalidated responses of an {@link InvalidXMLWrapper} are
+	 * sanitized as well.
+	 */
+	@Test
+	public void invalidXMLTest() throws APIWrapperException,
+			InterruptedException {
+		MemoryCache cache = new MemoryCache();
+		cache.setTimeToLive(CacheableOperation.GET_SERVICE_LIST, 50,
+				TimeUnit.MILLISECONDS);
+		ConditionalMockNetworkManager networkManager = new ConditionalMockNetworkManager() {
+			@Override
+			public String doGet(URL url) throws IOException {
+				return super.doGet(url).replace(">", ">\u0010");
+			}
+		};
+		APIWrapper wrapper = new InvalidXMLWrapper(URL, Format.XML,
+				EndpointType.TEST, new XMLParser(), networkManager, cache, "",
+				"");
+		wrapper.setConditionalRevalidation(CacheableOperation.GET_SERVICE_LIST,
+				1, TimeUnit.HOURS);
+		GlobalTests.serviceListTest(wrapper.getServiceList());
+		networkManager.entityTag = "\"v2\"";
+		Thread.sleep(100);
+		GlobalTests.serviceListTest(wrapper.getServiceList());
+		assertEquals(2, networkManager.requests.get());
+		assertEquals(0, networkManager.notModified.get());
+	}
+
+	private static APIWrapper buildWrapper(MockNetworkManager networkManager,
+			MemoryCache cache) {
+		return new APIWrapper(URL, Format.XML, EndpointType.TEST,
+				new XMLParser(), networkManager, cache, "", "");
+	}
+
+	/**
+	 * Answers <code>304 Not Modified</code> when the client has the current
+	 * version of a response, and counts the conditional requests.
+	 */
+	private static class ConditionalMockNetworkManager extends
+			MockNetworkManager implements ConditionalNetworkManager {
+		private final AtomicInteger requests = new AtomicInteger();
+		private final AtomicInteger notModified = new AtomicInteger();
+		private volatile String entityTag = "\"v1\"";
+
+		@Override
+		public ConditionalResponse doConditionalGet(URL url,
+				Validators validators) throws IOException {
+			requests.incrementAndGet();
+			Validators current = new Validators(entityTag, null);
+			if (validators != null
+					&& entityTag.equals(validators.getEntityTag())) {
+				notModified.incrementAndGet();
+				return new ConditionalResponse(true, null, current);
+			}
+			return new ConditionalResponse(false, new ByteArrayInputStream(
+					doGet(url).getBytes(CHARSET)), current);
+		}
+	}
+}
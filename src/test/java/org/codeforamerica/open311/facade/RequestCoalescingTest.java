@@ -0,0 +1,241 @@
+package org.codeforamerica.open311.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException.Error;
+import org.codeforamerica.open311.internals.caching.NoCache;
+import org.codeforamerica.open311.internals.network.CancellationToken;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.parsing.XMLParser;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RequestCoalescingTest {
+	private static final String URL = "http://www.fakeurl/";
+	private static final int CALLERS = 8;
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[REQUEST COALESCING TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[REQUEST COALESCING TEST] Ends");
+	}
+
+	/**
+	 * Concurrent identical calls share one request and its parsed result, but
+	 * every caller gets its own list.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void concurrentCallsTest() throws Exception {
+		GatedNetworkManager networkManager = new GatedNetworkManager();
+		final APIWrapper wrapper = new APIWrapper(URL, Format.XML,
+				EndpointType.TEST, new XMLParser(), networkManager,
+				new NoCache(), "", "");
+		final CountDownLatch started = new CountDownLatch(CALLERS);
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		try {
+			Future<?>[] results = new Future<?>[CALLERS];
+			for (int i = 0; i < CALLERS; i++) {
+				results[i] = executor.submit(new Callable<List<Service>>() {
+					@Override
+					public List<Service> call() throws APIWrapperException {
+						started.countDown();
+						return wrapper.getServiceList();
+					}
+				});
+			}
+			started.await();
+			Thread.sleep(200);
+			networkManager.gate.countDown();
+			List<Service> first = (List<Service>) results[0].get(5,
+					TimeUnit.SECONDS);
+			GlobalTests.serviceListTest(first);
+			first.clear();
+			for (int i = 1; i < CALLERS; i++) {
+				List<Service> services = (List<Service>) results[i].get(5,
+						TimeUnit.SECONDS);
+				assertNotSame(first, services);
+				GlobalTests.serviceListTest(services);
+			}
+			assertEquals(1, networkManager.requests.get());
+		} finally {
+			executor.shutdownNow();
+		}
+		wrapper.getServiceList();
+		assertEquals(2, networkManager.requests.get());
+	}
+
+	/**
+	 * Different requests are not coalesced.
+	 */
+	@Test
+	public void differentRequestsTest() throws APIWrapperException {
+		GatedNetworkManager networkManager = new GatedNetworkManager();
+		APIWrapper wrapper = new APIWrapper(URL, Format.XML, EndpointType.TEST,
+				new XMLParser(), networkManager, new NoCache(), "", "");
+		networkManager.gate.countDown();
+		GlobalTests.serviceListTest(wrapper.getServiceList());
+		GlobalTests.serviceDefinitionTest(wrapper.getServiceDefinition("001"));
+		assertEquals(2, networkManager.requests.get());
+	}
+
+	/**
+	 * Every waiter receives the exception of the shared operation.
+	 */
+	@Test
+	public void sharedExceptionTest() throws Exception {
+		final RequestCoalescer coalescer = new RequestCoalescer();
+		final CountDownLatch gate = new CountDownLatch(1);
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(CALLERS);
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		try {
+			Future<?>[] results = new Future<?>[CALLERS];
+			for (int i = 0; i < CALLERS; i++) {
+				results[i] = executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws APIWrapperException {
+						started.countDown();
+						return coalescer.execute("key",
+								new RequestCoalescer.Operation<Object>() {
+									@Override
+									public Object run()
+											throws APIWrapperException {
+										runs.incrementAndGet();
+										try {
+											gate.await();
+										} catch (InterruptedException e) {
+											Thread.currentThread().interrupt();
+										}
+										throw new APIWrapperException("Failed",
+												Error.NETWORK_MANAGER, null);
+									}
+								});
+					}
+				});
+			}
+			started.await();
+			Thread.sleep(200);
+			gate.countDown();
+			for (Future<?> result : results) {
+				try {
+					result.get(5, TimeUnit.SECONDS);
+					fail("The exception should be shared");
+				} catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof APIWrapperException);
+				}
+			}
+			assertEquals(1, runs.get());
+			assertEquals(0, coalescer.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Cancelling the caller which runs the operation doesn't fail the callers
+	 * which wait for it, one of them runs it again.
+	 */
+	@Test
+	public void cancelledLeaderTest() throws Exception {
+		final RequestCoalescer coalescer = new RequestCoalescer();
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch running = new CountDownLatch(1);
+		final RequestCoalescer.Operation<Object> operation = new RequestCoalescer.Operation<Object>() {
+			@Override
+			public Object run() throws APIWrapperException {
+				if (runs.incrementAndGet() > 1) {
+					return "result";
+				}
+				running.countDown();
+				CancellationToken token = CancellationToken.current();
+				while (!token.isCancelled()) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				throw new APIWrapperException("Request cancelled",
+						Error.NETWORK_MANAGER, null);
+			}
+		};
+		final CancellationToken token = new CancellationToken();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Object> leader = executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws APIWrapperException {
+					CancellationToken previous = token.attach();
+					try {
+						return coalescer.execute("key", operation);
+					} finally {
+						CancellationToken.detach(previous);
+					}
+				}
+			});
+			running.await();
+			Future<Object> follower = executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws APIWrapperException {
+					return coalescer.execute("key", operation);
+				}
+			});
+			Thread.sleep(200);
+			token.cancel();
+			try {
+				leader.get(5, TimeUnit.SECONDS);
+				fail("The leader should be cancelled");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof APIWrapperException);
+			}
+			assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+			assertEquals(2, runs.get());
+			assertEquals(0, coalescer.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Counts the GET requests, which wait until the gate is opened.
+	 */
+	private static class GatedNetworkManager extends MockNetworkManager {
+		private final AtomicInteger requests = new AtomicInteger();
+		private final CountDownLatch gate = new CountDownLatch(1);
+
+		@Override
+		public InputStream doGetStream(URL url) throws IOException {
+			requests.incrementAndGet();
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e.getMessage());
+			}
+			return super.doGetStream(url);
+		}
+	}
+}
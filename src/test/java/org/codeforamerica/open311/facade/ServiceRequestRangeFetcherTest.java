@@ -0,0 +1,195 @@
+package org.codeforamerica.open311.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.ServiceRequest.Status;
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.internals.caching.NoCache;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.parsing.DataParser;
+import org.codeforamerica.open311.internals.parsing.DateParser;
+import org.codeforamerica.open311.internals.parsing.XMLParser;
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ServiceRequestRangeFetcherTest {
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+	/**
+	 * 2020-01-01T00:00:00Z.
+	 */
+	private static final long FIRST_DAY = 1577836800000L;
+	private static final int RESULT_LIMIT = 10;
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[SERVICE REQUEST RANGE FETCHER TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[SERVICE REQUEST RANGE FETCHER TEST] Ends");
+	}
+
+	/**
+	 * The windows which reach the result limit are split, and the shared
+	 * limits of the windows don't duplicate any request.
+	 */
+	@Test
+	public void fetchTest() throws APIWrapperException {
+		RangeNetworkManager networkManager = new RangeNetworkManager();
+		APIWrapper wrapper = new APIWrapper("http://www.fakeurl/", Format.XML,
+				EndpointType.TEST, new XMLParser(), networkManager,
+				new NoCache(), "", "");
+		GETServiceRequestsFilter filter = new GETServiceRequestsFilter()
+				.setStatus(Status.OPEN);
+		List<ServiceRequest> requests = new ServiceRequestRangeFetcher(wrapper)
+				.setWindow(30, TimeUnit.DAYS).setResultLimit(RESULT_LIMIT)
+				.setParallelism(3).fetch(filter, new Date(FIRST_DAY),
+						new Date(FIRST_DAY + 99 * DAY));
+		assertEquals(100, requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			assertEquals(String.valueOf(i), requests.get(i)
+					.getServiceRequestId());
+		}
+		assertTrue(networkManager.requests.get() > 4);
+		assertTrue(networkManager.maximumConcurrency.get() <= 3);
+		assertTrue(networkManager.allOpen);
+		assertFalse(filter.getOptionalParametersMap().containsKey(
+				DataParser.START_DATE_TAG));
+	}
+
+	@Test
+	public void singleWindowTest() throws APIWrapperException {
+		APIWrapper wrapper = new APIWrapper("http://www.fakeurl/", Format.XML,
+				EndpointType.TEST, new XMLParser(), new RangeNetworkManager(),
+				new NoCache(), "", "");
+		List<ServiceRequest> requests = wrapper.getServiceRequests(null,
+				new Date(FIRST_DAY), new Date(FIRST_DAY + 5 * DAY));
+		assertEquals(6, requests.size());
+	}
+
+	/**
+	 * Fetches called from every thread of the default executor don't wait
+	 * for windows queued behind them.
+	 */
+	@Test
+	public void fetchFromDefaultExecutorTest() throws Exception {
+		final APIWrapper wrapper = new APIWrapper("http://www.fakeurl/",
+				Format.XML, EndpointType.TEST, new XMLParser(),
+				new RangeNetworkManager(), new NoCache(), "", "");
+		List<Future<List<ServiceRequest>>> fetches = new ArrayList<Future<List<ServiceRequest>>>();
+		for (int i = 0; i < PlatformManager.DEFAULT_EXECUTOR_THREADS; i++) {
+			fetches.add(PlatformManager.getInstance().getDefaultExecutor()
+					.submit(new Callable<List<ServiceRequest>>() {
+						@Override
+						public List<ServiceRequest> call()
+								throws APIWrapperException {
+							return new ServiceRequestRangeFetcher(wrapper)
+									.setWindow(10, TimeUnit.DAYS)
+									.setResultLimit(RESULT_LIMIT)
+									.fetch(null, new Date(FIRST_DAY),
+											new Date(FIRST_DAY + 39 * DAY));
+						}
+					}));
+		}
+		for (Future<List<ServiceRequest>> fetch : fetches) {
+			assertEquals(40, fetch.get(10, TimeUnit.SECONDS).size());
+		}
+	}
+
+	@Test(expected = APIWrapperException.class)
+	public void errorTest() throws APIWrapperException {
+		APIWrapper wrapper = new APIWrapper(
+				"http://www.fakeurl/simulateIOException", Format.XML,
+				EndpointType.TEST, new XMLParser(), new MockNetworkManager(),
+				new NoCache(), "", "");
+		wrapper.getServiceRequests(null, new Date(FIRST_DAY), new Date(
+				FIRST_DAY + 400 * DAY));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidRangeTest() throws APIWrapperException {
+		APIWrapper wrapper = new APIWrapper("http://www.fakeurl/", Format.XML,
+				EndpointType.TEST, new XMLParser(), new RangeNetworkManager(),
+				new NoCache(), "", "");
+		wrapper.getServiceRequests(null, new Date(FIRST_DAY + DAY), new Date(
+				FIRST_DAY));
+	}
+
+	/**
+	 * Server with a service request at the start of every day, which returns
+	 * at most {@link #RESULT_LIMIT} of them.
+	 */
+	private static class RangeNetworkManager extends MockNetworkManager {
+		private final AtomicInteger requests = new AtomicInteger();
+		private final AtomicInteger concurrency = new AtomicInteger();
+		private final AtomicInteger maximumConcurrency = new AtomicInteger();
+		private volatile boolean allOpen = true;
+
+		@Override
+		public String doGet(URL url) throws IOException {
+			requests.incrementAndGet();
+			int current = concurrency.incrementAndGet();
+			try {
+				int maximum;
+				while ((maximum = maximumConcurrency.get()) < current
+						&& !maximumConcurrency.compareAndSet(maximum, current)) {
+				}
+				Thread.sleep(10);
+				Map<String, String> parameters = parameters(url);
+				allOpen &= "open".equals(parameters
+						.get(DataParser.STATUS_TAG));
+				DateParser dateParser = new DateParser();
+				long from = dateParser.parseDate(
+						parameters.get(DataParser.START_DATE_TAG)).getTime();
+				long to = dateParser.parseDate(
+						parameters.get(DataParser.END_DATE_TAG)).getTime();
+				StringBuilder response = new StringBuilder(
+						"<?xml version=\"1.0\" encoding=\"utf-8\"?><service_requests>");
+				long day = Math.max(0, (from - FIRST_DAY + DAY - 1) / DAY);
+				for (int results = 0; results < RESULT_LIMIT
+						&& FIRST_DAY + day * DAY <= to; results++, day++) {
+					response.append("<request><service_request_id>")
+							.append(day)
+							.append("</service_request_id><status>open</status>")
+							.append("<service_code>001</service_code></request>");
+				}
+				return response.append("</service_requests>").toString();
+			} catch (InterruptedException e) {
+				throw new IOException(e.getMessage());
+			} finally {
+				concurrency.decrementAndGet();
+			}
+		}
+
+		private static Map<String, String> parameters(URL url)
+				throws UnsupportedEncodingException {
+			Map<String, String> result = new HashMap<String, String>();
+			for (String pair : url.getQuery().split("&")) {
+				String[] keyValue = pair.split("=", 2);
+				result.put(keyValue[0], URLDecoder.decode(keyValue[1], "UTF-8"));
+			}
+			return result;
+		}
+	}
+}
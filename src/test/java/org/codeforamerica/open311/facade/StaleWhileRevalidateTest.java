@@ -0,0 +1,113 @@
+package org.codeforamerica.open311.facade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.internals.caching.Cache.CacheableOperation;
+import org.codeforamerica.open311.internals.caching.MemoryCache;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.parsing.XMLParser;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class StaleWhileRevalidateTest {
+	private static final String URL = "http://www.fakeurl/";
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[STALE WHILE REVALIDATE TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[STALE WHILE REVALIDATE TEST] Ends");
+	}
+
+	/**
+	 * The expired list is returned while a single refresh is running.
+	 */
+	@Test
+	public void staleDataTest() throws APIWrapperException,
+			InterruptedException {
+		MemoryCache cache = new MemoryCache();
+		cache.setTimeToLive(CacheableOperation.GET_SERVICE_LIST, 50,
+				TimeUnit.MILLISECONDS);
+		GatedNetworkManager networkManager = new GatedNetworkManager();
+		APIWrapper wrapper = buildWrapper(networkManager, cache);
+		wrapper.setStaleWhileRevalidate(CacheableOperation.GET_SERVICE_LIST,
+				1, TimeUnit.HOURS);
+		GlobalTests.serviceListTest(wrapper.getServiceList());
+		assertEquals(1, networkManager.requests.get());
+		Thread.sleep(100);
+		assertNull(cache.retrieveCachedServiceList(URL));
+
+		networkManager.gate = new CountDownLatch(1);
+		for (int i = 0; i < 10; i++) {
+			GlobalTests.serviceListTest(wrapper.getServiceList());
+		}
+		networkManager.gate.countDown();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (cache.retrieveCachedServiceList(URL) == null
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertNotNull(cache.retrieveCachedServiceList(URL));
+		assertEquals(2, networkManager.requests.get());
+	}
+
+	/**
+	 * Data older than the maximum staleness is not used.
+	 */
+	@Test
+	public void maximumStalenessTest() throws APIWrapperException,
+			InterruptedException {
+		MemoryCache cache = new MemoryCache();
+		cache.setTimeToLive(CacheableOperation.GET_SERVICE_DEFINITION, 20,
+				TimeUnit.MILLISECONDS);
+		GatedNetworkManager networkManager = new GatedNetworkManager();
+		APIWrapper wrapper = buildWrapper(networkManager, cache);
+		wrapper.setStaleWhileRevalidate(
+				CacheableOperation.GET_SERVICE_DEFINITION, 20,
+				TimeUnit.MILLISECONDS);
+		GlobalTests.serviceDefinitionTest(wrapper.getServiceDefinition("001"));
+		Thread.sleep(100);
+		GlobalTests.serviceDefinitionTest(wrapper.getServiceDefinition("001"));
+		assertEquals(2, networkManager.requests.get());
+		assertNotNull(cache.retrieveCachedServiceDefinition(URL, "001"));
+	}
+
+	private static APIWrapper buildWrapper(MockNetworkManager networkManager,
+			MemoryCache cache) {
+		return new APIWrapper(URL, Format.XML, EndpointType.TEST,
+				new XMLParser(), networkManager, cache, "", "");
+	}
+
+	/**
+	 * Counts the GET requests, which wait until the gate is opened.
+	 */
+	private static class GatedNetworkManager extends MockNetworkManager {
+		private final AtomicInteger requests = new AtomicInteger();
+		private volatile CountDownLatch gate = new CountDownLatch(0);
+
+		@Override
+		public InputStream doGetStream(URL url) throws IOException {
+			requests.incrementAndGet();
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e.getMessage());
+			}
+			return super.doGetStream(url);
+		}
+	}
+}
@@ -1,10 +1,17 @@
 package org.codeforamerica.open311.facade.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
+import org.codeforamerica.open311.facade.APIWrapper;
+import org.codeforamerica.open311.facade.APIWrapperFactory;
 import org.codeforamerica.open311.facade.data.ServiceRequest.Status;
+import org.codeforamerica.open311.facade.exceptions.APIWrapperException;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -26,6 +33,31 @@ public class DataPackageTest {
 		System.out.println("[DATA PACKAGE TEST] Ends");
 	}
 
+	/**
+	 * The relationships disappear with their services.
+	 */
+	@Test
+	public void relationshipManagerTest() throws APIWrapperException,
+			InterruptedException {
+		RelationshipManager manager = RelationshipManager.getInstance();
+		APIWrapper wrapper = new APIWrapperFactory("http://www.fakeurl/")
+				.setNetworkManager(new MockNetworkManager()).build();
+		List<Service> services = new LinkedList<Service>();
+		for (int i = 0; i < 1000; i++) {
+			services.add(new Service("code" + i, "name", "description", false,
+					Service.Type.BATCH, null, "group"));
+		}
+		int before = manager.size();
+		manager.addServiceWrapperRelationship(services, wrapper);
+		assertTrue(manager.size() >= 1000);
+		services = null;
+		for (int i = 0; i < 50 && manager.size() > before; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertTrue(manager.size() <= before);
+	}
+
 	@Test
 	public void serviceTypeTest() {
 		assertEquals(Service.Type.getFromString("realtime"),
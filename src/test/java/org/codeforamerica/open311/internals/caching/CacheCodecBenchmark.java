@@ -0,0 +1,108 @@
+package org.codeforamerica.open311.internals.caching;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import net.iharder.Base64;
+
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.parsing.DataParserFactory;
+
+/**
+ * Compares the size and speed of the {@link BinaryCodec} with the previous
+ * format (Java serialization + Base64) encoding a list of service requests.
+ * It isn't a test, run its <code>main</code> method.
+ */
+public class CacheCodecBenchmark {
+	private static final int REQUESTS = 1000;
+	private static final int ITERATIONS = 200;
+
+	public static void main(String[] args) throws Exception {
+		List<ServiceRequest> parsed = DataParserFactory
+				.getInstance()
+				.buildDataParser(Format.XML)
+				.parseServiceRequests(
+						new MockNetworkManager().doGet(new URL(
+								"http://www.fakeurl/requests.xml")));
+		// Different instances (like the parsed ones), the serialization would
+		// only write references to the repeated ones.
+		ArrayList<ServiceRequest> requests = new ArrayList<ServiceRequest>();
+		for (int i = 0; i < REQUESTS; i++) {
+			ServiceRequest r = parsed.get(i % parsed.size());
+			requests.add(new ServiceRequest(copy(r.getServiceRequestId()), r
+					.getStatus(), copy(r.getStatusNotes()), copy(r
+					.getServiceName()), copy(r.getServiceCode()), copy(r
+					.getDescription()), copy(r.getAgencyResponsible()),
+					copy(r.getServiceNotice()), copy(r.getRequestedDatetime()),
+					copy(r.getUpdatedDatetime()), copy(r.getExpectedDatetime()),
+					copy(r.getAddress()), r.getAddressId(), r.getZipCode(), r
+							.getLatitude(), r.getLongitude(), r.getMediaUrl()));
+		}
+		CacheableObject object = new CacheableObject(requests, 1);
+		run("Serialization + Base64", new Base64Codec(), object);
+		run("Binary", new BinaryCodec(), object);
+		run("Binary + Base64", new Base64Codec(new BinaryCodec()), object);
+	}
+
+	private static String copy(String value) {
+		return value != null ? new String(value) : null;
+	}
+
+	private static Date copy(Date value) {
+		return value != null ? new Date(value.getTime()) : null;
+	}
+
+	private static void run(String name, CacheCodec codec,
+			CacheableObject object) throws IOException {
+		byte[] data = null;
+		// Warm up.
+		for (int i = 0; i < ITERATIONS; i++) {
+			codec.decode(codec.encode(object));
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			data = codec.encode(object);
+		}
+		long encoding = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			codec.decode(data);
+		}
+		long decoding = System.nanoTime() - start;
+		System.out.println(String.format(
+				"%-24s %9d bytes  encode %8.1f us  decode %8.1f us", name,
+				data.length, encoding / 1000.0 / ITERATIONS, decoding
+						/ 1000.0 / ITERATIONS));
+	}
+
+	/**
+	 * The text stored by the caches based on properties.
+	 */
+	private static class Base64Codec implements CacheCodec {
+		private final CacheCodec codec;
+
+		Base64Codec() {
+			this(new SerializationCodec());
+		}
+
+		Base64Codec(CacheCodec codec) {
+			this.codec = codec;
+		}
+
+		@Override
+		public byte[] encode(CacheableObject object) throws IOException {
+			return Base64.encodeBytes(codec.encode(object)).getBytes("UTF-8");
+		}
+
+		@Override
+		public CacheableObject decode(byte[] data) throws IOException {
+			return codec.decode(Base64.decode(data));
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+package org.codeforamerica.open311.internals.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.codeforamerica.open311.facade.EndpointType;
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.facade.GlobalTests;
+import org.codeforamerica.open311.facade.data.Endpoint;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceDiscoveryInfo;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.exceptions.DataParsingException;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.parsing.DataParser;
+import org.codeforamerica.open311.internals.parsing.DataParserFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CacheCodecTest {
+	private static final String BASE_URL = "http://www.fakeurl";
+	private static MockNetworkManager netManager = new MockNetworkManager();
+	private static DataParser parser = DataParserFactory.getInstance()
+			.buildDataParser(Format.XML);
+	private CacheCodec codec = new BinaryCodec();
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[CACHE CODEC TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[CACHE CODEC TEST] Ends");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void serviceListTest() throws IOException, DataParsingException {
+		List<Service> services = parser.parseServiceList(netManager
+				.doGet(new URL(BASE_URL + "/services.xml")));
+		GlobalTests.serviceListTest((List<Service>) roundTrip(
+				(Serializable) services).getObject());
+	}
+
+	@Test
+	public void serviceDefinitionTest() throws IOException,
+			DataParsingException {
+		ServiceDefinition definition = parser.parseServiceDefinition(netManager
+				.doGet(new URL(BASE_URL + "/services/001.xml")));
+		GlobalTests.serviceDefinitionTest((ServiceDefinition) roundTrip(
+				definition).getObject());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void serviceRequestsTest() throws IOException,
+			DataParsingException {
+		List<ServiceRequest> requests = parser.parseServiceRequests(netManager
+				.doGet(new URL(BASE_URL + "/requests.xml")));
+		GlobalTests.serviceRequestsTest((List<ServiceRequest>) roundTrip(
+				(Serializable) requests).getObject());
+	}
+
+	@Test
+	public void serviceDiscoveryTest() throws IOException,
+			DataParsingException {
+		ServiceDiscoveryInfo info = parser.parseServiceDiscovery(netManager
+				.discoveryXML());
+		ServiceDiscoveryInfo decoded = (ServiceDiscoveryInfo) roundTrip(info)
+				.getObject();
+		assertEquals(info.getChangeset(), decoded.getChangeset());
+		assertEquals(info.getContact(), decoded.getContact());
+		assertEquals(info.getKeyService(), decoded.getKeyService());
+		assertEquals(info.getEndpoints().size(), decoded.getEndpoints().size());
+		for (int i = 0; i < info.getEndpoints().size(); i++) {
+			Endpoint endpoint = info.getEndpoints().get(i);
+			Endpoint decodedEndpoint = decoded.getEndpoints().get(i);
+			assertEquals(endpoint.getUrl(), decodedEndpoint.getUrl());
+			assertEquals(endpoint.getSpecificationUrl(),
+					decodedEndpoint.getSpecificationUrl());
+			assertEquals(endpoint.getChangeset(),
+					decodedEndpoint.getChangeset());
+			assertEquals(endpoint.getType(), decodedEndpoint.getType());
+			assertEquals(endpoint.getFormats(), decodedEndpoint.getFormats());
+		}
+	}
+
+	/**
+	 * Null fields, non ASCII and long strings, and objects without a specific
+	 * encoding.
+	 */
+	@Test
+	public void edgeCasesTest() throws IOException {
+		ServiceRequest empty = new ServiceRequest(null, null, null, null,
+				null, null, null, null, null, null, null, null, null, null,
+				null, null, null);
+		ServiceRequest decodedEmpty = (ServiceRequest) roundTrip(empty)
+				.getObject();
+		assertNull(decodedEmpty.getServiceRequestId());
+		assertNull(decodedEmpty.getStatus());
+		assertNull(decodedEmpty.getLatitude());
+		assertNull(decodedEmpty.getMediaUrl());
+
+		StringBuilder longText = new StringBuilder(
+				"Muñín ✓ \uD83D\uDE00 ");
+		while (longText.length() < 100000) {
+			longText.append(longText);
+		}
+		assertEquals(longText.toString(), roundTrip(longText.toString())
+				.getObject());
+
+		ArrayList<Date> dates = new ArrayList<Date>();
+		dates.add(new Date(-1000L));
+		dates.add(new Date(Long.MAX_VALUE));
+		assertEquals(dates, roundTrip(dates).getObject());
+
+		Endpoint endpoint = new Endpoint(null, "http://ñ.org", null,
+				EndpointType.TEST, null);
+		Endpoint decodedEndpoint = (Endpoint) roundTrip(endpoint).getObject();
+		assertEquals("http://ñ.org", decodedEndpoint.getUrl());
+		assertEquals(EndpointType.TEST, decodedEndpoint.getType());
+		assertNull(decodedEndpoint.getFormats());
+	}
+
+	@Test
+	public void expirationTest() throws IOException {
+		CacheableObject expired = new CacheableObject("data", new Date(
+				System.currentTimeMillis() - 1000));
+		CacheableObject decoded = codec.decode(codec.encode(expired));
+		assertNull(decoded.getObject());
+		assertEquals("data", decoded.getRawObject());
+		assertEquals(expired.getExpirationTime(), decoded.getExpirationTime());
+	}
+
+	/**
+	 * Objects saved with the Java serialization can still be read.
+	 */
+	@Test
+	public void serializedDataTest() throws IOException {
+		CacheableObject object = new CacheableObject("data", 1);
+		byte[] serialized = new SerializationCodec().encode(object);
+		assertEquals("data", codec.decode(serialized).getObject());
+	}
+
+	@Test(expected = IOException.class)
+	public void unknownVersionTest() throws IOException {
+		byte[] data = codec.encode(new CacheableObject("data", 1));
+		data[1] = (byte) (BinaryCodec.VERSION + 1);
+		codec.decode(data);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedDataTest() throws IOException {
+		byte[] data = codec.encode(new CacheableObject("data", 1));
+		byte[] truncated = new byte[data.length - 1];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		codec.decode(truncated);
+	}
+
+	private CacheableObject roundTrip(Serializable object) throws IOException {
+		return codec.decode(codec.encode(new CacheableObject(object, 1)));
+	}
+}
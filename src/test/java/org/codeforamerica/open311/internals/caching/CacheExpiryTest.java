@@ -0,0 +1,178 @@
+package org.codeforamerica.open311.internals.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.internals.caching.Cache.CacheableOperation;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CacheExpiryTest {
+	private static final String URL = "http://www.fakeurl";
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[CACHE EXPIRY TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[CACHE EXPIRY TEST] Ends");
+	}
+
+	/**
+	 * Entries saved by a previous execution are indexed and removed when they
+	 * expire.
+	 */
+	@Test
+	public void expiredEntriesTest() throws IOException {
+		MapCache cache = new MapCache();
+		cache.saveEncoded("expired", new BinaryCodec()
+				.encode(new CacheableObject("data", new Date(System
+						.currentTimeMillis() - 1000))));
+		cache.saveEncoded("valid",
+				new BinaryCodec().encode(new CacheableObject("data", 1)));
+		cache.saveSingleServiceRequest(URL, "1", request("1"));
+		cache.evictExpired();
+		assertFalse(cache.properties.containsKey("expired"));
+		assertTrue(cache.properties.containsKey("valid"));
+		assertNotNull(cache.retrieveCachedServiceRequest(URL, "1"));
+		assertEquals(2, cache.properties.size());
+	}
+
+	/**
+	 * The entries which expire before are removed when the maximum size is
+	 * exceeded.
+	 */
+	@Test
+	public void maximumSizeTest() {
+		MapCache cache = new MapCache();
+		cache.setCustomTimeToLive(CacheableOperation.GET_SINGLE_SERVICE_REQUEST,
+				1);
+		cache.setCustomTimeToLive(CacheableOperation.GET_SERVICE_LIST, 2);
+		cache.saveSingleServiceRequest(URL, "1", request("1"));
+		cache.saveListOfServices(URL, new LinkedList<Service>());
+		long size = cache.getSize();
+		assertTrue(size > 0);
+		cache.setMaximumSize(size - 1);
+		assertNull(cache.retrieveCachedServiceRequest(URL, "1"));
+		assertNotNull(cache.retrieveCachedServiceList(URL));
+		assertEquals(1, cache.properties.size());
+		assertTrue(cache.getSize() < size);
+
+		cache.saveSingleServiceRequest(URL, "2", request("2"));
+		assertTrue(cache.getSize() <= size - 1);
+		assertNull(cache.retrieveCachedServiceRequest(URL, "2"));
+	}
+
+	/**
+	 * A value saved while its expired predecessor is being removed is kept.
+	 */
+	@Test
+	public void concurrentSaveTest() throws Exception {
+		MapCache keys = new MapCache();
+		keys.saveSingleServiceRequest(URL, "1", request("1"));
+		String key = keys.properties.keySet().iterator().next();
+		final MapCache cache = new MapCache();
+		cache.saveEncoded(key, new BinaryCodec()
+				.encode(new CacheableObject("data", new Date(System
+						.currentTimeMillis() - 1000))));
+		cache.removing = new CountDownLatch(1);
+		cache.saved = new CountDownLatch(1);
+		Thread sweeper = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				cache.evictExpired();
+			}
+		});
+		sweeper.start();
+		assertTrue(cache.removing.await(5, TimeUnit.SECONDS));
+		cache.saveSingleServiceRequest(URL, "1", request("1"));
+		sweeper.join();
+		assertNotNull(cache.retrieveCachedServiceRequest(URL, "1"));
+		assertEquals(1, cache.properties.size());
+	}
+
+	@Test
+	public void deleteTest() {
+		MapCache cache = new MapCache();
+		cache.saveSingleServiceRequest(URL, "1", request("1"));
+		cache.deleteCache();
+		assertEquals(0, cache.getSize());
+	}
+
+	private static ServiceRequest request(String id) {
+		return new ServiceRequest(id, ServiceRequest.Status.OPEN, null, null,
+				null, "description", null, null, null, null, null, null, null,
+				null, null, null, null);
+	}
+
+	/**
+	 * Keeps the properties in a map.
+	 */
+	private static class MapCache extends AbstractCache {
+		private final Map<String, String> properties = new ConcurrentHashMap<String, String>();
+		/**
+		 * Opened when a removal starts.
+		 */
+		private volatile CountDownLatch removing;
+		/**
+		 * Opened when a property is saved. The removals wait for it (one
+		 * second at most).
+		 */
+		private volatile CountDownLatch saved;
+
+		@Override
+		public void deleteCache() {
+			properties.clear();
+			clearExpiryIndex();
+		}
+
+		@Override
+		protected void saveProperty(String key, String value) {
+			properties.put(key, value);
+			if (saved != null) {
+				saved.countDown();
+			}
+		}
+
+		@Override
+		protected String getProperty(String key) {
+			return properties.get(key);
+		}
+
+		@Override
+		protected void removeProperty(String key) {
+			if (removing != null) {
+				removing.countDown();
+				try {
+					saved.await(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			properties.remove(key);
+		}
+
+		@Override
+		protected Set<String> getPropertyKeys() {
+			return new HashSet<String>(properties.keySet());
+		}
+	}
+}
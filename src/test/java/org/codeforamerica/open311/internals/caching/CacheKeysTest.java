@@ -0,0 +1,86 @@
+package org.codeforamerica.open311.internals.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Date;
+import java.util.LinkedList;
+
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.ServiceRequest.Status;
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+import org.joda.time.DateTimeZone;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CacheKeysTest {
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[CACHE KEYS TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[CACHE KEYS TEST] Ends");
+	}
+
+	@Test
+	public void equalFiltersTest() {
+		GETServiceRequestsFilter filter1 = new GETServiceRequestsFilter()
+				.setServiceCode("001").setStatus(Status.OPEN)
+				.setServiceRequestId("1,2");
+		GETServiceRequestsFilter filter2 = new GETServiceRequestsFilter()
+				.setServiceRequestId("1,2").setStatus(Status.OPEN)
+				.setServiceCode("001");
+		String key = CacheKeys.filterKey(filter1);
+		assertEquals(40, key.length());
+		assertEquals(key, CacheKeys.filterKey(filter2));
+		assertFalse(key.equals(CacheKeys
+				.filterKey(new GETServiceRequestsFilter().setServiceCode("001")
+						.setStatus(Status.CLOSED).setServiceRequestId("1,2"))));
+		assertEquals(CacheKeys.filterKey(new GETServiceRequestsFilter()),
+				CacheKeys.filterKey(null));
+	}
+
+	/**
+	 * The same instant printed in different timezones has the same key.
+	 */
+	@Test
+	public void datesTest() {
+		Date start = new Date(1370000000000L);
+		DateTimeZone defaultZone = DateTimeZone.getDefault();
+		GETServiceRequestsFilter filter1;
+		GETServiceRequestsFilter filter2;
+		try {
+			DateTimeZone.setDefault(DateTimeZone.forID("America/Los_Angeles"));
+			filter1 = new GETServiceRequestsFilter().setStartDate(start);
+			DateTimeZone.setDefault(DateTimeZone.forID("Asia/Tokyo"));
+			filter2 = new GETServiceRequestsFilter().setStartDate(start);
+		} finally {
+			DateTimeZone.setDefault(defaultZone);
+		}
+		assertFalse(filter1.getOptionalParametersMap().equals(
+				filter2.getOptionalParametersMap()));
+		assertEquals(CacheKeys.filterKey(filter1),
+				CacheKeys.filterKey(filter2));
+		assertFalse(CacheKeys.filterKey(filter1).equals(
+				CacheKeys.filterKey(new GETServiceRequestsFilter()
+						.setEndDate(start))));
+	}
+
+	@Test
+	public void cacheHitTest() {
+		Cache cache = new MemoryCache();
+		cache.saveServiceRequestList("http://www.fakeurl",
+				new GETServiceRequestsFilter().setStatus(Status.OPEN)
+						.setServiceCode("001"),
+				new LinkedList<ServiceRequest>());
+		assertNotNull(cache.retrieveCachedServiceRequests(
+				"http://www.fakeurl",
+				new GETServiceRequestsFilter().setServiceCode("001").setStatus(
+						Status.OPEN)));
+	}
+}
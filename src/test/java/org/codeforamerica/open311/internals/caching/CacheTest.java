@@ -23,7 +23,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 public class CacheTest {
-	private Cache cache = PlatformManager.getInstance().buildCache();
+	protected Cache cache = buildCache();
 
 	@BeforeClass
 	public static void testInitialization() {
@@ -39,7 +39,14 @@ public class CacheTest {
 	public void cleanUp() {
 		System.out.println("Deleting the existing cache.");
 		cache.deleteCache();
-		cache = PlatformManager.getInstance().buildCache();
+		cache = buildCache();
+	}
+
+	/**
+	 * Builds the tested cache.
+	 */
+	protected Cache buildCache() {
+		return PlatformManager.getInstance().buildCache();
 	}
 
 	@Test
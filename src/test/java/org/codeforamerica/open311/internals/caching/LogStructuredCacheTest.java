@@ -0,0 +1,156 @@
+package org.codeforamerica.open311.internals.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link LogStructuredCache}. It has to pass the same cases as
+ * the default cache (check {@link CacheTest}).
+ */
+public class LogStructuredCacheTest extends CacheTest {
+	private static LogStructuredCache lastCache;
+	/**
+	 * Compactions are only run when the tests ask for them.
+	 */
+	private static final Executor NO_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+		}
+	};
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[LOG STRUCTURED CACHE TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		if (lastCache != null) {
+			lastCache.close();
+		}
+		System.out.println("[LOG STRUCTURED CACHE TEST] Ends");
+	}
+
+	@Override
+	protected Cache buildCache() {
+		if (lastCache != null) {
+			lastCache.close();
+		}
+		lastCache = new LogStructuredCache(newDirectory());
+		return lastCache;
+	}
+
+	@Test
+	public void persistenceTest() {
+		File directory = newDirectory();
+		LogStructuredCache logCache = new LogStructuredCache(directory);
+		logCache.saveCitiesInfo("first");
+		logCache.saveCitiesInfo("cities");
+		logCache.saveProperty("key", "value");
+		logCache.removeProperty("key");
+		logCache.close();
+		logCache = new LogStructuredCache(directory);
+		assertEquals(logCache.retrieveCitiesInfo(), "cities");
+		assertNull(logCache.getProperty("key"));
+		logCache.close();
+	}
+
+	@Test
+	public void singleInstancePerDirectoryTest() {
+		File directory = newDirectory();
+		LogStructuredCache logCache = new LogStructuredCache(directory);
+		try {
+			new LogStructuredCache(directory);
+			fail("The directory is in use.");
+		} catch (Error e) {
+		} finally {
+			logCache.close();
+		}
+	}
+
+	/**
+	 * An interrupted write leaves an incomplete record at the end of the log,
+	 * it has to be discarded without losing the previous ones.
+	 */
+	@Test
+	public void recoveryTest() throws IOException {
+		File directory = newDirectory();
+		LogStructuredCache logCache = new LogStructuredCache(directory);
+		logCache.saveProperty("a", "1");
+		logCache.saveProperty("b", "2");
+		logCache.close();
+		File segment = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".log");
+			}
+		})[0];
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		long validLength = file.length();
+		// Half a record.
+		file.seek(validLength);
+		file.write(new byte[] { 0x12, 0x34, 0x56, 0x78, 0, 0, 0, 1, 0 });
+		// A damaged byte in the last value.
+		file.seek(validLength - 1);
+		file.write('3');
+		file.close();
+		logCache = new LogStructuredCache(directory);
+		assertEquals(logCache.getProperty("a"), "1");
+		assertNull(logCache.getProperty("b"));
+		logCache.saveProperty("c", "3");
+		logCache.close();
+		logCache = new LogStructuredCache(directory);
+		assertEquals(logCache.getProperty("a"), "1");
+		assertEquals(logCache.getProperty("c"), "3");
+		logCache.close();
+	}
+
+	@Test
+	public void compactionTest() {
+		File directory = newDirectory();
+		LogStructuredCache logCache = new LogStructuredCache(directory, 1024,
+				NO_EXECUTOR);
+		for (int i = 0; i < 1000; i++) {
+			logCache.saveProperty("key" + (i % 10), "value" + i);
+		}
+		logCache.saveProperty("deleted", "value");
+		logCache.removeProperty("deleted");
+		long logSize = logCache.getLogSize();
+		logCache.compact();
+		assertTrue(logCache.getLogSize() < logSize / 50);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(logCache.getProperty("key" + i), "value" + (990 + i));
+		}
+		logCache.saveProperty("key0", "new value");
+		logCache.close();
+		logCache = new LogStructuredCache(directory);
+		assertEquals(logCache.getProperty("key0"), "new value");
+		assertEquals(logCache.getProperty("key1"), "value991");
+		assertNull(logCache.getProperty("deleted"));
+		logCache.close();
+	}
+
+	private static File newDirectory() {
+		try {
+			File directory = File.createTempFile("cache-log", "");
+			directory.delete();
+			directory.mkdir();
+			directory.deleteOnExit();
+			return directory;
+		} catch (IOException e) {
+			throw new Error(e.getMessage());
+		}
+	}
+}
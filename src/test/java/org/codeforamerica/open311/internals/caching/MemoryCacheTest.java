@@ -0,0 +1,168 @@
+package org.codeforamerica.open311.internals.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.operations.GETServiceRequestsFilter;
+import org.codeforamerica.open311.internals.caching.Cache.CacheableOperation;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link MemoryCache}. It has to pass the same cases as the
+ * default cache (check {@link CacheTest}).
+ */
+public class MemoryCacheTest extends CacheTest {
+	private static final String ENDPOINT = "http://www.fakeurl/";
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[MEMORY CACHE TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[MEMORY CACHE TEST] Ends");
+	}
+
+	@Override
+	protected Cache buildCache() {
+		return new MemoryCache();
+	}
+
+	@Test
+	public void hitsReturnTheSavedObjectTest() {
+		ServiceRequest request = request("1");
+		cache.saveSingleServiceRequest(ENDPOINT, "1", request);
+		assertSame(request, cache.retrieveCachedServiceRequest(ENDPOINT, "1"));
+		List<ServiceRequest> requests = new ArrayList<ServiceRequest>();
+		requests.add(request);
+		GETServiceRequestsFilter filter = new GETServiceRequestsFilter()
+				.setServiceCode("001");
+		cache.saveServiceRequestList(ENDPOINT, filter, requests);
+		requests.clear();
+		List<ServiceRequest> cachedRequests = cache
+				.retrieveCachedServiceRequests(ENDPOINT, filter);
+		assertEquals(cachedRequests.size(), 1);
+		assertSame(cachedRequests, cache.retrieveCachedServiceRequests(
+				ENDPOINT, filter));
+		try {
+			cachedRequests.clear();
+			fail("Cached lists must be read-only.");
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void timeToLiveTest() throws InterruptedException {
+		MemoryCache memoryCache = new MemoryCache();
+		memoryCache.setTimeToLive(
+				CacheableOperation.GET_SINGLE_SERVICE_REQUEST, 50,
+				TimeUnit.MILLISECONDS);
+		memoryCache.saveSingleServiceRequest(ENDPOINT, "1", request("1"));
+		memoryCache.saveCitiesInfo("cities");
+		assertNotNull(memoryCache.retrieveCachedServiceRequest(ENDPOINT, "1"));
+		Thread.sleep(100);
+		assertNull(memoryCache.retrieveCachedServiceRequest(ENDPOINT, "1"));
+		assertEquals(memoryCache.retrieveCitiesInfo(), "cities");
+		assertEquals(memoryCache.size(), 1);
+	}
+
+	@Test
+	public void boundsTest() {
+		MemoryCache memoryCache = new MemoryCache(10, 50);
+		for (int i = 0; i < 100; i++) {
+			String id = String.valueOf(i);
+			memoryCache.retrieveCachedServiceRequest(ENDPOINT, id);
+			memoryCache.saveSingleServiceRequest(ENDPOINT, id, request(id));
+			assertTrue(memoryCache.size() <= 10);
+		}
+		List<ServiceRequest> requests = new ArrayList<ServiceRequest>();
+		for (int i = 0; i < 30; i++) {
+			requests.add(request(String.valueOf(i)));
+		}
+		memoryCache.saveServiceRequestList(ENDPOINT,
+				new GETServiceRequestsFilter(), requests);
+		memoryCache.saveServiceRequestList(ENDPOINT,
+				new GETServiceRequestsFilter().setServiceCode("001"), requests);
+		assertTrue(memoryCache.getWeight() <= 50);
+		requests.addAll(new ArrayList<ServiceRequest>(requests));
+		memoryCache.saveServiceRequestList(ENDPOINT,
+				new GETServiceRequestsFilter().setServiceCode("002"), requests);
+		assertNull(memoryCache.retrieveCachedServiceRequests(ENDPOINT,
+				new GETServiceRequestsFilter().setServiceCode("002")));
+	}
+
+	/**
+	 * The entries which are still asked for survive a scan of one-off
+	 * requests.
+	 */
+	@Test
+	public void admissionTest() {
+		MemoryCache memoryCache = new MemoryCache(10, 1000);
+		for (int i = 0; i < 10; i++) {
+			String id = "popular" + i;
+			memoryCache.saveSingleServiceRequest(ENDPOINT, id, request(id));
+			for (int j = 0; j < 5; j++) {
+				assertNotNull(memoryCache.retrieveCachedServiceRequest(
+						ENDPOINT, id));
+			}
+		}
+		for (int i = 0; i < 1000; i++) {
+			String id = "oneOff" + i;
+			memoryCache.retrieveCachedServiceRequest(ENDPOINT, id);
+			memoryCache.saveSingleServiceRequest(ENDPOINT, id, request(id));
+			memoryCache.retrieveCachedServiceRequest(ENDPOINT, "popular"
+					+ (i % 10));
+		}
+		for (int i = 0; i < 10; i++) {
+			assertNotNull(memoryCache.retrieveCachedServiceRequest(ENDPOINT,
+					"popular" + i));
+		}
+	}
+
+	/**
+	 * Updating a rarely used entry of a full cache with a heavier object
+	 * replaces it instead of losing both versions.
+	 */
+	@Test
+	public void updateTest() {
+		MemoryCache memoryCache = new MemoryCache(100, 20);
+		GETServiceRequestsFilter filter = new GETServiceRequestsFilter()
+				.setServiceCode("001");
+		List<ServiceRequest> requests = new ArrayList<ServiceRequest>();
+		requests.add(request("a"));
+		requests.add(request("b"));
+		memoryCache.saveServiceRequestList(ENDPOINT, filter, requests);
+		for (int i = 0; i < 18; i++) {
+			String id = String.valueOf(i);
+			memoryCache.saveSingleServiceRequest(ENDPOINT, id, request(id));
+			for (int j = 0; j < 5; j++) {
+				memoryCache.retrieveCachedServiceRequest(ENDPOINT, id);
+			}
+		}
+		assertEquals(memoryCache.getWeight(), 20);
+		requests.add(request("c"));
+		memoryCache.saveServiceRequestList(ENDPOINT, filter, requests);
+		List<ServiceRequest> cachedRequests = memoryCache
+				.retrieveCachedServiceRequests(ENDPOINT, filter);
+		assertNotNull(cachedRequests);
+		assertEquals(cachedRequests.size(), 3);
+		assertTrue(memoryCache.getWeight() <= 20);
+	}
+
+	private static ServiceRequest request(String id) {
+		return new ServiceRequest(id, null, null, null, "001", null, null,
+				null, null, null, null, null, null, null, null, null, null);
+	}
+}
@@ -0,0 +1,95 @@
+package org.codeforamerica.open311.internals.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class LogManagerTest {
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[LOG MANAGER TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[LOG MANAGER TEST] Ends");
+	}
+
+	@Test
+	public void formatTest() {
+		assertEquals("No arguments", LogManager.format("No arguments", "a", "b"));
+		assertEquals("GET Service Request (service_request_id: 638344)",
+				LogManager.format("GET Service Request (service_request_id: {})",
+						"638344", "unused"));
+		assertEquals("a and b", LogManager.format("{} and {}", "a", "b"));
+		assertEquals("null and null",
+				LogManager.format("{} and {}", null, null));
+	}
+
+	@Test
+	public void enabledTest() {
+		Object wrapper = new Object();
+		LogManager logManager = LogManager.getInstance();
+		assertFalse(logManager.isEnabled(wrapper));
+		logManager.activate(wrapper);
+		assertTrue(logManager.isEnabled(wrapper));
+		logManager.disable(wrapper);
+		assertFalse(logManager.isEnabled(wrapper));
+	}
+
+	/**
+	 * The messages are written in order by the executor, and dropped when the
+	 * buffer is full.
+	 */
+	@Test
+	public void asyncLoggerTest() {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		};
+		RecordingLogger recorder = new RecordingLogger();
+		AsyncLogger logger = new AsyncLogger(recorder, 3, executor);
+		logger.logInfo("first");
+		logger.logError("second");
+		logger.logInfo("third");
+		logger.logInfo("fourth");
+		assertEquals(1, tasks.size());
+		assertEquals(1, logger.getDroppedCount());
+		assertTrue(recorder.messages.isEmpty());
+		tasks.get(0).run();
+		assertEquals("[I first, E second, I third]",
+				recorder.messages.toString());
+		logger.logInfo("fifth");
+		assertEquals(2, tasks.size());
+		logger.flush();
+		assertEquals("I fifth", recorder.messages.get(3));
+		tasks.get(1).run();
+		assertEquals(4, recorder.messages.size());
+	}
+
+	private static class RecordingLogger implements Logger {
+		private final List<String> messages = new ArrayList<String>();
+
+		@Override
+		public void logInfo(String message) {
+			messages.add("I " + message);
+		}
+
+		@Override
+		public void logError(String message) {
+			messages.add("E " + message);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.internals.caching.LogStructuredCache;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class InstrumentationTest {
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[INSTRUMENTATION TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[INSTRUMENTATION TEST] Ends");
+	}
+
+	@Test
+	public void listenersTest() {
+		RecordingListener listener = new RecordingListener();
+		InstrumentationListener failing = new RecordingListener() {
+			@Override
+			public void parsed(String operation, int records, long bytes,
+					long durationNanos, boolean succeeded) {
+				throw new IllegalStateException("Failing listener");
+			}
+		};
+		assertFalse(Instrumentation.isEnabled());
+		Instrumentation.addListener(failing);
+		Instrumentation.addListener(listener);
+		try {
+			assertTrue(Instrumentation.isEnabled());
+			Instrumentation.parsed("GET_SERVICE_LIST", 3, 100, 10, true);
+			assertEquals(1, listener.events.size());
+			assertEquals("parsed GET_SERVICE_LIST 3 100 true",
+					listener.events.get(0));
+		} finally {
+			Instrumentation.removeListener(failing);
+			Instrumentation.removeListener(listener);
+		}
+		assertFalse(Instrumentation.isEnabled());
+		Instrumentation.parsed("GET_SERVICE_LIST", 3, 100, 10, true);
+		assertEquals(1, listener.events.size());
+	}
+
+	@Test
+	public void cacheTest() throws IOException {
+		File directory = File.createTempFile("cache-log", "");
+		directory.delete();
+		directory.mkdir();
+		directory.deleteOnExit();
+		LogStructuredCache cache = new LogStructuredCache(directory);
+		RecordingListener listener = new RecordingListener();
+		Instrumentation.addListener(listener);
+		try {
+			assertEquals(null, cache.retrieveCachedServiceList("endpoint"));
+			cache.saveListOfServices("endpoint", new LinkedList<Service>());
+			cache.retrieveCachedServiceList("endpoint");
+			assertEquals(3, listener.events.size());
+			assertEquals("cache GET_SERVICE_LIST false false 0",
+					listener.events.get(0));
+			assertTrue(listener.events.get(1).startsWith(
+					"cache GET_SERVICE_LIST true false "));
+			assertTrue(listener.events.get(2).startsWith(
+					"cache GET_SERVICE_LIST false true "));
+			assertFalse(listener.events.get(2).endsWith(" 0"));
+		} finally {
+			Instrumentation.removeListener(listener);
+			cache.close();
+		}
+	}
+
+	/**
+	 * Keeps the events, without their durations.
+	 */
+	private static class RecordingListener implements InstrumentationListener {
+		private final List<String> events = new ArrayList<String>();
+
+		@Override
+		public synchronized void networkRequest(String host, String method,
+				int statusCode, long bytes, long durationNanos) {
+			events.add("network " + host + " " + method + " " + statusCode
+					+ " " + bytes);
+		}
+
+		@Override
+		public synchronized void parsed(String operation, int records,
+				long bytes, long durationNanos, boolean succeeded) {
+			events.add("parsed " + operation + " " + records + " " + bytes
+					+ " " + succeeded);
+		}
+
+		@Override
+		public synchronized void cacheAccessed(String operation, boolean put,
+				boolean hit, long entrySize) {
+			events.add("cache " + operation + " " + put + " " + hit + " "
+					+ entrySize);
+		}
+	}
+}
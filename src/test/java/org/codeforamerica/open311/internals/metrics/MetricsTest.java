@@ -0,0 +1,133 @@
+package org.codeforamerica.open311.internals.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics.Operation;
+import org.codeforamerica.open311.internals.metrics.WrapperMetrics.Phase;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MetricsTest {
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[METRICS TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[METRICS TEST] Ends");
+	}
+
+	/**
+	 * Every value falls in a bucket which contains it.
+	 */
+	@Test
+	public void bucketsTest() {
+		int previous = -1;
+		for (long value = 0; value < (1L << 42); value = value * 2 + 1) {
+			int index = LatencyHistogram.indexOf(value);
+			assertTrue(index >= previous);
+			assertTrue(index < LatencyHistogram.BUCKETS);
+			if (value < (1L << 40)) {
+				assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+				assertTrue(LatencyHistogram.highestValueOf(index) <= value * 1.125 + 1);
+			}
+			previous = index;
+		}
+	}
+
+	@Test
+	public void percentilesTest() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i, TimeUnit.MILLISECONDS);
+		}
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(100, snapshot.getCount());
+		assertEquals(100, snapshot.getMax(TimeUnit.MILLISECONDS));
+		assertEquals(50, snapshot.getMean(TimeUnit.MILLISECONDS));
+		assertWithin(50, snapshot.getPercentile(50, TimeUnit.MILLISECONDS));
+		assertWithin(99, snapshot.getPercentile(99, TimeUnit.MILLISECONDS));
+		assertEquals(100, snapshot.getPercentile(100, TimeUnit.MILLISECONDS));
+		assertEquals(0, new LatencyHistogram().snapshot().getPercentile(99,
+				TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void wrapperMetricsTest() throws IOException {
+		WrapperMetrics metrics = new WrapperMetrics("http://www.fakeurl/");
+		long start = System.nanoTime();
+		metrics.recordCacheLookup(Operation.GET_SERVICE_LIST, start, true);
+		metrics.recordCacheLookup(Operation.GET_SERVICE_LIST, start, false);
+		metrics.recordCacheLookup(Operation.GET_SERVICE_LIST, start, false);
+		InputStream response = metrics.countReceived(new ByteArrayInputStream(
+				new byte[1000]));
+		while (response.read(new byte[64]) >= 0) {
+		}
+		metrics.recordReceived(24);
+		metrics.record(Operation.GET_SERVICE_LIST, Phase.PARSING,
+				System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+		MetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(1, snapshot.getCacheHits(Operation.GET_SERVICE_LIST));
+		assertEquals(2, snapshot.getCacheMisses(Operation.GET_SERVICE_LIST));
+		assertEquals(1.0 / 3,
+				snapshot.getCacheHitRatio(Operation.GET_SERVICE_LIST), 0.001);
+		assertEquals(0, snapshot.getCacheHitRatio(Operation.GET_SERVICE_REQUEST),
+				0);
+		assertEquals(1024, snapshot.getBytesReceived());
+		assertEquals(3, snapshot.getLatency(Operation.GET_SERVICE_LIST,
+				Phase.CACHE_LOOKUP).getCount());
+		assertTrue(snapshot.getLatency(Operation.GET_SERVICE_LIST,
+				Phase.PARSING).getMax(TimeUnit.MILLISECONDS) >= 10);
+		// 1024 bytes in 10 milliseconds or more.
+		assertTrue(snapshot.getParsingThroughput() > 0);
+		assertTrue(snapshot.getParsingThroughput() <= 102400);
+		assertEquals(1, metrics.getCounts().get("GET_SERVICE_LIST.PARSING")
+				.longValue());
+	}
+
+	@Test
+	public void mbeanTest() throws Exception {
+		WrapperMetrics metrics = new WrapperMetrics("http://www.fakeurl/");
+		WrapperMetrics other = new WrapperMetrics("http://www.fakeurl/");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName pattern = new ObjectName(MBeanRegistration.DOMAIN
+				+ ":type=APIWrapper,*");
+		int registered = server.queryNames(pattern, null).size();
+		try {
+			assertTrue(metrics.registerMBean());
+			assertTrue(other.registerMBean());
+			assertEquals(registered + 2, server.queryNames(pattern, null)
+					.size());
+			metrics.recordReceived(10);
+			ObjectName name = new ObjectName(MBeanRegistration.DOMAIN
+					+ ":type=APIWrapper,endpoint="
+					+ ObjectName.quote("http://www.fakeurl/"));
+			assertEquals(10L, server.getAttribute(name, "BytesReceived"));
+		} finally {
+			metrics.unregisterMBean();
+			other.unregisterMBean();
+		}
+		assertEquals(registered, server.queryNames(pattern, null).size());
+	}
+
+	/**
+	 * The precision of the histogram is 12.5%.
+	 */
+	private static void assertWithin(long expected, long actual) {
+		assertTrue("Expected " + expected + ", was " + actual,
+				actual >= expected && actual <= expected * 1.125 + 1);
+	}
+}
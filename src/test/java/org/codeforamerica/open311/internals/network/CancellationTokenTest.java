@@ -0,0 +1,119 @@
+package org.codeforamerica.open311.internals.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CancellationTokenTest {
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[CANCELLATION TOKEN TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[CANCELLATION TOKEN TEST] Ends");
+	}
+
+	@Test
+	public void cancelTest() {
+		CancellationToken token = new CancellationToken();
+		final AtomicInteger calls = new AtomicInteger();
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				calls.incrementAndGet();
+			}
+		};
+		token.addListener(listener);
+		assertFalse(token.isCancelled());
+		assertEquals(Long.MAX_VALUE, token.getRemaining(TimeUnit.MILLISECONDS));
+		token.cancel();
+		token.cancel();
+		assertTrue(token.isCancelled());
+		assertFalse(token.isDeadlineExceeded());
+		assertEquals(0, token.getRemaining(TimeUnit.MILLISECONDS));
+		assertEquals(1, calls.get());
+		// Listeners added later run immediately.
+		token.addListener(listener);
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void deadlineTest() throws InterruptedException {
+		CancellationToken token = CancellationToken.withDeadline(100,
+				TimeUnit.MILLISECONDS);
+		final CountDownLatch notified = new CountDownLatch(1);
+		token.addListener(new Runnable() {
+			@Override
+			public void run() {
+				notified.countDown();
+			}
+		});
+		assertFalse(token.isCancelled());
+		assertTrue(token.getRemaining(TimeUnit.MILLISECONDS) <= 100);
+		assertTrue(notified.await(1, TimeUnit.SECONDS));
+		assertTrue(token.isCancelled());
+		assertTrue(token.isDeadlineExceeded());
+		try {
+			token.throwIfCancelled();
+		} catch (RequestCancelledException e) {
+			assertTrue(e.isDeadlineExceeded());
+			return;
+		}
+		throw new AssertionError("The token should be cancelled");
+	}
+
+	@Test
+	public void removedListenerTest() {
+		CancellationToken token = new CancellationToken();
+		final AtomicInteger calls = new AtomicInteger();
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				calls.incrementAndGet();
+			}
+		};
+		token.addListener(listener);
+		token.removeListener(listener);
+		token.cancel();
+		assertEquals(0, calls.get());
+	}
+
+	@Test
+	public void awaitTest() throws InterruptedException {
+		CancellationToken token = new CancellationToken();
+		assertFalse(token.await(10, TimeUnit.MILLISECONDS));
+		token.cancel();
+		assertTrue(token.await(1, TimeUnit.MINUTES));
+		assertTrue(CancellationToken.withDeadline(50, TimeUnit.MILLISECONDS)
+				.await(1, TimeUnit.MINUTES));
+	}
+
+	@Test
+	public void attachTest() {
+		assertNull(CancellationToken.current());
+		CancellationToken outer = new CancellationToken();
+		CancellationToken inner = new CancellationToken();
+		CancellationToken first = outer.attach();
+		assertNull(first);
+		CancellationToken second = inner.attach();
+		assertSame(outer, second);
+		assertSame(inner, CancellationToken.current());
+		CancellationToken.detach(second);
+		assertSame(outer, CancellationToken.current());
+		CancellationToken.detach(first);
+		assertNull(CancellationToken.current());
+	}
+}
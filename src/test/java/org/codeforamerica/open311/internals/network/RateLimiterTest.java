@@ -0,0 +1,156 @@
+package org.codeforamerica.open311.internals.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RateLimiterTest {
+	private static final Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[RATE LIMITER TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[RATE LIMITER TEST] Ends");
+	}
+
+	@Test
+	public void burstTest() throws InterruptedException {
+		RateLimiter rateLimiter = new RateLimiter(10, 3);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(rateLimiter.tryAcquire());
+		}
+		assertFalse(rateLimiter.tryAcquire());
+		long start = System.nanoTime();
+		rateLimiter.acquire();
+		rateLimiter.acquire();
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start);
+		assertTrue("Elapsed " + elapsed, elapsed >= 150);
+	}
+
+	@Test
+	public void pauseTest() throws InterruptedException {
+		RateLimiter rateLimiter = new RateLimiter(Double.POSITIVE_INFINITY, 1);
+		assertTrue(rateLimiter.tryAcquire());
+		assertTrue(rateLimiter.tryAcquire());
+		rateLimiter.pauseUntil(System.currentTimeMillis() + 200);
+		assertFalse(rateLimiter.tryAcquire());
+		long start = System.nanoTime();
+		rateLimiter.acquire();
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start);
+		assertTrue("Elapsed " + elapsed, elapsed >= 150);
+		assertTrue(rateLimiter.tryAcquire());
+	}
+
+	@Test
+	public void timedAcquireTest() throws InterruptedException {
+		RateLimiter rateLimiter = new RateLimiter(5, 1);
+		assertTrue(rateLimiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+		assertFalse(rateLimiter.tryAcquire(50, TimeUnit.MILLISECONDS));
+		assertTrue(rateLimiter.getWaitTime(TimeUnit.MILLISECONDS) > 50);
+		assertTrue(rateLimiter.tryAcquire(1, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * A long pause of a host doesn't make the requests wait beyond their
+	 * deadline.
+	 */
+	@Test
+	public void boundedWaitTest() throws IOException {
+		URL url = new URL("http://paused.fakeurl/services.xml");
+		try {
+			ThrottledException throttled = RateLimiters.throttled(url,
+					RateLimiters.SERVICE_UNAVAILABLE, "86400");
+			assertEquals(RateLimiters.MAX_RETRY_AFTER,
+					throttled.getRetryAfter());
+			long start = System.currentTimeMillis();
+			try {
+				RateLimiters.acquire(url, 100);
+				fail("The request shouldn't wait for the pause");
+			} catch (ThrottledException e) {
+				assertTrue(e.getRetryAfter() > 100);
+			}
+			CancellationToken previous = CancellationToken.withDeadline(100,
+					TimeUnit.MILLISECONDS).attach();
+			try {
+				RateLimiters.acquire(url, 0);
+				fail("The request shouldn't wait for the pause");
+			} catch (ThrottledException e) {
+			} finally {
+				CancellationToken.detach(previous);
+			}
+			assertTrue(System.currentTimeMillis() - start < 1000);
+		} finally {
+			RateLimiters.remove("paused.fakeurl");
+		}
+	}
+
+	@Test
+	public void asyncTest() throws InterruptedException, ExecutionException,
+			TimeoutException {
+		RateLimiter rateLimiter = new RateLimiter(5, 1);
+		final AtomicInteger runs = new AtomicInteger();
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+			}
+		};
+		assertTrue(rateLimiter.acquireAsync(task, DIRECT_EXECUTOR).isDone());
+		assertEquals(1, runs.get());
+		Future<?> future = rateLimiter.acquireAsync(task, DIRECT_EXECUTOR);
+		assertFalse(future.isDone());
+		assertNull(future.get(1, TimeUnit.SECONDS));
+		assertEquals(2, runs.get());
+		future = rateLimiter.acquireAsync(task, DIRECT_EXECUTOR);
+		future.cancel(false);
+		Thread.sleep(300);
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void registryTest() {
+		RateLimiter rateLimiter = RateLimiters.setRate(
+				"http://registry.fakeurl/open311/v2", 2, 1);
+		assertSame(rateLimiter, RateLimiters.get("registry.fakeurl"));
+		assertSame(rateLimiter, RateLimiters.setRate("registry.fakeurl", 4, 2));
+		assertEquals(4, rateLimiter.getRate(), 0);
+		RateLimiters.remove("registry.fakeurl");
+		assertNull(RateLimiters.get("http://registry.fakeurl/"));
+	}
+
+	@Test
+	public void retryAfterTest() {
+		assertEquals(120000, RateLimiters.parseRetryAfter("120"));
+		assertEquals(-1, RateLimiters.parseRetryAfter("soon"));
+		assertEquals(-1, RateLimiters.parseRetryAfter(null));
+		assertEquals(0,
+				RateLimiters.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+	}
+}
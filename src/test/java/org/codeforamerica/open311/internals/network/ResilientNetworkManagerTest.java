@@ -0,0 +1,316 @@
+package org.codeforamerica.open311.internals.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeforamerica.open311.internals.network.CircuitBreaker.State;
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ResilientNetworkManagerTest {
+	private static final String SERVICES_URL = "http://www.fakeurl/services.xml";
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[RESILIENT NETWORK MANAGER TEST] Starts");
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[RESILIENT NETWORK MANAGER TEST] Ends");
+	}
+
+	@Test
+	public void retryTest() throws IOException {
+		FlakyNetworkManager flaky = new FlakyNetworkManager(2);
+		ResilientNetworkManager networkManager = build(flaky);
+		assertFalse(networkManager.doGet(new URL(SERVICES_URL)).isEmpty());
+		assertEquals(3, flaky.calls.get());
+		assertEquals(3, networkManager.getRequestCount());
+		assertEquals(2, networkManager.getFailureCount());
+		assertEquals(2, networkManager.getRetryCount());
+		assertEquals(State.CLOSED, networkManager.getCircuitState("www.fakeurl"));
+	}
+
+	@Test
+	public void retryBudgetTest() throws IOException {
+		FlakyNetworkManager flaky = new FlakyNetworkManager(10);
+		ResilientNetworkManager networkManager = build(flaky);
+		try {
+			networkManager.doGetStream(new URL(SERVICES_URL));
+			fail("The retry budget should be exhausted");
+		} catch (IOException e) {
+			assertEquals("Failure 3", e.getMessage());
+		}
+		assertEquals(3, flaky.calls.get());
+
+		flaky = new FlakyNetworkManager(10);
+		networkManager = build(flaky).setRetryBudget(10, 0,
+				TimeUnit.MILLISECONDS);
+		try {
+			networkManager.doGet(new URL(SERVICES_URL));
+			fail("The retry budget should be exhausted");
+		} catch (IOException e) {
+			assertEquals(1, flaky.calls.get());
+		}
+	}
+
+	@Test
+	public void postIsNotRetriedTest() throws IOException {
+		FlakyNetworkManager flaky = new FlakyNetworkManager(1);
+		ResilientNetworkManager networkManager = build(flaky);
+		try {
+			networkManager.doPost(new URL("http://www.fakeurl/requests.xml"),
+					null);
+			fail("POST requests shouldn't be retried");
+		} catch (IOException e) {
+			assertEquals(1, flaky.calls.get());
+		}
+	}
+
+	@Test
+	public void circuitBreakerTest() throws IOException, InterruptedException {
+		FlakyNetworkManager flaky = new FlakyNetworkManager(4);
+		ResilientNetworkManager networkManager = build(flaky)
+				.setRetryBudget(1, 0, TimeUnit.MILLISECONDS)
+				.setCircuitBreaker(3, 100, TimeUnit.MILLISECONDS);
+		URL url = new URL(SERVICES_URL);
+		for (int i = 0; i < 3; i++) {
+			try {
+				networkManager.doGet(url);
+				fail("The request should fail");
+			} catch (CircuitOpenException e) {
+				fail("The circuit shouldn't be open yet");
+			} catch (IOException e) {
+			}
+		}
+		assertEquals(State.OPEN, networkManager.getCircuitState("www.fakeurl"));
+		try {
+			networkManager.doGet(url);
+			fail("The circuit should be open");
+		} catch (CircuitOpenException e) {
+			assertEquals(3, flaky.calls.get());
+			assertEquals(1, networkManager.getRejectionCount());
+		}
+		// Other hosts are not affected.
+		networkManager.doGet(new URL("http://other.fakeurl/services.xml"));
+
+		// The trial request fails, so the circuit opens again.
+		Thread.sleep(150);
+		try {
+			networkManager.doGet(url);
+			fail("The trial request should fail");
+		} catch (CircuitOpenException e) {
+			fail("A trial request should be allowed");
+		} catch (IOException e) {
+		}
+		assertEquals(State.OPEN, networkManager.getCircuitState("www.fakeurl"));
+
+		// The next trial succeeds and closes it.
+		Thread.sleep(150);
+		assertFalse(networkManager.doGet(url).isEmpty());
+		assertEquals(State.CLOSED, networkManager.getCircuitState("www.fakeurl"));
+		Map<String, CircuitBreaker> circuitBreakers = networkManager
+				.getCircuitBreakers();
+		assertEquals(2, circuitBreakers.size());
+		assertEquals(0, circuitBreakers.get("www.fakeurl")
+				.getConsecutiveFailures());
+	}
+
+	/**
+	 * A trial request which ends with an unexpected exception doesn't keep
+	 * the circuit open forever.
+	 */
+	@Test
+	public void trialErrorTest() throws IOException, InterruptedException {
+		final AtomicInteger calls = new AtomicInteger();
+		ResilientNetworkManager networkManager = build(
+				new MockNetworkManager() {
+					@Override
+					public String doGet(URL url) throws IOException {
+						int call = calls.incrementAndGet();
+						if (call == 1) {
+							throw new IOException("Failure");
+						}
+						if (call == 2) {
+							throw new IllegalStateException("Bug");
+						}
+						return super.doGet(url);
+					}
+				}).setRetryBudget(1, 0, TimeUnit.MILLISECONDS)
+				.setCircuitBreaker(1, 50, TimeUnit.MILLISECONDS);
+		URL url = new URL(SERVICES_URL);
+		try {
+			networkManager.doGet(url);
+			fail("The request should fail");
+		} catch (IOException e) {
+		}
+		Thread.sleep(100);
+		try {
+			networkManager.doGet(url);
+			fail("The trial request should fail");
+		} catch (IllegalStateException e) {
+		}
+		assertFalse(networkManager.doGet(url).isEmpty());
+		assertEquals(State.CLOSED, networkManager.getCircuitState("www.fakeurl"));
+	}
+
+	/**
+	 * A cancelled trial request releases the trial without counting as a
+	 * failure, while a total timeout is a failure of the server.
+	 */
+	@Test
+	public void cancellationTest() throws IOException, InterruptedException {
+		final AtomicInteger calls = new AtomicInteger();
+		ResilientNetworkManager networkManager = build(
+				new MockNetworkManager() {
+					@Override
+					public String doGet(URL url) throws IOException {
+						switch (calls.incrementAndGet()) {
+						case 1:
+							throw new IOException("Failure");
+						case 2:
+							throw new RequestCancelledException(false);
+						case 4:
+							throw new RequestTimeoutException();
+						default:
+							return super.doGet(url);
+						}
+					}
+				}).setRetryBudget(1, 0, TimeUnit.MILLISECONDS)
+				.setCircuitBreaker(1, 50, TimeUnit.MILLISECONDS);
+		URL url = new URL(SERVICES_URL);
+		try {
+			networkManager.doGet(url);
+			fail("The request should fail");
+		} catch (IOException e) {
+		}
+		Thread.sleep(100);
+		try {
+			networkManager.doGet(url);
+			fail("The trial request should be cancelled");
+		} catch (RequestCancelledException e) {
+		}
+		assertEquals(1, networkManager.getFailureCount());
+		// Another trial is allowed and the healthy server closes the circuit.
+		assertFalse(networkManager.doGet(url).isEmpty());
+		assertEquals(State.CLOSED, networkManager.getCircuitState("www.fakeurl"));
+		try {
+			networkManager.doGet(url);
+			fail("The request should time out");
+		} catch (RequestTimeoutException e) {
+		}
+		assertEquals(2, networkManager.getFailureCount());
+		assertEquals(State.OPEN, networkManager.getCircuitState("www.fakeurl"));
+	}
+
+	/**
+	 * Cancelling the token stops the wait before the next attempt.
+	 */
+	@Test
+	public void cancelledBackoffTest() throws IOException {
+		FlakyNetworkManager flaky = new FlakyNetworkManager(10);
+		ResilientNetworkManager networkManager = new ResilientNetworkManager(
+				flaky).setBackoff(10, 10, TimeUnit.SECONDS).setRetryBudget(3,
+				1, TimeUnit.MINUTES);
+		final CancellationToken token = new CancellationToken();
+		PlatformManager.getInstance().getScheduler()
+				.schedule(new Runnable() {
+					@Override
+					public void run() {
+						token.cancel();
+					}
+				}, 100, TimeUnit.MILLISECONDS);
+		CancellationToken previous = token.attach();
+		long start = System.currentTimeMillis();
+		try {
+			networkManager.doGet(new URL(SERVICES_URL));
+			fail("The request should be cancelled");
+		} catch (RequestCancelledException e) {
+			assertFalse(e.isDeadlineExceeded());
+			assertEquals("Failure 1", e.getCause().getMessage());
+		} finally {
+			CancellationToken.detach(previous);
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(1, flaky.calls.get());
+	}
+
+	/**
+	 * The failures while a streamed body is read are recorded as well.
+	 */
+	@Test
+	public void streamFailureTest() throws IOException {
+		ResilientNetworkManager networkManager = build(
+				new MockNetworkManager() {
+					@Override
+					public InputStream doGetStream(URL url) throws IOException {
+						return new InputStream() {
+							@Override
+							public int read() throws IOException {
+								throw new IOException("Connection reset");
+							}
+						};
+					}
+				}).setCircuitBreaker(1, 1, TimeUnit.HOURS);
+		InputStream body = networkManager.doGetStream(new URL(SERVICES_URL));
+		try {
+			body.read();
+			fail("The read should fail");
+		} catch (IOException e) {
+		}
+		assertEquals(1, networkManager.getFailureCount());
+		assertEquals(State.OPEN, networkManager.getCircuitState("www.fakeurl"));
+	}
+
+	private static ResilientNetworkManager build(NetworkManager networkManager) {
+		return new ResilientNetworkManager(networkManager).setBackoff(1, 5,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Fails the first given number of requests.
+	 */
+	private static class FlakyNetworkManager extends MockNetworkManager {
+		private final AtomicInteger calls = new AtomicInteger();
+		private final int failures;
+
+		FlakyNetworkManager(int failures) {
+			this.failures = failures;
+		}
+
+		@Override
+		public String doGet(URL url) throws IOException {
+			fail(url);
+			return super.doGet(url);
+		}
+
+		@Override
+		public String doPost(URL url, Map<String, String> parameters)
+				throws IOException {
+			fail(url);
+			return super.doPost(url, parameters);
+		}
+
+		private void fail(URL url) throws IOException {
+			if (!url.getHost().equals("www.fakeurl")) {
+				return;
+			}
+			int call = calls.incrementAndGet();
+			if (call <= failures) {
+				throw new IOException("Failure " + call);
+			}
+		}
+	}
+}
@@ -0,0 +1,620 @@
+package org.codeforamerica.open311.internals.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.internals.metrics.Instrumentation;
+import org.codeforamerica.open311.internals.metrics.InstrumentationListener;
+import org.codeforamerica.open311.internals.platform.PlatformManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link URLConnectionNetworkManager} against a local HTTP server.
+ */
+public class URLConnectionNetworkManagerTest {
+	private static HttpServer server;
+	private static ExecutorService serverExecutor;
+	private static String baseUrl;
+	/**
+	 * Remote ports of the connections which reached the server.
+	 */
+	private static Set<Integer> clientPorts = new HashSet<Integer>();
+	/**
+	 * Arrival time of the requests.
+	 */
+	private static List<Long> requestTimes = new ArrayList<Long>();
+	private static final long STALL_TIME = 3000;
+	private static final String ENTITY_TAG = "\"v1\"";
+	private static final String COMPRESSIBLE_BODY;
+	static {
+		StringBuilder builder = new StringBuilder("<service_requests>");
+		for (int i = 0; i < 500; i++) {
+			builder.append("<request><service_request_id>").append(i)
+					.append("</service_request_id><status>open</status>")
+					.append("<service_name>Cans left out 24x7</service_name>")
+					.append("</request>");
+		}
+		COMPRESSIBLE_BODY = builder.append("</service_requests>").toString();
+	}
+
+	@BeforeClass
+	public static void testInitialization() throws IOException {
+		System.out.println("[URL CONNECTION NETWORK MANAGER TEST] Starts");
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				synchronized (clientPorts) {
+					clientPorts.add(exchange.getRemoteAddress().getPort());
+				}
+				if (exchange.getRequestURI().getPath().contains("conditional")) {
+					exchange.getResponseHeaders().set("ETag", ENTITY_TAG);
+					if (ENTITY_TAG.equals(exchange.getRequestHeaders()
+							.getFirst("If-None-Match"))) {
+						exchange.sendResponseHeaders(304, -1);
+						exchange.close();
+						return;
+					}
+				}
+				String path = exchange.getRequestURI().getPath();
+				synchronized (requestTimes) {
+					requestTimes.add(System.currentTimeMillis());
+				}
+				if (path.contains("throttled")) {
+					exchange.getResponseHeaders().set("Retry-After", "1");
+					exchange.sendResponseHeaders(429, -1);
+					exchange.close();
+					return;
+				}
+				if (path.contains("failing")) {
+					byte[] body = "Internal error".getBytes("UTF-8");
+					exchange.sendResponseHeaders(500, body.length);
+					OutputStream output = exchange.getResponseBody();
+					output.write(body);
+					output.close();
+					return;
+				}
+				if (path.contains("compressed")) {
+					sendCompressed(exchange, path);
+					return;
+				}
+				if (path.contains("stalled")) {
+					sendStalled(exchange);
+					return;
+				}
+				String response = exchange.getRequestMethod() + " "
+						+ exchange.getRequestHeaders().getFirst("Accept") + " "
+						+ read(exchange.getRequestBody());
+				int status = exchange.getRequestURI().getPath()
+						.contains("error") ? 403 : 200;
+				byte[] body = response.getBytes("UTF-8");
+				exchange.sendResponseHeaders(status, body.length);
+				OutputStream output = exchange.getResponseBody();
+				output.write(body);
+				output.close();
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+		System.out.println("[URL CONNECTION NETWORK MANAGER TEST] Ends");
+	}
+
+	@Test
+	public void getTest() throws IOException {
+		NetworkManager networkManager = new URLConnectionNetworkManager(
+				Format.XML);
+		assertEquals(networkManager.doGet(new URL(baseUrl + "/services.xml")),
+				"GET text/xml ");
+		networkManager.setFormat(Format.JSON);
+		assertEquals(networkManager.doGet(new URL(baseUrl + "/services.json")),
+				"GET application/json ");
+	}
+
+	@Test
+	public void getStreamTest() throws IOException {
+		StreamingNetworkManager networkManager = new URLConnectionNetworkManager(
+				Format.JSON);
+		InputStream response = networkManager.doGetStream(new URL(baseUrl
+				+ "/requests.json"));
+		try {
+			assertEquals(read(response), "GET application/json ");
+		} finally {
+			response.close();
+		}
+		response = networkManager.doGetStream(new URL(baseUrl + "/error.json"));
+		try {
+			assertEquals(read(response), "GET application/json ");
+		} finally {
+			response.close();
+		}
+	}
+
+	@Test
+	public void postTest() throws IOException {
+		NetworkManager networkManager = new URLConnectionNetworkManager(
+				Format.XML);
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("address", "8TH AVE & JUDAH");
+		assertEquals(networkManager.doPost(new URL(baseUrl + "/requests.xml"),
+				parameters), "POST text/xml address=8TH+AVE+%26+JUDAH");
+	}
+
+	/**
+	 * Certificates and host names are verified unless it is explicitly
+	 * disabled.
+	 */
+	@Test
+	public void certificateVerificationTest() throws IOException {
+		URLConnectionNetworkManager networkManager = new URLConnectionNetworkManager(
+				Format.XML);
+		URL url = new URL("https://127.0.0.1/services.xml");
+		HttpsURLConnection connection = (HttpsURLConnection) networkManager
+				.openConnection(url);
+		assertSame(HttpsURLConnection.getDefaultSSLSocketFactory(),
+				connection.getSSLSocketFactory());
+		assertSame(HttpsURLConnection.getDefaultHostnameVerifier(),
+				connection.getHostnameVerifier());
+		networkManager.setTrustAllCertificates(true);
+		connection = (HttpsURLConnection) networkManager.openConnection(url);
+		assertNotSame(HttpsURLConnection.getDefaultSSLSocketFactory(),
+				connection.getSSLSocketFactory());
+		assertNotSame(HttpsURLConnection.getDefaultHostnameVerifier(),
+				connection.getHostnameVerifier());
+	}
+
+	@Test
+	public void instrumentationTest() throws IOException {
+		final List<String> events = new ArrayList<String>();
+		InstrumentationListener listener = new InstrumentationListener() {
+			@Override
+			public void networkRequest(String host, String method,
+					int statusCode, long bytes, long durationNanos) {
+				events.add(host + " " + method + " " + statusCode + " "
+						+ bytes);
+			}
+
+			@Override
+			public void parsed(String operation, int records, long bytes,
+					long durationNanos, boolean succeeded) {
+			}
+
+			@Override
+			public void cacheAccessed(String operation, boolean put,
+					boolean hit, long entrySize) {
+			}
+		};
+		NetworkManager networkManager = new URLConnectionNetworkManager(
+				Format.XML);
+		Instrumentation.addListener(listener);
+		try {
+			networkManager.doGet(new URL(baseUrl + "/error.xml"));
+			networkManager.doPost(new URL(baseUrl + "/requests.xml"),
+					new HashMap<String, String>());
+		} finally {
+			Instrumentation.removeListener(listener);
+		}
+		assertEquals(2, events.size());
+		assertEquals("127.0.0.1 GET 403 13", events.get(0));
+		assertEquals("127.0.0.1 POST 200 14", events.get(1));
+
+		// Streamed and conditional responses send it once they are read.
+		for (ConditionalNetworkManager conditionalNetworkManager : new ConditionalNetworkManager[] {
+				new URLConnectionNetworkManager(Format.XML),
+				new HTTPNetworkManager(Format.XML) }) {
+			events.clear();
+			Instrumentation.addListener(listener);
+			try {
+				URL url = new URL(baseUrl + "/services.xml");
+				assertEquals("GET text/xml ",
+						read(conditionalNetworkManager.doGetStream(url)));
+				assertEquals(1, events.size());
+				URL conditionalUrl = new URL(baseUrl + "/conditional.xml");
+				read(conditionalNetworkManager.doConditionalGet(
+						conditionalUrl, null).getBody());
+				conditionalNetworkManager.doConditionalGet(conditionalUrl,
+						new Validators(ENTITY_TAG, null));
+			} finally {
+				Instrumentation.removeListener(listener);
+			}
+			assertEquals(3, events.size());
+			assertEquals("127.0.0.1 GET 200 13", events.get(0));
+			assertEquals("127.0.0.1 GET 200 13", events.get(1));
+			assertEquals("127.0.0.1 GET 304 0", events.get(2));
+		}
+	}
+
+	/**
+	 * A GET answered with a server error fails, so the resilient manager
+	 * retries it and opens the circuit of the host.
+	 */
+	@Test
+	public void serverErrorTest() throws IOException {
+		for (NetworkManager client : new NetworkManager[] {
+				new URLConnectionNetworkManager(Format.XML),
+				new HTTPNetworkManager(Format.XML) }) {
+			ResilientNetworkManager networkManager = new ResilientNetworkManager(
+					client).setBackoff(1, 5, TimeUnit.MILLISECONDS)
+					.setRetryBudget(3, 1, TimeUnit.SECONDS)
+					.setCircuitBreaker(3, 1, TimeUnit.HOURS);
+			URL url = new URL(baseUrl + "/failing.xml");
+			try {
+				networkManager.doGetStream(url);
+				fail("The server error should be thrown");
+			} catch (ServerErrorException e) {
+				assertEquals(500, e.getStatusCode());
+			}
+			assertEquals(3, networkManager.getRequestCount());
+			assertEquals(2, networkManager.getRetryCount());
+			assertEquals(CircuitBreaker.State.OPEN,
+					networkManager.getCircuitState("127.0.0.1"));
+			try {
+				networkManager.doGet(url);
+				fail("The circuit should be open");
+			} catch (CircuitOpenException e) {
+			}
+			// POST errors are still returned to be parsed.
+			assertEquals("Internal error", client.doPost(url,
+					new HashMap<String, String>()));
+		}
+	}
+
+	@Test
+	public void errorResponseTest() throws IOException {
+		NetworkManager networkManager = new URLConnectionNetworkManager(
+				Format.XML);
+		assertEquals(networkManager.doGet(new URL(baseUrl + "/error.xml")),
+				"GET text/xml ");
+	}
+
+	@Test
+	public void connectionReuseTest() throws IOException {
+		synchronized (clientPorts) {
+			clientPorts.clear();
+		}
+		for (int i = 0; i < 10; i++) {
+			new URLConnectionNetworkManager(Format.XML).doGet(new URL(baseUrl
+					+ "/requests.xml"));
+		}
+		assertEquals(clientPorts.size(), 1);
+	}
+
+	@Test
+	public void conditionalGetTest() throws IOException {
+		conditionalGetTest(new URLConnectionNetworkManager(Format.XML));
+		conditionalGetTest(new HTTPNetworkManager(Format.XML));
+	}
+
+	private void conditionalGetTest(ConditionalNetworkManager networkManager)
+			throws IOException {
+		URL url = new URL(baseUrl + "/conditional/services.xml");
+		ConditionalResponse response = networkManager.doConditionalGet(url,
+				null);
+		try {
+			assertFalse(response.isNotModified());
+			assertEquals(read(response.getBody()), "GET text/xml ");
+			assertEquals(ENTITY_TAG, response.getValidators().getEntityTag());
+		} finally {
+			response.getBody().close();
+		}
+		response = networkManager.doConditionalGet(url,
+				response.getValidators());
+		assertTrue(response.isNotModified());
+		assertNull(response.getBody());
+		assertEquals(ENTITY_TAG, response.getValidators().getEntityTag());
+		response = networkManager.doConditionalGet(url, new Validators(
+				"\"v0\"", null));
+		try {
+			assertFalse(response.isNotModified());
+		} finally {
+			response.getBody().close();
+		}
+	}
+
+	@Test
+	public void compressionTest() throws IOException {
+		URLConnectionNetworkManager urlConnectionNetworkManager = new URLConnectionNetworkManager(
+				Format.XML);
+		compressionTest(urlConnectionNetworkManager,
+				urlConnectionNetworkManager.getTransferStatistics());
+		HTTPNetworkManager httpNetworkManager = new HTTPNetworkManager(
+				Format.XML);
+		compressionTest(httpNetworkManager,
+				httpNetworkManager.getTransferStatistics());
+	}
+
+	private void compressionTest(StreamingNetworkManager networkManager,
+			TransferStatistics statistics) throws IOException {
+		for (String encoding : new String[] { "gzip", "deflate", "rawdeflate" }) {
+			statistics.reset();
+			assertEquals(COMPRESSIBLE_BODY, networkManager.doGet(new URL(
+					baseUrl + "/compressed/" + encoding)));
+			InputStream response = networkManager.doGetStream(new URL(baseUrl
+					+ "/compressed/" + encoding));
+			try {
+				assertEquals(COMPRESSIBLE_BODY, read(response));
+			} finally {
+				response.close();
+			}
+			long decoded = 2 * COMPRESSIBLE_BODY.getBytes("UTF-8").length;
+			assertEquals(decoded, statistics.getDecodedBytes());
+			assertTrue(statistics.getWireBytes() * 10 < decoded);
+			assertTrue(statistics.getCompressionRatio() > 10);
+		}
+	}
+
+	/**
+	 * A body which can't be decompressed releases its connection.
+	 */
+	@Test
+	public void corruptBodyTest() throws IOException {
+		URLConnectionNetworkManager urlConnectionNetworkManager = new URLConnectionNetworkManager(
+				Format.XML);
+		HTTPNetworkManager httpNetworkManager = new HTTPNetworkManager(
+				Format.XML);
+		httpNetworkManager.setTimeouts(1, 1, 2, TimeUnit.SECONDS);
+		URL url = new URL(baseUrl + "/compressed/corrupt");
+		// More requests than the connections of the pool.
+		for (int i = 0; i < 25; i++) {
+			for (StreamingNetworkManager networkManager : new StreamingNetworkManager[] {
+					urlConnectionNetworkManager, httpNetworkManager }) {
+				try {
+					networkManager.doGetStream(url);
+					fail("The body shouldn't be decompressed");
+				} catch (IOException e) {
+				}
+			}
+		}
+		assertEquals("GET text/xml ",
+				httpNetworkManager.doGet(new URL(baseUrl + "/services.xml")));
+	}
+
+	@Test
+	public void throttlingTest() throws IOException {
+		throttlingTest(new URLConnectionNetworkManager(Format.XML));
+		throttlingTest(new HTTPNetworkManager(Format.XML));
+	}
+
+	/**
+	 * The server asks to wait a second, the next request is delayed.
+	 */
+	private void throttlingTest(NetworkManager networkManager)
+			throws IOException {
+		try {
+			networkManager.doGet(new URL(baseUrl + "/throttled"));
+			fail("The request should be throttled");
+		} catch (ThrottledException e) {
+			assertEquals(429, e.getStatusCode());
+			assertEquals(1000, e.getRetryAfter());
+		} finally {
+			RateLimiters.remove("127.0.0.1");
+		}
+		RateLimiters.setRate(baseUrl, 5, 1);
+		try {
+			synchronized (requestTimes) {
+				requestTimes.clear();
+			}
+			for (int i = 0; i < 3; i++) {
+				networkManager.doGet(new URL(baseUrl + "/services.xml"));
+			}
+			synchronized (requestTimes) {
+				assertEquals(3, requestTimes.size());
+				assertTrue(requestTimes.get(2) - requestTimes.get(0) >= 300);
+			}
+		} finally {
+			RateLimiters.remove("127.0.0.1");
+		}
+	}
+
+	@Test
+	public void timeoutTest() throws IOException {
+		URLConnectionNetworkManager urlConnectionNetworkManager = new URLConnectionNetworkManager(
+				Format.XML);
+		HTTPNetworkManager httpNetworkManager = new HTTPNetworkManager(
+				Format.XML);
+		urlConnectionNetworkManager.setTimeouts(1000, 200, 0,
+				TimeUnit.MILLISECONDS);
+		httpNetworkManager.setTimeouts(1000, 200, 0, TimeUnit.MILLISECONDS);
+		readTimeoutTest(urlConnectionNetworkManager);
+		readTimeoutTest(httpNetworkManager);
+		urlConnectionNetworkManager.setTimeouts(1000, 5000, 300,
+				TimeUnit.MILLISECONDS);
+		httpNetworkManager.setTimeouts(1000, 5000, 300, TimeUnit.MILLISECONDS);
+		totalTimeoutTest(urlConnectionNetworkManager);
+		totalTimeoutTest(httpNetworkManager);
+		// Waiting reads can't be aborted in some implementations, they end
+		// with the read timeout.
+		urlConnectionNetworkManager.setTimeouts(1000, 1000, 0,
+				TimeUnit.MILLISECONDS);
+		httpNetworkManager.setTimeouts(1000, 5000, 0, TimeUnit.MILLISECONDS);
+		cancellationTest(urlConnectionNetworkManager,
+				CancellationToken.withDeadline(300, TimeUnit.MILLISECONDS),
+				true);
+		cancellationTest(httpNetworkManager,
+				CancellationToken.withDeadline(300, TimeUnit.MILLISECONDS),
+				true);
+		for (NetworkManager networkManager : new NetworkManager[] {
+				urlConnectionNetworkManager, httpNetworkManager }) {
+			final CancellationToken token = new CancellationToken();
+			PlatformManager.getInstance().getScheduler()
+					.schedule(new Runnable() {
+						@Override
+						public void run() {
+							token.cancel();
+						}
+					}, 300, TimeUnit.MILLISECONDS);
+			cancellationTest(networkManager, token, false);
+		}
+		// A cancelled token doesn't even send the request.
+		CancellationToken cancelled = new CancellationToken();
+		cancelled.cancel();
+		CancellationToken previous = cancelled.attach();
+		try {
+			httpNetworkManager.doGet(new URL(baseUrl + "/services.xml"));
+			fail("The request should not be sent");
+		} catch (RequestCancelledException e) {
+			assertFalse(e.isDeadlineExceeded());
+		} finally {
+			CancellationToken.detach(previous);
+		}
+		// The timeouts don't affect to normal requests.
+		assertTrue(httpNetworkManager.doGet(new URL(baseUrl + "/services.xml"))
+				.startsWith("GET"));
+	}
+
+	/**
+	 * The server stops sending the response, the client stops waiting.
+	 */
+	private void readTimeoutTest(NetworkManager networkManager)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		try {
+			networkManager.doGet(new URL(baseUrl + "/stalled"));
+			fail("The request should time out");
+		} catch (SocketTimeoutException e) {
+			assertTrue(System.currentTimeMillis() - start < STALL_TIME);
+		}
+	}
+
+	/**
+	 * The total timeout aborts the request while its response is being read.
+	 */
+	private void totalTimeoutTest(NetworkManager networkManager)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		try {
+			networkManager.doGet(new URL(baseUrl + "/stalled"));
+			fail("The request should time out");
+		} catch (RequestTimeoutException e) {
+			assertTrue(System.currentTimeMillis() - start < STALL_TIME);
+		}
+	}
+
+	/**
+	 * The request is aborted while its response is being read.
+	 */
+	private void cancellationTest(NetworkManager networkManager,
+			CancellationToken token, boolean deadlineExceeded)
+			throws IOException {
+		CancellationToken previous = token != null ? token.attach() : null;
+		long start = System.currentTimeMillis();
+		try {
+			networkManager.doGet(new URL(baseUrl + "/stalled"));
+			fail("The request should be aborted");
+		} catch (RequestCancelledException e) {
+			assertEquals(deadlineExceeded, e.isDeadlineExceeded());
+			assertTrue(System.currentTimeMillis() - start < STALL_TIME);
+		} finally {
+			if (token != null) {
+				CancellationToken.detach(previous);
+			}
+		}
+	}
+
+	/**
+	 * Sends the first bytes of a response and stalls.
+	 */
+	private static void sendStalled(HttpExchange exchange) throws IOException {
+		exchange.sendResponseHeaders(200, 0);
+		OutputStream output = exchange.getResponseBody();
+		try {
+			output.write("GET stalled".getBytes("UTF-8"));
+			output.flush();
+			Thread.sleep(STALL_TIME);
+			output.write(" response".getBytes("UTF-8"));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			// The client has given up.
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Sends a compressed response (if the client accepts it), with the
+	 * encoding given by the last segment of the path ("corrupt" sends a body
+	 * which claims to be gzipped but isn't).
+	 */
+	private static void sendCompressed(HttpExchange exchange, String path)
+			throws IOException {
+		String acceptEncoding = exchange.getRequestHeaders().getFirst(
+				"Accept-Encoding");
+		String encoding = path.substring(path.lastIndexOf('/') + 1);
+		byte[] body = COMPRESSIBLE_BODY.getBytes("UTF-8");
+		if (acceptEncoding == null || !acceptEncoding.contains("gzip")
+				|| !acceptEncoding.contains("deflate")) {
+			encoding = "identity";
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream output = compressed;
+		if (encoding.equals("corrupt")) {
+			encoding = "gzip";
+		} else if (encoding.equals("gzip")) {
+			output = new GZIPOutputStream(compressed);
+		} else if (encoding.equals("deflate")) {
+			output = new DeflaterOutputStream(compressed);
+		} else if (encoding.equals("rawdeflate")) {
+			output = new DeflaterOutputStream(compressed, new Deflater(
+					Deflater.DEFAULT_COMPRESSION, true));
+			encoding = "deflate";
+		}
+		output.write(body);
+		output.close();
+		exchange.getResponseHeaders().set("Content-Encoding", encoding);
+		exchange.sendResponseHeaders(200, compressed.size());
+		OutputStream responseBody = exchange.getResponseBody();
+		responseBody.write(compressed.toByteArray());
+		responseBody.close();
+	}
+
+	private static String read(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			output.write(buffer, 0, read);
+		}
+		return output.toString("UTF-8");
+	}
+}
@@ -0,0 +1,144 @@
+package org.codeforamerica.open311.internals.parsing;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.facade.GlobalTests;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.joda.time.DateTimeZone;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Stress test of the parsers: a single instance of each of them is used by
+ * many threads at the same time.
+ */
+public class ConcurrentParsingTest {
+	private static final int THREADS = 16;
+	private static final int ITERATIONS = 100;
+	private static final String BASE_URL = "http://www.fakeurl/";
+	private static ExecutorService executor;
+	private static String xmlServices, xmlServiceRequests;
+	private static String jsonServices, jsonServiceRequests;
+
+	@BeforeClass
+	public static void testInitialization() throws Exception {
+		System.out.println("[CONCURRENT PARSING TEST] Starts");
+		executor = Executors.newFixedThreadPool(THREADS);
+		MockNetworkManager netManager = new MockNetworkManager();
+		netManager.setFormat(Format.XML);
+		xmlServices = netManager.doGet(new URL(BASE_URL + "services.xml"));
+		xmlServiceRequests = netManager.doGet(new URL(BASE_URL + "requests.xml"));
+		netManager.setFormat(Format.JSON);
+		jsonServices = netManager.doGet(new URL(BASE_URL + "services.json"));
+		jsonServiceRequests = netManager
+				.doGet(new URL(BASE_URL + "requests.json"));
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		executor.shutdown();
+		System.out.println("[CONCURRENT PARSING TEST] Ends");
+	}
+
+	@Test
+	public void domXMLParserTest() throws Exception {
+		stress(new XMLParser(), xmlServices, xmlServiceRequests);
+	}
+
+	@Test
+	public void staxXMLParserTest() throws Exception {
+		stress(new StAXXMLParser(), xmlServices, xmlServiceRequests);
+	}
+
+	@Test
+	public void jsonParserTest() throws Exception {
+		stress(new JSONParser(), jsonServices, jsonServiceRequests);
+	}
+
+	@Test
+	public void streamingJSONParserTest() throws Exception {
+		stress(new StreamingJSONParser(), jsonServices, jsonServiceRequests);
+	}
+
+	/**
+	 * Dates are parsed by every parser, so a shared {@link DateParser} has to
+	 * give the same results under contention.
+	 */
+	@Test
+	public void dateParserTest() throws Exception {
+		final DateParser dateParser = new DateParser();
+		final String date = "2013-01-01T17:15:00+01:00";
+		final long expected = dateParser.parseDate(date).getTime();
+		run(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				assertTrue(dateParser.parseDate(date).getTime() == expected);
+				dateParser.withTimezone(DateTimeZone.UTC);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Parses the given service list and service requests with the same parser
+	 * from every thread.
+	 */
+	private void stress(final DataParser parser, final String services,
+			final String serviceRequests) throws Exception {
+		run(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				GlobalTests.serviceListTest(parser.parseServiceList(services));
+				GlobalTests.serviceRequestsTest(parser
+						.parseServiceRequests(serviceRequests));
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Runs the given task <code>ITERATIONS</code> times in each thread, all of
+	 * them starting at once. Fails with the first error found.
+	 */
+	private void run(final Callable<Void> task) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Void>> futures = new LinkedList<Future<Void>>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int j = 0; j < ITERATIONS; j++) {
+						task.call();
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<Void> future : futures) {
+			try {
+				future.get(60, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				fail(e.getCause().toString());
+			}
+		}
+	}
+}
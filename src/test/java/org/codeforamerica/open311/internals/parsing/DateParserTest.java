@@ -5,6 +5,9 @@ import static org.junit.Assert.*;
 import java.util.Date;
 
 import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -55,4 +58,66 @@ public class DateParserTest {
 		assertNull(dateParsingUtils.parseDate(INVALID_DATE));
 	}
 
+	@Test
+	public void withTimezoneDoesNotModifyTheParser() {
+		DateParser utcParser = dateParsingUtils.withTimezone(DateTimeZone.UTC);
+		Date date = dateParsingUtils.parseDate(ISO8601DATE);
+		assertEquals(utcParser.printDate(date), "2013-01-01T16:15:00Z");
+		assertEquals(dateParsingUtils.printDate(date),
+				"2013-01-01T17:15:00+01:00");
+	}
+
+	/**
+	 * The dates read by the fast path must be the same Joda reads.
+	 */
+	@Test
+	public void sameResultAsJodaTest() {
+		DateTimeZone zone = DateTimeZone.forID(DEFAULT_TIME_ZONE_FOR_TESTING_ID);
+		DateTimeFormatter iso = ISODateTimeFormat.dateTimeNoMillis()
+				.withZone(zone);
+		DateTimeFormatter isoMillis = ISODateTimeFormat.dateTime().withZone(
+				zone);
+		DateTimeFormatter basic = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm")
+				.withZone(zone);
+		String[] isoDates = { ISO8601DATE, "2013-01-01T17:15:00Z",
+				"2013-01-01T17:15:00-05:30", "2013-07-31T00:00:59+0200",
+				"2012-02-29T23:59:59+14", "1969-12-31T23:59:59Z",
+				"1600-03-01T12:00:00Z", "2100-02-28T08:07:06-00:00" };
+		for (String date : isoDates) {
+			assertEquals(date, iso.parseDateTime(date).toDate(),
+					dateParsingUtils.parseDate(date));
+		}
+		String[] isoMillisDates = { "2013-01-01T17:15:00.5Z",
+				"2013-01-01T17:15:00.123+01:00", "2013-01-01T17:15:00.120-01:00",
+				"2013-01-01T17:15:00.0Z" };
+		for (String date : isoMillisDates) {
+			assertEquals(date, isoMillis.parseDateTime(date).toDate(),
+					dateParsingUtils.parseDate(date));
+		}
+		String[] basicDates = { BASIC_DATE, "2013-03-05 09:30",
+				"2013-10-27 02:30", "2012-02-29 00:00" };
+		for (String date : basicDates) {
+			assertEquals(date, basic.parseDateTime(date).toDate(),
+					dateParsingUtils.parseDate(date));
+		}
+		assertEquals(
+				dateParsingUtils.parseDate("2013-01-01T17:15:00.123456789Z")
+						.getTime() % 1000, 123);
+	}
+
+	@Test
+	public void invalidDatesTest() {
+		String[] invalidDates = { "", "2013-02-29T10:00:00Z",
+				"2013-13-01T10:00:00Z", "2013-01-01T24:00:00Z",
+				"2013-01-01T10:60:00Z", "2013-01-01T10:00:00",
+				"2013-01-01T10:00:00.Z", "2013-01-01T10:00:00+1:00",
+				"2013-01-01T10:00:00Z ", "2013-01-01 10:00:00",
+				"2013-04-31 10:00",
+				// Daylight saving gap in Europe/Madrid
+				"2013-03-31 02:30" };
+		for (String date : invalidDates) {
+			assertNull(date, dateParsingUtils.parseDate(date));
+		}
+		assertNull(dateParsingUtils.parseDate(null));
+	}
 }
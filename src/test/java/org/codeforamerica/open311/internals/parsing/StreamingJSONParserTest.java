@@ -0,0 +1,301 @@
+package org.codeforamerica.open311.internals.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.codeforamerica.open311.facade.Format;
+import org.codeforamerica.open311.facade.GlobalTests;
+import org.codeforamerica.open311.facade.ServiceRequestHandler;
+import org.codeforamerica.open311.facade.data.POSTServiceRequestResponse;
+import org.codeforamerica.open311.facade.data.Service;
+import org.codeforamerica.open311.facade.data.ServiceDefinition;
+import org.codeforamerica.open311.facade.data.ServiceRequest;
+import org.codeforamerica.open311.facade.data.ServiceRequestIdResponse;
+import org.codeforamerica.open311.facade.exceptions.DataParsingException;
+import org.codeforamerica.open311.facade.exceptions.GeoReportV2Error;
+import org.codeforamerica.open311.internals.network.MockNetworkManager;
+import org.codeforamerica.open311.internals.network.NetworkManager;
+import org.codeforamerica.open311.internals.network.StreamingNetworkManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link StreamingJSONParser} class. It has to pass the same cases
+ * as the {@link JSONParser} (check {@link JSONParserTest}).
+ */
+public class StreamingJSONParserTest {
+	private static NetworkManager netManager = new MockNetworkManager();
+	private static StreamingJSONParser parser = new StreamingJSONParser();
+	private static final String BASE_URL = "http://www.fakeurl";
+
+	@BeforeClass
+	public static void testInitialization() {
+		System.out.println("[STREAMING JSON PARSER TEST] Starts");
+		netManager.setFormat(Format.JSON);
+	}
+
+	@AfterClass
+	public static void testFinish() {
+		System.out.println("[STREAMING JSON PARSER TEST] Ends");
+	}
+
+	/**
+	 * Tests a correct service list JSON parsing.
+	 */
+	@Test
+	public void serviceListParsingTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		List<Service> services = parser.parseServiceList(netManager
+				.doGet(new URL(BASE_URL + "/services.json")));
+		GlobalTests.serviceListTest(services);
+	}
+
+	/**
+	 * Tests the parsing of responses received as streams.
+	 */
+	@Test
+	public void streamParsingTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		StreamingNetworkManager streamingNetManager = (StreamingNetworkManager) netManager;
+		GlobalTests.serviceListTest(parser.parseServiceList(streamingNetManager
+				.doGetStream(new URL(BASE_URL + "/services.json"))));
+		GlobalTests.serviceRequestsTest(parser
+				.parseServiceRequests(streamingNetManager.doGetStream(new URL(
+						BASE_URL + "/requests.json"))));
+	}
+
+	/**
+	 * Tests if an exception is thrown if a wrong JSON is given.
+	 */
+	@Test(expected = DataParsingException.class)
+	public void serviceListParsingWithErrorsTest()
+			throws MalformedURLException, IOException, DataParsingException {
+		String dataWithError = netManager.doGet(
+				new URL(BASE_URL + "/services.json")).replace("\"", ":");
+		parser.parseServiceList(dataWithError);
+	}
+
+	/**
+	 * Tests a correct service definition list JSON parsing.
+	 */
+	@Test
+	public void serviceDefinitionParsingTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		ServiceDefinition serviceDefinition = parser
+				.parseServiceDefinition(netManager.doGet(new URL(BASE_URL
+						+ "/services/001.json")));
+		GlobalTests.serviceDefinitionTest(serviceDefinition);
+
+	}
+
+	/**
+	 * Tests if an exception is thrown if a wrong JSON is given.
+	 */
+	@Test(expected = DataParsingException.class)
+	public void serviceDefinitionParsingWithErrorTest()
+			throws MalformedURLException, IOException, DataParsingException {
+		String dataWithError = netManager.doGet(
+				new URL(BASE_URL + "/services/001.json")).replace("\"", ":");
+		parser.parseServiceDefinition(dataWithError);
+	}
+
+	/**
+	 * Tests if the parser is able to read service request ids.
+	 */
+	@Test
+	public void serviceRequestIdFromATokenTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		ServiceRequestIdResponse id = parser
+				.parseServiceRequestIdFromAToken(netManager.doGet(new URL(
+						BASE_URL + "/tokens/222.json")));
+		GlobalTests.serviceIdFromTokenTest(id);
+	}
+
+	/**
+	 * An exception must be thrown if the JSON is not well formed.
+	 */
+	@Test(expected = DataParsingException.class)
+	public void serviceRequestIdFromATokenTestWithErrorTest()
+			throws MalformedURLException, IOException, DataParsingException {
+		String dataWithError = netManager.doGet(
+				new URL(BASE_URL + "/tokens/001.json")).replace("\"", ":");
+		parser.parseServiceRequestIdFromAToken(dataWithError);
+	}
+
+	/**
+	 * Service requests parsing test.
+	 */
+	@Test
+	public void serviceRequestsTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		List<ServiceRequest> list = parser.parseServiceRequests(netManager
+				.doGet(new URL(BASE_URL + "/requests.json")));
+		GlobalTests.serviceRequestsTest(list);
+	}
+
+	/**
+	 * An exception must be thrown if the JSON is not well formed.
+	 */
+	@Test(expected = DataParsingException.class)
+	public void serviceRequestsWithErrorTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		String dataWithError = netManager.doGet(
+				new URL(BASE_URL + "/requests.json")).replace("\"", ":");
+		parser.parseServiceRequests(dataWithError);
+	}
+
+	@Test
+	public void postServiceRequestResponseTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		POSTServiceRequestResponse response = parser
+				.parsePostServiceRequestResponse(netManager.doPost(new URL(
+						BASE_URL + "/requests.json"), null));
+		GlobalTests.postServiceRequestsTest(response);
+	}
+
+	/**
+	 * An exception must be thrown if the JSON is not well formed.
+	 */
+	@Test(expected = DataParsingException.class)
+	public void postServiceRequestResponseWithErrorTest()
+			throws MalformedURLException, IOException, DataParsingException {
+		String dataWithError = netManager.doPost(
+				new URL(BASE_URL + "/requests.xml"), null).replace("\"", ":");
+		parser.parsePostServiceRequestResponse(dataWithError);
+	}
+
+	/**
+	 * Tests the correct parsing of GeoReport v2 errors.
+	 */
+	@Test
+	public void geoReportV2ErrorTest() throws MalformedURLException,
+			DataParsingException, IOException {
+		GeoReportV2Error error = parser.parseGeoReportV2Errors(netManager
+				.doPost(new URL(BASE_URL + "/requests/simulateAPIError.json"),
+						null));
+		GlobalTests.errorTest(error);
+	}
+
+	/**
+	 * An exception must be thrown if the JSON is not well formed.
+	 */
+	@Test(expected = DataParsingException.class)
+	public void geoReportV2ErrorWithErrorTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		String dataWithError = netManager.doPost(
+				new URL(BASE_URL + "/requests.json"), null).replace("\"", ":");
+		parser.parseGeoReportV2Errors(dataWithError);
+	}
+
+	/**
+	 * Tests if it launches an {@link UnsupportedOperationException}.
+	 * 
+	 * @throws DataParsingException
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void testServiceDiscoveryTest() throws DataParsingException {
+		parser.parseServiceDiscovery("");
+	}
+
+	/**
+	 * Both parsers must give the same result with a big list of service
+	 * requests (bigger than the buffer of the reader, with escape sequences
+	 * and multibyte characters).
+	 */
+	@Test
+	public void sameResultAsTreeParserTest() throws DataParsingException {
+		StringBuilder builder = new StringBuilder("{\"service_requests\":[");
+		for (int i = 0; i < 1000; i++) {
+			builder.append(i > 0 ? ",\n" : "")
+					.append("{\"service_request_id\":").append(i)
+					.append(",\"service_code\":\"00").append(i % 7)
+					.append("\",\"status\":\"")
+					.append(i % 2 == 0 ? "open" : "closed")
+					.append("\",\"description\":\"Bache en la calle \u00d1u\u00f1oa ")
+					.append(i).append(" \\\"grande\\\" \\u00e9 \u20ac \ud83d\ude97\"")
+					.append(",\"requested_datetime\":\"2010-04-14T06:37:38-08:00\"")
+					.append(",\"address_id\":\"").append(i).append("\"")
+					.append(",\"zipcode\":").append(94000 + i)
+					.append(",\"lat\":37.76").append(i)
+					.append(",\"long\":-1.2246e2,\"agency_responsible\":null")
+					.append(",\"extra\":{\"nested\":[1,true,null]}")
+					.append(",\"media_url\":\"http://city.gov/").append(i)
+					.append(".jpg \"}");
+		}
+		builder.append("]}");
+		List<ServiceRequest> streamed = parser.parseServiceRequests(builder
+				.toString());
+		List<ServiceRequest> tree = new JSONParser()
+				.parseServiceRequests(builder.toString());
+		assertEquals(streamed.size(), 1000);
+		assertEquals(streamed.size(), tree.size());
+		for (int i = 0; i < streamed.size(); i++) {
+			ServiceRequest a = streamed.get(i), b = tree.get(i);
+			assertEquals(a.getServiceRequestId(), b.getServiceRequestId());
+			assertEquals(a.getServiceCode(), b.getServiceCode());
+			assertEquals(a.getStatus(), b.getStatus());
+			assertEquals(a.getDescription(), b.getDescription());
+			assertEquals(a.getAgencyResponsible(), b.getAgencyResponsible());
+			assertEquals(a.getRequestedDatetime(), b.getRequestedDatetime());
+			assertEquals(a.getAddressId(), b.getAddressId());
+			assertEquals(a.getZipCode(), b.getZipCode());
+			assertEquals(a.getLatitude(), b.getLatitude());
+			assertEquals(a.getLongitude(), b.getLongitude());
+			assertEquals(a.getMediaUrl(), b.getMediaUrl());
+		}
+		assertEquals(streamed.get(3).getDescription(),
+				"Bache en la calle \u00d1u\u00f1oa 3 \"grande\" \u00e9 \u20ac \ud83d\ude97");
+	}
+
+	/**
+	 * Malformed documents must be rejected.
+	 */
+	@Test
+	public void malformedDocumentsTest() {
+		String[] documents = { "", "[", "[{\"service_code\":\"001\"},]",
+				"[{\"service_code\" \"001\"}]", "[{\"service_code\":tru}]",
+				"[{\"service_code\":\"001\"}] []", "[\"unterminated]" };
+		for (String document : documents) {
+			try {
+				parser.parseServiceList(document);
+				fail("Accepted: " + document);
+			} catch (DataParsingException e) {
+			}
+		}
+	}
+
+	/**
+	 * Every request has to be handed over as soon as it is read, before the
+	 * rest of the document is parsed.
+	 */
+	@Test
+	public void handlerTest() throws UnsupportedEncodingException {
+		final List<String> ids = new LinkedList<String>();
+		String document = "[{\"service_request_id\":\"1\",\"service_code\":\"001\"},"
+				+ "{\"service_request_id\":\"2\",\"service_code\":\"001\"},"
+				+ "{\"service_request_id\":";
+		try {
+			parser.parseServiceRequests(
+					new ByteArrayInputStream(document.getBytes("UTF-8")),
+					new ServiceRequestHandler() {
+						@Override
+						public void handle(ServiceRequest serviceRequest) {
+							ids.add(serviceRequest.getServiceRequestId());
+						}
+					});
+			fail("The document is truncated.");
+		} catch (DataParsingException e) {
+		}
+		assertEquals(Arrays.asList("1", "2"), ids);
+	}
+}
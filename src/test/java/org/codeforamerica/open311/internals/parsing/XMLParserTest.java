@@ -21,6 +21,7 @@ import org.codeforamerica.open311.facade.exceptions.DataParsingException;
 import org.codeforamerica.open311.facade.exceptions.GeoReportV2Error;
 import org.codeforamerica.open311.internals.network.MockNetworkManager;
 import org.codeforamerica.open311.internals.network.NetworkManager;
+import org.codeforamerica.open311.internals.network.StreamingNetworkManager;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -61,6 +62,20 @@ public class XMLParserTest {
 		GlobalTests.serviceListTest(services);
 	}
 
+	/**
+	 * Tests the parsing of responses received as streams.
+	 */
+	@Test
+	public void streamParsingTest() throws MalformedURLException,
+			IOException, DataParsingException {
+		StreamingNetworkManager streamingNetManager = (StreamingNetworkManager) netManager;
+		GlobalTests.serviceListTest(parser.parseServiceList(streamingNetManager
+				.doGetStream(new URL(BASE_URL + "/services.xml"))));
+		GlobalTests.serviceRequestsTest(parser
+				.parseServiceRequests(streamingNetManager.doGetStream(new URL(
+						BASE_URL + "/requests.xml"))));
+	}
+
 	/**
 	 * Tests if an exception is thrown if a wrong XML is given.
 	 */